@@ -98,6 +98,11 @@ public class SymbolConfig {
      */
     private Integer matchMode;
 
+    /**
+     * WAL持久化策略：fsync / fdatasync / group / async，不配置时使用撮合引擎的默认策略
+     */
+    private String durability;
+
     /**
      * 创建时间（毫秒时间戳）
      */
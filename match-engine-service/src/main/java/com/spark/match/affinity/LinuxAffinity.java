@@ -0,0 +1,78 @@
+package com.spark.match.affinity;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Linux线程CPU亲和性（通过FFM直接调用libc，无需JNI和本地编译）
+ * <p>
+ * 依赖Java 21的FFM预览API，运行时需要 --enable-preview；
+ * 未开启时加载本类会抛出UnsupportedClassVersionError，由{@link ThreadAffinityManager}降级处理
+ */
+final class LinuxAffinity {
+    /**
+     * cpu_set_t大小（glibc/musl均为1024位）
+     */
+    private static final int CPU_SET_BYTES = 128;
+
+    /**
+     * 可设置的最大CPU编号（不含）
+     */
+    static final int MAX_CPUS = CPU_SET_BYTES * 8;
+
+    private static final MethodHandle SCHED_SETAFFINITY;
+    private static final MethodHandle SCHED_GETCPU;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        // int sched_setaffinity(pid_t pid, size_t cpusetsize, const cpu_set_t *mask)
+        SCHED_SETAFFINITY = linker.downcallHandle(
+                libc.find("sched_setaffinity").orElseThrow(() -> new UnsatisfiedLinkError("sched_setaffinity")),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+        // int sched_getcpu(void)
+        SCHED_GETCPU = linker.downcallHandle(
+                libc.find("sched_getcpu").orElseThrow(() -> new UnsatisfiedLinkError("sched_getcpu")),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT));
+    }
+
+    private LinuxAffinity() {
+    }
+
+    /**
+     * 把当前线程绑定到指定CPU
+     *
+     * @param cpu CPU编号
+     * @return sched_setaffinity返回值（0表示成功）
+     */
+    static int pinCurrentThread(int cpu) {
+        if (cpu < 0 || cpu >= MAX_CPUS) {
+            throw new IllegalArgumentException("CPU编号超出范围: " + cpu);
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment mask = arena.allocate(CPU_SET_BYTES, Long.BYTES);
+            mask.fill((byte) 0);
+            mask.set(ValueLayout.JAVA_LONG, (long) (cpu / Long.SIZE) * Long.BYTES, 1L << (cpu % Long.SIZE));
+            // pid=0表示调用线程
+            return (int) SCHED_SETAFFINITY.invokeExact(0, (long) CPU_SET_BYTES, mask);
+        } catch (Throwable e) {
+            throw new IllegalStateException("sched_setaffinity调用失败: cpu=" + cpu, e);
+        }
+    }
+
+    /**
+     * 当前线程所在CPU
+     */
+    static int currentCpu() {
+        try {
+            return (int) SCHED_GETCPU.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("sched_getcpu调用失败", e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.spark.match.affinity;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 线程CPU亲和性管理
+ * 解码、撮合、日志、发布等Disruptor处理线程在onStart()中按角色绑定到配置的CPU核，
+ * 避免调度器在核之间迁移线程（busy-spin/adaptive等待下迁移会带来明显的尾延迟抖动）
+ * <p>
+ * 仅支持Linux，并且需要 --enable-preview（Java 21 FFM预览API）；条件不满足时只打印告警，不影响启动。
+ * 配置的核最好通过内核参数isolcpus隔离，启动报告会标出未隔离的核
+ */
+@Slf4j
+@Component
+public class ThreadAffinityManager {
+    /**
+     * 日志阶段线程（OrderJournalHandler）
+     */
+    public static final String ROLE_JOURNAL = "journal";
+
+    /**
+     * 撮合线程（OrderEventHandler）
+     */
+    public static final String ROLE_MATCH = "match";
+
+    /**
+     * 成交发布线程（TradeNotificationEventHandler）
+     */
+    public static final String ROLE_TRADE_PUBLISHER = "trade-publisher";
+
+    /**
+     * 订单簿更新发布线程（OrderBookUpdateEventHandler）
+     */
+    public static final String ROLE_ORDER_BOOK_PUBLISHER = "orderbook-publisher";
+
+    /**
+     * 解码线程角色前缀（decode-0, decode-1, ...）
+     */
+    private static final String ROLE_DECODE_PREFIX = "decode-";
+
+    private static final Path ISOLATED_CPUS_PATH = Paths.get("/sys/devices/system/cpu/isolated");
+
+    /**
+     * 是否启用CPU绑定
+     */
+    @Value("${match-engine.affinity.enabled:false}")
+    private boolean enabled;
+
+    @Value("${match-engine.affinity.cpus.journal:-1}")
+    private int journalCpu;
+
+    @Value("${match-engine.affinity.cpus.match:-1}")
+    private int matchCpu;
+
+    @Value("${match-engine.affinity.cpus.trade-publisher:-1}")
+    private int tradePublisherCpu;
+
+    @Value("${match-engine.affinity.cpus.orderbook-publisher:-1}")
+    private int orderBookPublisherCpu;
+
+    /**
+     * 解码线程CPU列表（逗号分隔，第i个解码线程绑定第i个CPU）
+     */
+    @Value("${match-engine.affinity.cpus.decode:}")
+    private String decodeCpus;
+
+    /**
+     * 角色 → CPU（-1表示不绑定）
+     */
+    private final Map<String, Integer> roleCpus = new LinkedHashMap<>();
+
+    /**
+     * 已执行的绑定结果
+     */
+    private final List<Assignment> assignments = new CopyOnWriteArrayList<>();
+
+    /**
+     * 内核隔离的CPU（isolcpus）
+     */
+    private BitSet isolatedCpus = new BitSet();
+
+    /**
+     * 当前平台是否可用
+     */
+    private boolean supported;
+
+    @PostConstruct
+    public void init() {
+        roleCpus.put(ROLE_JOURNAL, journalCpu);
+        roleCpus.put(ROLE_MATCH, matchCpu);
+        roleCpus.put(ROLE_TRADE_PUBLISHER, tradePublisherCpu);
+        roleCpus.put(ROLE_ORDER_BOOK_PUBLISHER, orderBookPublisherCpu);
+        if (!decodeCpus.isBlank()) {
+            String[] cpus = decodeCpus.split(",");
+            for (int i = 0; i < cpus.length; i++) {
+                roleCpus.put(decodeRole(i), Integer.parseInt(cpus[i].trim()));
+            }
+        }
+
+        if (!enabled) {
+            log.info("CPU绑定未启用");
+            return;
+        }
+
+        supported = checkSupported();
+        isolatedCpus = readIsolatedCpus();
+
+        int availableCpus = Runtime.getRuntime().availableProcessors();
+        Map<Integer, String> cpuOwners = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : roleCpus.entrySet()) {
+            int cpu = entry.getValue();
+            if (cpu < 0) {
+                continue;
+            }
+            if (cpu >= availableCpus) {
+                log.warn("CPU绑定配置超出可用核数: role={}, cpu={}, availableProcessors={}", entry.getKey(), cpu, availableCpus);
+            }
+            String previous = cpuOwners.put(cpu, entry.getKey());
+            if (previous != null) {
+                log.warn("多个线程绑定到同一CPU，将相互争抢: cpu={}, roles={},{}", cpu, previous, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 第ordinal个解码线程的角色名
+     */
+    public static String decodeRole(int ordinal) {
+        return ROLE_DECODE_PREFIX + ordinal;
+    }
+
+    /**
+     * 把当前线程按角色绑定到配置的CPU（在Disruptor处理线程的onStart()中调用）
+     *
+     * @param role 线程角色
+     */
+    public void pinCurrentThread(String role) {
+        Integer cpu = roleCpus.get(role);
+        if (!enabled || !supported || cpu == null || cpu < 0) {
+            return;
+        }
+        String threadName = Thread.currentThread().getName();
+        try {
+            int rc = LinuxAffinity.pinCurrentThread(cpu);
+            if (rc != 0) {
+                log.warn("线程CPU绑定失败: role={}, thread={}, cpu={}, rc={}", role, threadName, cpu, rc);
+                assignments.add(new Assignment(role, threadName, false, -1));
+                return;
+            }
+            int currentCpu = LinuxAffinity.currentCpu();
+            assignments.add(new Assignment(role, threadName, true, currentCpu));
+            log.info("线程CPU绑定成功: role={}, thread={}, cpu={}, currentCpu={}", role, threadName, cpu, currentCpu);
+        } catch (RuntimeException | LinkageError e) {
+            log.warn("线程CPU绑定失败: role={}, thread={}, cpu={}", role, threadName, cpu, e);
+            assignments.add(new Assignment(role, threadName, false, -1));
+        }
+    }
+
+    /**
+     * 启动报告：输出各角色的绑定情况
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportAssignments() {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder report = new StringBuilder("CPU绑定报告 (supported=").append(supported)
+                .append(", isolated=").append(isolatedCpus.isEmpty() ? "无" : isolatedCpus).append(")");
+        for (Map.Entry<String, Integer> entry : roleCpus.entrySet()) {
+            String role = entry.getKey();
+            int cpu = entry.getValue();
+            report.append("\n  ").append(role).append(": ");
+            if (cpu < 0) {
+                report.append("未配置");
+                continue;
+            }
+            Assignment assignment = findAssignment(role);
+            report.append("cpu=").append(cpu);
+            if (assignment == null) {
+                report.append(", 状态=未生效");
+            } else {
+                report.append(", thread=").append(assignment.threadName)
+                        .append(", 状态=").append(assignment.success ? "已绑定" : "失败");
+                if (assignment.success) {
+                    report.append(", currentCpu=").append(assignment.currentCpu);
+                }
+            }
+            if (!isolatedCpus.get(cpu)) {
+                report.append(", 未隔离（建议配置isolcpus）");
+            }
+        }
+        log.info(report.toString());
+    }
+
+    private Assignment findAssignment(String role) {
+        for (Assignment assignment : assignments) {
+            if (assignment.role.equals(role)) {
+                return assignment;
+            }
+        }
+        return null;
+    }
+
+    private boolean checkSupported() {
+        String osName = System.getProperty("os.name", "");
+        if (!osName.toLowerCase().contains("linux")) {
+            log.warn("CPU绑定仅支持Linux，已忽略: os={}", osName);
+            return false;
+        }
+        try {
+            LinuxAffinity.currentCpu();
+            return true;
+        } catch (UnsupportedClassVersionError e) {
+            log.warn("CPU绑定需要JVM参数 --enable-preview（Java 21 FFM），已忽略");
+            return false;
+        } catch (RuntimeException | LinkageError e) {
+            log.warn("CPU绑定不可用，已忽略", e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取内核隔离的CPU列表（格式如 "2-5,7"）
+     */
+    private BitSet readIsolatedCpus() {
+        BitSet cpus = new BitSet();
+        try {
+            if (!Files.exists(ISOLATED_CPUS_PATH)) {
+                return cpus;
+            }
+            String content = Files.readString(ISOLATED_CPUS_PATH).trim();
+            if (content.isEmpty()) {
+                return cpus;
+            }
+            for (String part : content.split(",")) {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    cpus.set(Integer.parseInt(part.substring(0, dash).trim()), Integer.parseInt(part.substring(dash + 1).trim()) + 1);
+                } else {
+                    cpus.set(Integer.parseInt(part.trim()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取隔离CPU列表失败: path={}", ISOLATED_CPUS_PATH, e);
+        }
+        return cpus;
+    }
+
+    /**
+     * 绑定结果
+     */
+    private static class Assignment {
+        private final String role;
+        private final String threadName;
+        private final boolean success;
+        private final int currentCpu;
+
+        Assignment(String role, String threadName, boolean success, int currentCpu) {
+            this.role = role;
+            this.threadName = threadName;
+            this.success = success;
+            this.currentCpu = currentCpu;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.spark.match.config;
 
+import com.spark.match.consumer.WALOffsetRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,25 +24,48 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
 
+    /**
+     * 是否批量消费（OrderBatchConsumer），false时使用单条消费（OrderConsumer）
+     */
+    @Value("${match-engine.consumer.batch-enabled:true}")
+    private boolean batchEnabled;
+
+    /**
+     * 批量消费时单次poll的最大消息数
+     */
+    @Value("${match-engine.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Autowired
+    private WALOffsetRebalanceListener walOffsetRebalanceListener;
+
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, byte[]> consumerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        // 消息体使用原始字节，由OrderConsumer直接解码到RingBuffer槽位，避免String和POJO中间对象
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "match-engine-group");
         configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false); // 手动提交
-        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1); // 单条消费，保证顺序
+        // 单条模式每次poll一条；批量模式一次poll整批（同一分区内顺序不变）
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchEnabled ? maxPollRecords : 1);
 
         return new DefaultKafkaConsumerFactory<>(configProps);
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // offset由Disruptor日志阶段在WAL落盘后从非Consumer线程确认，
+        // MANUAL模式下确认被排队，由Consumer线程在下一次poll前统一提交
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // 分配到分区时跳过已写入WAL但offset尚未提交的消息
+        factory.getContainerProperties().setConsumerRebalanceListener(walOffsetRebalanceListener);
+        // 批量模式：监听器一次接收整个poll，确认句柄提交整批offset
+        factory.setBatchListener(batchEnabled);
         factory.setConcurrency(1); // 单线程消费
         return factory;
     }
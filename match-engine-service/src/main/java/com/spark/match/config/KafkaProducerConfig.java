@@ -20,6 +20,19 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
 
+    /**
+     * 发送批次等待时间（毫秒）
+     * 发送在独立发布线程上执行，适当的linger让成交和深度消息批量发送
+     */
+    @Value("${match-engine.publisher.linger-ms:5}")
+    private int lingerMs;
+
+    /**
+     * 发送批次大小（字节）
+     */
+    @Value("${match-engine.publisher.batch-size:65536}")
+    private int batchSize;
+
     @Bean
     public ProducerFactory<String, String> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
@@ -34,6 +47,10 @@ public class KafkaProducerConfig {
         configProps.put(ProducerConfig.RETRIES_CONFIG, Integer.MAX_VALUE);
         configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "gzip"); // 压缩（使用gzip，Java原生支持，无需额外库）
 
+        // 批量发送配置
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
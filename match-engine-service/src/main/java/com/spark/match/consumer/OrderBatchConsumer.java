@@ -0,0 +1,130 @@
+package com.spark.match.consumer;
+
+import com.lmax.disruptor.RingBuffer;
+import com.spark.common.constant.KafkaTopic;
+import com.spark.match.disruptor.DisruptorMetrics;
+import com.spark.match.disruptor.OrderDecodeStage;
+import com.spark.match.disruptor.OrderEvent;
+import com.spark.match.latency.LatencyRecorder;
+import com.spark.match.latency.LatencyStage;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 订单消息批量消费者（match-engine.consumer.batch-enabled=true，默认）
+ * 关键流程：
+ * 1. 一次接收整个poll的Kafka消息（原始字节）
+ * 2. 一次申请连续的RingBuffer槽位区间（next(n)），逐条复制到槽位（并行解码关闭时同时解码）
+ * 3. 整个区间一次发布（publish(lo, hi)），日志阶段可以把整批作为一个Disruptor批次写WAL并fsync一次
+ * 4. Kafka确认句柄只挂在本批最后一条消息上：日志阶段按顺序落盘，最后一条落盘即整批落盘，整批只确认一次
+ * <p>
+ * 与单条消费者{@link OrderConsumer}的语义一致（WAL落盘后才提交offset），只是摊薄了每条消息的框架开销
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "match-engine.consumer.batch-enabled", havingValue = "true", matchIfMissing = true)
+public class OrderBatchConsumer {
+    @Autowired
+    private RingBuffer<OrderEvent> ringBuffer;
+
+    @Autowired
+    private DisruptorMetrics disruptorMetrics;
+
+    @Autowired
+    private LatencyRecorder latencyRecorder;
+
+    @Autowired
+    private OrderDecodeStage decodeStage;
+
+    @Autowired
+    private OrderFlowController flowController;
+
+    /**
+     * 槽位转换器（Consumer单线程使用）
+     */
+    private OrderEventTranslator translator;
+
+    @PostConstruct
+    public void init() {
+        translator = decodeStage.newTranslator();
+    }
+
+    @KafkaListener(id = OrderFlowController.LISTENER_ID, idIsGroup = false, topics = KafkaTopic.ORDER_INPUT, groupId = "match-engine-group", concurrency = "1") // 单线程消费，保证顺序
+    public void onMessages(List<ConsumerRecord<String, byte[]>> records, Acknowledgment ack) {
+        int total = records.size();
+        if (total == 0) {
+            return;
+        }
+        log.debug("收到订单消息批次: count={}, firstOffset={}, lastOffset={}",
+                total, records.get(0).offset(), records.get(total - 1).offset());
+
+        // 一次申请的槽位数不能超过RingBuffer容量，超大批次分段发布
+        int maxChunk = ringBuffer.getBufferSize();
+        int index = 0;
+        while (index < total) {
+            int chunk = Math.min(maxChunk, total - index);
+            publishChunk(records, index, chunk, ack);
+            index += chunk;
+        }
+
+        // RingBuffer接近满时暂停分区，避免Consumer长时间阻塞在申请槽位上触发再均衡
+        flowController.checkPause();
+    }
+
+    /**
+     * 发布一段连续消息
+     *
+     * @param records 本批消息
+     * @param from    起始下标
+     * @param count   条数
+     * @param ack     本批确认句柄（只挂在整批最后一条消息上）
+     */
+    private void publishChunk(List<ConsumerRecord<String, byte[]>> records, int from, int count, Acknowledgment ack) {
+        int total = records.size();
+        try {
+            // 申请连续槽位（RingBuffer满时阻塞等待，保证不丢消息；正常情况下流控会先暂停分区），等待时间计入背压指标
+            long claimStart = System.nanoTime();
+            long hi = ringBuffer.next(count);
+            long lo = hi - (count - 1);
+            long parseStart = System.nanoTime();
+            disruptorMetrics.recordProducerWait(parseStart - claimStart);
+
+            // 解码并一次发布整个区间
+            // 注意：此时WAL尚未写入、offset尚未提交，由日志阶段在批次fsync后统一提交
+            try {
+                for (int i = 0; i < count; i++) {
+                    int recordIndex = from + i;
+                    OrderEvent event = ringBuffer.get(lo + i);
+                    ConsumerRecord<String, byte[]> record = records.get(recordIndex);
+                    translator.translateTo(event, lo + i, record.value(), record.topic(), record.partition(),
+                            record.offset(), recordIndex == total - 1 ? ack : null);
+                    if (translator.isDecodeInline()) {
+                        // 内联解码时记录解码耗时，并行解码时由解码阶段记录
+                        parseStart = latencyRecorder.recordSince(LatencyStage.PARSE, parseStart);
+                    }
+                }
+            } finally {
+                long publishNanos = System.nanoTime();
+                for (long sequence = lo; sequence <= hi; sequence++) {
+                    ringBuffer.get(sequence).setPublishNanos(publishNanos);
+                }
+                ringBuffer.publish(lo, hi);
+            }
+        } catch (Exception e) {
+            ConsumerRecord<String, byte[]> first = records.get(from);
+            log.error("处理订单消息批次失败: topic={}, partition={}, offset={}, count={}",
+                    first.topic(), first.partition(), first.offset(), count, e);
+            // 槽位发布在finally中完成，异常只可能发生在申请槽位之前，本段消息未进入Disruptor；
+            // 整批的确认句柄挂在最后一条消息上，offset不会越过未发布的消息
+            throw new RuntimeException("处理订单消息批次失败", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.spark.match.consumer;
+
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.spark.match.disruptor.OrderEvent;
+import com.spark.match.disruptor.OrderMessageDecoder;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * 订单事件转换器
+ * 在已申请的RingBuffer槽位内完成：复制Kafka原始字节 → 流式解码到槽位字段（内联解码时） → 记录来源Kafka位置 → 绑定Kafka确认句柄
+ * 启用并行解码阶段时只复制原始字节，由OrderDecodeHandler在Disruptor内解码
+ * <p>
+ * 只在Consumer线程上使用（持有非线程安全的解码器实例）
+ */
+public class OrderEventTranslator implements EventTranslatorTwoArg<OrderEvent, byte[], Acknowledgment> {
+    private final OrderMessageDecoder decoder;
+
+    /**
+     * @param decodeInline 是否在Consumer线程上解码
+     */
+    public OrderEventTranslator(boolean decodeInline) {
+        this.decoder = decodeInline ? new OrderMessageDecoder() : null;
+    }
+
+    @Override
+    public void translateTo(OrderEvent event, long sequence, byte[] message, Acknowledgment ack) {
+        translateTo(event, sequence, message, null, -1, -1, ack);
+    }
+
+    /**
+     * 转换一条Kafka消息
+     *
+     * @param sourceTopic     来源Kafka topic（写入WAL，重启时据此seek和去重）
+     * @param sourcePartition 来源Kafka分区
+     * @param sourceOffset    来源Kafka offset
+     */
+    public void translateTo(OrderEvent event, long sequence, byte[] message, String sourceTopic, int sourcePartition,
+                            long sourceOffset, Acknowledgment ack) {
+        // walSeq由日志阶段分配
+        event.setWalSeq(0);
+        event.setSourceTopic(sourceTopic);
+        event.setSourcePartition(sourcePartition);
+        event.setSourceOffset(sourceOffset);
+        event.copyPayload(message);
+        if (decoder != null) {
+            // 解码失败时messageType为MESSAGE_TYPE_INVALID，日志阶段跳过写WAL并确认offset
+            decoder.decode(event);
+        } else {
+            // 由解码阶段解码；槽位可能残留控制事件的类型，解码阶段据此跳过，必须先重置
+            event.setMessageType(OrderEvent.MESSAGE_TYPE_INVALID);
+        }
+        event.setAck(ack);
+    }
+
+    /**
+     * 是否在Consumer线程上解码
+     */
+    public boolean isDecodeInline() {
+        return decoder != null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.spark.match.consumer;
+
+import com.lmax.disruptor.RingBuffer;
+import com.spark.match.disruptor.OrderEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单消息消费流控
+ * 基于输入RingBuffer剩余容量的高低水位控制Kafka监听容器：
+ * - 剩余容量低于暂停水位：暂停分区（容器继续poll和心跳，但不再拉取消息，不会因超过max.poll.interval.ms触发再均衡）
+ * - 剩余容量恢复到恢复水位以上：恢复分区
+ * <p>
+ * Consumer线程每次发布后检查是否需要暂停；定时任务检查是否可以恢复（暂停期间监听器不会被调用）
+ * 暂停水位应不小于单次poll的最大消息数，保证已拉取的一批消息总能放入RingBuffer
+ */
+@Slf4j
+@Component
+public class OrderFlowController implements MeterBinder {
+    /**
+     * 订单消息监听器ID（OrderConsumer/OrderBatchConsumer共用，同时只有一个生效）
+     */
+    public static final String LISTENER_ID = "orderInputListener";
+
+    @Autowired
+    private RingBuffer<OrderEvent> ringBuffer;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry listenerEndpointRegistry;
+
+    /**
+     * 是否启用流控
+     */
+    @Value("${match-engine.flow-control.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 暂停水位：剩余容量占比低于该值时暂停
+     */
+    @Value("${match-engine.flow-control.pause-remaining-ratio:0.25}")
+    private double pauseRemainingRatio;
+
+    /**
+     * 恢复水位：剩余容量占比高于该值时恢复
+     */
+    @Value("${match-engine.flow-control.resume-remaining-ratio:0.5}")
+    private double resumeRemainingRatio;
+
+    @Value("${match-engine.consumer.batch-enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${match-engine.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    private long pauseThreshold;
+    private long resumeThreshold;
+
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+    private final AtomicLong pauseCount = new AtomicLong();
+    private final AtomicLong resumeCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int bufferSize = ringBuffer.getBufferSize();
+        pauseThreshold = (long) (bufferSize * pauseRemainingRatio);
+        resumeThreshold = Math.max(pauseThreshold, (long) (bufferSize * resumeRemainingRatio));
+
+        int pollSize = batchEnabled ? maxPollRecords : 1;
+        if (enabled && pauseThreshold < pollSize) {
+            log.warn("流控暂停水位小于单次poll消息数，暂停后已拉取的消息仍可能阻塞在RingBuffer上: pauseThreshold={}, maxPollRecords={}",
+                    pauseThreshold, pollSize);
+        }
+        log.info("消费流控初始化: enabled={}, bufferSize={}, pauseThreshold={}, resumeThreshold={}",
+                enabled, bufferSize, pauseThreshold, resumeThreshold);
+    }
+
+    /**
+     * 发布后检查是否需要暂停（Consumer线程调用）
+     */
+    public void checkPause() {
+        if (!enabled || paused.get()) {
+            return;
+        }
+        long remaining = ringBuffer.remainingCapacity();
+        if (remaining < pauseThreshold && paused.compareAndSet(false, true)) {
+            MessageListenerContainer container = listenerEndpointRegistry.getListenerContainer(LISTENER_ID);
+            if (container == null) {
+                paused.set(false);
+                return;
+            }
+            container.pause();
+            pauseCount.incrementAndGet();
+            log.warn("RingBuffer剩余容量低于暂停水位，暂停消费: remaining={}, pauseThreshold={}", remaining, pauseThreshold);
+        }
+    }
+
+    /**
+     * 定时检查：剩余容量恢复后恢复消费；Consumer阻塞在申请槽位时也在此补充暂停检查
+     */
+    @Scheduled(fixedDelayString = "${match-engine.flow-control.check-interval-ms:5}")
+    public void checkResume() {
+        if (!enabled) {
+            return;
+        }
+        if (!paused.get()) {
+            checkPause();
+            return;
+        }
+        long remaining = ringBuffer.remainingCapacity();
+        if (remaining >= resumeThreshold && paused.compareAndSet(true, false)) {
+            MessageListenerContainer container = listenerEndpointRegistry.getListenerContainer(LISTENER_ID);
+            if (container != null) {
+                container.resume();
+            }
+            resumeCount.incrementAndGet();
+            log.info("RingBuffer剩余容量恢复，恢复消费: remaining={}, resumeThreshold={}", remaining, resumeThreshold);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("kafka.consumer.flow.pauses", pauseCount, AtomicLong::get)
+                .description("因RingBuffer接近满而暂停消费的次数")
+                .register(registry);
+        FunctionCounter.builder("kafka.consumer.flow.resumes", resumeCount, AtomicLong::get)
+                .description("RingBuffer容量恢复后恢复消费的次数")
+                .register(registry);
+        Gauge.builder("kafka.consumer.flow.paused", paused, flag -> flag.get() ? 1 : 0)
+                .description("当前是否处于暂停状态")
+                .register(registry);
+    }
+}
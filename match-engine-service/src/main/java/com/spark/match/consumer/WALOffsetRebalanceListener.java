@@ -0,0 +1,50 @@
+package com.spark.match.consumer;
+
+import com.spark.match.wal.WALSourceOffsets;
+import com.spark.match.wal.WALWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * 分区分配时按WAL中的来源offset定位
+ * WAL记录携带来源Kafka topic、分区和offset（见{@link com.spark.match.wal.WALRecordCodec}），
+ * 崩溃在WAL落盘和提交offset之间时，已提交的offset落后于WAL：
+ * 分配到分区时，从当前位置起连续写入WAL的消息不再重复消费（这些消息由恢复服务从WAL重放），
+ * seek到其后第一个未写入WAL的offset
+ * <p>
+ * 各WAL分区独立刷盘，同一来源分区的offset在WAL中可能有空洞，seek不会越过空洞；
+ * 空洞之后已写入WAL的重复投递由日志阶段按offset跳过（见OrderJournalHandler）
+ */
+@Slf4j
+@Component
+public class WALOffsetRebalanceListener implements ConsumerAwareRebalanceListener {
+    @Autowired
+    private WALWriter walWriter;
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        WALSourceOffsets walOffsets = walWriter.getSourceOffsets();
+        for (TopicPartition partition : partitions) {
+            int topicId = walWriter.sourceTopicId(partition.topic());
+            if (topicId < 0) {
+                continue;
+            }
+            long position = consumer.position(partition);
+            long resumeOffset = walOffsets.resumeOffset(topicId, partition.partition(), position);
+            if (resumeOffset > position) {
+                consumer.seek(partition, resumeOffset);
+                log.info("按WAL定位分区: topic={}, partition={}, committedPosition={}, resumeOffset={}",
+                        partition.topic(), partition.partition(), position, resumeOffset);
+            } else {
+                log.info("分区已提交位置之后没有已写入WAL的连续消息: topic={}, partition={}, position={}",
+                        partition.topic(), partition.partition(), position);
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.spark.match.controller;
 import com.spark.common.config.ConfigService;
 import com.spark.common.model.Response;
 import com.spark.match.orderbook.OrderBookManager;
+import com.spark.match.wal.WALDurabilityPolicies;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -23,6 +24,9 @@ public class ConfigController {
     @Autowired
     private OrderBookManager orderBookManager;
 
+    @Autowired
+    private WALDurabilityPolicies walDurabilityPolicies;
+
     /**
      * 刷新配置缓存
      * 从数据库重新加载交易对配置到缓存
@@ -39,6 +43,9 @@ public class ConfigController {
             
             // 刷新订单簿管理器的交易对配置
             orderBookManager.refreshTradingPairs();
+
+            // 刷新交易对的WAL持久化策略
+            walDurabilityPolicies.refresh();
             
             int configCount = configService.getEnabledTradingPairs().size();
             
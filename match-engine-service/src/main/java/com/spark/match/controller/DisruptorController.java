@@ -0,0 +1,98 @@
+package com.spark.match.controller;
+
+import com.lmax.disruptor.RingBuffer;
+import com.spark.common.enums.ErrorCode;
+import com.spark.common.model.Response;
+import com.spark.match.disruptor.AdaptiveWaitStrategy;
+import com.spark.match.disruptor.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Disruptor管理控制器
+ * 提供输入Disruptor等待策略的查询和运行时切换
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/disruptor")
+public class DisruptorController {
+    @Autowired
+    private AdaptiveWaitStrategy orderWaitStrategy;
+
+    @Autowired
+    private RingBuffer<OrderEvent> ringBuffer;
+
+    /**
+     * 查询当前等待策略
+     */
+    @GetMapping("/wait-strategy")
+    public Response<WaitStrategyStatus> getWaitStrategy() {
+        return Response.success(buildStatus());
+    }
+
+    /**
+     * 切换等待策略
+     *
+     * @param mode adaptive, blocking, yielding, busy-spin
+     */
+    @PostMapping("/wait-strategy")
+    public Response<WaitStrategyStatus> switchWaitStrategy(@RequestParam String mode) {
+        AdaptiveWaitStrategy.Mode newMode;
+        try {
+            newMode = AdaptiveWaitStrategy.Mode.fromName(mode);
+        } catch (IllegalArgumentException e) {
+            log.warn("等待策略无效: mode={}", mode);
+            return Response.error(ErrorCode.INVALID_PARAMETER, "等待策略无效: " + mode);
+        }
+
+        log.info("收到等待策略切换请求: mode={}", newMode.getName());
+        orderWaitStrategy.setMode(newMode);
+        return Response.success("等待策略切换成功", buildStatus());
+    }
+
+    private WaitStrategyStatus buildStatus() {
+        WaitStrategyStatus status = new WaitStrategyStatus();
+        status.setMode(orderWaitStrategy.getMode().getName());
+        status.setWaitCount(orderWaitStrategy.getWaitCount());
+        status.setParkCount(orderWaitStrategy.getParkCount());
+        status.setBufferSize(ringBuffer.getBufferSize());
+        status.setOccupancy(ringBuffer.getBufferSize() - ringBuffer.remainingCapacity());
+        return status;
+    }
+
+    /**
+     * 等待策略状态
+     */
+    @lombok.Data
+    public static class WaitStrategyStatus {
+        /**
+         * 当前模式
+         */
+        private String mode;
+
+        /**
+         * 累计等待次数
+         */
+        private long waitCount;
+
+        /**
+         * 累计挂起次数
+         */
+        private long parkCount;
+
+        /**
+         * RingBuffer容量
+         */
+        private int bufferSize;
+
+        /**
+         * RingBuffer已占用槽位数
+         */
+        private long occupancy;
+    }
+}
@@ -0,0 +1,284 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.WaitStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分阶段自适应等待策略（可运行时切换）
+ * <p>
+ * 等待分三个阶段：自旋（Thread.onSpinWait）→ 让出CPU（Thread.yield）→ 挂起（Condition）
+ * 只有发布游标未到达时才挂起；游标已到达、等待上游处理阶段（解码→日志、日志→撮合）时上游推进不会唤醒等待者，
+ * 因此一直自旋/yield，不会在每一跳上多等一个挂起周期
+ * 各阶段的预算由模式决定：
+ * - busy-spin: 只自旋，延迟最低，占满一个核
+ * - yielding: 短暂自旋后一直yield
+ * - blocking: 立即挂起，由发布方唤醒，CPU占用最低
+ * - adaptive: 按当前线程最近的等待时长（即事件到达间隔）调整预算：
+ * 到达密集时完整自旋，到达稀疏时很快进入挂起
+ * <p>
+ * 唤醒采用LiteBlocking方式：只有存在挂起的等待者时，发布方才需要加锁signal，
+ * 热路径上的发布开销只有一次原子读
+ */
+@Slf4j
+public class AdaptiveWaitStrategy implements WaitStrategy {
+    /**
+     * 等待模式
+     */
+    public enum Mode {
+        BUSY_SPIN("busy-spin"),
+        YIELDING("yielding"),
+        BLOCKING("blocking"),
+        ADAPTIVE("adaptive");
+
+        private final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 根据配置名获取模式（兼容disruptor.wait-strategy的既有取值）
+         */
+        public static Mode fromName(String name) {
+            if (name != null) {
+                String normalized = name.trim().toLowerCase();
+                if ("busyspin".equals(normalized)) {
+                    return BUSY_SPIN;
+                }
+                for (Mode mode : values()) {
+                    if (mode.name.equals(normalized)) {
+                        return mode;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Invalid wait strategy: " + name);
+        }
+    }
+
+    /**
+     * yielding模式下yield前的自旋次数
+     */
+    private static final int YIELDING_SPIN_TRIES = 100;
+
+    /**
+     * adaptive模式下冷线程（到达稀疏）的自旋次数
+     */
+    private static final int COLD_SPIN_TRIES = 100;
+
+    /**
+     * 发布游标已到达、等待上游处理器时，yield前的自旋次数
+     */
+    private static final int DEPENDENT_SPIN_TRIES = 1000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition processorNotifyCondition = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    /**
+     * 每个等待线程最近的平均等待时长（EWMA，纳秒）
+     */
+    private final ThreadLocal<long[]> averageWaitNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * 热线程完整自旋次数
+     */
+    private final int spinTries;
+
+    /**
+     * 热/温线程自旋后的yield次数
+     */
+    private final int yieldTries;
+
+    /**
+     * 平均等待时长低于该值视为热线程（完整自旋）
+     */
+    private final long hotThresholdNanos;
+
+    /**
+     * 平均等待时长低于该值视为温线程（短自旋 + yield），否则为冷线程（短自旋后挂起）
+     */
+    private final long coldThresholdNanos;
+
+    /**
+     * 单次挂起的最长时间（兜底，防止丢失唤醒）
+     */
+    private final long maxParkNanos;
+
+    private volatile Mode mode;
+
+    /**
+     * 进入挂起阶段的次数
+     */
+    private final LongAdder parkCount = new LongAdder();
+
+    /**
+     * 完成的等待次数（不含无需等待的调用）
+     */
+    private final LongAdder waitCount = new LongAdder();
+
+    public AdaptiveWaitStrategy(Mode mode, int spinTries, int yieldTries,
+                                long hotThresholdMicros, long coldThresholdMicros, long maxParkMicros) {
+        this.mode = mode;
+        this.spinTries = spinTries;
+        this.yieldTries = yieldTries;
+        this.hotThresholdNanos = TimeUnit.MICROSECONDS.toNanos(hotThresholdMicros);
+        this.coldThresholdNanos = TimeUnit.MICROSECONDS.toNanos(coldThresholdMicros);
+        this.maxParkNanos = TimeUnit.MICROSECONDS.toNanos(maxParkMicros);
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, Sequence dependentSequence, SequenceBarrier barrier)
+            throws AlertException, InterruptedException {
+        long availableSequence = dependentSequence.get();
+        if (availableSequence >= sequence) {
+            return availableSequence;
+        }
+
+        long[] average = averageWaitNanos.get();
+        long startNanos = System.nanoTime();
+        Mode currentMode = mode;
+        int spinLimit = spinLimit(currentMode, average[0]);
+        int yieldLimit = yieldLimit(currentMode, average[0]);
+        int counter = 0;
+        int dependentSpins = 0;
+
+        while ((availableSequence = dependentSequence.get()) < sequence) {
+            barrier.checkAlert();
+            if (counter < spinLimit) {
+                counter++;
+                Thread.onSpinWait();
+            } else if (counter - spinLimit < yieldLimit) {
+                counter++;
+                Thread.yield();
+            } else if (cursor.get() >= sequence) {
+                // 发布游标已到达，只是上游处理器还没完成：上游推进不会触发signal，不能挂起等待唤醒，
+                // 与BlockingWaitStrategy一样在依赖序列上自旋（超过自旋次数后yield）
+                if (dependentSpins < DEPENDENT_SPIN_TRIES) {
+                    dependentSpins++;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            } else {
+                park(sequence, cursor, barrier);
+                // 模式可能在挂起期间被切换
+                Mode latestMode = mode;
+                if (latestMode != currentMode) {
+                    currentMode = latestMode;
+                    spinLimit = spinLimit(currentMode, average[0]);
+                    yieldLimit = yieldLimit(currentMode, average[0]);
+                    counter = 0;
+                }
+            }
+        }
+
+        long waited = System.nanoTime() - startNanos;
+        average[0] += (waited - average[0]) >> 3;
+        waitCount.increment();
+        return availableSequence;
+    }
+
+    /**
+     * 挂起阶段：发布游标未到达时在Condition上等待发布方唤醒（超时兜底防止丢失唤醒）
+     */
+    private void park(long sequence, Sequence cursor, SequenceBarrier barrier)
+            throws AlertException, InterruptedException {
+        parkCount.increment();
+        lock.lock();
+        try {
+            signalNeeded.set(true);
+            if (cursor.get() < sequence) {
+                barrier.checkAlert();
+                processorNotifyCondition.awaitNanos(maxParkNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        if (signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                processorNotifyCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int spinLimit(Mode currentMode, long averageNanos) {
+        switch (currentMode) {
+            case BUSY_SPIN:
+                return Integer.MAX_VALUE;
+            case YIELDING:
+                return YIELDING_SPIN_TRIES;
+            case BLOCKING:
+                return 0;
+            case ADAPTIVE:
+            default:
+                return averageNanos <= hotThresholdNanos ? spinTries : COLD_SPIN_TRIES;
+        }
+    }
+
+    private int yieldLimit(Mode currentMode, long averageNanos) {
+        switch (currentMode) {
+            case BUSY_SPIN:
+                return 0;
+            case YIELDING:
+                return Integer.MAX_VALUE;
+            case BLOCKING:
+                return 0;
+            case ADAPTIVE:
+            default:
+                return averageNanos <= coldThresholdNanos ? yieldTries : 0;
+        }
+    }
+
+    /**
+     * 运行时切换等待模式
+     * 已挂起的等待者会被唤醒并按新模式继续等待
+     */
+    public void setMode(Mode newMode) {
+        Mode oldMode = this.mode;
+        this.mode = newMode;
+        lock.lock();
+        try {
+            processorNotifyCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Disruptor等待策略已切换: {} -> {}", oldMode.getName(), newMode.getName());
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getParkCount() {
+        return parkCount.sum();
+    }
+
+    public long getWaitCount() {
+        return waitCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveWaitStrategy{mode=" + mode.getName() + ", spinTries=" + spinTries + ", yieldTries=" + yieldTries + "}";
+    }
+}
@@ -2,8 +2,6 @@ package com.spark.match.disruptor;
 
 import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.RingBuffer;
-import com.lmax.disruptor.WaitStrategy;
-import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import lombok.extern.slf4j.Slf4j;
@@ -19,9 +17,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 
  * 优化说明：
  * 1. RingBuffer大小：适合单生产单消费场景
- * 2. WaitStrategy：使用BlockingWaitStrategy，单消费场景下CPU占用低
+ * 2. WaitStrategy：使用AdaptiveWaitStrategy（自旋→yield→挂起），模式可通过管理接口运行时切换
  * 3. 支持配置化：可通过配置文件调整参数
  * 4. 自定义线程工厂：使用非守护线程，便于监控
+ * 5. 分阶段流水线：解码阶段（可选，并行）→ 日志阶段（写WAL，每批次fsync一次）→ 撮合阶段
+ * 6. 输出Disruptor：成交和订单簿深度各一个RingBuffer，撮合线程发布，由各自的发布线程序列化并发送Kafka
  */
 @Slf4j
 @Configuration
@@ -44,45 +44,116 @@ public class DisruptorConfig {
     private int bufferSize;
 
     /**
-     * WaitStrategy类型
-     * 可选值：blocking, yielding, busy-spin
-     * 默认值：blocking（适合单消费场景，CPU占用低）
+     * WaitStrategy初始模式（运行时可通过 /api/disruptor/wait-strategy 切换）
+     * 可选值：adaptive, blocking, yielding, busy-spin
+     * 默认值：adaptive
      * 
      * 策略说明：
+     * - adaptive: 按事件到达间隔自适应，密集时自旋、稀疏时挂起
      * - blocking: 阻塞等待，CPU占用低，适合单消费场景
      * - yielding: 让出CPU，延迟略高于blocking，CPU占用中等
      * - busy-spin: 纯自旋，延迟最低但CPU占用100%，适合多消费者高吞吐场景
      */
-    @Value("${disruptor.wait-strategy:blocking}")
+    @Value("${disruptor.wait-strategy:adaptive}")
     private String waitStrategyType;
 
+    /**
+     * adaptive模式：到达密集时的自旋次数
+     */
+    @Value("${disruptor.adaptive.spin-tries:10000}")
+    private int adaptiveSpinTries;
+
+    /**
+     * adaptive模式：自旋后的yield次数
+     */
+    @Value("${disruptor.adaptive.yield-tries:100}")
+    private int adaptiveYieldTries;
+
+    /**
+     * adaptive模式：平均等待时长低于该值（微秒）时完整自旋
+     */
+    @Value("${disruptor.adaptive.hot-threshold-us:50}")
+    private long adaptiveHotThresholdMicros;
+
+    /**
+     * adaptive模式：平均等待时长高于该值（微秒）时跳过yield直接挂起
+     */
+    @Value("${disruptor.adaptive.cold-threshold-us:1000}")
+    private long adaptiveColdThresholdMicros;
+
+    /**
+     * 单次挂起的最长时间（微秒），兜底防止丢失唤醒
+     */
+    @Value("${disruptor.adaptive.max-park-us:1000}")
+    private long adaptiveMaxParkMicros;
+
+    /**
+     * 成交RingBuffer大小（必须是2的幂次方）
+     * 默认值：65536，单个订单可能产生多笔成交，容量需明显大于输入RingBuffer，
+     * 保证Kafka短暂变慢时撮合线程发布成交不会等待槽位
+     */
+    @Value("${disruptor.output-buffer-size:65536}")
+    private int outputBufferSize;
+
+    /**
+     * 订单簿更新RingBuffer大小（必须是2的幂次方）
+     * 满时丢弃新的更新（后一次更新覆盖前一次），不会反压撮合线程
+     */
+    @Value("${disruptor.orderbook-update-buffer-size:8192}")
+    private int orderBookUpdateBufferSize;
+
+    /**
+     * 订单簿更新深度（输出事件预分配的档位数）
+     */
+    @Value("${match-engine.orderbook.update-depth:5}")
+    private int orderBookUpdateDepth;
+
+    /**
+     * 输入Disruptor的等待策略
+     * 单独声明为Bean，供管理接口运行时切换模式和指标采集
+     */
     @Bean
-    public Disruptor<OrderEvent> disruptor(OrderEventHandler handler) {
+    public AdaptiveWaitStrategy orderWaitStrategy() {
+        AdaptiveWaitStrategy.Mode mode = AdaptiveWaitStrategy.Mode.fromName(waitStrategyType);
+        AdaptiveWaitStrategy waitStrategy = new AdaptiveWaitStrategy(mode, adaptiveSpinTries, adaptiveYieldTries,
+                adaptiveHotThresholdMicros, adaptiveColdThresholdMicros, adaptiveMaxParkMicros);
+        log.info("使用AdaptiveWaitStrategy: {}", waitStrategy);
+        return waitStrategy;
+    }
+
+    @Bean
+    public Disruptor<OrderEvent> disruptor(OrderDecodeStage decodeStage, OrderJournalHandler journalHandler,
+                                           OrderEventHandler handler, AdaptiveWaitStrategy orderWaitStrategy) {
         // 确保bufferSize是2的幂次方
         int actualBufferSize = roundUpToPowerOfTwo(bufferSize);
         if (actualBufferSize != bufferSize) {
             log.info("Disruptor bufferSize已调整为2的幂次方: {} -> {}", bufferSize, actualBufferSize);
         }
 
-        // 选择WaitStrategy
-        WaitStrategy waitStrategy = createWaitStrategy(waitStrategyType);
-        
         // 自定义线程工厂（非守护线程，便于监控）
-        ThreadFactory threadFactory = new MatchEngineThreadFactory();
+        ThreadFactory threadFactory = new MatchEngineThreadFactory("match-engine-disruptor-");
 
-        log.info("初始化Disruptor: bufferSize={}, waitStrategy={}, producerType=SINGLE", 
-                actualBufferSize, waitStrategyType);
+        log.info("初始化Disruptor: bufferSize={}, waitStrategy={}, producerType=MULTI, decodeThreads={}", 
+                actualBufferSize, orderWaitStrategy.getMode().getName(), decodeStage.getHandlers().length);
 
         Disruptor<OrderEvent> disruptor = new Disruptor<>(
                 new OrderEventFactory(),
                 actualBufferSize,
                 threadFactory,
-                ProducerType.SINGLE,  // 单生产者（Kafka Consumer单线程）
-                waitStrategy
+                // 多生产者：订单事件由Kafka Consumer线程发布，Snapshot屏障由调度线程发布
+                // （每次申请槽位多一次CAS；批量消费时每批只申请一次）
+                ProducerType.MULTI,
+                orderWaitStrategy
         );
 
-        // 单线程Handler（保证严格顺序）
-        disruptor.handleEventsWith(handler);
+        // 分阶段流水线：
+        // 解码阶段（可选，N个线程按序列号分片并行解码）→ 日志阶段写WAL并按批次fsync → 撮合阶段只处理已落盘的事件
+        // 日志和撮合阶段均为单线程，并且门控在前一阶段全部处理器之后，保证严格顺序
+        if (decodeStage.isEnabled()) {
+            disruptor.handleEventsWith(decodeStage.getHandlers()).then(journalHandler).then(handler);
+        } else {
+            disruptor.handleEventsWith(journalHandler).then(handler);
+        }
 
         disruptor.start();
 
@@ -98,22 +169,59 @@ public class DisruptorConfig {
     }
 
     /**
-     * 创建WaitStrategy
-     */
-    private WaitStrategy createWaitStrategy(String type) {
-        switch (type.toLowerCase()) {
-            case "yielding":
-                log.info("使用YieldingWaitStrategy（让出CPU策略）");
-                return new YieldingWaitStrategy();
-            case "busy-spin":
-            case "busyspin":
-                log.info("使用BusySpinWaitStrategy（纯自旋策略，CPU占用100%，仅适合多消费者高吞吐场景）");
-                return new com.lmax.disruptor.BusySpinWaitStrategy();
-            case "blocking":
-            default:
-                log.info("使用BlockingWaitStrategy（阻塞等待策略，适合单消费场景）");
-                return new BlockingWaitStrategy();
+     * 成交输出Disruptor
+     * 单生产者（撮合线程），由成交发布线程消费；成交不可丢失，RingBuffer满时撮合线程等待槽位，
+     * 这是唯一能反压到撮合线程的输出
+     */
+    @Bean
+    public Disruptor<MatchResultEvent> tradeDisruptor(TradeNotificationEventHandler tradeHandler) {
+        Disruptor<MatchResultEvent> disruptor = newOutputDisruptor("成交", outputBufferSize, 0, "match-engine-trade-publisher-");
+        disruptor.handleEventsWith(tradeHandler);
+        disruptor.start();
+        log.info("成交输出Disruptor启动成功: ringBufferSize={}", disruptor.getRingBuffer().getBufferSize());
+        return disruptor;
+    }
+
+    /**
+     * 订单簿更新输出Disruptor
+     * 与成交分开：订单簿更新的发布线程阻塞在Kafka上时只会占满本RingBuffer，撮合线程丢弃更新，不会等待
+     */
+    @Bean
+    public Disruptor<MatchResultEvent> orderBookUpdateDisruptor(OrderBookUpdateEventHandler orderBookUpdateHandler) {
+        Disruptor<MatchResultEvent> disruptor = newOutputDisruptor("订单簿更新", orderBookUpdateBufferSize,
+                Math.max(orderBookUpdateDepth, 1), "match-engine-orderbook-publisher-");
+        disruptor.handleEventsWith(orderBookUpdateHandler);
+        disruptor.start();
+        log.info("订单簿更新输出Disruptor启动成功: ringBufferSize={}, orderBookUpdateDepth={}",
+                disruptor.getRingBuffer().getBufferSize(), orderBookUpdateDepth);
+        return disruptor;
+    }
+
+    @Bean
+    public RingBuffer<MatchResultEvent> tradeRingBuffer(Disruptor<MatchResultEvent> tradeDisruptor) {
+        return tradeDisruptor.getRingBuffer();
+    }
+
+    @Bean
+    public RingBuffer<MatchResultEvent> orderBookUpdateRingBuffer(Disruptor<MatchResultEvent> orderBookUpdateDisruptor) {
+        return orderBookUpdateDisruptor.getRingBuffer();
+    }
+
+    /**
+     * 输出Disruptor：单生产者（撮合线程），一个发布线程消费
+     */
+    private Disruptor<MatchResultEvent> newOutputDisruptor(String name, int size, int maxDepth, String threadNamePrefix) {
+        int actualBufferSize = roundUpToPowerOfTwo(size);
+        if (actualBufferSize != size) {
+            log.info("{}输出Disruptor bufferSize已调整为2的幂次方: {} -> {}", name, size, actualBufferSize);
         }
+        return new Disruptor<>(
+                new MatchResultEventFactory(maxDepth),
+                actualBufferSize,
+                new MatchEngineThreadFactory(threadNamePrefix),
+                ProducerType.SINGLE,  // 单生产者（撮合线程）
+                new BlockingWaitStrategy() // 发布线程对延迟不敏感，空闲时不占用CPU
+        );
     }
 
     /**
@@ -136,12 +244,16 @@ public class DisruptorConfig {
      * 使用非守护线程，便于监控和管理
      */
     private static class MatchEngineThreadFactory implements ThreadFactory {
-        private static final AtomicInteger threadNumber = new AtomicInteger(1);
-        private static final String THREAD_NAME_PREFIX = "match-engine-disruptor-";
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String threadNamePrefix;
+
+        MatchEngineThreadFactory(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+        }
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadNumber.getAndIncrement());
+            Thread thread = new Thread(r, threadNamePrefix + threadNumber.getAndIncrement());
             thread.setDaemon(false); // 非守护线程
             thread.setPriority(Thread.NORM_PRIORITY);
             return thread;
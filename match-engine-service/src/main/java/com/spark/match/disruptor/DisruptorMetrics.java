@@ -0,0 +1,130 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Disruptor背压指标
+ * 通过 /actuator/metrics 暴露：
+ * - disruptor.ring.occupancy: RingBuffer已占用槽位数（ring=input/trade/orderbook）
+ * - disruptor.ring.capacity: RingBuffer容量
+ * - disruptor.consumer.lag: 发布游标与各处理阶段序列号之差（stage=decode-N/journal/match/trade/orderbook）
+ * - disruptor.producer.wait: Kafka Consumer申请输入槽位的累计等待时间和次数
+ * - disruptor.wait.parks: 输入Disruptor处理线程进入挂起阶段的次数
+ * - wal.group.commits / wal.group.events: 日志阶段分组提交（fsync）次数和提交的事件数，两者之比即平均组大小
+ * <p>
+ * 指标值均在采集时从序列号计算，处理线程热路径上没有额外开销；
+ * 生产者等待时间由OrderConsumer在申请槽位前后记录
+ */
+@Component
+public class DisruptorMetrics implements MeterBinder {
+    @Autowired
+    private Disruptor<OrderEvent> disruptor;
+
+    @Autowired
+    private Disruptor<MatchResultEvent> tradeDisruptor;
+
+    @Autowired
+    private Disruptor<MatchResultEvent> orderBookUpdateDisruptor;
+
+    @Autowired
+    private OrderDecodeStage decodeStage;
+
+    @Autowired
+    private OrderJournalHandler journalHandler;
+
+    @Autowired
+    private OrderEventHandler orderEventHandler;
+
+    @Autowired
+    private TradeNotificationEventHandler tradeHandler;
+
+    @Autowired
+    private OrderBookUpdateEventHandler orderBookUpdateHandler;
+
+    @Autowired
+    private AdaptiveWaitStrategy orderWaitStrategy;
+
+    /**
+     * 申请槽位次数
+     */
+    private final LongAdder producerClaimCount = new LongAdder();
+
+    /**
+     * 申请槽位累计等待时间（纳秒）
+     */
+    private final LongAdder producerWaitNanos = new LongAdder();
+
+    /**
+     * 记录一次槽位申请的等待时间（Kafka Consumer线程调用）
+     */
+    public void recordProducerWait(long waitNanos) {
+        producerClaimCount.increment();
+        producerWaitNanos.add(waitNanos);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindRing(registry, "input", disruptor.getRingBuffer());
+        bindRing(registry, "trade", tradeDisruptor.getRingBuffer());
+        bindRing(registry, "orderbook", orderBookUpdateDisruptor.getRingBuffer());
+
+        for (OrderDecodeHandler decodeHandler : decodeStage.getHandlers()) {
+            bindLag(registry, "decode-" + decodeHandler.getOrdinal(), disruptor.getRingBuffer(),
+                    () -> disruptor.getSequenceValueFor(decodeHandler));
+        }
+        bindLag(registry, "journal", disruptor.getRingBuffer(), () -> disruptor.getSequenceValueFor(journalHandler));
+        bindLag(registry, "match", disruptor.getRingBuffer(), () -> disruptor.getSequenceValueFor(orderEventHandler));
+        bindLag(registry, "trade", tradeDisruptor.getRingBuffer(),
+                () -> tradeDisruptor.getSequenceValueFor(tradeHandler));
+        bindLag(registry, "orderbook", orderBookUpdateDisruptor.getRingBuffer(),
+                () -> orderBookUpdateDisruptor.getSequenceValueFor(orderBookUpdateHandler));
+
+        FunctionTimer.builder("disruptor.producer.wait", this,
+                        metrics -> metrics.producerClaimCount.sum(),
+                        metrics -> metrics.producerWaitNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Kafka Consumer申请输入RingBuffer槽位的等待时间")
+                .register(registry);
+
+        FunctionCounter.builder("disruptor.wait.parks", orderWaitStrategy, AdaptiveWaitStrategy::getParkCount)
+                .description("输入Disruptor处理线程进入挂起阶段的次数")
+                .register(registry);
+
+        FunctionCounter.builder("wal.group.commits", journalHandler, OrderJournalHandler::getCommitCount)
+                .description("WAL分组提交（fsync）次数")
+                .register(registry);
+        FunctionCounter.builder("wal.group.events", journalHandler, OrderJournalHandler::getCommittedEventCount)
+                .description("WAL分组提交的事件数")
+                .register(registry);
+    }
+
+    private void bindRing(MeterRegistry registry, String ring, RingBuffer<?> ringBuffer) {
+        Gauge.builder("disruptor.ring.occupancy", ringBuffer, rb -> rb.getBufferSize() - rb.remainingCapacity())
+                .description("RingBuffer已占用槽位数")
+                .tag("ring", ring)
+                .register(registry);
+        Gauge.builder("disruptor.ring.capacity", ringBuffer, RingBuffer::getBufferSize)
+                .description("RingBuffer容量")
+                .tag("ring", ring)
+                .register(registry);
+    }
+
+    private void bindLag(MeterRegistry registry, String stage, RingBuffer<?> ringBuffer, LongSupplier sequence) {
+        Gauge.builder("disruptor.consumer.lag", ringBuffer, rb -> Math.max(0, rb.getCursor() - sequence.getAsLong()))
+                .description("发布游标与处理阶段序列号之差")
+                .tag("stage", stage)
+                .register(registry);
+    }
+}
@@ -0,0 +1,119 @@
+package com.spark.match.disruptor;
+
+import lombok.Data;
+
+/**
+ * 撮合结果事件（输出Disruptor事件对象）
+ * 可重用对象，由MatchResultEventFactory创建
+ * <p>
+ * 撮合线程只向槽位写入原始类型字段，序列化和Kafka发送由发布线程完成：
+ * - TRADE: 成交明细
+ * - ORDER_BOOK_UPDATE: 前N档深度（预分配数组，撮合线程零分配填充）
+ * 每次发布都会覆盖对应类型的全部字段，发布处理器按type过滤，因此无需清理
+ */
+@Data
+public class MatchResultEvent {
+    /**
+     * 事件类型：成交
+     */
+    public static final byte TYPE_TRADE = 1;
+
+    /**
+     * 事件类型：订单簿深度更新
+     */
+    public static final byte TYPE_ORDER_BOOK_UPDATE = 2;
+
+    /**
+     * 事件类型（0 表示无效）
+     */
+    private byte type;
+
+    /**
+     * 交易对ID
+     */
+    private int symbolId;
+
+    /**
+     * 成交ID
+     */
+    private long tradeId;
+
+    /**
+     * Maker订单ID
+     */
+    private long makerOrderId;
+
+    /**
+     * Taker订单ID
+     */
+    private long takerOrderId;
+
+    /**
+     * Maker用户ID
+     */
+    private long makerUserId;
+
+    /**
+     * Taker用户ID
+     */
+    private long takerUserId;
+
+    /**
+     * 成交价格
+     */
+    private long price;
+
+    /**
+     * 成交数量
+     */
+    private long quantity;
+
+    /**
+     * 时间戳（成交时间或深度快照时间）
+     */
+    private long timestamp;
+
+    /**
+     * 买单档位数
+     */
+    private int bidCount;
+
+    /**
+     * 卖单档位数
+     */
+    private int askCount;
+
+    /**
+     * 买单档位价格（从高到低）
+     */
+    private final long[] bidPrices;
+
+    /**
+     * 买单档位数量
+     */
+    private final long[] bidQuantities;
+
+    /**
+     * 卖单档位价格（从低到高）
+     */
+    private final long[] askPrices;
+
+    /**
+     * 卖单档位数量
+     */
+    private final long[] askQuantities;
+
+    public MatchResultEvent(int maxDepth) {
+        this.bidPrices = new long[maxDepth];
+        this.bidQuantities = new long[maxDepth];
+        this.askPrices = new long[maxDepth];
+        this.askQuantities = new long[maxDepth];
+    }
+
+    /**
+     * 最大深度（预分配数组长度）
+     */
+    public int getMaxDepth() {
+        return bidPrices.length;
+    }
+}
@@ -0,0 +1,19 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.EventFactory;
+
+/**
+ * 撮合结果事件工厂
+ */
+public class MatchResultEventFactory implements EventFactory<MatchResultEvent> {
+    private final int maxDepth;
+
+    public MatchResultEventFactory(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public MatchResultEvent newInstance() {
+        return new MatchResultEvent(maxDepth);
+    }
+}
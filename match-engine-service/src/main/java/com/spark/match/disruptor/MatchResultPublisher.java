@@ -0,0 +1,116 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.spark.match.matcher.Trade;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 撮合结果发布器
+ * 撮合线程通过本类把成交和订单簿深度分别写入各自的输出RingBuffer，由各自的发布线程完成序列化和Kafka发送，
+ * 撮合线程不再直接调用KafkaTemplate
+ * <p>
+ * 背压策略：
+ * - 成交：不可丢失，成交RingBuffer满时等待槽位（RingBuffer容量远大于单批成交数，正常情况下不会发生）
+ * - 订单簿深度：后一次更新覆盖前一次，订单簿更新RingBuffer满时丢弃并计数，撮合线程不等待；
+ *   两个RingBuffer互不门控，订单簿更新topic变慢不会反压到撮合线程
+ */
+@Slf4j
+@Component
+public class MatchResultPublisher {
+    @Autowired
+    private RingBuffer<MatchResultEvent> tradeRingBuffer;
+    @Autowired
+    private RingBuffer<MatchResultEvent> orderBookUpdateRingBuffer;
+
+    /**
+     * 因订单簿更新RingBuffer已满而丢弃的订单簿更新数量
+     */
+    private final AtomicLong droppedOrderBookUpdates = new AtomicLong(0);
+
+    /**
+     * 发布成交
+     */
+    public void publishTrade(Trade trade) {
+        long sequence = tradeRingBuffer.next();
+        try {
+            MatchResultEvent event = tradeRingBuffer.get(sequence);
+            event.setType(MatchResultEvent.TYPE_TRADE);
+            event.setSymbolId(trade.getSymbolId());
+            event.setTradeId(trade.getTradeId());
+            event.setMakerOrderId(trade.getMakerOrderId());
+            event.setTakerOrderId(trade.getTakerOrderId());
+            event.setMakerUserId(trade.getMakerUserId());
+            event.setTakerUserId(trade.getTakerUserId());
+            event.setPrice(trade.getPrice());
+            event.setQuantity(trade.getQuantity());
+            event.setTimestamp(trade.getTradeTime());
+        } finally {
+            tradeRingBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * 发布订单簿深度更新（在撮合线程上读取订单簿，保证与撮合结果一致）
+     *
+     * @param orderBook 订单簿
+     * @param depth     深度（档位数，超过预分配长度时截断）
+     */
+    public void publishOrderBookUpdate(OrderBook orderBook, int depth) {
+        long sequence;
+        try {
+            sequence = orderBookUpdateRingBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            long dropped = droppedOrderBookUpdates.incrementAndGet();
+            log.warn("订单簿更新RingBuffer已满，丢弃订单簿更新: symbolId={}, droppedTotal={}", orderBook.getSymbolId(), dropped);
+            return;
+        }
+        try {
+            MatchResultEvent event = orderBookUpdateRingBuffer.get(sequence);
+            int levels = Math.min(depth, event.getMaxDepth());
+            event.setType(MatchResultEvent.TYPE_ORDER_BOOK_UPDATE);
+            event.setSymbolId(orderBook.getSymbolId());
+            event.setBidCount(fillLevels(orderBook.getBuyBook(), levels, event.getBidPrices(), event.getBidQuantities()));
+            event.setAskCount(fillLevels(orderBook.getSellBook(), levels, event.getAskPrices(), event.getAskQuantities()));
+            event.setTimestamp(System.currentTimeMillis());
+        } finally {
+            orderBookUpdateRingBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * 按订单簿顺序填充前N档到预分配数组
+     *
+     * @return 实际填充档位数
+     */
+    private int fillLevels(TreeMap<Long, PriceLevel> book, int levels, long[] prices, long[] quantities) {
+        int count = 0;
+        for (Map.Entry<Long, PriceLevel> entry : book.entrySet()) {
+            if (count >= levels) {
+                break;
+            }
+            PriceLevel priceLevel = entry.getValue();
+            if (!priceLevel.isEmpty()) {
+                prices[count] = entry.getKey();
+                quantities[count] = priceLevel.getTotalQuantity();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取丢弃的订单簿更新数量
+     */
+    public long getDroppedOrderBookUpdates() {
+        return droppedOrderBookUpdates.get();
+    }
+}
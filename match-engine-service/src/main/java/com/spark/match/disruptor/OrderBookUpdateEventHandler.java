@@ -0,0 +1,41 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.producer.OrderBookUpdateProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单簿更新发布处理器（订单簿更新输出Disruptor，独立发布线程）
+ * 序列化ORDER_BOOK_UPDATE事件并发送到Kafka
+ */
+@Slf4j
+@Component
+public class OrderBookUpdateEventHandler implements EventHandler<MatchResultEvent> {
+    @Autowired
+    private OrderBookUpdateProducer orderBookUpdateProducer;
+    @Autowired
+    private ThreadAffinityManager threadAffinityManager;
+
+    /**
+     * 处理线程启动时按配置绑定CPU
+     */
+    @Override
+    public void onStart() {
+        threadAffinityManager.pinCurrentThread(ThreadAffinityManager.ROLE_ORDER_BOOK_PUBLISHER);
+    }
+
+    @Override
+    public void onEvent(MatchResultEvent event, long sequence, boolean endOfBatch) {
+        if (event.getType() != MatchResultEvent.TYPE_ORDER_BOOK_UPDATE) {
+            return;
+        }
+        try {
+            orderBookUpdateProducer.sendOrderBookUpdate(event);
+        } catch (Exception e) {
+            log.error("发送订单簿更新失败: symbolId={}, sequence={}", event.getSymbolId(), sequence, e);
+        }
+    }
+}
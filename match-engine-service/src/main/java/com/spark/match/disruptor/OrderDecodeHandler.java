@@ -0,0 +1,53 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.latency.LatencyRecorder;
+import com.spark.match.latency.LatencyStage;
+
+/**
+ * 解码阶段事件处理器（并行）
+ * N个解码处理器并行消费同一RingBuffer，第i个只解码 sequence % N == i 的槽位，
+ * 日志阶段门控在全部解码处理器之后，因此WAL写入和撮合仍按RingBuffer序列号严格有序
+ * <p>
+ * 每个处理器持有自己的解码器实例（解码器非线程安全）
+ */
+public class OrderDecodeHandler implements EventHandler<OrderEvent> {
+    private final OrderMessageDecoder decoder = new OrderMessageDecoder();
+    private final int ordinal;
+    private final int handlerCount;
+    private final LatencyRecorder latencyRecorder;
+    private final ThreadAffinityManager threadAffinityManager;
+
+    public OrderDecodeHandler(int ordinal, int handlerCount, LatencyRecorder latencyRecorder,
+                              ThreadAffinityManager threadAffinityManager) {
+        this.ordinal = ordinal;
+        this.handlerCount = handlerCount;
+        this.latencyRecorder = latencyRecorder;
+        this.threadAffinityManager = threadAffinityManager;
+    }
+
+    /**
+     * 处理线程启动时按配置绑定CPU
+     */
+    @Override
+    public void onStart() {
+        threadAffinityManager.pinCurrentThread(ThreadAffinityManager.decodeRole(ordinal));
+    }
+
+    @Override
+    public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
+        if (sequence % handlerCount != ordinal || event.getMessageType() == OrderEvent.MESSAGE_TYPE_SNAPSHOT) {
+            // 控制事件没有原始消息，不解码
+            return;
+        }
+        long startNanos = latencyRecorder.recordSince(LatencyStage.QUEUE, event.getPublishNanos());
+        // 解码失败时messageType为MESSAGE_TYPE_INVALID，日志阶段跳过写WAL并确认offset
+        decoder.decode(event);
+        latencyRecorder.recordSince(LatencyStage.PARSE, startNanos);
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+}
@@ -0,0 +1,65 @@
+package com.spark.match.disruptor;
+
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.consumer.OrderEventTranslator;
+import com.spark.match.latency.LatencyRecorder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 解码阶段
+ * disruptor.decode-threads > 0 时，Kafka Consumer线程只复制原始字节并发布槽位，
+ * 由N个解码处理器在Disruptor内并行解码；为0时在Consumer线程上内联解码
+ */
+@Slf4j
+@Component
+public class OrderDecodeStage {
+    /**
+     * 解码线程数（0表示在Consumer线程上内联解码）
+     */
+    @Value("${disruptor.decode-threads:2}")
+    private int decodeThreads;
+
+    @Autowired
+    private LatencyRecorder latencyRecorder;
+
+    @Autowired
+    private ThreadAffinityManager threadAffinityManager;
+
+    private OrderDecodeHandler[] handlers;
+
+    @PostConstruct
+    public void init() {
+        int count = Math.max(decodeThreads, 0);
+        handlers = new OrderDecodeHandler[count];
+        for (int i = 0; i < count; i++) {
+            handlers[i] = new OrderDecodeHandler(i, count, latencyRecorder, threadAffinityManager);
+        }
+        log.info("解码阶段初始化: decodeThreads={}, mode={}", count, count > 0 ? "并行解码" : "Consumer线程内联解码");
+    }
+
+    /**
+     * 是否启用并行解码阶段
+     */
+    public boolean isEnabled() {
+        return handlers.length > 0;
+    }
+
+    /**
+     * 解码处理器（并行解码关闭时为空数组）
+     */
+    public OrderDecodeHandler[] getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * 为Kafka Consumer创建槽位转换器（每个Consumer线程一个）
+     * 并行解码时转换器只复制原始字节，否则同时完成解码
+     */
+    public OrderEventTranslator newTranslator() {
+        return new OrderEventTranslator(!isEnabled());
+    }
+}
@@ -4,6 +4,7 @@ import com.spark.common.enums.OrderSide;
 import com.spark.common.enums.OrderType;
 import com.spark.common.enums.TIFType;
 import lombok.Data;
+import org.springframework.kafka.support.Acknowledgment;
 
 /**
  * 订单事件（Disruptor事件对象）
@@ -18,21 +19,48 @@ import lombok.Data;
  *   - userId: Long → long
  *   - symbolId: Integer → int（0 表示无效）
  *   - timestamp: Long → long
- * - 保留可能为 null 的字段为包装类型：
- *   - price: Long（市价单可能没有价格）
- *   - quantity: Long（取消订单时可能没有数量）
+ * - 可能缺失的数值字段使用原始类型 + 哨兵值 NULL_LONG，避免装箱：
+ *   - price: long（市价单可能没有价格）
+ *   - quantity: long（取消订单时可能没有数量）
+ * - payload 保存Kafka原始消息字节（槽位内复用缓冲区），由OrderMessageDecoder直接解码到本槽位，
+ *   日志阶段（OrderJournalHandler）按解码后的字段写二进制WAL记录
+ * - ack 仅供日志阶段提交Kafka offset使用
+ * - sourceTopic/sourcePartition/sourceOffset 记录消息的来源Kafka位置，随记录写入WAL，重启时据此seek并跳过重复投递
+ * - messageType为MESSAGE_TYPE_SNAPSHOT时是控制事件（Snapshot屏障），只使用symbolId和publishNanos
  */
 @Data
 public class OrderEvent {
+    /**
+     * 数值字段缺失（null）的哨兵值
+     */
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    /**
+     * 消息类型缺失或解码失败的哨兵值
+     */
+    public static final byte MESSAGE_TYPE_INVALID = -1;
+
+    /**
+     * 控制事件：Snapshot屏障（不来自Kafka，不写WAL）
+     * 由SnapshotScheduler发布，symbolId为要创建Snapshot的交易对；撮合线程处理到该事件时，
+     * 之前发布的订单事件都已应用到订单簿，在此采集的订单簿视图与lastAppliedWalSeq严格对应
+     */
+    public static final byte MESSAGE_TYPE_SNAPSHOT = -2;
+
+    /**
+     * 原始消息缓冲区初始容量（常规订单消息约300字节）
+     */
+    private static final int INITIAL_PAYLOAD_CAPACITY = 512;
+
     /**
      * WAL序列号（0 表示无效）
      */
     private long walSeq;
 
     /**
-     * 消息类型（使用 byte 类型以节省内存和提高性能）
+     * 消息类型（使用 byte 类型以节省内存和提高性能，MESSAGE_TYPE_INVALID 表示缺失或解码失败）
      */
-    private byte messageType;
+    private byte messageType = MESSAGE_TYPE_INVALID;
 
     /**
      * 订单ID（0 表示无效）
@@ -60,14 +88,14 @@ public class OrderEvent {
     private OrderSide orderSide;
 
     /**
-     * 价格
+     * 价格（NULL_LONG 表示缺失）
      */
-    private Long price;
+    private long price = NULL_LONG;
 
     /**
-     * 数量
+     * 数量（NULL_LONG 表示缺失）
      */
-    private Long quantity;
+    private long quantity = NULL_LONG;
 
     /**
      * TIF类型
@@ -79,20 +107,74 @@ public class OrderEvent {
      */
     private long timestamp;
 
+    /**
+     * 原始消息字节（槽位内复用，容量不足时扩容）
+     */
+    private byte[] payload = new byte[INITIAL_PAYLOAD_CAPACITY];
+
+    /**
+     * 原始消息有效长度
+     */
+    private int payloadLength;
+
+    /**
+     * 来源Kafka topic（null 表示不是来自Kafka）
+     */
+    private String sourceTopic;
+
+    /**
+     * 来源Kafka分区（-1 表示不是来自Kafka）
+     */
+    private int sourcePartition = -1;
+
+    /**
+     * 来源Kafka offset（-1 表示不是来自Kafka）
+     */
+    private long sourceOffset = -1;
+
+    /**
+     * Kafka确认句柄（日志阶段fsync成功后提交offset，可能为null）
+     */
+    private Acknowledgment ack;
+
+    /**
+     * 槽位发布时间（System.nanoTime()，用于统计排队和端到端延迟）
+     */
+    private long publishNanos;
+
     /**
      * 清理事件（重用前调用）
      */
     public void clear() {
         this.walSeq = 0; // long 类型使用 0 作为默认值
-        this.messageType = 0; // byte 类型使用 0 作为默认值
+        this.messageType = MESSAGE_TYPE_INVALID; // 0 是ORDER_CREATE的编码，不能作为默认值
         this.orderId = 0; // long 类型使用 0 作为默认值
         this.userId = 0; // long 类型使用 0 作为默认值
         this.symbolId = 0; // int 类型使用 0 作为默认值
         this.orderType = null;
         this.orderSide = null;
-        this.price = null;
-        this.quantity = null;
+        this.price = NULL_LONG;
+        this.quantity = NULL_LONG;
         this.tifType = null;
         this.timestamp = 0; // long 类型使用 0 作为默认值
+        this.payloadLength = 0; // 保留缓冲区以便复用
+        this.sourceTopic = null;
+        this.sourcePartition = -1;
+        this.sourceOffset = -1;
+        this.ack = null;
+        this.publishNanos = 0;
+    }
+
+    /**
+     * 将原始消息字节复制到槽位缓冲区
+     *
+     * @param source 原始消息字节
+     */
+    public void copyPayload(byte[] source) {
+        if (payload.length < source.length) {
+            payload = new byte[Integer.highestOneBit(source.length) << 1];
+        }
+        System.arraycopy(source, 0, payload, 0, source.length);
+        payloadLength = source.length;
     }
 }
@@ -2,28 +2,43 @@ package com.spark.match.disruptor;
 
 import com.lmax.disruptor.EventHandler;
 import com.spark.common.enums.MessageType;
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.latency.LatencyRecorder;
+import com.spark.match.latency.LatencyStage;
 import com.spark.match.matcher.Matcher;
 import com.spark.match.matcher.MatcherFactory;
 import com.spark.match.matcher.Trade;
 import com.spark.match.orderbook.Order;
 import com.spark.match.orderbook.OrderBook;
 import com.spark.match.orderbook.OrderBookManager;
-import com.spark.match.producer.OrderBookUpdateProducer;
-import com.spark.match.producer.TradeNotificationProducer;
+import com.spark.match.snapshot.LevelImageCache;
+import com.spark.match.snapshot.OrderBookImage;
+import com.spark.match.snapshot.SnapshotPolicy;
+import com.spark.match.snapshot.SnapshotWriter;
+import com.spark.match.wal.WALPartitioning;
+import com.spark.match.wal.WALWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 单线程事件处理器
+ * 单线程事件处理器（撮合阶段，门控在日志阶段OrderJournalHandler之后）
  * 处理流程：
  * 1. 订单消息格式校验
  * 2. 获取订单簿
  * 3. 执行撮合
- * 4. 发送通知
+ * 4. 将成交和订单簿深度发布到输出RingBuffer（由发布线程发送Kafka，撮合线程不阻塞在Kafka上）
+ * <p>
+ * Snapshot在撮合线程上采集订单簿视图（全量或增量），交给SnapshotWriter在后台序列化：
+ * 订单簿只被撮合线程修改，视图与lastAppliedWalSeq严格对应，不需要加锁或暂停消费。
+ * 只在处理到Snapshot屏障（MESSAGE_TYPE_SNAPSHOT控制事件）时采集：交易对自上次Snapshot以来的WAL记录数达到阈值时
+ * 只通知SnapshotPolicy，由SnapshotScheduler发布屏障；超过最长间隔的交易对也由调度器发布屏障兜底
  */
 @Slf4j
 @Component
@@ -33,17 +48,65 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
     @Autowired
     private MatcherFactory matcherFactory;
     @Autowired
-    private TradeNotificationProducer tradeNotificationProducer;
+    private MatchResultPublisher matchResultPublisher;
     @Autowired
-    private OrderBookUpdateProducer orderBookUpdateProducer;
+    private LatencyRecorder latencyRecorder;
+    @Autowired
+    private ThreadAffinityManager threadAffinityManager;
+    @Autowired
+    private SnapshotWriter snapshotWriter;
+    @Autowired
+    private SnapshotPolicy snapshotPolicy;
+    @Autowired
+    private WALPartitioning walPartitioning;
+    @Autowired
+    private WALWriter walWriter;
 
     @Value("${match-engine.orderbook.update-depth:5}")
     private int orderBookUpdateDepth;
 
+    /**
+     * WAL分区 → 撮合线程已处理的最大walSeq（0表示本次启动后还没有处理过，按分区号直接索引）
+     * 同一分区的walSeq按RingBuffer顺序分配，撮合线程按同一顺序处理，因此单调递增
+     */
+    private long[] partitionAppliedWalSeqs = new long[0];
+
+    /**
+     * 交易对ID → 上次采集的档位副本（只由撮合线程访问）
+     * 全量检查点复用其中没有变更的档位，撮合线程只复制变更过的档位
+     */
+    private final Map<Integer, LevelImageCache> levelImageCaches = new HashMap<>();
+
+    /**
+     * 处理线程启动时按配置绑定CPU
+     */
+    @Override
+    public void onStart() {
+        threadAffinityManager.pinCurrentThread(ThreadAffinityManager.ROLE_MATCH);
+    }
+
     @Override
     public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
-        long startTime = System.currentTimeMillis();
         try {
+            if (event.getMessageType() == OrderEvent.MESSAGE_TYPE_SNAPSHOT) {
+                snapshotPolicy.clearBarrierPending(event.getSymbolId());
+                OrderBook orderBook = orderBookManager.getOrderBook(event.getSymbolId());
+                if (orderBook == null) {
+                    log.info("Snapshot屏障对应的订单簿不存在，跳过: symbolId={}", event.getSymbolId());
+                    return;
+                }
+                captureSnapshot(orderBook);
+                return;
+            }
+
+            // 0. 未写入WAL的事件不允许撮合（WAL是唯一事实源）
+            if (event.getWalSeq() <= 0) {
+                log.error("事件未写入WAL，跳过撮合: orderId={}, symbolId={}, sequence={}",
+                        event.getOrderId(), event.getSymbolId(), sequence);
+                return;
+            }
+            recordPartitionWalSeq(event.getSymbolId(), event.getWalSeq());
+
             // 1. 订单消息格式校验（撮合引擎职责）
             validateOrderMessage(event);
 
@@ -56,31 +119,30 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
 
             // 3. 执行撮合
             boolean orderBookChanged = false;
+            long publishStartTime = 0;
             byte messageType = event.getMessageType();
             if (messageType == MessageType.ORDER_CANCEL.getCode()) {
                 // 取消订单
-                long cancelStartTime = System.currentTimeMillis();
+                long cancelStartTime = System.nanoTime();
                 Order order = orderBook.getOrder(event.getOrderId());
                 if (order != null) {
                     orderBook.removeOrder(event.getOrderId());
                     orderBookChanged = true;
-                    long cancelDuration = System.currentTimeMillis() - cancelStartTime;
-                    log.info("[撮合链路耗时] 订单取消耗时: {}ms, orderId={}, symbolId={}", 
-                            cancelDuration, event.getOrderId(), event.getSymbolId());
                 }
+                publishStartTime = latencyRecorder.recordSince(LatencyStage.MATCH, cancelStartTime);
+                log.debug("订单取消完成: orderId={}, symbolId={}, removed={}",
+                        event.getOrderId(), event.getSymbolId(), orderBookChanged);
             } else if (messageType == MessageType.ORDER_CREATE.getCode()) {
                 // 创建订单并撮合
                 Order order = convertToOrder(event);
                 Matcher matcher = matcherFactory.getMatcher(order.getOrderType());
-                long matchStartTime = System.currentTimeMillis();
+                long matchStartTime = System.nanoTime();
                 List<Trade> trades = matcher.match(orderBook, order);
-                long matchDuration = System.currentTimeMillis() - matchStartTime;
-                log.info("[撮合链路耗时] 撮合引擎耗时: {}ms, orderId={}, symbolId={}, tradeCount={}", 
-                        matchDuration, event.getOrderId(), event.getSymbolId(), trades.size());
+                publishStartTime = latencyRecorder.recordSince(LatencyStage.MATCH, matchStartTime);
 
-                // 4. 发送成交通知
+                // 4. 发布成交通知到输出RingBuffer
                 for (Trade trade : trades) {
-                    tradeNotificationProducer.sendTradeNotification(trade);
+                    matchResultPublisher.publishTrade(trade);
                 }
 
                 // 判断订单簿是否改变
@@ -104,26 +166,27 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
                 log.info("订单撮合完成: orderId={}, symbolId={}, trades={}, orderBookChanged={}", event.getOrderId(), event.getSymbolId(), trades.size(), orderBookChanged);
             }
 
-            // 5. 发送订单簿更新消息（如果订单簿发生变更）
+            // 5. 发布订单簿深度更新到输出RingBuffer（如果订单簿发生变更）
             if (orderBookChanged) {
-                long updateStartTime = System.currentTimeMillis();
-                orderBookUpdateProducer.sendOrderBookUpdate(orderBook, orderBookUpdateDepth);
-                log.debug("[撮合链路耗时] 订单簿更新消息发送耗时: {}ms, orderId={}", 
-                        System.currentTimeMillis() - updateStartTime, event.getOrderId());
+                matchResultPublisher.publishOrderBookUpdate(orderBook, orderBookUpdateDepth);
+                // 发布耗时包含成交和订单簿更新（有成交时订单簿必然变更）
+                latencyRecorder.recordSince(LatencyStage.PUBLISH, publishStartTime);
             }
 
             // 6. 【关键】更新订单簿的最后应用的WAL序列号
             // 用于Snapshot创建时确定每个订单簿应用到了哪个WAL序列号
-            if (event.getWalSeq() > 0) {
-                orderBook.setLastAppliedWalSeq(event.getWalSeq());
+            orderBook.setLastAppliedWalSeq(event.getWalSeq());
+
+            latencyRecorder.recordSince(LatencyStage.TOTAL, event.getPublishNanos());
+
+            // 7. 自上次Snapshot以来的WAL记录数达到阈值（重放时间将超出目标）时通知调度器发布屏障，
+            // 采集在屏障处进行，不占用本事件的撮合延迟
+            if (orderBook.incrementWalRecordsSinceSnapshot() >= snapshotPolicy.getRecordThreshold()
+                    && orderBook.markSnapshotRequested()) {
+                snapshotPolicy.markDue(orderBook.getSymbolId());
             }
-            
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("[撮合链路耗时] Disruptor事件处理总耗时: {}ms, orderId={}, symbolId={}, walSeq={}", 
-                    totalDuration, event.getOrderId(), event.getSymbolId(), event.getWalSeq());
         } catch (Exception e) {
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.error("[撮合链路耗时] 处理订单事件失败: 总耗时={}ms, event={}", totalDuration, event, e);
+            log.error("处理订单事件失败: event={}", event, e);
             // 不抛出异常，避免影响Disruptor处理
         } finally {
             // 清理事件对象（重用）
@@ -131,6 +194,76 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
         }
     }
 
+    /**
+     * 采集订单簿视图（撮合线程，在Snapshot屏障处），提交给SnapshotWriter的写入线程序列化和落盘
+     * 全量检查点到期时采集全量视图（复用上次采集后没有变更的档位副本），否则只采集变更过的档位；
+     * 增量链完整、上次采集后没有任何变化且所属分区也没有新记录的订单簿跳过
+     */
+    private void captureSnapshot(OrderBook orderBook) {
+        int symbolId = orderBook.getSymbolId();
+        snapshotPolicy.markChecked(symbolId, System.currentTimeMillis());
+        long durableWalSeq = walWriter.getDurableWalSeq(symbolId);
+        if (!advanceToDurableWatermark(orderBook, partitionAppliedWalSeq(symbolId), durableWalSeq)) {
+            log.warn("订单簿包含尚未落盘的WAL记录，跳过本次Snapshot: symbolId={}, lastAppliedWalSeq={}, durableWalSeq={}",
+                    symbolId, orderBook.getLastAppliedWalSeq(), durableWalSeq);
+            return;
+        }
+        if (snapshotWriter.hasChain(symbolId) && !orderBook.hasChangesSinceSnapshot()) {
+            log.debug("订单簿自上次Snapshot以来没有变化，跳过: symbolId={}, lastAppliedWalSeq={}",
+                    symbolId, orderBook.getLastAppliedWalSeq());
+            return;
+        }
+        boolean full = snapshotWriter.isFullCheckpointDue(symbolId) || orderBook.getSnapshotWalSeq() < 0;
+        long walRecords = orderBook.getWalRecordsSinceSnapshot();
+        LevelImageCache cache = levelImageCaches.computeIfAbsent(symbolId, k -> new LevelImageCache());
+        OrderBookImage image = full ? OrderBookImage.capture(orderBook, cache) : OrderBookImage.captureDelta(orderBook, cache);
+        log.debug("[Snapshot耗时] 撮合线程采集订单簿视图: symbolId={}, delta={}, lastAppliedWalSeq={}, walRecords={}, orderCount={}, copiedOrderCount={}, 耗时={}us",
+                symbolId, image.isDelta(), image.getLastAppliedWalSeq(), walRecords, image.getOrderCount(),
+                image.getCopiedOrderCount(), image.getCaptureNanos() / 1000);
+        snapshotWriter.submitSnapshot(image);
+    }
+
+    /**
+     * 推进订单簿的快照水位，水位不超过所属分区已落盘的walSeq
+     * 订单簿状态一直对应到分区已处理的最新walSeq：空闲交易对写一个不含档位的增量推进快照水位，
+     * 否则其水位停在最后一笔订单（或0），整个分区的WAL保留都无法推进；
+     * 但水位不能超过已落盘的walSeq：断电后WAL从最后落盘的记录继续分配walSeq，
+     * 水位之下的新记录在恢复时会被跳过，WALArchiver也会按该水位归档含新记录的段
+     *
+     * @return 订单簿是否可以采集（订单簿本身应用了尚未落盘的记录时返回false，日志阶段在屏障处已等待落盘，
+     * 只有WAL失败后才会出现）
+     */
+    static boolean advanceToDurableWatermark(OrderBook orderBook, long partitionAppliedWalSeq, long durableWalSeq) {
+        if (orderBook.getLastAppliedWalSeq() > durableWalSeq) {
+            return false;
+        }
+        orderBook.advanceLastAppliedWalSeq(Math.min(partitionAppliedWalSeq, durableWalSeq));
+        return true;
+    }
+
+    /**
+     * 记录交易对所属WAL分区已处理的walSeq
+     */
+    private void recordPartitionWalSeq(int symbolId, long walSeq) {
+        int partition = walPartitioning.partitionOf(symbolId);
+        if (partition < 0) {
+            return;
+        }
+        if (partition >= partitionAppliedWalSeqs.length) {
+            partitionAppliedWalSeqs = Arrays.copyOf(partitionAppliedWalSeqs,
+                    Math.max(partition + 1, partitionAppliedWalSeqs.length * 2));
+        }
+        partitionAppliedWalSeqs[partition] = Math.max(partitionAppliedWalSeqs[partition], walSeq);
+    }
+
+    /**
+     * 交易对所属WAL分区已处理的最大walSeq（本次启动后还没有处理过时为0）
+     */
+    private long partitionAppliedWalSeq(int symbolId) {
+        int partition = walPartitioning.partitionOf(symbolId);
+        return partition >= 0 && partition < partitionAppliedWalSeqs.length ? partitionAppliedWalSeqs[partition] : 0;
+    }
+
     /**
      * 验证订单消息格式
      */
@@ -147,7 +280,7 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
             throw new IllegalArgumentException("交易对ID不能为空或无效");
         }
         if (event.getMessageType() == MessageType.ORDER_CREATE.getCode()) {
-            if (event.getQuantity() == null || event.getQuantity() <= 0) {
+            if (event.getQuantity() == OrderEvent.NULL_LONG || event.getQuantity() <= 0) {
                 throw new IllegalArgumentException("订单数量必须大于0");
             }
         }
@@ -163,7 +296,7 @@ public class OrderEventHandler implements EventHandler<OrderEvent> {
                 .symbolId(event.getSymbolId())
                 .orderType(event.getOrderType())
                 .orderSide(event.getOrderSide())
-                .price(event.getPrice())
+                .price(event.getPrice() != OrderEvent.NULL_LONG ? event.getPrice() : null)
                 .quantity(event.getQuantity())
                 .filledQuantity(0L)
                 .tifType(event.getTifType())
@@ -0,0 +1,438 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.Sequence;
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.latency.LatencyRecorder;
+import com.spark.match.latency.LatencyStage;
+import com.spark.match.wal.WALDurability;
+import com.spark.match.wal.WALDurabilityPolicies;
+import com.spark.match.wal.WALSourceOffsets;
+import com.spark.match.wal.WALWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 日志阶段事件处理器（LMAX Journaler）
+ * 处理流程：
+ * 1. 把已解码的槽位字段编码为二进制记录写入WAL（不fsync），解码失败的事件不写WAL，只确认offset
+ *    （启用并行解码时门控在全部OrderDecodeHandler之后，槽位已解码）
+ * 2. 分组提交：Disruptor批次结束、本组达到max-batch-size或本组首条记录等待超过max-delay-us时
+ *    把本组交给WAL刷盘线程（{@link WALWriter#flushAsync()}）
+ * 3. fsync成功后提交本组的Kafka offset
+ * <p>
+ * 持久化策略（{@link WALDurability}，按交易对配置，一组按其中最严格的策略）：
+ * - fsync / fdatasync：该交易对的记录写入后立即提交本组（fsync同时同步文件元数据）
+ * - group：按上述批次、组大小和等待时间分组提交
+ * - async：本组只含async交易对的记录时，交给刷盘线程后立即确认并放行，不等待落盘
+ * 各策略的提交延迟分别记录（{@link LatencyStage#COMMIT_FSYNC}等）
+ * <p>
+ * 流水线：批次中途提交后不等待本组落盘，继续编码下一组，CPU编码与上一组的write/fsync重叠；
+ * 同一时间最多一组在刷盘中，下一组提交前等待上一组完成；批次结束时必须等待全部落盘
+ * （BatchEventProcessor在onEvent返回后即放行整个批次）
+ * <p>
+ * 撮合处理器通过handleEventsWith(journalHandler).then(orderEventHandler)门控在本处理器之后，
+ * 因此撮合线程只会看到已落盘的事件（async组除外）；批次中途的组落盘后通过sequenceCallback提前放行
+ * <p>
+ * Snapshot屏障：之前的所有记录（包括已放行的async组）落盘后才放行屏障，撮合线程在屏障处采集的视图
+ * 只包含已落盘的记录；否则断电后WAL从最后落盘的记录继续分配walSeq，新记录的walSeq不大于快照水位，恢复时被跳过
+ * <p>
+ * 批量消费者一次发布整个poll的槽位区间，该区间作为一个Disruptor批次到达，批次结束即poll边界的提交点
+ * <p>
+ * 重复投递：来源offset（按topic和分区）确实在WAL中的消息不再写入，只随本组确认offset（walSeq=0，撮合阶段跳过）；
+ * 已写入的offset包括启动时从WAL恢复的（见{@link WALWriter#getSourceOffsets()}）和本次运行写入的。
+ * 不按最大offset判断：各WAL分区独立刷盘，崩溃后较大的offset已写入而较小的未写入，后者重新投递时必须写入
+ * <p>
+ * 失败策略：WAL写入或fsync失败后进入失败状态，后续事件不再写WAL也不提交offset（walSeq=0，撮合阶段跳过），
+ * 重启后Kafka从最后提交的offset重新投递
+ */
+@Slf4j
+@Component
+public class OrderJournalHandler implements EventHandler<OrderEvent> {
+    @Autowired
+    private WALWriter walWriter;
+
+    @Autowired
+    private LatencyRecorder latencyRecorder;
+
+    @Autowired
+    private ThreadAffinityManager threadAffinityManager;
+
+    @Autowired
+    private OrderDecodeStage decodeStage;
+
+    @Autowired
+    private WALDurabilityPolicies durabilityPolicies;
+
+    /**
+     * 分组提交：单组最大记录数，达到后立即fsync
+     */
+    @Value("${wal.group-commit.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    /**
+     * 分组提交：本组首条记录写入后的最长等待时间（微秒），超过后立即fsync（0表示只按批次和大小提交）
+     */
+    @Value("${wal.group-commit.max-delay-us:2000}")
+    private long maxDelayMicros;
+
+    /**
+     * 本组已写入WAL但尚未fsync的事件
+     */
+    private List<OrderEvent> pendingEvents = new ArrayList<>();
+
+    /**
+     * 本组待提交的Kafka确认句柄
+     */
+    private List<Acknowledgment> pendingAcks = new ArrayList<>();
+
+    /**
+     * 本组最严格的持久化策略（本组没有WAL记录时为null）
+     */
+    private WALDurability pendingDurability;
+
+    /**
+     * 刷盘中的一组（与本组交替使用两组列表）
+     */
+    private List<OrderEvent> inflightEvents = new ArrayList<>();
+    private List<Acknowledgment> inflightAcks = new ArrayList<>();
+
+    /**
+     * 刷盘中的一组的完成通知（没有刷盘中的组时为null）
+     */
+    private CompletableFuture<Void> inflightCommit;
+
+    /**
+     * 刷盘中的一组最后一个事件的序列号（落盘后放行到该序列号）
+     */
+    private long inflightSequence;
+
+    /**
+     * 刷盘中的一组提交时间（System.nanoTime()）
+     */
+    private long inflightSubmitNanos;
+
+    /**
+     * 刷盘中的一组首条记录写入时间（System.nanoTime()）
+     */
+    private long inflightGroupStartNanos;
+
+    /**
+     * 刷盘中的一组的持久化策略
+     */
+    private WALDurability inflightDurability;
+
+    /**
+     * 刷盘中的一组是否已确认（async：提交时即确认，落盘后不再重复确认）
+     */
+    private boolean inflightReleased;
+
+    /**
+     * WAL是否已失败（失败后停止写入和提交offset）
+     */
+    private volatile boolean journalFailed = false;
+
+    /**
+     * 本处理器的序列号（由BatchEventProcessor注入，批次中途提交后提前放行撮合阶段）
+     */
+    private Sequence sequenceCallback;
+
+    /**
+     * 本组首条记录写入时间（System.nanoTime()）
+     */
+    private long groupStartNanos;
+
+    /**
+     * 本次运行写入WAL的来源offset的最多区间数（每个来源分区，超过时丢弃最早的区间，这些offset早已提交）
+     */
+    private static final int MAX_JOURNALED_RANGES = 1024;
+
+    /**
+     * 本次运行已写入WAL的来源offset（只由日志线程访问）
+     */
+    private final WALSourceOffsets journaledSourceOffsets = new WALSourceOffsets(MAX_JOURNALED_RANGES);
+
+    /**
+     * 启动时从WAL恢复的来源offset（只读）
+     */
+    private WALSourceOffsets recoveredSourceOffsets = new WALSourceOffsets();
+
+    /**
+     * 跳过的重复投递消息数
+     */
+    private volatile long duplicateCount;
+
+    /**
+     * 已完成的分组提交次数
+     */
+    private volatile long commitCount;
+
+    /**
+     * 已分组提交的事件数
+     */
+    private volatile long committedEventCount;
+
+    /**
+     * 处理线程启动时按配置绑定CPU
+     */
+    @Override
+    public void onStart() {
+        threadAffinityManager.pinCurrentThread(ThreadAffinityManager.ROLE_JOURNAL);
+        recoveredSourceOffsets = walWriter.getSourceOffsets();
+    }
+
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
+        // 排队时间记录在第一个处理阶段：启用并行解码时由解码阶段记录
+        long startNanos = decodeStage.isEnabled()
+                ? System.nanoTime() : latencyRecorder.recordSince(LatencyStage.QUEUE, event.getPublishNanos());
+        if (event.getMessageType() == OrderEvent.MESSAGE_TYPE_SNAPSHOT) {
+            // Snapshot屏障不写WAL、没有offset需要确认，原样交给撮合阶段
+            event.setWalSeq(0);
+        } else if (journalFailed) {
+            event.setWalSeq(0);
+            log.error("WAL处于失败状态，事件未写入WAL且不提交offset: orderId={}, sequence={}", event.getOrderId(), sequence);
+        } else if (event.getMessageType() == OrderEvent.MESSAGE_TYPE_INVALID) {
+            // 无法解码的消息重试也无法成功，不写WAL，随本批次确认offset跳过
+            event.setWalSeq(0);
+            log.error("订单消息解码失败，跳过: sequence={}, bytes={}", sequence, event.getPayloadLength());
+            if (event.getAck() != null) {
+                pendingAcks.add(event.getAck());
+            }
+        } else if (isRedelivered(event)) {
+            // 已写入WAL的消息（重启或再均衡后重复投递），随本批次确认offset跳过
+            event.setWalSeq(0);
+            duplicateCount++;
+            log.debug("跳过重复投递的订单消息: sourceTopic={}, sourcePartition={}, sourceOffset={}, orderId={}",
+                    event.getSourceTopic(), event.getSourcePartition(), event.getSourceOffset(), event.getOrderId());
+            if (event.getAck() != null) {
+                pendingAcks.add(event.getAck());
+            }
+        } else {
+            try {
+                long walSeq = walWriter.write(event);
+                journaledSourceOffsets.add(walWriter.sourceTopicId(event.getSourceTopic()),
+                        event.getSourcePartition(), event.getSourceOffset());
+                latencyRecorder.recordSince(LatencyStage.WAL_APPEND, startNanos);
+                event.setWalSeq(walSeq);
+                if (pendingEvents.isEmpty()) {
+                    groupStartNanos = startNanos;
+                }
+                pendingDurability = WALDurability.stricter(pendingDurability,
+                        durabilityPolicies.policyOf(event.getSymbolId()));
+                pendingEvents.add(event);
+                if (event.getAck() != null) {
+                    pendingAcks.add(event.getAck());
+                }
+            } catch (Exception e) {
+                log.error("WAL写入失败，日志阶段进入失败状态: orderId={}, sequence={}", event.getOrderId(), sequence, e);
+                event.setWalSeq(0);
+                markFailed();
+            }
+        }
+
+        if (inflightCommit != null && inflightCommit.isDone()) {
+            // 上一组已落盘，立即放行给撮合阶段，不必等整个批次
+            completeInflight();
+        }
+        if (event.getMessageType() == OrderEvent.MESSAGE_TYPE_SNAPSHOT) {
+            // 屏障之前的记录全部落盘后再放行屏障（async组也等待，每次Snapshot最多多等一次fsync）
+            completeInflight();
+            submitGroup(sequence);
+            completeInflight();
+        } else if (endOfBatch) {
+            completeInflight();
+            submitGroup(sequence);
+            if (!inflightReleased) {
+                // async组提交时已确认，落盘在下一次提交前等待
+                completeInflight();
+            }
+        } else if (shouldCommitEarly()) {
+            // 批次中途提交：交给刷盘线程后继续处理后续事件
+            completeInflight();
+            submitGroup(sequence);
+        }
+    }
+
+    /**
+     * 来源offset是否已写入过WAL（不是来自Kafka的事件总是返回false）
+     */
+    private boolean isRedelivered(OrderEvent event) {
+        int partition = event.getSourcePartition();
+        if (partition < 0) {
+            return false;
+        }
+        int topicId = walWriter.sourceTopicId(event.getSourceTopic());
+        return topicId >= 0
+                && (journaledSourceOffsets.contains(topicId, partition, event.getSourceOffset())
+                || recoveredSourceOffsets.contains(topicId, partition, event.getSourceOffset()));
+    }
+
+    /**
+     * 批次未结束时是否提前提交本组（含逐条提交策略的记录、达到组大小或等待超时）
+     */
+    private boolean shouldCommitEarly() {
+        int size = pendingEvents.size();
+        if (size == 0) {
+            return false;
+        }
+        return pendingDurability == WALDurability.FSYNC
+                || pendingDurability == WALDurability.FDATASYNC
+                || size >= maxBatchSize
+                || (maxDelayMicros > 0 && System.nanoTime() - groupStartNanos >= maxDelayMicros * 1000);
+    }
+
+    /**
+     * 提交本组：交给WAL刷盘线程，本组成为刷盘中的一组（调用前不能有刷盘中的组）
+     * 本组只含async交易对的记录时立即确认并放行
+     */
+    private void submitGroup(long sequence) {
+        if (pendingEvents.isEmpty() && pendingAcks.isEmpty()) {
+            return;
+        }
+        try {
+            // 本组没有WAL记录（只有解码失败的确认）时返回已完成的future，仍按顺序提交offset
+            inflightCommit = walWriter.flushAsync(pendingDurability == WALDurability.FSYNC);
+        } catch (Exception e) {
+            log.error("WAL批次fsync失败，日志阶段进入失败状态: batchSize={}", pendingEvents.size(), e);
+            markFailed();
+            return;
+        }
+        List<OrderEvent> events = inflightEvents;
+        inflightEvents = pendingEvents;
+        pendingEvents = events;
+        List<Acknowledgment> acks = inflightAcks;
+        inflightAcks = pendingAcks;
+        pendingAcks = acks;
+        inflightSequence = sequence;
+        inflightSubmitNanos = System.nanoTime();
+        inflightGroupStartNanos = groupStartNanos;
+        inflightDurability = pendingDurability;
+        pendingDurability = null;
+        inflightReleased = false;
+        if (inflightDurability == WALDurability.ASYNC) {
+            releaseInflight();
+            inflightReleased = true;
+        }
+    }
+
+    /**
+     * 等待刷盘中的一组落盘，成功后提交其Kafka offset并放行撮合阶段
+     */
+    private void completeInflight() {
+        if (inflightCommit == null) {
+            return;
+        }
+        try {
+            inflightCommit.join();
+            if (inflightDurability != null) {
+                latencyRecorder.recordSince(LatencyStage.FSYNC, inflightSubmitNanos);
+            }
+            if (!inflightReleased) {
+                releaseInflight();
+            }
+        } catch (Exception e) {
+            if (inflightReleased) {
+                log.error("async WAL批次fsync失败（已确认），日志阶段进入失败状态: sequence={}", inflightSequence, e);
+            } else {
+                log.error("WAL批次fsync失败，日志阶段进入失败状态: batchSize={}", inflightEvents.size(), e);
+            }
+            markFailed();
+        } finally {
+            inflightCommit = null;
+            inflightDurability = null;
+            inflightReleased = false;
+            inflightEvents.clear();
+            inflightAcks.clear();
+        }
+    }
+
+    /**
+     * 确认刷盘中的一组：提交Kafka offset、放行撮合阶段，按持久化策略记录提交延迟
+     * 已放行的事件可能正被撮合线程处理，之后失败时不能再修改，因此从本组移除
+     */
+    private void releaseInflight() {
+        for (Acknowledgment ack : inflightAcks) {
+            ack.acknowledge();
+        }
+        commitCount++;
+        committedEventCount += inflightEvents.size();
+        if (sequenceCallback != null) {
+            sequenceCallback.set(inflightSequence);
+        }
+        if (inflightDurability != null) {
+            latencyRecorder.recordSince(commitStage(inflightDurability), inflightGroupStartNanos);
+        }
+        log.debug("WAL批次提交完成: batchSize={}, ackCount={}, durability={}",
+                inflightEvents.size(), inflightAcks.size(), inflightDurability);
+        inflightEvents.clear();
+        inflightAcks.clear();
+    }
+
+    private static LatencyStage commitStage(WALDurability durability) {
+        return switch (durability) {
+            case FSYNC -> LatencyStage.COMMIT_FSYNC;
+            case FDATASYNC -> LatencyStage.COMMIT_FDATASYNC;
+            case GROUP -> LatencyStage.COMMIT_GROUP;
+            case ASYNC -> LatencyStage.COMMIT_ASYNC;
+        };
+    }
+
+    /**
+     * 进入失败状态：未确认落盘的事件（本组和刷盘中的一组）全部标记为未写入WAL，撮合阶段将跳过
+     */
+    private void markFailed() {
+        journalFailed = true;
+        for (OrderEvent pending : inflightEvents) {
+            pending.setWalSeq(0);
+        }
+        for (OrderEvent pending : pendingEvents) {
+            pending.setWalSeq(0);
+        }
+        inflightEvents.clear();
+        inflightAcks.clear();
+        pendingEvents.clear();
+        pendingAcks.clear();
+        pendingDurability = null;
+    }
+
+    /**
+     * 已完成的分组提交次数
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * 已分组提交的事件数
+     */
+    public long getCommittedEventCount() {
+        return committedEventCount;
+    }
+
+    /**
+     * 跳过的重复投递消息数
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * WAL是否处于失败状态
+     */
+    public boolean isJournalFailed() {
+        return journalFailed;
+    }
+}
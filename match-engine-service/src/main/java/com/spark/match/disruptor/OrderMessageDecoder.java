@@ -0,0 +1,386 @@
+package com.spark.match.disruptor;
+
+import com.spark.common.enums.MessageType;
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 订单消息流式解码器
+ * 直接扫描OrderEvent槽位中的原始JSON字节（OrderMessage格式），把字段写入同一槽位，
+ * 不创建String、OrderMessage或装箱对象，单条消息零分配
+ * <p>
+ * 支持范围（与订单服务Jackson输出一致）：
+ * - 顶层JSON对象，字段顺序任意，未知字段忽略（包括嵌套对象和数组）
+ * - 数值字段为JSON整数或null
+ * - 枚举字段为枚举名字符串（区分大小写）、枚举序号或null
+ * <p>
+ * 解码状态保存在实例字段中以避免每条消息创建解析对象，因此非线程安全，每个解码线程持有一个实例
+ */
+public final class OrderMessageDecoder {
+    private static final byte[] FIELD_MESSAGE_TYPE = bytes("messageType");
+    private static final byte[] FIELD_ORDER_ID = bytes("orderId");
+    private static final byte[] FIELD_USER_ID = bytes("userId");
+    private static final byte[] FIELD_SYMBOL_ID = bytes("symbolId");
+    private static final byte[] FIELD_ORDER_TYPE = bytes("orderType");
+    private static final byte[] FIELD_ORDER_SIDE = bytes("orderSide");
+    private static final byte[] FIELD_PRICE = bytes("price");
+    private static final byte[] FIELD_QUANTITY = bytes("quantity");
+    private static final byte[] FIELD_TIF_TYPE = bytes("tifType");
+    private static final byte[] FIELD_TIMESTAMP = bytes("timestamp");
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final OrderSide[] ORDER_SIDES = OrderSide.values();
+    private static final TIFType[] TIF_TYPES = TIFType.values();
+
+    private static final byte[][] MESSAGE_TYPE_NAMES = enumNames(MESSAGE_TYPES);
+    private static final byte[][] ORDER_TYPE_NAMES = enumNames(ORDER_TYPES);
+    private static final byte[][] ORDER_SIDE_NAMES = enumNames(ORDER_SIDES);
+    private static final byte[][] TIF_TYPE_NAMES = enumNames(TIF_TYPES);
+
+    /**
+     * 值类型：null
+     */
+    private static final int VALUE_NULL = 0;
+
+    /**
+     * 值类型：字符串（内容范围写入valueStart/valueEnd）
+     */
+    private static final int VALUE_STRING = 1;
+
+    /**
+     * 值类型：整数
+     */
+    private static final int VALUE_NUMBER = 2;
+
+    /**
+     * 值类型：其他（布尔、对象、数组等，已跳过）
+     */
+    private static final int VALUE_OTHER = 3;
+
+    private byte[] data;
+    private int limit;
+    private int pos;
+    private int valueStart;
+    private int valueEnd;
+    private long numberValue;
+
+    /**
+     * 解码槽位中的原始消息到槽位字段
+     * 解码前会重置所有订单字段；失败时messageType置为MESSAGE_TYPE_INVALID
+     *
+     * @param event 已通过copyPayload填充原始字节的事件
+     * @return 是否解码成功
+     */
+    public boolean decode(OrderEvent event) {
+        resetFields(event);
+        this.data = event.getPayload();
+        this.limit = event.getPayloadLength();
+        this.pos = 0;
+        try {
+            decodeInto(event);
+            return true;
+        } catch (IllegalArgumentException e) {
+            event.setMessageType(OrderEvent.MESSAGE_TYPE_INVALID);
+            return false;
+        } finally {
+            this.data = null;
+        }
+    }
+
+    /**
+     * 重置订单字段（不触碰payload、ack、walSeq）
+     */
+    private void resetFields(OrderEvent event) {
+        event.setMessageType(OrderEvent.MESSAGE_TYPE_INVALID);
+        event.setOrderId(0);
+        event.setUserId(0);
+        event.setSymbolId(0);
+        event.setOrderType(null);
+        event.setOrderSide(null);
+        event.setPrice(OrderEvent.NULL_LONG);
+        event.setQuantity(OrderEvent.NULL_LONG);
+        event.setTifType(null);
+        event.setTimestamp(0);
+    }
+
+    private void decodeInto(OrderEvent event) {
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int keyStart = pos;
+            int keyEnd = scanStringEnd();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            int valueType = readValue();
+            assign(event, keyStart, keyEnd, valueType);
+            skipWhitespace();
+            byte next = next();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw fail("期望','或'}'");
+            }
+        }
+    }
+
+    private void assign(OrderEvent event, int keyStart, int keyEnd, int valueType) {
+        if (matches(keyStart, keyEnd, FIELD_MESSAGE_TYPE)) {
+            MessageType type = readEnum(valueType, MESSAGE_TYPES, MESSAGE_TYPE_NAMES);
+            event.setMessageType(type != null ? type.getCode() : OrderEvent.MESSAGE_TYPE_INVALID);
+        } else if (matches(keyStart, keyEnd, FIELD_ORDER_ID)) {
+            event.setOrderId(readLong(valueType, 0));
+        } else if (matches(keyStart, keyEnd, FIELD_USER_ID)) {
+            event.setUserId(readLong(valueType, 0));
+        } else if (matches(keyStart, keyEnd, FIELD_SYMBOL_ID)) {
+            long symbolId = readLong(valueType, 0);
+            if (symbolId < Integer.MIN_VALUE || symbolId > Integer.MAX_VALUE) {
+                throw fail("symbolId超出int范围");
+            }
+            event.setSymbolId((int) symbolId);
+        } else if (matches(keyStart, keyEnd, FIELD_ORDER_TYPE)) {
+            event.setOrderType(readEnum(valueType, ORDER_TYPES, ORDER_TYPE_NAMES));
+        } else if (matches(keyStart, keyEnd, FIELD_ORDER_SIDE)) {
+            event.setOrderSide(readEnum(valueType, ORDER_SIDES, ORDER_SIDE_NAMES));
+        } else if (matches(keyStart, keyEnd, FIELD_PRICE)) {
+            event.setPrice(readLong(valueType, OrderEvent.NULL_LONG));
+        } else if (matches(keyStart, keyEnd, FIELD_QUANTITY)) {
+            event.setQuantity(readLong(valueType, OrderEvent.NULL_LONG));
+        } else if (matches(keyStart, keyEnd, FIELD_TIF_TYPE)) {
+            event.setTifType(readEnum(valueType, TIF_TYPES, TIF_TYPE_NAMES));
+        } else if (matches(keyStart, keyEnd, FIELD_TIMESTAMP)) {
+            event.setTimestamp(readLong(valueType, 0));
+        }
+        // 其他字段（如messageId）忽略
+    }
+
+    private long readLong(int valueType, long nullValue) {
+        if (valueType == VALUE_NULL) {
+            return nullValue;
+        }
+        if (valueType != VALUE_NUMBER) {
+            throw fail("期望整数");
+        }
+        return numberValue;
+    }
+
+    private <E extends Enum<E>> E readEnum(int valueType, E[] values, byte[][] names) {
+        if (valueType == VALUE_NULL) {
+            return null;
+        }
+        if (valueType == VALUE_NUMBER) {
+            // Jackson默认把整数解析为枚举序号
+            if (numberValue < 0 || numberValue >= values.length) {
+                throw fail("枚举序号无效");
+            }
+            return values[(int) numberValue];
+        }
+        if (valueType != VALUE_STRING) {
+            throw fail("期望枚举字符串");
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (matches(valueStart, valueEnd, names[i])) {
+                return values[i];
+            }
+        }
+        throw fail("枚举名称无效");
+    }
+
+    /**
+     * 读取一个JSON值
+     *
+     * @return 值类型
+     */
+    private int readValue() {
+        byte b = peek();
+        if (b == '"') {
+            pos++;
+            valueStart = pos;
+            valueEnd = scanStringEnd();
+            return VALUE_STRING;
+        }
+        if (b == '-' || (b >= '0' && b <= '9')) {
+            numberValue = parseLong();
+            return VALUE_NUMBER;
+        }
+        if (b == 'n') {
+            expectLiteral("null");
+            return VALUE_NULL;
+        }
+        if (b == 't') {
+            expectLiteral("true");
+            return VALUE_OTHER;
+        }
+        if (b == 'f') {
+            expectLiteral("false");
+            return VALUE_OTHER;
+        }
+        if (b == '{' || b == '[') {
+            skipNested();
+            return VALUE_OTHER;
+        }
+        throw fail("无法识别的JSON值");
+    }
+
+    private long parseLong() {
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        int digitsStart = pos;
+        long value = 0;
+        while (pos < limit) {
+            byte b = data[pos];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            int digit = b - '0';
+            // 以负数累加，避免Long.MIN_VALUE溢出
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw fail("整数溢出");
+            }
+            value = value * 10 - digit;
+            pos++;
+        }
+        if (pos == digitsStart) {
+            throw fail("期望数字");
+        }
+        if (pos < limit && (data[pos] == '.' || data[pos] == 'e' || data[pos] == 'E')) {
+            throw fail("不支持小数");
+        }
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw fail("整数溢出");
+        }
+        return -value;
+    }
+
+    /**
+     * 扫描字符串直到结束引号（pos位于开引号之后）
+     *
+     * @return 结束引号位置（不含）
+     */
+    private int scanStringEnd() {
+        while (pos < limit) {
+            byte b = data[pos];
+            if (b == '\\') {
+                pos += 2;
+                continue;
+            }
+            if (b == '"') {
+                int end = pos;
+                pos++;
+                return end;
+            }
+            pos++;
+        }
+        throw fail("字符串未结束");
+    }
+
+    /**
+     * 跳过嵌套对象或数组
+     */
+    private void skipNested() {
+        int depth = 0;
+        while (pos < limit) {
+            byte b = data[pos++];
+            if (b == '"') {
+                scanStringEnd();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    return;
+                }
+            }
+        }
+        throw fail("嵌套结构未结束");
+    }
+
+    private boolean matches(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expectLiteral(String literal) {
+        int length = literal.length();
+        if (pos + length > limit) {
+            throw fail("JSON字面量不完整");
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[pos + i] != literal.charAt(i)) {
+                throw fail("JSON字面量无效");
+            }
+        }
+        pos += length;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte b = data[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw fail("期望'" + expected + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= limit) {
+            throw fail("消息意外结束");
+        }
+        return data[pos];
+    }
+
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private IllegalArgumentException fail(String reason) {
+        // 仅在解码失败时分配
+        return new IllegalArgumentException(reason + ", position=" + pos);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] enumNames(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = bytes(values[i].name());
+        }
+        return names;
+    }
+}
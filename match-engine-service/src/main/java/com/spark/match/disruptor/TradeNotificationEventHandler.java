@@ -0,0 +1,41 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.spark.match.affinity.ThreadAffinityManager;
+import com.spark.match.producer.TradeNotificationProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 成交通知发布处理器（成交输出Disruptor，独立发布线程）
+ * 序列化TRADE事件并发送到Kafka
+ */
+@Slf4j
+@Component
+public class TradeNotificationEventHandler implements EventHandler<MatchResultEvent> {
+    @Autowired
+    private TradeNotificationProducer tradeNotificationProducer;
+    @Autowired
+    private ThreadAffinityManager threadAffinityManager;
+
+    /**
+     * 处理线程启动时按配置绑定CPU
+     */
+    @Override
+    public void onStart() {
+        threadAffinityManager.pinCurrentThread(ThreadAffinityManager.ROLE_TRADE_PUBLISHER);
+    }
+
+    @Override
+    public void onEvent(MatchResultEvent event, long sequence, boolean endOfBatch) {
+        if (event.getType() != MatchResultEvent.TYPE_TRADE) {
+            return;
+        }
+        try {
+            tradeNotificationProducer.sendTradeNotification(event);
+        } catch (Exception e) {
+            log.error("发送成交通知失败: tradeId={}, symbolId={}, sequence={}", event.getTradeId(), event.getSymbolId(), sequence, e);
+        }
+    }
+}
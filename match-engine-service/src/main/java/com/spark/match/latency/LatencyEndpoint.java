@@ -0,0 +1,33 @@
+package com.spark.match.latency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * 撮合链路延迟Actuator端点
+ * - GET  /actuator/latency: 本统计区间各阶段的p50/p99/p99.9/max（微秒）
+ * - POST /actuator/latency: 返回本统计区间结果并重置统计区间
+ */
+@Slf4j
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+    @Autowired
+    private LatencyRecorder latencyRecorder;
+
+    @ReadOperation
+    public LatencyRecorder.LatencyReport latency() {
+        return latencyRecorder.snapshot();
+    }
+
+    @WriteOperation
+    public LatencyRecorder.LatencyReport reset() {
+        LatencyRecorder.LatencyReport report = latencyRecorder.snapshotAndReset();
+        log.info("链路延迟统计区间已重置");
+        return report;
+    }
+}
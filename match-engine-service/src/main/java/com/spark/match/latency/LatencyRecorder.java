@@ -0,0 +1,170 @@
+package com.spark.match.latency;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撮合链路延迟记录器
+ * 每个阶段一个HdrHistogram Recorder，以纳秒记录：
+ * - record()是无锁、无分配的，可在Disruptor处理线程热路径上调用
+ * - 读取时把各Recorder的区间直方图累加到本区间直方图，reset()开始新的统计区间
+ * <p>
+ * 超过最大可追踪值的样本按最大值记录（计入max，不丢弃）
+ */
+@Component
+public class LatencyRecorder {
+    /**
+     * 最大可追踪延迟：10秒
+     */
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * 有效数字位数（相对误差0.1%）
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final LatencyStage[] STAGES = LatencyStage.values();
+
+    private final Recorder[] recorders = new Recorder[STAGES.length];
+
+    /**
+     * 本统计区间的累计直方图（只在读取/重置时访问，由this同步）
+     */
+    private final Histogram[] intervalHistograms = new Histogram[STAGES.length];
+
+    /**
+     * 回收的区间直方图，避免读取时重复分配
+     */
+    private final Histogram[] recycledHistograms = new Histogram[STAGES.length];
+
+    /**
+     * 本统计区间开始时间
+     */
+    private long intervalStartTime = System.currentTimeMillis();
+
+    public LatencyRecorder() {
+        for (LatencyStage stage : STAGES) {
+            recorders[stage.ordinal()] = new Recorder(1, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+            intervalHistograms[stage.ordinal()] = new Histogram(1, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param stage 阶段
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(LatencyStage stage, long nanos) {
+        recorders[stage.ordinal()].recordValue(Math.max(1, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * 记录从startNanos到当前时间的耗时
+     *
+     * @param stage      阶段
+     * @param startNanos System.nanoTime()起始值
+     * @return 当前System.nanoTime()，便于串联下一个阶段
+     */
+    public long recordSince(LatencyStage stage, long startNanos) {
+        long now = System.nanoTime();
+        record(stage, now - startNanos);
+        return now;
+    }
+
+    /**
+     * 获取本统计区间各阶段的延迟分布
+     */
+    public synchronized LatencyReport snapshot() {
+        drainRecorders();
+        LatencyReport report = new LatencyReport();
+        report.setIntervalStartTime(intervalStartTime);
+        report.setIntervalEndTime(System.currentTimeMillis());
+        Map<String, StageLatency> stages = new LinkedHashMap<>();
+        for (LatencyStage stage : STAGES) {
+            stages.put(stage.getName(), toStageLatency(intervalHistograms[stage.ordinal()]));
+        }
+        report.setStages(stages);
+        return report;
+    }
+
+    /**
+     * 重置统计区间
+     */
+    public synchronized void reset() {
+        drainRecorders();
+        for (Histogram histogram : intervalHistograms) {
+            histogram.reset();
+        }
+        intervalStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取本统计区间的延迟分布并开始新的统计区间（原子操作，区间之间不丢样本）
+     */
+    public synchronized LatencyReport snapshotAndReset() {
+        LatencyReport report = snapshot();
+        reset();
+        return report;
+    }
+
+    private void drainRecorders() {
+        for (int i = 0; i < recorders.length; i++) {
+            Histogram interval = recorders[i].getIntervalHistogram(recycledHistograms[i]);
+            intervalHistograms[i].add(interval);
+            recycledHistograms[i] = interval;
+        }
+    }
+
+    private StageLatency toStageLatency(Histogram histogram) {
+        StageLatency latency = new StageLatency();
+        latency.setCount(histogram.getTotalCount());
+        if (histogram.getTotalCount() > 0) {
+            latency.setMeanMicros(histogram.getMean() / 1000.0);
+            latency.setP50Micros(histogram.getValueAtPercentile(50) / 1000.0);
+            latency.setP99Micros(histogram.getValueAtPercentile(99) / 1000.0);
+            latency.setP999Micros(histogram.getValueAtPercentile(99.9) / 1000.0);
+            latency.setMaxMicros(histogram.getMaxValue() / 1000.0);
+        }
+        return latency;
+    }
+
+    /**
+     * 延迟报告
+     */
+    @lombok.Data
+    public static class LatencyReport {
+        /**
+         * 统计区间开始时间（毫秒时间戳）
+         */
+        private long intervalStartTime;
+
+        /**
+         * 统计区间结束时间（毫秒时间戳）
+         */
+        private long intervalEndTime;
+
+        /**
+         * 各阶段延迟分布（按链路顺序）
+         */
+        private Map<String, StageLatency> stages;
+    }
+
+    /**
+     * 单个阶段的延迟分布（微秒）
+     */
+    @lombok.Data
+    public static class StageLatency {
+        private long count;
+        private double meanMicros;
+        private double p50Micros;
+        private double p99Micros;
+        private double p999Micros;
+        private double maxMicros;
+    }
+}
@@ -0,0 +1,61 @@
+package com.spark.match.latency;
+
+/**
+ * 撮合链路阶段
+ * 每个阶段对应一个延迟直方图
+ */
+public enum LatencyStage {
+    /**
+     * 复制Kafka原始字节并解码到RingBuffer槽位（Kafka Consumer线程）
+     */
+    PARSE("parse"),
+
+    /**
+     * 槽位发布到日志阶段取出之间的排队时间
+     */
+    QUEUE("queue"),
+
+    /**
+     * 单条WAL记录写入（不含fsync）
+     */
+    WAL_APPEND("wal-append"),
+
+    /**
+     * 一个批次的fsync
+     */
+    FSYNC("fsync"),
+
+    /**
+     * 按交易对WAL持久化策略（{@link com.spark.match.wal.WALDurability}）统计的提交延迟：
+     * 一组中首条记录写入到该组确认（放行撮合、提交offset）
+     */
+    COMMIT_FSYNC("commit-fsync"),
+    COMMIT_FDATASYNC("commit-fdatasync"),
+    COMMIT_GROUP("commit-group"),
+    COMMIT_ASYNC("commit-async"),
+
+    /**
+     * 撮合或撤单（撮合线程）
+     */
+    MATCH("match"),
+
+    /**
+     * 成交和订单簿更新写入输出RingBuffer（撮合线程）
+     */
+    PUBLISH("publish"),
+
+    /**
+     * 槽位发布到撮合阶段处理完成的端到端时间
+     */
+    TOTAL("total");
+
+    private final String name;
+
+    LatencyStage(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
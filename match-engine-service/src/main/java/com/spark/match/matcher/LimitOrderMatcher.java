@@ -27,24 +27,18 @@ public class LimitOrderMatcher implements Matcher {
 
     @Override
     public List<Trade> match(OrderBook orderBook, Order order) {
-        long startTime = System.currentTimeMillis();
         List<Trade> trades = new ArrayList<>();
 
         // FOK订单：撮合前检查是否能完全成交，如果不能则拒绝订单（不修改订单簿）
         if (order.getTifType() == TIFType.FOK) {
-            long fokCheckStartTime = System.currentTimeMillis();
             if (!canFullyFill(orderBook, order)) {
-                long fokCheckDuration = System.currentTimeMillis() - fokCheckStartTime;
-                log.info("FOK订单无法完全成交，拒绝订单: orderId={}, requiredQuantity={}, availableQuantity={}, FOK检查耗时={}ms", 
-                        order.getOrderId(), order.getQuantity(), calculateAvailableQuantity(orderBook, order), fokCheckDuration);
+                log.info("FOK订单无法完全成交，拒绝订单: orderId={}, requiredQuantity={}, availableQuantity={}", 
+                        order.getOrderId(), order.getQuantity(), calculateAvailableQuantity(orderBook, order));
                 // FOK订单无法完全成交，直接返回空成交列表，不修改订单簿
                 return trades;
             }
-            long fokCheckDuration = System.currentTimeMillis() - fokCheckStartTime;
-            log.debug("[撮合引擎耗时] FOK检查耗时: {}ms, orderId={}", fokCheckDuration, order.getOrderId());
         }
 
-        long matchStartTime = System.currentTimeMillis();
         if (order.getOrderSide() == OrderSide.BUY) {
             // 买单：从卖单簿最低价开始撮合
             matchBuyOrder(orderBook, order, trades);
@@ -52,15 +46,9 @@ public class LimitOrderMatcher implements Matcher {
             // 卖单：从买单簿最高价开始撮合
             matchSellOrder(orderBook, order, trades);
         }
-        long matchDuration = System.currentTimeMillis() - matchStartTime;
-        log.debug("[撮合引擎耗时] 核心撮合逻辑耗时: {}ms, orderId={}, tradeCount={}", 
-                matchDuration, order.getOrderId(), trades.size());
 
         // TIF处理
-        long tifStartTime = System.currentTimeMillis();
         boolean shouldKeep = tifHandler.handleTIF(order, trades);
-        long tifDuration = System.currentTimeMillis() - tifStartTime;
-        log.debug("[撮合引擎耗时] TIF处理耗时: {}ms, orderId={}", tifDuration, order.getOrderId());
         
         if (!shouldKeep && !order.isFilled()) {
             // 不保留订单（IOC部分成交或FOK未完全成交）
@@ -73,9 +61,6 @@ public class LimitOrderMatcher implements Matcher {
             orderBook.addOrder(order);
         }
 
-        long totalDuration = System.currentTimeMillis() - startTime;
-        log.info("[撮合引擎耗时] 撮合总耗时: {}ms, orderId={}, symbolId={}, tradeCount={}, 核心撮合耗时={}ms, TIF处理耗时={}ms", 
-                totalDuration, order.getOrderId(), order.getSymbolId(), trades.size(), matchDuration, tifDuration);
         return trades;
     }
 
@@ -116,6 +101,7 @@ public class LimitOrderMatcher implements Matcher {
 
                 // 更新价格级别数量（使用成交前后的remainingQuantity）
                 sellPriceLevel.updateQuantity(sellOrder, oldSellRemainingQuantity, newSellRemainingQuantity);
+                orderBook.markLevelDirty(OrderSide.SELL, sellPrice);
 
                 // 如果卖单完全成交，从订单簿移除
                 if (sellOrder.isFilled()) {
@@ -173,6 +159,7 @@ public class LimitOrderMatcher implements Matcher {
 
                 // 更新价格级别数量（使用成交前后的remainingQuantity）
                 buyPriceLevel.updateQuantity(buyOrder, oldBuyRemainingQuantity, newBuyRemainingQuantity);
+                orderBook.markLevelDirty(OrderSide.BUY, buyPrice);
 
                 // 如果买单完全成交，从订单簿移除
                 if (buyOrder.isFilled()) {
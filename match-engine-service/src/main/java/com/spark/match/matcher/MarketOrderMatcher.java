@@ -27,14 +27,11 @@ public class MarketOrderMatcher implements Matcher {
 
     @Override
     public List<Trade> match(OrderBook orderBook, Order order) {
-        long startTime = System.currentTimeMillis();
-        
         // 市价单不支持TIF，如果包含TIF则忽略（校验在order服务完成）
         ignoreMarketOrderTIF(order);
 
         List<Trade> trades = new ArrayList<>();
 
-        long matchStartTime = System.currentTimeMillis();
         if (order.getOrderSide() == OrderSide.BUY) {
             // 市价买单：从卖单簿最低价开始撮合
             matchMarketBuyOrder(orderBook, order, trades);
@@ -42,9 +39,6 @@ public class MarketOrderMatcher implements Matcher {
             // 市价卖单：从买单簿最高价开始撮合
             matchMarketSellOrder(orderBook, order, trades);
         }
-        long matchDuration = System.currentTimeMillis() - matchStartTime;
-        log.debug("[撮合引擎耗时] 市价单核心撮合逻辑耗时: {}ms, orderId={}, tradeCount={}", 
-                matchDuration, order.getOrderId(), trades.size());
 
         // 市价单不支持TIF，撮合后不保留未成交部分
         // 如果部分成交，已成交部分保留，未成交部分直接丢弃
@@ -53,9 +47,6 @@ public class MarketOrderMatcher implements Matcher {
             // 不需要添加到订单簿（市价单没有价格，无法保留）
         }
 
-        long totalDuration = System.currentTimeMillis() - startTime;
-        log.info("[撮合引擎耗时] 市价单撮合总耗时: {}ms, orderId={}, symbolId={}, tradeCount={}, 核心撮合耗时={}ms", 
-                totalDuration, order.getOrderId(), order.getSymbolId(), trades.size(), matchDuration);
         return trades;
     }
 
@@ -112,6 +103,7 @@ public class MarketOrderMatcher implements Matcher {
 
                 // 更新价格级别数量（使用成交前后的remainingQuantity）
                 sellPriceLevel.updateQuantity(sellOrder, oldSellRemainingQuantity, newSellRemainingQuantity);
+                orderBook.markLevelDirty(OrderSide.SELL, sellPrice);
 
                 // 如果卖单完全成交，从订单簿移除
                 if (sellOrder.isFilled()) {
@@ -167,6 +159,7 @@ public class MarketOrderMatcher implements Matcher {
 
                 // 更新价格级别数量（使用成交前后的remainingQuantity）
                 buyPriceLevel.updateQuantity(buyOrder, oldBuyRemainingQuantity, newBuyRemainingQuantity);
+                orderBook.markLevelDirty(OrderSide.BUY, buyPrice);
 
                 // 如果买单完全成交，从订单簿移除
                 if (buyOrder.isFilled()) {
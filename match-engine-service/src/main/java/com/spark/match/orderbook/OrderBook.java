@@ -1,9 +1,15 @@
 package com.spark.match.orderbook;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.spark.common.enums.OrderSide;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
@@ -13,6 +19,7 @@ import java.util.*;
  * - 买单簿：TreeMap降序（价格从高到低）
  * - 卖单簿：TreeMap升序（价格从低到高）
  * - 订单索引：HashMap（O(1)撤单）
+ * - 变更档位：自上次Snapshot采集以来变更过的档位价格，用于增量Snapshot
  */
 @Slf4j
 @Data
@@ -43,6 +50,58 @@ public class OrderBook {
      */
     private volatile long lastAppliedWalSeq = 0;
 
+    /**
+     * 自上次Snapshot采集以来变更过的买单档位价格（增量Snapshot只写这些档位，只由撮合线程访问）
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Set<Long> dirtyBuyPrices = new HashSet<>();
+
+    /**
+     * 自上次Snapshot采集以来变更过的卖单档位价格
+     */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Set<Long> dirtySellPrices = new HashSet<>();
+
+    /**
+     * 自上次Snapshot采集以来的档位变更次数（订单簿活跃度，Snapshot写入按此排优先级）
+     */
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @JsonIgnore
+    private long changesSinceSnapshot;
+
+    /**
+     * 自上次Snapshot采集以来应用的WAL记录数（按记录数触发Snapshot，只由撮合线程访问）
+     */
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @JsonIgnore
+    private long walRecordsSinceSnapshot;
+
+    /**
+     * 记录数已达到Snapshot阈值并已通知调度器（采集后清除，避免每个事件重复通知，只由撮合线程访问）
+     */
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @JsonIgnore
+    private boolean snapshotRequested;
+
+    /**
+     * 上次采集Snapshot时的lastAppliedWalSeq（-1表示本次启动后还没有采集过）
+     */
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private long snapshotWalSeq = -1;
+
     /**
      * 构造函数（用于正常创建）
      */
@@ -94,6 +153,7 @@ public class OrderBook {
         PriceLevel priceLevel = book.computeIfAbsent(order.getPrice(), PriceLevel::new);
         priceLevel.addOrder(order);
         orderIndex.put(order.getOrderId(), order);
+        markLevelDirty(order.getOrderSide(), order.getPrice());
 
         log.info("订单添加到订单簿: orderId={}, symbolId={}, side={}, price={}, quantity={}", order.getOrderId(), symbolId, order.getOrderSide(), order.getPrice(), order.getQuantity());
     }
@@ -115,11 +175,78 @@ public class OrderBook {
             if (priceLevel.isEmpty()) {
                 book.remove(order.getPrice());
             }
+            markLevelDirty(order.getOrderSide(), order.getPrice());
         }
 
         log.info("订单从订单簿移除: orderId={}, symbolId={}", orderId, symbolId);
     }
 
+    /**
+     * 标记档位已变更（档位内订单增删或成交数量变化时调用，档位被移除也需要标记）
+     */
+    public void markLevelDirty(OrderSide side, Long price) {
+        (side == OrderSide.BUY ? dirtyBuyPrices : dirtySellPrices).add(price);
+        changesSinceSnapshot++;
+    }
+
+    /**
+     * 自上次Snapshot采集以来变更过的档位价格
+     */
+    public Set<Long> getDirtyPrices(OrderSide side) {
+        return side == OrderSide.BUY ? dirtyBuyPrices : dirtySellPrices;
+    }
+
+    /**
+     * 自上次Snapshot采集以来是否有变化（档位变更，或应用了未改变档位的WAL记录）
+     */
+    public boolean hasChangesSinceSnapshot() {
+        return !dirtyBuyPrices.isEmpty() || !dirtySellPrices.isEmpty() || lastAppliedWalSeq != snapshotWalSeq;
+    }
+
+    /**
+     * 把lastAppliedWalSeq推进到所属WAL分区已处理的walSeq（撮合线程在采集Snapshot前调用）
+     * lastAppliedWalSeq之后分区内已处理的记录都不属于本交易对，订单簿状态不变，Snapshot可以覆盖到该序列号
+     */
+    public void advanceLastAppliedWalSeq(long partitionWalSeq) {
+        if (partitionWalSeq > lastAppliedWalSeq) {
+            lastAppliedWalSeq = partitionWalSeq;
+        }
+    }
+
+    /**
+     * 记录应用了一条WAL记录
+     *
+     * @return 自上次Snapshot采集以来应用的WAL记录数
+     */
+    public long incrementWalRecordsSinceSnapshot() {
+        return ++walRecordsSinceSnapshot;
+    }
+
+    /**
+     * 标记记录数已达到Snapshot阈值
+     *
+     * @return 自上次采集以来第一次标记时返回true
+     */
+    public boolean markSnapshotRequested() {
+        if (snapshotRequested) {
+            return false;
+        }
+        snapshotRequested = true;
+        return true;
+    }
+
+    /**
+     * Snapshot采集完成：清空变更档位，记录采集时的lastAppliedWalSeq（下一个增量Snapshot的基准）
+     */
+    public void markSnapshotCaptured() {
+        dirtyBuyPrices.clear();
+        dirtySellPrices.clear();
+        changesSinceSnapshot = 0;
+        walRecordsSinceSnapshot = 0;
+        snapshotRequested = false;
+        snapshotWalSeq = lastAppliedWalSeq;
+    }
+
     /**
      * 获取订单
      */
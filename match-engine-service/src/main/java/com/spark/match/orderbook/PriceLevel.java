@@ -1,5 +1,7 @@
 package com.spark.match.orderbook;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,7 +30,11 @@ public class PriceLevel {
      */
     private long totalQuantity;
 
-    public PriceLevel(Long price) {
+    /**
+     * 构造函数（也用于从旧JSON格式Snapshot反序列化，orders通过getter填充）
+     */
+    @JsonCreator
+    public PriceLevel(@JsonProperty("price") Long price) {
         this.price = price;
         this.orders = new LinkedList<>();
         this.totalQuantity = 0;
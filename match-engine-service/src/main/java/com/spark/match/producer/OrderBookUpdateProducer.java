@@ -5,18 +5,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spark.common.constant.KafkaTopic;
 import com.spark.common.model.OrderBookUpdateMessage;
 import com.spark.common.model.PriceQuantity;
-import com.spark.match.orderbook.OrderBook;
+import com.spark.match.disruptor.MatchResultEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 订单簿更新生产者
  * 发送订单簿深度更新到Kafka
+ * 由输出Disruptor的发布线程调用，不在撮合线程上执行序列化和Kafka发送
  */
 @Slf4j
 @Component
@@ -29,47 +30,41 @@ public class OrderBookUpdateProducer {
     /**
      * 发送订单簿更新消息
      *
-     * @param orderBook 订单簿
-     * @param depth     深度（档位数）
+     * @param event 撮合线程发布的订单簿深度事件
      */
-    public void sendOrderBookUpdate(OrderBook orderBook, int depth) {
+    public void sendOrderBookUpdate(MatchResultEvent event) {
         try {
-            OrderBook.OrderBookDepth orderBookDepth = orderBook.getDepth(depth);
-
-            // 转换为OrderBookUpdateMessage
             OrderBookUpdateMessage message = OrderBookUpdateMessage.builder()
-                    .symbolId(orderBookDepth.getSymbolId())
-                    .bids(convertToPriceQuantityList(orderBookDepth.getBids()))
-                    .asks(convertToPriceQuantityList(orderBookDepth.getAsks()))
-                    .timestamp(orderBookDepth.getTimestamp())
+                    .symbolId(event.getSymbolId())
+                    .bids(convertToPriceQuantityList(event.getBidPrices(), event.getBidQuantities(), event.getBidCount()))
+                    .asks(convertToPriceQuantityList(event.getAskPrices(), event.getAskQuantities(), event.getAskCount()))
+                    .timestamp(event.getTimestamp())
                     .build();
 
             String messageJson = objectMapper.writeValueAsString(message);
-            String key = orderBookDepth.getSymbolId() != null 
-                    ? String.valueOf(orderBookDepth.getSymbolId()) 
-                    : "unknown";
+            String key = String.valueOf(event.getSymbolId());
 
             kafkaTemplate.send(KafkaTopic.ORDERBOOK_UPDATE, key, messageJson);
 
             log.info("发送订单簿更新: symbolId={}, bids={}, asks={}",
-                    orderBookDepth.getSymbolId(),
-                    orderBookDepth.getBids().size(),
-                    orderBookDepth.getAsks().size());
+                    event.getSymbolId(), event.getBidCount(), event.getAskCount());
         } catch (JsonProcessingException e) {
-            log.error("订单簿更新序列化失败: symbolId={}", orderBook.getSymbolId(), e);
-            // 不抛出异常，避免影响撮合流程
+            log.error("订单簿更新序列化失败: symbolId={}", event.getSymbolId(), e);
+            // 不抛出异常，避免影响发布线程
         }
     }
 
     /**
      * 转换PriceQuantity列表
      */
-    private List<PriceQuantity> convertToPriceQuantityList(List<OrderBook.PriceQuantity> priceQuantities) {
-        return priceQuantities.stream()
-                .map(pq -> PriceQuantity.builder()
-                        .price(pq.getPrice())
-                        .quantity(pq.getQuantity())
-                        .build())
-                .collect(Collectors.toList());
+    private List<PriceQuantity> convertToPriceQuantityList(long[] prices, long[] quantities, int count) {
+        List<PriceQuantity> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(PriceQuantity.builder()
+                    .price(prices[i])
+                    .quantity(quantities[i])
+                    .build());
+        }
+        return result;
     }
 }
@@ -4,7 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spark.common.constant.KafkaTopic;
 import com.spark.common.model.TradeMessage;
-import com.spark.match.matcher.Trade;
+import com.spark.match.disruptor.MatchResultEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Component;
 
 /**
  * 成交通知生产者
+ * 由输出Disruptor的发布线程调用，不在撮合线程上执行序列化和Kafka发送
  */
 @Slf4j
 @Component
@@ -24,7 +25,7 @@ public class TradeNotificationProducer {
     /**
      * 发送成交通知
      */
-    public void sendTradeNotification(Trade trade) {
+    public void sendTradeNotification(MatchResultEvent trade) {
         try {
             TradeMessage message = TradeMessage.builder()
                     .tradeId(trade.getTradeId())
@@ -35,7 +36,7 @@ public class TradeNotificationProducer {
                     .takerUserId(trade.getTakerUserId())
                     .price(trade.getPrice())
                     .quantity(trade.getQuantity())
-                    .tradeTime(trade.getTradeTime())
+                    .tradeTime(trade.getTimestamp())
                     .build();
 
             String messageJson = objectMapper.writeValueAsString(message);
@@ -10,24 +10,40 @@ import com.spark.match.matcher.MatcherFactory;
 import com.spark.match.orderbook.Order;
 import com.spark.match.orderbook.OrderBook;
 import com.spark.match.orderbook.OrderBookManager;
+import com.spark.match.snapshot.SnapshotPolicy;
 import com.spark.match.snapshot.SnapshotReader;
 import com.spark.match.snapshot.SnapshotWriter;
+import com.spark.match.wal.WALPartitioning;
 import com.spark.match.wal.WALReader;
 import com.spark.match.wal.WALRecord;
+import com.spark.match.wal.WALWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 订单簿恢复服务
  * 启动时恢复订单簿状态：
- * 1. 加载最新Snapshot
- * 2. 重放WAL日志
- * 3. 校验WAL文件完整性
+ * 1. 加载所有交易对的最新Snapshot
+ * 2. 一次流式扫描WAL（边读边校验），按交易对分发重放
+ * <p>
+ * WAL分区时（{@link WALPartitioning}）每个分区各扫描一次，分区之间交易对不相交，并行重放
+ * <p>
+ * 交易对有Snapshot文件时，其之前的WAL可能已被归档淘汰；所需的起始序列号早于WAL中最早可读的记录时
+ * （例如最新检查点损坏、回退到更早的检查点）无法完整重放，恢复失败并终止启动
  */
 @Slf4j
 @Service
@@ -37,17 +53,20 @@ public class OrderBookRecoveryService implements CommandLineRunner {
     @Autowired
     private SnapshotReader snapshotReader;
     @Autowired
+    private SnapshotPolicy snapshotPolicy;
+    @Autowired
     private WALReader walReader;
     @Autowired
+    private WALPartitioning walPartitioning;
+    @Autowired
+    private WALWriter walWriter;
+    @Autowired
     private MatcherFactory matcherFactory;
     @Autowired
     private ConfigService configService;
 
-    @Value("${wal.base-path:./data/wal}")
-    private String walBasePath;
-
-    @Value("${wal.instance-id:default}")
-    private String instanceId;
+    @Value("${wal.partition.recovery-threads:4}")
+    private int recoveryThreads; // 分区并行恢复线程数
 
     @Override
     public void run(String... args) {
@@ -55,16 +74,14 @@ public class OrderBookRecoveryService implements CommandLineRunner {
         recoverOrderBooks();
         log.info("订单簿状态恢复完成");
         
-        // 注意：Kafka Consumer会在恢复完成后自动启动
-        // 根据架构设计，Kafka Consumer应该从WAL之后的新事件开始消费
-        // 由于Kafka offset和WAL seq的映射关系，这里假设Kafka Consumer会从最新offset开始消费
-        // 实际生产环境中，应该根据WAL的lastAppliedWalSeq找到对应的Kafka offset并seek
-        log.info("Kafka Consumer将在恢复完成后开始消费新消息");
+        // WAL记录携带来源Kafka offset：分配到分区时consumer从WAL中最后一条记录的offset + 1开始消费
+        // （WALOffsetRebalanceListener），仍然重复投递的消息由日志阶段按offset跳过（OrderJournalHandler）
+        log.info("Kafka Consumer将跳过已写入WAL的消息: walSourceOffsets={}", walWriter.getSourceOffsets());
     }
 
     /**
      * 恢复所有订单簿
-     * 从数据库获取所有启用的交易对配置，并逐一恢复
+     * 从数据库获取所有启用的交易对配置，逐一加载Snapshot，再一次扫描WAL按交易对分发重放
      */
     private void recoverOrderBooks() {
         try {
@@ -72,20 +89,27 @@ public class OrderBookRecoveryService implements CommandLineRunner {
             List<String> enabledPairs = configService.getEnabledTradingPairs();
             log.info("开始恢复订单簿: 交易对数量={}", enabledPairs.size());
 
+            Map<Integer, RecoveryTarget> targets = new HashMap<>();
             for (String symbol : enabledPairs) {
                 SymbolConfig config = configService.getTradingPairConfig(symbol);
                 if (config != null && config.getSymbolId() != null) {
                     // 注册交易对映射
                     SymbolIdMapper.register(symbol, config.getSymbolId());
 
-                    // 恢复订单簿
-                    recoverOrderBook(config.getSymbolId());
+                    // 加载Snapshot
+                    RecoveryTarget target = loadSnapshot(config.getSymbolId());
+                    if (target != null) {
+                        targets.put(config.getSymbolId(), target);
+                    }
                 } else {
                     log.info("交易对配置无效，跳过恢复: symbol={}", symbol);
                 }
             }
 
-            log.info("订单簿恢复完成: 已恢复交易对数量={}", enabledPairs.size());
+            // 一次扫描WAL重放所有交易对
+            replayWAL(targets);
+
+            log.info("订单簿恢复完成: 已恢复交易对数量={}", targets.size());
         } catch (Exception e) {
             log.error("恢复订单簿失败", e);
             throw new RuntimeException("恢复订单簿失败", e);
@@ -98,6 +122,22 @@ public class OrderBookRecoveryService implements CommandLineRunner {
      * @param symbolId 交易对ID
      */
     public void recoverOrderBook(Integer symbolId) {
+        RecoveryTarget target = loadSnapshot(symbolId);
+        if (target == null) {
+            return;
+        }
+        Map<Integer, RecoveryTarget> targets = new HashMap<>();
+        targets.put(symbolId, target);
+        replayWAL(targets);
+    }
+
+    /**
+     * 加载Snapshot（不存在时创建新订单簿）
+     *
+     * @param symbolId 交易对ID
+     * @return 恢复目标，失败时返回null
+     */
+    private RecoveryTarget loadSnapshot(Integer symbolId) {
         try {
             // 1. 检查是否存在Snapshot
             SnapshotWriter.SnapshotData snapshotData = snapshotReader.readLatestSnapshot(symbolId);
@@ -117,23 +157,132 @@ public class OrderBookRecoveryService implements CommandLineRunner {
                 orderBook = orderBookManager.createOrderBook(symbolId);
                 log.info("未找到Snapshot，创建新订单簿: symbolId={}", symbolId);
             }
+            // 有Snapshot文件（即使都无法读取）说明之前的WAL可能已被归档淘汰，重放前需确认WAL完整
+            boolean requireWal = snapshotData != null || snapshotReader.hasSnapshotFiles(symbolId);
+            return new RecoveryTarget(symbolId, orderBook, fromWalSeq, requireWal);
+        } catch (Exception e) {
+            log.error("恢复订单簿失败: symbolId={}", symbolId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 2. 重放WAL日志
+     * 按交易对所属的WAL分区分组，每个分区并行扫描一次（只有一个分区时在当前线程扫描）
+     *
+     * @param targets 交易对ID → 恢复目标
+     */
+    private void replayWAL(Map<Integer, RecoveryTarget> targets) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        Map<Integer, Map<Integer, RecoveryTarget>> targetsByPartition = new TreeMap<>();
+        for (RecoveryTarget target : targets.values()) {
+            targetsByPartition.computeIfAbsent(walPartitioning.partitionOf(target.symbolId), p -> new HashMap<>())
+                    .put(target.symbolId, target);
+        }
 
-            // 2. 重放WAL日志
-            List<WALRecord> walRecords = walReader.readWAL(walBasePath, instanceId, fromWalSeq);
-            log.info("读取WAL记录: symbolId={}, count={}, fromWalSeq={}", symbolId, walRecords.size(), fromWalSeq);
+        if (targetsByPartition.size() == 1) {
+            Map.Entry<Integer, Map<Integer, RecoveryTarget>> entry = targetsByPartition.entrySet().iterator().next();
+            replayPartition(entry.getKey(), entry.getValue());
+        } else {
+            replayPartitionsInParallel(targetsByPartition);
+        }
 
-            // 3. 重放WAL记录
-            for (WALRecord record : walRecords) {
-                // 只处理该交易对的WAL记录
-                if (record.getOrderMessage().getSymbolId().equals(symbolId)) {
-                    replayWALRecord(orderBook, record);
-                }
+        for (RecoveryTarget target : targets.values()) {
+            log.info("订单簿恢复完成: symbolId={}, walRecordCount={}, lastAppliedWalSeq={}",
+                    target.symbolId, target.replayedCount, target.orderBook.getLastAppliedWalSeq());
+        }
+    }
+
+    /**
+     * 并行重放多个分区，任一分区失败时恢复失败
+     */
+    private void replayPartitionsInParallel(Map<Integer, Map<Integer, RecoveryTarget>> targetsByPartition) {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, Math.min(recoveryThreads, targetsByPartition.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "wal-recovery-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<Integer, Map<Integer, RecoveryTarget>> entry : targetsByPartition.entrySet()) {
+                futures.add(executor.submit(() -> replayPartition(entry.getKey(), entry.getValue())));
             }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("WAL分区恢复被中断", e);
+        } catch (ExecutionException e) {
+            log.error("WAL分区恢复失败", e.getCause());
+            throw new RuntimeException("WAL分区恢复失败", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("WAL分区并行恢复完成: partitionCount={}, threads={}, costMs={}",
+                targetsByPartition.size(), threads, System.currentTimeMillis() - startTime);
+    }
 
-            log.info("订单簿恢复完成: symbolId={}, walRecordCount={}, lastAppliedWalSeq={}", 
-                    symbolId, walRecords.size(), orderBook.getLastAppliedWalSeq());
-        } catch (Exception e) {
-            log.error("恢复订单簿失败: symbolId={}", symbolId, e);
+    /**
+     * 重放一个分区
+     * 从分区内所有交易对中最小的起始序列号开始流式扫描一次，每条记录分发给所属交易对，
+     * 只重放该交易对Snapshot之后的记录
+     *
+     * @param partition 分区
+     * @param targets   交易对ID → 恢复目标（都属于该分区）
+     */
+    private void replayPartition(int partition, Map<Integer, RecoveryTarget> targets) {
+        long fromWalSeq = Long.MAX_VALUE;
+        for (RecoveryTarget target : targets.values()) {
+            fromWalSeq = Math.min(fromWalSeq, target.fromWalSeq);
+        }
+
+        long startNanos = System.nanoTime();
+        WALReader.ScanResult result = walReader.scan(walPartitioning.partitionPath(partition), fromWalSeq, record -> {
+            RecoveryTarget target = targets.get(record.getOrderMessage().getSymbolId());
+            // 只处理已启用交易对Snapshot之后的WAL记录
+            if (target != null && record.getWalSeq() >= target.fromWalSeq) {
+                replayWALRecord(target.orderBook, record);
+                target.replayedCount++;
+            }
+        });
+        long costNanos = System.nanoTime() - startNanos;
+        checkWalAvailable(partition, targets, result.getFirstAvailableWalSeq());
+        log.info("读取WAL记录: partition={}, symbolCount={}, count={}, fromWalSeq={}, costMs={}",
+                partition, targets.size(), result.getDispatchedCount(), fromWalSeq, costNanos / 1_000_000);
+        // 实测的单条记录重放耗时决定运行期按记录数触发Snapshot的阈值
+        snapshotPolicy.recordReplayRate(result.getDispatchedCount(), costNanos);
+    }
+
+    /**
+     * 确认分区WAL覆盖了交易对所需的起始序列号，缺失时抛出异常（订单簿状态不完整，不能继续启动）
+     *
+     * @param firstAvailableWalSeq 分区WAL中最早可读的walSeq（没有WAL文件时为0）
+     */
+    private void checkWalAvailable(int partition, Map<Integer, RecoveryTarget> targets, long firstAvailableWalSeq) {
+        if (firstAvailableWalSeq <= 0) {
+            return;
+        }
+        List<Integer> missingSymbolIds = new ArrayList<>();
+        long requiredWalSeq = Long.MAX_VALUE;
+        for (RecoveryTarget target : targets.values()) {
+            // walSeq从1开始，fromWalSeq=0与1等价
+            if (target.requireWal && Math.max(target.fromWalSeq, 1) < firstAvailableWalSeq) {
+                missingSymbolIds.add(target.symbolId);
+                requiredWalSeq = Math.min(requiredWalSeq, target.fromWalSeq);
+            }
+        }
+        if (!missingSymbolIds.isEmpty()) {
+            log.error("WAL缺失，无法完整恢复订单簿: partition={}, symbolIds={}, fromWalSeq={}, firstAvailableWalSeq={}",
+                    partition, missingSymbolIds, requiredWalSeq, firstAvailableWalSeq);
+            throw new IllegalStateException("WAL缺失，无法完整恢复订单簿: partition=" + partition
+                    + ", symbolIds=" + missingSymbolIds + ", fromWalSeq=" + requiredWalSeq
+                    + ", firstAvailableWalSeq=" + firstAvailableWalSeq);
         }
     }
 
@@ -193,4 +342,28 @@ public class OrderBookRecoveryService implements CommandLineRunner {
                 .createTime(orderMessage.getTimestamp())
                 .build();
     }
+
+    /**
+     * 单个交易对的恢复目标
+     */
+    private static class RecoveryTarget {
+        private final Integer symbolId;
+        private final OrderBook orderBook;
+        /**
+         * 从该序列号开始重放（Snapshot的lastAppliedWalSeq + 1）
+         */
+        private final long fromWalSeq;
+        /**
+         * 是否要求WAL从fromWalSeq起完整（有Snapshot文件时）
+         */
+        private final boolean requireWal;
+        private long replayedCount;
+
+        RecoveryTarget(Integer symbolId, OrderBook orderBook, long fromWalSeq, boolean requireWal) {
+            this.symbolId = symbolId;
+            this.orderBook = orderBook;
+            this.fromWalSeq = fromWalSeq;
+            this.requireWal = requireWal;
+        }
+    }
 }
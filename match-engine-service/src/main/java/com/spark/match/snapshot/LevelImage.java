@@ -0,0 +1,72 @@
+package com.spark.match.snapshot;
+
+import com.spark.match.orderbook.Order;
+import com.spark.match.orderbook.PriceLevel;
+
+/**
+ * 单个档位的只读副本（档位字段和队列中订单的字段，按队列顺序复制到基本类型数组）
+ * 创建后不再修改，可以被多个{@link OrderBookImage}共享：档位自上次采集以来没有变更时直接复用（见{@link LevelImageCache}）
+ */
+final class LevelImage {
+    final long price;
+    final long totalQuantity;
+    final long[] orderIds;
+    final long[] userIds;
+    final byte[] orderTypes;
+    final byte[] orderSides;
+    final byte[] tifTypes;
+    final long[] quantities;
+    final long[] filledQuantities;
+    final long[] createTimes;
+
+    private LevelImage(long price, long totalQuantity, int orderCount) {
+        this.price = price;
+        this.totalQuantity = totalQuantity;
+        this.orderIds = new long[orderCount];
+        this.userIds = new long[orderCount];
+        this.orderTypes = new byte[orderCount];
+        this.orderSides = new byte[orderCount];
+        this.tifTypes = new byte[orderCount];
+        this.quantities = new long[orderCount];
+        this.filledQuantities = new long[orderCount];
+        this.createTimes = new long[orderCount];
+    }
+
+    /**
+     * 复制档位的当前内容（撮合线程调用）
+     */
+    static LevelImage copyOf(PriceLevel level) {
+        LevelImage image = new LevelImage(level.getPrice(), level.getTotalQuantity(), level.getOrders().size());
+        int pos = 0;
+        for (Order order : level.getOrders()) {
+            image.orderIds[pos] = order.getOrderId();
+            image.userIds[pos] = orLong(order.getUserId());
+            image.orderTypes[pos] = order.getOrderType() != null
+                    ? (byte) order.getOrderType().getCode() : OrderBookImage.NULL_CODE;
+            image.orderSides[pos] = order.getOrderSide() != null
+                    ? (byte) order.getOrderSide().getCode() : OrderBookImage.NULL_CODE;
+            image.tifTypes[pos] = order.getTifType() != null
+                    ? (byte) order.getTifType().getCode() : OrderBookImage.NULL_CODE;
+            image.quantities[pos] = orLong(order.getQuantity());
+            image.filledQuantities[pos] = orLong(order.getFilledQuantity());
+            image.createTimes[pos] = orLong(order.getCreateTime());
+            pos++;
+        }
+        return image;
+    }
+
+    /**
+     * 已被移除的档位（增量中以0个订单表示）
+     */
+    static LevelImage removed(long price) {
+        return new LevelImage(price, 0, 0);
+    }
+
+    int orderCount() {
+        return orderIds.length;
+    }
+
+    private static long orLong(Long value) {
+        return value != null ? value : SnapshotCodec.NULL_LONG;
+    }
+}
@@ -0,0 +1,56 @@
+package com.spark.match.snapshot;
+
+import com.spark.match.orderbook.PriceLevel;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 一个订单簿上次采集的档位副本（按档位对象索引，只由撮合线程访问）
+ * 档位内容的每次变化都会标记为变更档位（见OrderBook#markLevelDirty），两次采集之间没有变更的档位与上次的副本一致，
+ * 全量采集时直接复用，只复制变更过的档位：采集耗时与两次采集之间的变更量成正比，而不是与订单簿大小成正比
+ * （只有本次启动后的第一次全量采集需要复制所有档位）
+ * <p>
+ * 被移除或替换的档位对象不会再被查到；全量采集时整体替换为当前档位的副本，增量采集只更新变更档位
+ */
+public final class LevelImageCache {
+    private Map<PriceLevel, LevelImage> images = new IdentityHashMap<>();
+    // 全量采集中正在构建的缓存（采集结束时替换images）
+    private Map<PriceLevel, LevelImage> next;
+
+    /**
+     * 开始一次全量采集
+     */
+    void beginFull() {
+        next = new IdentityHashMap<>(images.size() * 4 / 3 + 1);
+    }
+
+    /**
+     * 结束全量采集：只保留本次采集到的档位
+     */
+    void endFull() {
+        images = next;
+        next = null;
+    }
+
+    /**
+     * 上次采集的档位副本（没有时返回null；调用方只能在档位自上次采集以来没有变更时复用）
+     */
+    LevelImage get(PriceLevel level) {
+        return images.get(level);
+    }
+
+    /**
+     * 记录本次采集的档位副本
+     */
+    void put(PriceLevel level, LevelImage image) {
+        (next != null ? next : images).put(level, image);
+    }
+
+    /**
+     * 缓存的档位数
+     */
+    public int size() {
+        return images.size();
+    }
+}
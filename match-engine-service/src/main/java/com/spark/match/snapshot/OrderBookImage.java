@@ -0,0 +1,201 @@
+package com.spark.match.snapshot;
+
+import com.spark.common.enums.OrderSide;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 订单簿的只读快照视图（Snapshot屏障处由撮合线程采集）
+ * 每个档位复制为一个只读的{@link LevelImage}（档位和订单的字段复制到基本类型数组），不创建Order/PriceLevel/TreeMap等对象；
+ * 采集完成后与原订单簿不再共享任何可变状态，可交给后台线程序列化
+ * <p>
+ * 传入{@link LevelImageCache}时，全量视图复用上次采集后没有变更的档位副本，撮合线程上只复制变更过的档位，
+ * 采集耗时为O(档位数 + 变更档位的订单数)，不随订单簿的总订单数增长（本次启动后的第一次全量采集仍需复制所有档位）；
+ * 同一订单簿的每次采集都必须使用同一个缓存，否则缓存中的副本会与订单簿不一致
+ * <p>
+ * 档位按先买后卖、各自的价格顺序排列，订单按档位的队列顺序排列，与{@link SnapshotCodec}的写入顺序一致
+ * <p>
+ * 增量视图只包含自上次采集以来变更过的档位（档位的完整内容），已被移除的档位以0个订单表示；
+ * 按基准序列号（上次采集时的lastAppliedWalSeq）应用到上一个Snapshot之上
+ */
+@Getter
+public final class OrderBookImage {
+    /**
+     * 枚举字段缺失的编码
+     */
+    static final byte NULL_CODE = -1;
+
+    private final int symbolId;
+    /**
+     * 是否为增量视图
+     */
+    private final boolean delta;
+    /**
+     * 增量视图的基准：上次采集时的lastAppliedWalSeq（全量视图为-1）
+     */
+    private final long baseWalSeq;
+    /**
+     * 采集时订单簿已应用的WAL序列号（采集在撮合线程上进行，视图与该序列号严格对应）
+     */
+    private final long lastAppliedWalSeq;
+    /**
+     * 上次采集以来的档位变更次数（写入优先级：越活跃越先写）
+     */
+    private final long changeCount;
+    private final int buyLevelCount;
+    private final int sellLevelCount;
+    /**
+     * 档位副本（先买后卖）
+     */
+    @Getter(AccessLevel.NONE)
+    private final LevelImage[] levels;
+    /**
+     * 订单总数
+     */
+    private int orderCount;
+    /**
+     * 本次采集在撮合线程上实际复制的订单数（复用的档位副本不计入）
+     */
+    private int copiedOrderCount;
+    /**
+     * 本次采集在撮合线程上的耗时（纳秒）
+     */
+    private long captureNanos;
+
+    private OrderBookImage(int symbolId, boolean delta, long baseWalSeq, long lastAppliedWalSeq, long changeCount,
+                           int buyLevelCount, int sellLevelCount) {
+        this.symbolId = symbolId;
+        this.delta = delta;
+        this.baseWalSeq = baseWalSeq;
+        this.lastAppliedWalSeq = lastAppliedWalSeq;
+        this.changeCount = changeCount;
+        this.buyLevelCount = buyLevelCount;
+        this.sellLevelCount = sellLevelCount;
+        this.levels = new LevelImage[buyLevelCount + sellLevelCount];
+    }
+
+    /**
+     * 采集订单簿全量视图（不复用档位副本），并清空订单簿的变更档位
+     */
+    public static OrderBookImage capture(OrderBook orderBook) {
+        return capture(orderBook, null);
+    }
+
+    /**
+     * 采集订单簿全量视图，并清空订单簿的变更档位
+     * 必须在撮合线程上调用（或订单簿不会被并发修改时），采集期间订单簿不能被修改
+     *
+     * @param cache 订单簿的档位副本缓存（为null时复制所有档位）
+     */
+    public static OrderBookImage capture(OrderBook orderBook, LevelImageCache cache) {
+        long startTime = System.nanoTime();
+        TreeMap<Long, PriceLevel> buyBook = orderBook.getBuyBook();
+        TreeMap<Long, PriceLevel> sellBook = orderBook.getSellBook();
+        OrderBookImage image = new OrderBookImage(orderBook.getSymbolId(), false, -1, orderBook.getLastAppliedWalSeq(),
+                orderBook.getChangesSinceSnapshot(), buyBook.size(), sellBook.size());
+        if (cache != null) {
+            cache.beginFull();
+        }
+        image.addLevels(buyBook.values(), orderBook.getDirtyPrices(OrderSide.BUY), cache, 0);
+        image.addLevels(sellBook.values(), orderBook.getDirtyPrices(OrderSide.SELL), cache, buyBook.size());
+        if (cache != null) {
+            cache.endFull();
+        }
+        orderBook.markSnapshotCaptured();
+        image.captureNanos = System.nanoTime() - startTime;
+        return image;
+    }
+
+    /**
+     * 采集订单簿增量视图，不更新档位副本缓存
+     */
+    public static OrderBookImage captureDelta(OrderBook orderBook) {
+        return captureDelta(orderBook, null);
+    }
+
+    /**
+     * 采集订单簿增量视图（自上次采集以来变更过的档位），并清空订单簿的变更档位
+     * 调用约束同{@link #capture}；订单簿本次启动后还没有采集过时只能采集全量视图
+     *
+     * @param cache 订单簿的档位副本缓存（变更档位的副本写入缓存，供之后的全量采集复用；可以为null）
+     */
+    public static OrderBookImage captureDelta(OrderBook orderBook, LevelImageCache cache) {
+        if (orderBook.getSnapshotWalSeq() < 0) {
+            throw new IllegalStateException("订单簿还没有采集过Snapshot，不能采集增量: symbolId=" + orderBook.getSymbolId());
+        }
+        long startTime = System.nanoTime();
+        List<Long> buyPrices = dirtyPrices(orderBook.getBuyBook(), orderBook.getDirtyPrices(OrderSide.BUY));
+        List<Long> sellPrices = dirtyPrices(orderBook.getSellBook(), orderBook.getDirtyPrices(OrderSide.SELL));
+        OrderBookImage image = new OrderBookImage(orderBook.getSymbolId(), true, orderBook.getSnapshotWalSeq(),
+                orderBook.getLastAppliedWalSeq(), orderBook.getChangesSinceSnapshot(), buyPrices.size(), sellPrices.size());
+        image.addDirtyLevels(orderBook.getBuyBook(), buyPrices, cache, 0);
+        image.addDirtyLevels(orderBook.getSellBook(), sellPrices, cache, buyPrices.size());
+        orderBook.markSnapshotCaptured();
+        image.captureNanos = System.nanoTime() - startTime;
+        return image;
+    }
+
+    /**
+     * 变更档位的价格（按订单簿的价格顺序）
+     */
+    private static List<Long> dirtyPrices(TreeMap<Long, PriceLevel> side, Set<Long> dirtyPrices) {
+        List<Long> prices = new ArrayList<>(dirtyPrices);
+        prices.sort(side.comparator());
+        return prices;
+    }
+
+    private void addLevels(Collection<PriceLevel> sideLevels, Set<Long> dirtyPrices, LevelImageCache cache, int levelPos) {
+        for (PriceLevel level : sideLevels) {
+            LevelImage levelImage = cache != null && !dirtyPrices.contains(level.getPrice()) ? cache.get(level) : null;
+            if (levelImage == null) {
+                levelImage = copy(level);
+            }
+            if (cache != null) {
+                cache.put(level, levelImage);
+            }
+            add(levelPos++, levelImage);
+        }
+    }
+
+    private void addDirtyLevels(TreeMap<Long, PriceLevel> side, List<Long> prices, LevelImageCache cache, int levelPos) {
+        for (Long price : prices) {
+            PriceLevel level = side.get(price);
+            LevelImage levelImage;
+            if (level == null) {
+                levelImage = LevelImage.removed(price);
+            } else {
+                levelImage = copy(level);
+                if (cache != null) {
+                    cache.put(level, levelImage);
+                }
+            }
+            add(levelPos++, levelImage);
+        }
+    }
+
+    private LevelImage copy(PriceLevel level) {
+        LevelImage levelImage = LevelImage.copyOf(level);
+        copiedOrderCount += levelImage.orderCount();
+        return levelImage;
+    }
+
+    private void add(int levelPos, LevelImage levelImage) {
+        levels[levelPos] = levelImage;
+        orderCount += levelImage.orderCount();
+    }
+
+    /**
+     * 第index个档位的副本（先买后卖）
+     */
+    LevelImage level(int index) {
+        return levels[index];
+    }
+}
@@ -0,0 +1,402 @@
+package com.spark.match.snapshot;
+
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+import com.spark.match.orderbook.Order;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot二进制格式编解码（格式版本2，版本1为JSON格式）
+ * 文件头（28字节）：[int magic "SSNP"][short version][short kind][int symbolId][long lastAppliedWalSeq][long timestamp]
+ * kind为{@link #KIND_FULL}（全量）或{@link #KIND_DELTA}（增量）；增量文件头之后紧跟[long baseWalSeq]，
+ * 即上一个Snapshot（全量或增量）的lastAppliedWalSeq，读取时据此校验增量链是否连续
+ * 买卖两侧（先买后卖，各自按订单簿的价格顺序）：
+ * - [int levelCount]
+ * - 每个价格档位：[long price][long totalQuantity][int orderCount]，随后按队列顺序写入订单：
+ *   [long orderId][long userId][byte orderType][byte orderSide][byte tifType][long quantity][long filledQuantity][long createTime]
+ * 文件尾：[long orderCount][int crc32c]，CRC32C覆盖文件开头到orderCount（含）的所有字节
+ * <p>
+ * 增量文件只包含变更过的档位（档位的完整内容），orderCount为0的档位表示该档位已被移除
+ * <p>
+ * 枚举字段写入code，-1表示null；数值字段为null时写入{@link #NULL_LONG}；订单价格即档位价格，不重复写入。
+ * 写入的数据来自撮合线程采集的{@link OrderBookImage}；写入和读取都经过固定大小的缓冲区逐档位流式处理，边处理边累计CRC32C，内存占用与订单簿大小无关
+ * （读取时只创建订单簿本身的对象）
+ * <p>
+ * JSON格式首字节是'{'，不会与magic冲突，读取器据此识别文件格式
+ */
+public final class SnapshotCodec {
+    /**
+     * 文件头magic："SSNP"
+     */
+    public static final int FILE_MAGIC = 0x53534E50;
+
+    /**
+     * 当前格式版本（版本1为JSON格式）
+     */
+    public static final short FORMAT_VERSION = 2;
+
+    /**
+     * 文件类型：全量Snapshot（引入增量之前的文件该字段为保留字段，值为0）
+     */
+    public static final short KIND_FULL = 0;
+
+    /**
+     * 文件类型：增量Snapshot
+     */
+    public static final short KIND_DELTA = 1;
+
+    /**
+     * 数值字段缺失（null）的哨兵值
+     */
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    /**
+     * 默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * 单条订单的编码长度
+     */
+    private static final int ORDER_SIZE = 43;
+
+    /**
+     * 价格档位头的编码长度
+     */
+    private static final int LEVEL_HEADER_SIZE = 20;
+
+    /**
+     * 枚举字段缺失的编码
+     */
+    private static final byte NULL_CODE = OrderBookImage.NULL_CODE;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * 流式写入订单簿视图（全量视图写全量文件，增量视图写增量文件）
+     *
+     * @param channel    目标通道（调用方负责落盘和关闭）
+     * @param image      撮合线程采集的订单簿视图
+     * @param timestamp  快照时间
+     * @param bufferSize 写缓冲区大小
+     * @return 写入的订单数
+     */
+    public static long write(WritableByteChannel channel, OrderBookImage image, long timestamp,
+                             int bufferSize) throws IOException {
+        Output out = new Output(channel, bufferSize);
+        out.ensure(28);
+        out.buffer.putInt(FILE_MAGIC)
+                .putShort(FORMAT_VERSION)
+                .putShort(image.isDelta() ? KIND_DELTA : KIND_FULL)
+                .putInt(image.getSymbolId())
+                .putLong(image.getLastAppliedWalSeq())
+                .putLong(timestamp);
+        if (image.isDelta()) {
+            out.ensure(8);
+            out.buffer.putLong(image.getBaseWalSeq());
+        }
+        writeSide(out, image, 0, image.getBuyLevelCount());
+        writeSide(out, image, image.getBuyLevelCount(), image.getSellLevelCount());
+        out.ensure(8);
+        out.buffer.putLong(image.getOrderCount());
+        out.finish();
+        return image.getOrderCount();
+    }
+
+    private static void writeSide(Output out, OrderBookImage image, int levelPos, int levelCount) throws IOException {
+        out.ensure(4);
+        out.buffer.putInt(levelCount);
+        for (int index = levelPos; index < levelPos + levelCount; index++) {
+            LevelImage level = image.level(index);
+            int levelOrderCount = level.orderCount();
+            out.ensure(LEVEL_HEADER_SIZE);
+            out.buffer.putLong(level.price)
+                    .putLong(level.totalQuantity)
+                    .putInt(levelOrderCount);
+            for (int order = 0; order < levelOrderCount; order++) {
+                out.ensure(ORDER_SIZE);
+                out.buffer.putLong(level.orderIds[order])
+                        .putLong(level.userIds[order])
+                        .put(level.orderTypes[order])
+                        .put(level.orderSides[order])
+                        .put(level.tifTypes[order])
+                        .putLong(level.quantities[order])
+                        .putLong(level.filledQuantities[order])
+                        .putLong(level.createTimes[order]);
+            }
+        }
+    }
+
+    /**
+     * 流式读取全量Snapshot
+     *
+     * @param channel    源通道（调用方负责关闭）
+     * @param bufferSize 读缓冲区大小
+     * @return Snapshot数据
+     * @throws IOException 文件头不是二进制全量格式、文件不完整或CRC32C校验失败
+     */
+    public static SnapshotWriter.SnapshotData read(ReadableByteChannel channel, int bufferSize) throws IOException {
+        Input in = new Input(channel, bufferSize);
+        Header header = readHeader(in, KIND_FULL);
+
+        OrderBook orderBook = new OrderBook(header.symbolId);
+        orderBook.setLastAppliedWalSeq(header.lastAppliedWalSeq);
+        List<PriceLevel> levels = new ArrayList<>();
+        long orderCount = readLevels(in, header.symbolId, levels);
+        putLevels(orderBook, orderBook.getBuyBook(), levels);
+        levels.clear();
+        orderCount += readLevels(in, header.symbolId, levels);
+        putLevels(orderBook, orderBook.getSellBook(), levels);
+        int checksum = readTrailer(in, header, orderCount);
+        return SnapshotWriter.SnapshotData.builder()
+                .snapshotVersion((int) FORMAT_VERSION)
+                .symbolId(header.symbolId)
+                .lastAppliedWalSeq(header.lastAppliedWalSeq)
+                .orderBook(orderBook)
+                .timestamp(header.timestamp)
+                .checksum(Integer.toUnsignedLong(checksum))
+                .build();
+    }
+
+    /**
+     * 流式读取增量Snapshot（整个文件校验通过后才返回，调用方再应用到订单簿）
+     *
+     * @param channel    源通道（调用方负责关闭）
+     * @param bufferSize 读缓冲区大小
+     * @return 增量数据
+     * @throws IOException 文件头不是二进制增量格式、文件不完整或CRC32C校验失败
+     */
+    public static SnapshotDelta readDelta(ReadableByteChannel channel, int bufferSize) throws IOException {
+        Input in = new Input(channel, bufferSize);
+        Header header = readHeader(in, KIND_DELTA);
+        in.require(8);
+        long baseWalSeq = in.buffer.getLong();
+
+        SnapshotDelta delta = new SnapshotDelta(header.symbolId, baseWalSeq, header.lastAppliedWalSeq, header.timestamp);
+        long orderCount = readLevels(in, header.symbolId, delta.getBuyLevels());
+        orderCount += readLevels(in, header.symbolId, delta.getSellLevels());
+        readTrailer(in, header, orderCount);
+        return delta;
+    }
+
+    /**
+     * 读取文件头，并校验文件类型
+     */
+    private static Header readHeader(Input in, short expectedKind) throws IOException {
+        in.require(28);
+        int magic = in.buffer.getInt();
+        short version = in.buffer.getShort();
+        short kind = in.buffer.getShort();
+        if (magic != FILE_MAGIC || version != FORMAT_VERSION || kind != expectedKind) {
+            throw new IOException("不支持的Snapshot格式: magic=" + Integer.toHexString(magic) + ", version=" + version
+                    + ", kind=" + kind + ", expectedKind=" + expectedKind);
+        }
+        Header header = new Header();
+        header.symbolId = in.buffer.getInt();
+        header.lastAppliedWalSeq = in.buffer.getLong();
+        header.timestamp = in.buffer.getLong();
+        return header;
+    }
+
+    /**
+     * 读取并校验文件尾
+     *
+     * @return 文件的CRC32C
+     */
+    private static int readTrailer(Input in, Header header, long orderCount) throws IOException {
+        in.require(8);
+        long expectedOrderCount = in.buffer.getLong();
+        int checksum = in.checksum();
+        in.require(4);
+        int expectedChecksum = in.buffer.getInt();
+        if (checksum != expectedChecksum || orderCount != expectedOrderCount) {
+            throw new IOException("Snapshot校验失败: symbolId=" + header.symbolId + ", orderCount=" + orderCount
+                    + ", expectedOrderCount=" + expectedOrderCount);
+        }
+        return checksum;
+    }
+
+    /**
+     * 读取一侧的档位（含档位内订单）
+     *
+     * @return 读取的订单数
+     */
+    private static long readLevels(Input in, int symbolId, List<PriceLevel> levels) throws IOException {
+        in.require(4);
+        int levelCount = in.buffer.getInt();
+        long orderCount = 0;
+        for (int i = 0; i < levelCount; i++) {
+            in.require(LEVEL_HEADER_SIZE);
+            long price = in.buffer.getLong();
+            PriceLevel level = new PriceLevel(price);
+            level.setTotalQuantity(in.buffer.getLong());
+            int levelOrderCount = in.buffer.getInt();
+            for (int j = 0; j < levelOrderCount; j++) {
+                in.require(ORDER_SIZE);
+                long orderId = in.buffer.getLong();
+                long userId = in.buffer.getLong();
+                byte orderType = in.buffer.get();
+                byte orderSide = in.buffer.get();
+                byte tifType = in.buffer.get();
+                Order order = Order.builder()
+                        .orderId(orderId)
+                        .userId(toLong(userId))
+                        .symbolId(symbolId)
+                        .orderType(orderType != NULL_CODE ? OrderType.fromCode(orderType) : null)
+                        .orderSide(orderSide != NULL_CODE ? OrderSide.fromCode(orderSide) : null)
+                        .tifType(tifType != NULL_CODE ? TIFType.fromCode(tifType) : null)
+                        .price(price)
+                        .quantity(toLong(in.buffer.getLong()))
+                        .filledQuantity(toLong(in.buffer.getLong()))
+                        .createTime(toLong(in.buffer.getLong()))
+                        .build();
+                level.getOrders().offer(order);
+            }
+            levels.add(level);
+            orderCount += levelOrderCount;
+        }
+        return orderCount;
+    }
+
+    private static void putLevels(OrderBook orderBook, TreeMap<Long, PriceLevel> side, List<PriceLevel> levels) {
+        Map<Long, Order> orderIndex = orderBook.getOrderIndex();
+        for (PriceLevel level : levels) {
+            for (Order order : level.getOrders()) {
+                orderIndex.put(order.getOrderId(), order);
+            }
+            side.put(level.getPrice(), level);
+        }
+    }
+
+    private static Long toLong(long value) {
+        return value != NULL_LONG ? value : null;
+    }
+
+    /**
+     * 文件头字段
+     */
+    private static final class Header {
+        private int symbolId;
+        private long lastAppliedWalSeq;
+        private long timestamp;
+    }
+
+    /**
+     * 带CRC32C的缓冲写出
+     */
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32C crc32c = new CRC32C();
+
+        private Output(WritableByteChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(Math.max(bufferSize, ORDER_SIZE + LEVEL_HEADER_SIZE));
+        }
+
+        /**
+         * 保证缓冲区至少还能写入n个字节（不足时先写出已有内容）
+         */
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                drain(true);
+            }
+        }
+
+        /**
+         * 写出缓冲区内容
+         *
+         * @param updateChecksum 写出的内容是否计入CRC32C
+         */
+        private void drain(boolean updateChecksum) throws IOException {
+            buffer.flip();
+            if (updateChecksum) {
+                crc32c.update(buffer.array(), buffer.arrayOffset(), buffer.limit());
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * 写出剩余内容和文件尾的CRC32C
+         */
+        private void finish() throws IOException {
+            drain(true);
+            buffer.putInt((int) crc32c.getValue());
+            drain(false);
+        }
+    }
+
+    /**
+     * 带CRC32C的缓冲读入（CRC32C累计已消费的字节）
+     */
+    private static final class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32C crc32c = new CRC32C();
+
+        private Input(ReadableByteChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(Math.max(bufferSize, ORDER_SIZE + LEVEL_HEADER_SIZE));
+            this.buffer.flip();
+        }
+
+        /**
+         * 保证缓冲区中至少有n个未读字节，已消费的字节计入CRC32C后丢弃
+         *
+         * @throws IOException 文件在此之前结束（不完整的Snapshot）
+         */
+        private void require(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            consume();
+            buffer.compact();
+            while (buffer.position() < n) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Snapshot文件不完整");
+                }
+            }
+            // 尽量读满缓冲区，减少系统调用
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer);
+                if (read <= 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * 已消费字节计入CRC32C
+         */
+        private void consume() {
+            crc32c.update(buffer.array(), buffer.arrayOffset(), buffer.position());
+        }
+
+        /**
+         * 到当前读取位置为止的CRC32C
+         */
+        private int checksum() {
+            consume();
+            buffer.compact().flip();
+            return (int) crc32c.getValue();
+        }
+    }
+}
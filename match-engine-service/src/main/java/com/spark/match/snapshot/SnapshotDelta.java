@@ -0,0 +1,65 @@
+package com.spark.match.snapshot;
+
+import com.spark.match.orderbook.Order;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 增量Snapshot（见{@link SnapshotCodec#readDelta}）
+ * 包含自基准Snapshot以来变更过的档位的完整内容，订单数为0的档位表示该档位已被移除
+ */
+@Getter
+public final class SnapshotDelta {
+    private final int symbolId;
+    /**
+     * 基准：上一个Snapshot（全量或增量）的lastAppliedWalSeq
+     */
+    private final long baseWalSeq;
+    private final long lastAppliedWalSeq;
+    private final long timestamp;
+    private final List<PriceLevel> buyLevels = new ArrayList<>();
+    private final List<PriceLevel> sellLevels = new ArrayList<>();
+
+    SnapshotDelta(int symbolId, long baseWalSeq, long lastAppliedWalSeq, long timestamp) {
+        this.symbolId = symbolId;
+        this.baseWalSeq = baseWalSeq;
+        this.lastAppliedWalSeq = lastAppliedWalSeq;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 应用到订单簿：用增量中的档位替换订单簿中的同价档位（空档位则移除），并推进lastAppliedWalSeq
+     *
+     * @param orderBook 已恢复到baseWalSeq的订单簿
+     */
+    public void applyTo(OrderBook orderBook) {
+        if (orderBook.getLastAppliedWalSeq() != baseWalSeq) {
+            throw new IllegalStateException("增量Snapshot与订单簿不连续: symbolId=" + symbolId
+                    + ", baseWalSeq=" + baseWalSeq + ", lastAppliedWalSeq=" + orderBook.getLastAppliedWalSeq());
+        }
+        applyLevels(orderBook, orderBook.getBuyBook(), buyLevels);
+        applyLevels(orderBook, orderBook.getSellBook(), sellLevels);
+        orderBook.setLastAppliedWalSeq(lastAppliedWalSeq);
+    }
+
+    private static void applyLevels(OrderBook orderBook, TreeMap<Long, PriceLevel> side, List<PriceLevel> levels) {
+        Map<Long, Order> orderIndex = orderBook.getOrderIndex();
+        for (PriceLevel level : levels) {
+            PriceLevel previous = level.isEmpty() ? side.remove(level.getPrice()) : side.put(level.getPrice(), level);
+            if (previous != null) {
+                for (Order order : previous.getOrders()) {
+                    orderIndex.remove(order.getOrderId());
+                }
+            }
+            for (Order order : level.getOrders()) {
+                orderIndex.put(order.getOrderId(), order);
+            }
+        }
+    }
+}
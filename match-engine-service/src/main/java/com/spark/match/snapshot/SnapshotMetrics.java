@@ -0,0 +1,91 @@
+package com.spark.match.snapshot;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot写入指标
+ * 通过 /actuator/metrics 暴露：
+ * - snapshot.capture: 撮合线程采集视图的耗时和次数（kind=full/delta，采集期间撮合暂停）
+ * - snapshot.capture.copied.orders: 采集时实际复制的订单数（kind=full/delta，复用的档位副本不计入）
+ * - snapshot.write: 写入耗时和次数（kind=full/delta，含序列化、分段刷盘、限速等待和最终fsync）
+ * - snapshot.write.bytes: 写入的字节数（kind=full/delta）
+ * - snapshot.queue.depth: 等待写入的视图数
+ * - snapshot.queue.wait: 视图从撮合线程提交到开始写入的排队时间
+ * - snapshot.writers.active: 正在写入的线程数
+ * - snapshot.rejected: 写入队列已满被丢弃的Snapshot数（对应交易对下一次写全量检查点）
+ * - snapshot.throttle.wait: 写入限速的等待时间和次数
+ * <p>
+ * 指标值均在采集时从写入器的计数器读取
+ */
+@Component
+public class SnapshotMetrics implements MeterBinder {
+    @Autowired
+    private SnapshotWriter snapshotWriter;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindWrite(registry, "full", snapshotWriter.getWriteStats(false));
+        bindWrite(registry, "delta", snapshotWriter.getWriteStats(true));
+        bindCapture(registry, "full", snapshotWriter.getCaptureStats(false));
+        bindCapture(registry, "delta", snapshotWriter.getCaptureStats(true));
+
+        Gauge.builder("snapshot.queue.depth", snapshotWriter, SnapshotWriter::getQueueDepth)
+                .description("等待写入的Snapshot视图数")
+                .register(registry);
+        FunctionTimer.builder("snapshot.queue.wait", snapshotWriter,
+                        SnapshotWriter::getQueueWaitCount,
+                        SnapshotWriter::getQueueWaitNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("Snapshot视图从提交到开始写入的排队时间")
+                .register(registry);
+        Gauge.builder("snapshot.writers.active", snapshotWriter, SnapshotWriter::getActiveWriters)
+                .description("正在写入Snapshot的线程数")
+                .register(registry);
+        FunctionCounter.builder("snapshot.rejected", snapshotWriter, SnapshotWriter::getRejectedCount)
+                .description("写入队列已满被丢弃的Snapshot数")
+                .register(registry);
+        FunctionTimer.builder("snapshot.throttle.wait", snapshotWriter,
+                        SnapshotWriter::getThrottleCount,
+                        SnapshotWriter::getThrottleNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("Snapshot写入限速的等待时间")
+                .register(registry);
+    }
+
+    private void bindWrite(MeterRegistry registry, String kind, SnapshotWriter.WriteStats stats) {
+        FunctionTimer.builder("snapshot.write", stats,
+                        SnapshotWriter.WriteStats::getCount,
+                        SnapshotWriter.WriteStats::getMillis,
+                        TimeUnit.MILLISECONDS)
+                .description("Snapshot写入耗时")
+                .tag("kind", kind)
+                .register(registry);
+        FunctionCounter.builder("snapshot.write.bytes", stats, SnapshotWriter.WriteStats::getBytes)
+                .description("Snapshot写入字节数")
+                .tag("kind", kind)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private void bindCapture(MeterRegistry registry, String kind, SnapshotWriter.CaptureStats stats) {
+        FunctionTimer.builder("snapshot.capture", stats,
+                        SnapshotWriter.CaptureStats::getCount,
+                        SnapshotWriter.CaptureStats::getNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("撮合线程采集Snapshot视图的耗时")
+                .tag("kind", kind)
+                .register(registry);
+        FunctionCounter.builder("snapshot.capture.copied.orders", stats, SnapshotWriter.CaptureStats::getCopiedOrders)
+                .description("采集Snapshot视图时复制的订单数")
+                .tag("kind", kind)
+                .register(registry);
+    }
+}
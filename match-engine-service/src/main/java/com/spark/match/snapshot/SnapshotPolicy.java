@@ -0,0 +1,127 @@
+package com.spark.match.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按交易对的自适应Snapshot策略
+ * 目标是直接约束每个交易对的最坏恢复时间（Snapshot之后需要重放的WAL）：
+ * - 记录数触发：交易对自上次Snapshot以来应用的WAL记录数达到阈值时，撮合线程只标记该交易对到期（{@link #markDue}），
+ *   由SnapshotScheduler发布Snapshot屏障，撮合线程处理到屏障时采集（采集不在订单事件的处理中进行）。
+ *   阈值取max-wal-records与"目标重放时间 / 单条记录重放耗时"中的较小者，
+ *   单条记录重放耗时初始为配置值，启动恢复后按实测的重放速率更新
+ * - 最长间隔兜底：距上次采集超过interval的交易对由SnapshotScheduler发布Snapshot屏障（没有变化的订单簿在屏障处跳过）
+ * 活跃交易对按记录数频繁生成（增量）Snapshot，空闲交易对只在兜底间隔检查一次
+ */
+@Slf4j
+@Component
+public class SnapshotPolicy {
+    @Value("${snapshot.interval:300000}")
+    private long maxIntervalMillis; // 最长Snapshot间隔（毫秒）
+    @Value("${snapshot.max-wal-records:100000}")
+    private long maxWalRecords; // 交易对自上次Snapshot以来最多应用的WAL记录数
+    @Value("${snapshot.target-replay-ms:2000}")
+    private long targetReplayMillis; // 单个交易对的目标重放时间（毫秒），不大于0表示只按记录数触发
+    @Value("${snapshot.replay-nanos-per-record:20000}")
+    private long replayNanosPerRecord; // 单条WAL记录重放耗时的初始估计（纳秒）
+
+    /**
+     * 记录数触发阈值（撮合线程每个事件读取一次）
+     */
+    private volatile long recordThreshold;
+
+    // 交易对ID → 上次采集（或在屏障处确认无变化）的时间
+    private final Map<Integer, Long> lastCaptureMillis = new ConcurrentHashMap<>();
+    // 已发布、撮合线程还未处理的Snapshot屏障（避免积压时重复发布）
+    private final Set<Integer> pendingBarriers = ConcurrentHashMap.newKeySet();
+    // 记录数已达到阈值、等待调度器发布屏障的交易对
+    private final Set<Integer> dueSymbols = ConcurrentHashMap.newKeySet();
+
+    @jakarta.annotation.PostConstruct
+    public void init() {
+        updateRecordThreshold();
+        log.info("Snapshot策略初始化: maxIntervalMillis={}, maxWalRecords={}, targetReplayMillis={}, replayNanosPerRecord={}, recordThreshold={}",
+                maxIntervalMillis, maxWalRecords, targetReplayMillis, replayNanosPerRecord, recordThreshold);
+    }
+
+    /**
+     * 记录数触发阈值
+     */
+    public long getRecordThreshold() {
+        return recordThreshold;
+    }
+
+    /**
+     * 按实测的重放速率更新单条记录重放耗时（恢复服务在重放完成后调用）
+     *
+     * @param records 重放的记录数（记录太少时不足以估计，忽略）
+     * @param nanos   重放耗时
+     */
+    public void recordReplayRate(long records, long nanos) {
+        if (records < 1000 || nanos <= 0) {
+            return;
+        }
+        replayNanosPerRecord = Math.max(1, nanos / records);
+        updateRecordThreshold();
+        log.info("按实测重放速率更新Snapshot记录数阈值: records={}, costMs={}, replayNanosPerRecord={}, recordThreshold={}",
+                records, nanos / 1_000_000, replayNanosPerRecord, recordThreshold);
+    }
+
+    private void updateRecordThreshold() {
+        long threshold = maxWalRecords > 0 ? maxWalRecords : Long.MAX_VALUE;
+        if (targetReplayMillis > 0 && replayNanosPerRecord > 0) {
+            threshold = Math.min(threshold, Math.max(1, targetReplayMillis * 1_000_000 / replayNanosPerRecord));
+        }
+        recordThreshold = threshold;
+    }
+
+    /**
+     * 距上次采集是否已超过最长间隔（本次启动后还没有采集过的交易对总是到期）
+     */
+    public boolean isIntervalDue(Integer symbolId, long nowMillis) {
+        Long last = lastCaptureMillis.get(symbolId);
+        return last == null || nowMillis - last >= maxIntervalMillis;
+    }
+
+    /**
+     * 交易对的记录数已达到阈值（撮合线程调用，每次采集之间最多一次）
+     */
+    public void markDue(Integer symbolId) {
+        dueSymbols.add(symbolId);
+    }
+
+    /**
+     * 记录数已达到阈值、等待发布屏障的交易对（调度器遍历，屏障发布后移除）
+     */
+    public Set<Integer> getDueSymbols() {
+        return dueSymbols;
+    }
+
+    /**
+     * 标记屏障已发布
+     *
+     * @return false表示该交易对已有未处理的屏障
+     */
+    public boolean markBarrierPending(Integer symbolId) {
+        return pendingBarriers.add(symbolId);
+    }
+
+    /**
+     * 屏障未能发布或已被撮合线程处理
+     */
+    public void clearBarrierPending(Integer symbolId) {
+        pendingBarriers.remove(symbolId);
+    }
+
+    /**
+     * 撮合线程已在该交易对上采集Snapshot，或在屏障处确认订单簿没有变化
+     */
+    public void markChecked(Integer symbolId, long nowMillis) {
+        lastCaptureMillis.put(symbolId, nowMillis);
+    }
+}
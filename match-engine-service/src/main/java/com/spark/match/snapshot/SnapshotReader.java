@@ -9,15 +9,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Comparator;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.stream.Stream;
 
 /**
  * Snapshot读取器
+ * 按文件开头识别格式：二进制格式（{@link SnapshotCodec}）流式读取并校验CRC32C，不整体读入内存；
+ * 旧版本的JSON格式整体读取，按旧checksum校验
  */
 @Slf4j
 @Component
@@ -27,68 +31,171 @@ public class SnapshotReader {
     @Value("${snapshot.instance-id:${wal.instance-id:default}}")
     private String instanceId;
     @Autowired
-    private ObjectMapper objectMapper;
+    private ObjectMapper objectMapper; // 旧JSON格式Snapshot解析使用
+    @Value("${snapshot.buffer-size:262144}")
+    private int bufferSize; // 流式读取缓冲区大小
 
     /**
      * 读取最新的Snapshot
+     * 从最新的全量检查点开始，按写入顺序（文件序号）依次应用其后的增量Snapshot；
+     * 增量损坏或与前一个Snapshot不连续时停在此前的状态（之后的变更由WAL重放补齐）。
+     * 全量检查点损坏时回退到前一个保留的检查点（retained-checkpoints）及其增量链，
+     * 恢复需要从更早的walSeq重放WAL（WAL已被归档淘汰时由恢复服务报错）
      *
      * @param symbolId 交易对ID
-     * @return Snapshot数据（包含OrderBook和lastAppliedWalSeq）
+     * @return Snapshot数据（包含OrderBook和lastAppliedWalSeq），没有Snapshot文件或所有检查点都无法读取时返回null
      */
     public SnapshotWriter.SnapshotData readLatestSnapshot(Integer symbolId) {
         try {
-            Path snapshotPath = Paths.get(basePath, instanceId);
-            if (!Files.exists(snapshotPath)) {
-                log.info("Snapshot路径不存在: {}", snapshotPath);
+            List<Path> snapshotFiles = listSnapshotFiles(symbolId);
+            if (snapshotFiles.isEmpty()) {
+                log.info("未找到Snapshot文件: symbolId={}", symbolId);
                 return null;
             }
 
-            // 获取最新的Snapshot文件
-            List<Path> snapshotFiles = Files.list(snapshotPath)
-                    .filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().contains("snapshot-" + instanceId + "-" + symbolId))
-                    .sorted(Comparator.comparing((Path p) -> {
-                        try {
-                            return Files.getLastModifiedTime(p).toMillis();
-                        } catch (IOException e) {
-                            return 0L;
-                        }
-                    }).reversed())
-                    .toList();
+            for (int checkpoint = snapshotFiles.size() - 1; checkpoint >= 0; checkpoint--) {
+                Path checkpointFile = snapshotFiles.get(checkpoint);
+                if (!SnapshotWriter.isFullSnapshotFile(checkpointFile)) {
+                    continue;
+                }
+                long startTime = System.currentTimeMillis();
+                SnapshotWriter.SnapshotData snapshotData = isBinaryFormat(checkpointFile)
+                        ? readBinarySnapshot(checkpointFile, symbolId)
+                        : readJsonSnapshot(checkpointFile, symbolId);
+                if (snapshotData == null) {
+                    log.error("全量检查点无法读取，回退到前一个检查点: symbolId={}, fileName={}",
+                            symbolId, checkpointFile.getFileName());
+                    continue;
+                }
+                int deltaCount = applyDeltas(snapshotData, snapshotFiles.subList(checkpoint + 1, snapshotFiles.size()), symbolId);
 
-            if (snapshotFiles.isEmpty()) {
-                log.info("未找到Snapshot文件: symbolId={}", symbolId);
-                return null;
+                log.info("读取Snapshot成功: fileName={}, symbolId={}, deltaCount={}, lastAppliedWalSeq={}, snapshotVersion={}, costMs={}",
+                        checkpointFile.getFileName(), symbolId, deltaCount, snapshotData.getLastAppliedWalSeq(),
+                        snapshotData.getSnapshotVersion(), System.currentTimeMillis() - startTime);
+                return snapshotData;
             }
+            log.error("没有可读取的全量检查点: symbolId={}, fileCount={}", symbolId, snapshotFiles.size());
+            return null;
+        } catch (Exception e) {
+            log.error("读取Snapshot失败: symbolId={}", symbolId, e);
+            return null;
+        }
+    }
 
-            Path latestSnapshot = snapshotFiles.get(0);
-            String snapshotJson = new String(Files.readAllBytes(latestSnapshot), "UTF-8");
-            SnapshotWriter.SnapshotData snapshotData;
-            try {
-                snapshotData = objectMapper.readValue(snapshotJson, SnapshotWriter.SnapshotData.class);
-            } catch (JsonProcessingException e) {
-                log.error("Snapshot反序列化失败: symbolId={}, fileName={}", symbolId, latestSnapshot.getFileName(), e);
-                return null;
+    /**
+     * 是否存在该交易对的Snapshot文件（不论能否读取）
+     * 存在文件说明该交易对曾写入Snapshot，其之前的WAL可能已被归档，恢复时不能假定WAL从头完整
+     */
+    public boolean hasSnapshotFiles(Integer symbolId) {
+        try {
+            return !listSnapshotFiles(symbolId).isEmpty();
+        } catch (IOException e) {
+            log.error("读取Snapshot目录失败: symbolId={}", symbolId, e);
+            return true;
+        }
+    }
+
+    /**
+     * 交易对的Snapshot文件（按写入顺序，旧到新）
+     */
+    private List<Path> listSnapshotFiles(Integer symbolId) throws IOException {
+        Path snapshotPath = Paths.get(basePath, instanceId);
+        if (!Files.exists(snapshotPath)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(snapshotPath)) {
+            return SnapshotWriter.sortByWriteOrder(paths
+                    .filter(Files::isRegularFile)
+                    .filter(p -> SnapshotWriter.isSnapshotFile(p, instanceId, symbolId))
+                    .toList(), instanceId, symbolId);
+        }
+    }
+
+    /**
+     * 按顺序把全量检查点之后的增量Snapshot应用到订单簿
+     * 之后的全量检查点（回退时跳过的损坏检查点，或与增量链末尾序列号相同的检查点）跳过，
+     * 其后的增量按基准序列号接在当前状态之后
+     *
+     * @return 成功应用的增量数
+     */
+    private int applyDeltas(SnapshotWriter.SnapshotData snapshotData, List<Path> deltaFiles, Integer symbolId) {
+        OrderBook orderBook = snapshotData.getOrderBook();
+        // 旧JSON格式的订单簿字段与Snapshot头可能不一致，以Snapshot头为准
+        orderBook.setLastAppliedWalSeq(snapshotData.getLastAppliedWalSeq());
+        int applied = 0;
+        for (Path deltaFile : deltaFiles) {
+            if (SnapshotWriter.isFullSnapshotFile(deltaFile)) {
+                continue;
+            }
+            SnapshotDelta delta;
+            try (FileChannel channel = FileChannel.open(deltaFile, StandardOpenOption.READ)) {
+                delta = SnapshotCodec.readDelta(channel, bufferSize);
+            } catch (IOException | RuntimeException e) {
+                log.error("增量Snapshot读取或校验失败，停止应用后续增量: symbolId={}, fileName={}",
+                        symbolId, deltaFile.getFileName(), e);
+                break;
             }
+            if (delta.getBaseWalSeq() != orderBook.getLastAppliedWalSeq()) {
+                log.error("增量Snapshot与前一个Snapshot不连续，停止应用后续增量: symbolId={}, fileName={}, baseWalSeq={}, lastAppliedWalSeq={}",
+                        symbolId, deltaFile.getFileName(), delta.getBaseWalSeq(), orderBook.getLastAppliedWalSeq());
+                break;
+            }
+            delta.applyTo(orderBook);
+            snapshotData.setLastAppliedWalSeq(delta.getLastAppliedWalSeq());
+            snapshotData.setTimestamp(delta.getTimestamp());
+            applied++;
+        }
+        return applied;
+    }
 
-            // 验证checksum
-            if (!validateChecksum(snapshotData, snapshotJson)) {
-                log.error("Snapshot校验和验证失败: symbolId={}, fileName={}", symbolId, latestSnapshot.getFileName());
-                return null;
+    /**
+     * 文件开头是否为二进制格式的magic
+     */
+    private boolean isBinaryFormat(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // 读满4字节
             }
+            return !magic.hasRemaining() && magic.getInt(0) == SnapshotCodec.FILE_MAGIC;
+        }
+    }
+
+    /**
+     * 流式读取二进制格式Snapshot，校验失败返回null
+     */
+    private SnapshotWriter.SnapshotData readBinarySnapshot(Path snapshotFile, Integer symbolId) {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            return SnapshotCodec.read(channel, bufferSize);
+        } catch (IOException | RuntimeException e) {
+            log.error("Snapshot读取或校验失败: symbolId={}, fileName={}", symbolId, snapshotFile.getFileName(), e);
+            return null;
+        }
+    }
 
-            log.info("读取Snapshot成功: fileName={}, symbolId={}, lastAppliedWalSeq={}",
-                    latestSnapshot.getFileName(), symbolId, snapshotData.getLastAppliedWalSeq());
+    /**
+     * 读取旧JSON格式Snapshot（整体读入后反序列化），校验失败返回null
+     */
+    private SnapshotWriter.SnapshotData readJsonSnapshot(Path snapshotFile, Integer symbolId) throws IOException {
+        String snapshotJson = new String(Files.readAllBytes(snapshotFile), "UTF-8");
+        SnapshotWriter.SnapshotData snapshotData;
+        try {
+            snapshotData = objectMapper.readValue(snapshotJson, SnapshotWriter.SnapshotData.class);
+        } catch (JsonProcessingException e) {
+            log.error("Snapshot反序列化失败: symbolId={}, fileName={}", symbolId, snapshotFile.getFileName(), e);
+            return null;
+        }
 
-            return snapshotData;
-        } catch (Exception e) {
-            log.error("读取Snapshot失败: symbolId={}", symbolId, e);
+        // 验证checksum
+        if (!validateChecksum(snapshotData, snapshotJson)) {
+            log.error("Snapshot校验和验证失败: symbolId={}, fileName={}", symbolId, snapshotFile.getFileName());
             return null;
         }
+        return snapshotData;
     }
 
     /**
-     * 验证校验和
+     * 验证校验和（旧JSON格式）
      */
     private boolean validateChecksum(SnapshotWriter.SnapshotData snapshotData, String snapshotJson) {
         try {
@@ -1,18 +1,30 @@
 package com.spark.match.snapshot;
 
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import com.spark.match.disruptor.OrderEvent;
 import com.spark.match.orderbook.OrderBook;
 import com.spark.match.orderbook.OrderBookManager;
-import com.spark.match.wal.WALWriter;
+import com.spark.match.wal.WALArchiver;
+import com.spark.match.wal.WALPartitioning;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Snapshot调度器
- * 定期创建Snapshot（每5分钟）
+ * 为记录数已达到阈值的交易对（撮合线程标记，见{@link SnapshotPolicy#markDue}）和超过最长间隔仍未采集的交易对发布屏障，
+ * 并按快照水位触发WAL保留和归档（WAL分区时按分区计算水位）
+ * <p>
+ * 调度线程不直接读取订单簿（订单簿的TreeMap只能由撮合线程访问），而是为交易对向输入RingBuffer发布
+ * Snapshot屏障（{@link OrderEvent#MESSAGE_TYPE_SNAPSHOT}），由撮合线程按顺序处理到屏障时采集视图；
+ * 每个交易对一个屏障，采集开销分散在订单事件之间
  */
 @Slf4j
 @Component
@@ -21,28 +33,97 @@ public class SnapshotScheduler {
     private OrderBookManager orderBookManager;
     @Autowired
     private SnapshotWriter snapshotWriter;
+    @Autowired
+    private WALArchiver walArchiver;
+    @Autowired
+    private WALPartitioning walPartitioning;
+    @Autowired
+    private RingBuffer<OrderEvent> ringBuffer;
+    @Autowired
+    private SnapshotPolicy snapshotPolicy;
+
+    /**
+     * Snapshot屏障填充（控制事件只使用symbolId和publishNanos）
+     */
+    private static final EventTranslatorOneArg<OrderEvent, Integer> SNAPSHOT_BARRIER = (event, sequence, symbolId) -> {
+        event.clear();
+        event.setMessageType(OrderEvent.MESSAGE_TYPE_SNAPSHOT);
+        event.setSymbolId(symbolId);
+        event.setPublishNanos(System.nanoTime());
+    };
+
+    /**
+     * 为记录数已达到阈值的交易对发布Snapshot屏障（默认每50毫秒检查一次，只遍历已到期的交易对）
+     * 已有未处理屏障的交易对不重复发布（该屏障处会采集）；RingBuffer已满时不等待，剩余交易对保留到下一轮
+     */
+    @Scheduled(fixedDelayString = "${snapshot.due-check-interval:50}")
+    public void publishDueBarriers() {
+        try {
+            int published = 0;
+            for (Integer symbolId : snapshotPolicy.getDueSymbols()) {
+                if (!snapshotPolicy.markBarrierPending(symbolId)) {
+                    snapshotPolicy.getDueSymbols().remove(symbolId);
+                    continue;
+                }
+                if (!ringBuffer.tryPublishEvent(SNAPSHOT_BARRIER, symbolId)) {
+                    snapshotPolicy.clearBarrierPending(symbolId);
+                    log.info("[Snapshot耗时] RingBuffer已满，记录数到期的Snapshot屏障留到下一轮: published={}", published);
+                    break;
+                }
+                snapshotPolicy.getDueSymbols().remove(symbolId);
+                published++;
+            }
+            if (published > 0) {
+                log.debug("[Snapshot耗时] 记录数到期的Snapshot屏障发布完成: published={}", published);
+            }
+        } catch (Exception e) {
+            log.error("[Snapshot耗时] 发布记录数到期的Snapshot屏障失败", e);
+        }
+    }
 
     /**
-     * 定期创建Snapshot（每5分钟）
-     * 关键：使用每个订单簿的lastAppliedWalSeq，而不是全局的currentWalSeq
+     * 定期检查各交易对的Snapshot间隔（默认每秒），为超过最长间隔的交易对发布Snapshot屏障
+     * 关键：使用每个订单簿的lastAppliedWalSeq，而不是全局的currentWalSeq（采集视图时由撮合线程读取）
+     * 已有未处理屏障的交易对不重复发布；RingBuffer已满时不等待，本轮跳过剩余交易对（下一轮再检查），调度线程不阻塞在槽位上
      */
-    @Scheduled(fixedRate = 300000) // 5分钟 = 300000毫秒
+    @Scheduled(fixedDelayString = "${snapshot.check-interval:1000}")
     public void createSnapshots() {
         long startTime = System.currentTimeMillis();
         try {
             Map<Integer, OrderBook> orderBooks = orderBookManager.getAllOrderBooks();
 
-            log.info("[Snapshot耗时] 开始创建Snapshot: orderBookCount={}", orderBooks.size());
+            int published = 0;
+            for (Integer symbolId : orderBooks.keySet()) {
+                if (!snapshotPolicy.isIntervalDue(symbolId, startTime) || !snapshotPolicy.markBarrierPending(symbolId)) {
+                    continue;
+                }
+                if (!ringBuffer.tryPublishEvent(SNAPSHOT_BARRIER, symbolId)) {
+                    snapshotPolicy.clearBarrierPending(symbolId);
+                    log.info("[Snapshot耗时] RingBuffer已满，本轮跳过剩余交易对: published={}, orderBookCount={}",
+                            published, orderBooks.size());
+                    break;
+                }
+                published++;
+            }
 
-            for (OrderBook orderBook : orderBooks.values()) {
-                // 使用订单簿的lastAppliedWalSeq，而不是全局的currentWalSeq
-                // 因为不同订单簿可能应用到了不同的WAL序列号
-                long lastAppliedWalSeq = orderBook.getLastAppliedWalSeq();
-                snapshotWriter.createSnapshot(orderBook, lastAppliedWalSeq);
+            if (published > 0) {
+                long totalDuration = System.currentTimeMillis() - startTime;
+                log.info("[Snapshot耗时] 最长间隔兜底的Snapshot屏障发布完成: orderBookCount={}, published={}, 总耗时={}ms",
+                        orderBooks.size(), published, totalDuration);
             }
 
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("[Snapshot耗时] Snapshot批量创建完成: orderBookCount={}, 总耗时={}ms", orderBooks.size(), totalDuration);
+            // 分区内所有交易对的Snapshot都已覆盖的WAL不再被恢复需要，交给归档线程处理
+            // （水位只来自已落盘的Snapshot，后台写入中的Snapshot在之后的检查中计入）
+            Map<Integer, List<Integer>> symbolsByPartition = new TreeMap<>();
+            for (Integer symbolId : orderBooks.keySet()) {
+                symbolsByPartition.computeIfAbsent(walPartitioning.partitionOf(symbolId), p -> new ArrayList<>()).add(symbolId);
+            }
+            for (Map.Entry<Integer, List<Integer>> entry : symbolsByPartition.entrySet()) {
+                long watermark = snapshotWriter.getSnapshotWatermark(entry.getValue());
+                if (watermark > 0) {
+                    walArchiver.requestRetention(entry.getKey(), watermark);
+                }
+            }
         } catch (Exception e) {
             long totalDuration = System.currentTimeMillis() - startTime;
             log.error("[Snapshot耗时] 创建Snapshot失败: 总耗时={}ms", totalDuration, e);
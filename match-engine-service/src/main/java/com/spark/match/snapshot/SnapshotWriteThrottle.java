@@ -0,0 +1,123 @@
+package com.spark.match.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Snapshot磁盘写入限速（所有写入线程共享）
+ * - 按字节/秒限速：每次写出前预约时间片，超出速率时写入线程等待，Snapshot写入不会占满磁盘带宽
+ * - 按字节数定期刷盘：每写出syncIntervalBytes字节调用一次force(false)，
+ *   脏页分摊到整个写入过程，不会在最后一次fsync时集中刷出，和WAL的fsync争抢磁盘队列
+ */
+final class SnapshotWriteThrottle {
+    /**
+     * 写入速率上限（字节/秒），不大于0表示不限速
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * 定期刷盘间隔（字节），不大于0表示只在文件写完后刷盘
+     */
+    private final long syncIntervalBytes;
+
+    /**
+     * 下一次写出可以开始的时间（纳秒）
+     */
+    private long nextFreeNanos = System.nanoTime();
+
+    private final LongAdder throttleCount = new LongAdder();
+    private final LongAdder throttleNanos = new LongAdder();
+
+    SnapshotWriteThrottle(long bytesPerSecond, long syncIntervalBytes) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.syncIntervalBytes = syncIntervalBytes;
+    }
+
+    /**
+     * 包装Snapshot文件通道：写出经过限速，并按间隔刷盘
+     */
+    WritableByteChannel wrap(FileChannel channel) {
+        return new ThrottledChannel(channel);
+    }
+
+    /**
+     * 预约写出bytes字节的时间片，必要时等待
+     */
+    private void acquire(long bytes) throws IOException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(nextFreeNanos, now);
+            nextFreeNanos = start + bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+            waitNanos = start - now;
+        }
+        if (waitNanos <= 0) {
+            return;
+        }
+        throttleCount.increment();
+        throttleNanos.add(waitNanos);
+        long deadline = System.nanoTime() + waitNanos;
+        for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new IOException("Snapshot写入限速等待被中断");
+            }
+        }
+    }
+
+    /**
+     * 限速等待次数
+     */
+    long getThrottleCount() {
+        return throttleCount.sum();
+    }
+
+    /**
+     * 限速累计等待时间（纳秒）
+     */
+    long getThrottleNanos() {
+        return throttleNanos.sum();
+    }
+
+    /**
+     * 限速并定期刷盘的文件通道（关闭由调用方对原通道进行）
+     */
+    private final class ThrottledChannel implements WritableByteChannel {
+        private final FileChannel channel;
+        private long unsyncedBytes;
+
+        private ThrottledChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            acquire(src.remaining());
+            int written = channel.write(src);
+            unsyncedBytes += written;
+            if (syncIntervalBytes > 0 && unsyncedBytes >= syncIntervalBytes) {
+                channel.force(false);
+                unsyncedBytes = 0;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,45 +1,172 @@
 package com.spark.match.snapshot;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spark.match.orderbook.OrderBook;
+import com.spark.match.wal.WALFiles;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 /**
  * Snapshot写入器
- * 异步创建Snapshot，不阻塞撮合线程
+ * 撮合线程只采集订单簿视图（{@link OrderBookImage}）并提交，序列化和落盘在专用的写入线程池中进行，不阻塞撮合线程：
+ * - 交易对按symbolId固定分配到一个写入线程（writer-threads），同一交易对的全量和增量严格按提交顺序、串行写入
+ *   （增量必须接在链上前一个文件之后）；线程内按交易对排优先级：只比较各交易对最早的待写视图，
+ *   上次Snapshot以来变更越多的交易对越先写（活跃交易对的Snapshot越晚，恢复时需要重放的WAL越多）
+ * - 等待写入的视图总数有界（queue-capacity），满时拒绝，该交易对下一次写全量检查点
+ * - 写入经过共享的限速器（max-write-bytes-per-second），并按sync-interval-bytes分段刷盘，
+ *   避免Snapshot集中写入和刷盘拉高WAL的fsync延迟；写入线程使用最低线程优先级
+ * - 写入耗时、字节数、排队时间、队列深度等指标由{@link SnapshotMetrics}暴露
+ * <p>
+ * 文件格式见{@link SnapshotCodec}（二进制，流式写入）；旧版本的JSON格式Snapshot（.dat）仍由{@link SnapshotReader}读取
+ * <p>
+ * 文件名：snapshot-{instanceId}-{symbolId}-s{文件序号，20位补0}{.snap|.delta}。文件序号单调递增（启动时从已有文件的最大序号继续），
+ * 同一交易对的文件按写入顺序编号，链的顺序不依赖时钟，同一毫秒内写入的文件也不会重名覆盖；
+ * 升级前按创建时间命名的文件排在所有按序号命名的文件之前
+ * <p>
+ * 全量检查点之间写增量Snapshot（只包含变更过的档位），每个交易对的文件构成"全量 + 增量链"：
+ * 增量数达到full-checkpoint-interval，或增量累计大小超过全量大小（链重建比读全量更慢）时，
+ * 下一次写全量检查点，全量检查点之前的链随后被清理（链压缩）。
+ * 增量写入失败或乱序时链中断，下一次强制写全量检查点
  */
 @Slf4j
 @Component
 public class SnapshotWriter {
+    /**
+     * 二进制格式Snapshot文件后缀（旧JSON格式为.dat）
+     */
+    static final String SNAPSHOT_SUFFIX = ".snap";
+
+    /**
+     * 增量Snapshot文件后缀
+     */
+    static final String DELTA_SUFFIX = ".delta";
+
+    /**
+     * 旧JSON格式Snapshot文件后缀（全量）
+     */
+    static final String LEGACY_SUFFIX = ".dat";
+
+    /**
+     * 写入中的临时文件后缀
+     */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 文件名中文件序号的标记（前缀之后）
+     */
+    static final String FILE_SEQ_MARK = "s";
+
     private final AtomicLong snapshotSeq = new AtomicLong(0);
+    // 文件序号（单调递增，跨重启）
+    private final AtomicLong fileSeq = new AtomicLong(0);
     @Value("${snapshot.base-path:./data/snapshot}")
     private String basePath;
     @Value("${snapshot.instance-id:${wal.instance-id:default}}")
     private String instanceId;
-    @Autowired
-    private ObjectMapper objectMapper;
+    @Value("${snapshot.buffer-size:262144}")
+    private int bufferSize; // 流式写入缓冲区大小
+    @Value("${snapshot.full-checkpoint-interval:12}")
+    private int fullCheckpointInterval; // 两个全量检查点之间最多的增量Snapshot数
+    @Value("${snapshot.retained-checkpoints:2}")
+    private int retainedCheckpoints; // 保留的全量检查点数（连同各自的增量链）
+    @Value("${snapshot.writer-threads:2}")
+    private int writerThreads; // 写入线程数（并行写入的交易对数）
+    @Value("${snapshot.queue-capacity:4096}")
+    private int queueCapacity; // 等待写入的视图数上限
+    @Value("${snapshot.max-write-bytes-per-second:67108864}")
+    private long maxWriteBytesPerSecond; // 所有写入线程合计的写入速率上限，不大于0表示不限速
+    @Value("${snapshot.sync-interval-bytes:8388608}")
+    private long syncIntervalBytes; // 每写出该字节数刷盘一次，不大于0表示只在文件写完后刷盘
+    // 写入线程（按symbolId分片，每个分片一个线程）
+    private WriterShard[] shards;
+    // 等待写入的视图数（所有分片合计，有界由提交时检查保证）
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    // 正在写入的线程数
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    private SnapshotWriteThrottle throttle;
+    private final WriteStats fullStats = new WriteStats();
+    private final WriteStats deltaStats = new WriteStats();
+    private final CaptureStats fullCaptureStats = new CaptureStats();
+    private final CaptureStats deltaCaptureStats = new CaptureStats();
+    private final LongAdder queueWaitCount = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    // 交易对ID → 最近一次写入成功的Snapshot的lastAppliedWalSeq（WAL保留水位）
+    private final Map<Integer, Long> snapshotWalSeqs = new ConcurrentHashMap<>();
+    // 交易对ID → 当前增量链状态（不存在表示本次启动后还没有写过全量检查点，或链已中断）
+    private final Map<Integer, Chain> chains = new ConcurrentHashMap<>();
 
     @jakarta.annotation.PostConstruct
     public void init() {
         initialize();
+        throttle = new SnapshotWriteThrottle(maxWriteBytesPerSecond, syncIntervalBytes);
+        int threads = Math.max(writerThreads, 1);
+        shards = new WriterShard[threads];
+        for (int i = 0; i < threads; i++) {
+            String threadName = "snapshot-writer-" + (i + 1);
+            shards[i] = new WriterShard(Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }));
+        }
+        log.info("Snapshot写入线程池初始化: writerThreads={}, queueCapacity={}, maxWriteBytesPerSecond={}, syncIntervalBytes={}",
+                threads, queueCapacity, maxWriteBytesPerSecond, syncIntervalBytes);
+    }
+
+    @jakarta.annotation.PreDestroy
+    public void close() {
+        if (shards != null) {
+            for (WriterShard shard : shards) {
+                shard.executor.shutdown();
+            }
+        }
     }
 
     private void initialize() {
         try {
             Path snapshotPath = Paths.get(basePath, instanceId);
             Files.createDirectories(snapshotPath);
+            // 删除上次运行中断时遗留的临时文件
+            try (Stream<Path> paths = Files.list(snapshotPath)) {
+                for (Path leftover : paths.filter(p -> p.getFileName().toString().endsWith(TEMP_SUFFIX)).toList()) {
+                    Files.deleteIfExists(leftover);
+                    log.info("删除未完成的Snapshot临时文件: {}", leftover.getFileName());
+                }
+            }
+            // 文件序号从已有文件的最大序号继续
+            try (Stream<Path> paths = Files.list(snapshotPath)) {
+                String prefix = "snapshot-" + instanceId + "-";
+                fileSeq.set(paths.map(p -> p.getFileName().toString())
+                        .filter(name -> name.startsWith(prefix))
+                        .mapToLong(SnapshotWriter::fileSeq)
+                        .max()
+                        .orElse(0L));
+            }
+            log.info("Snapshot文件序号恢复: snapshotPath={}, fileSeq={}", snapshotPath, fileSeq.get());
         } catch (IOException e) {
             log.error("初始化Snapshot失败", e);
             throw new RuntimeException("初始化Snapshot失败", e);
@@ -47,76 +174,238 @@ public class SnapshotWriter {
     }
 
     /**
-     * 创建Snapshot（异步）
-     * 关键：使用深拷贝避免Snapshot创建时OrderBook被修改
+     * 交易对是否有完整的增量链（本次启动后写过全量检查点，且之后的写入都成功）
+     */
+    public boolean hasChain(Integer symbolId) {
+        return chains.containsKey(symbolId);
+    }
+
+    /**
+     * 下一次Snapshot是否必须是全量检查点
+     * 由撮合线程在Snapshot屏障处调用，决定采集全量还是增量视图
+     */
+    public boolean isFullCheckpointDue(Integer symbolId) {
+        Chain chain = chains.get(symbolId);
+        return chain == null || chain.deltaCount >= fullCheckpointInterval || chain.deltaBytes >= chain.fullBytes;
+    }
+
+    /**
+     * 提交Snapshot写入（撮合线程调用，不阻塞）
+     * 视图由撮合线程在Snapshot屏障处采集（见OrderEventHandler），与lastAppliedWalSeq严格对应，
+     * 序列化期间撮合线程继续修改订单簿也不影响视图
+     *
+     * @param image 订单簿视图（全量或增量）
+     * @return 是否已进入写入队列；队列已满时返回false，该交易对的增量链中断，下一次写全量检查点
+     */
+    public boolean submitSnapshot(OrderBookImage image) {
+        (image.isDelta() ? deltaCaptureStats : fullCaptureStats)
+                .record(image.getCaptureNanos(), image.getCopiedOrderCount());
+        if (queueDepth.get() >= queueCapacity) {
+            // 该交易对之后的增量基准与链不连续，写入线程会丢弃并中断链
+            chains.remove(image.getSymbolId());
+            rejectedCount.increment();
+            log.info("[Snapshot耗时] Snapshot写入队列已满，丢弃本次Snapshot: symbolId={}, delta={}, queueDepth={}",
+                    image.getSymbolId(), image.isDelta(), queueDepth.get());
+            return false;
+        }
+        queueDepth.incrementAndGet();
+        shards[Math.floorMod(image.getSymbolId(), shards.length)]
+                .submit(new WriteTask(image, snapshotSeq.incrementAndGet()));
+        return true;
+    }
+
+    /**
+     * 写入Snapshot（写入线程）
+     * 视图按二进制格式（{@link SnapshotCodec}）逐档位流式写入临时文件，落盘后原子重命名，
+     * 读取器不会看到写了一半的Snapshot。
+     * 增量视图的基准必须是链上最后一个文件，否则丢弃并中断链（下一次写全量检查点）
+     * <p>
+     * 同一交易对只在所属分片的线程上串行写入，链状态的读取和更新之间不会有同一交易对的其他写入
      *
-     * @param orderBook         订单簿
-     * @param lastAppliedWalSeq 最后应用的WAL序列号
+     * @param image 订单簿视图（全量或增量）
      */
-    @Async
-    public void createSnapshot(OrderBook orderBook, long lastAppliedWalSeq) {
+    private void writeSnapshot(OrderBookImage image) {
         long startTime = System.currentTimeMillis();
         long stepStartTime;
+        Path tempFile = null;
+        int symbolId = image.getSymbolId();
+        long lastAppliedWalSeq = image.getLastAppliedWalSeq();
         try {
-            long seq = snapshotSeq.incrementAndGet();
-            String fileName = String.format("snapshot-%s-%d-%d.dat", instanceId, orderBook.getSymbolId(), System.currentTimeMillis());
-            Path filePath = Paths.get(basePath, instanceId, fileName);
+            Chain chain = chains.get(symbolId);
+            if (image.isDelta() && (chain == null || chain.walSeq != image.getBaseWalSeq())) {
+                chains.remove(symbolId);
+                log.info("[Snapshot耗时] 增量Snapshot与链不连续，丢弃并在下一次写全量检查点: symbolId={}, baseWalSeq={}, chainWalSeq={}",
+                        symbolId, image.getBaseWalSeq(), chain != null ? chain.walSeq : null);
+                return;
+            }
+            Path snapshotPath = Paths.get(basePath, instanceId);
+            String fileName = fileName(instanceId, symbolId, fileSeq.incrementAndGet(), image.isDelta());
+            Path filePath = snapshotPath.resolve(fileName);
+            tempFile = snapshotPath.resolve(fileName + TEMP_SUFFIX);
 
-            // 【关键】深拷贝OrderBook，避免Snapshot创建时OrderBook被修改
-            stepStartTime = System.currentTimeMillis();
-            OrderBook orderBookCopy = orderBook.deepCopy();
-            long deepCopyDuration = System.currentTimeMillis() - stepStartTime;
-            log.debug("[Snapshot耗时] 深拷贝OrderBook耗时: {}ms, symbolId={}", deepCopyDuration, orderBook.getSymbolId());
-
-            // 序列化OrderBook（使用深拷贝）
-            SnapshotData snapshotData = SnapshotData.builder()
-                    .snapshotVersion(1)
-                    .symbolId(orderBookCopy.getSymbolId())
-                    .lastAppliedWalSeq(lastAppliedWalSeq)
-                    .orderBook(orderBookCopy)
-                    .timestamp(System.currentTimeMillis())
-                    .checksum(0L) // 临时值，将在序列化后计算
-                    .build();
-
-            // 先序列化计算checksum
-            stepStartTime = System.currentTimeMillis();
-            String snapshotJson = objectMapper.writeValueAsString(snapshotData);
-            byte[] snapshotBytes = snapshotJson.getBytes("UTF-8");
-            long checksum = calculateChecksum(snapshotBytes);
-            long serializeDuration = System.currentTimeMillis() - stepStartTime;
-            log.debug("[Snapshot耗时] 序列化耗时: {}ms, symbolId={}", serializeDuration, orderBook.getSymbolId());
-            
-            // 重新设置checksum并序列化
-            snapshotData.setChecksum(checksum);
-            snapshotJson = objectMapper.writeValueAsString(snapshotData);
-            snapshotBytes = snapshotJson.getBytes("UTF-8");
-            
-            // 写入文件
+            // 流式序列化并写入临时文件（边写边计算CRC32C）
             stepStartTime = System.currentTimeMillis();
-            Files.write(filePath, snapshotBytes, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-            long writeDuration = System.currentTimeMillis() - stepStartTime;
-            log.debug("[Snapshot耗时] 文件写入耗时: {}ms, symbolId={}", writeDuration, orderBook.getSymbolId());
+            long orderCount;
+            long fsyncStartTime;
+            try (FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                orderCount = SnapshotCodec.write(throttle.wrap(channel), image, System.currentTimeMillis(), bufferSize);
+                fsyncStartTime = System.currentTimeMillis();
+                channel.force(true);
+            }
+            long writeDuration = fsyncStartTime - stepStartTime;
+            long fsyncDuration = System.currentTimeMillis() - fsyncStartTime;
+            log.debug("[Snapshot耗时] 序列化写入耗时: {}ms, fsync耗时: {}ms, symbolId={}", writeDuration, fsyncDuration, symbolId);
 
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("[Snapshot耗时] Snapshot创建成功: fileName={}, symbolId={}, lastAppliedWalSeq={}, 总耗时={}ms, 深拷贝耗时={}ms, 序列化耗时={}ms, 写入耗时={}ms", 
-                    fileName, orderBook.getSymbolId(), lastAppliedWalSeq, totalDuration, deepCopyDuration, serializeDuration, writeDuration);
+            // 落盘后原子重命名（WAL保留依赖Snapshot水位，Snapshot必须先持久化）
+            Files.move(tempFile, filePath, StandardCopyOption.ATOMIC_MOVE);
+            WALFiles.syncDirectory(snapshotPath);
+
+            snapshotWalSeqs.merge(symbolId, lastAppliedWalSeq, Math::max);
+            long fileSize = Files.size(filePath);
+            (image.isDelta() ? deltaStats : fullStats).record(System.currentTimeMillis() - startTime, fileSize);
+            if (image.isDelta()) {
+                // 写入期间撮合线程因队列满中断了链时不恢复
+                chains.replace(symbolId, chain,
+                        new Chain(lastAppliedWalSeq, chain.deltaCount + 1, chain.fullBytes, chain.deltaBytes + fileSize));
+            } else {
+                chains.put(symbolId, new Chain(lastAppliedWalSeq, 0, fileSize, 0));
+            }
 
-            // 清理旧的Snapshot文件（保留最近12个）
-            stepStartTime = System.currentTimeMillis();
-            cleanupOldSnapshots(orderBook.getSymbolId());
-            log.debug("[Snapshot耗时] 清理旧文件耗时: {}ms, symbolId={}", 
-                    System.currentTimeMillis() - stepStartTime, orderBook.getSymbolId());
-        } catch (JsonProcessingException e) {
             long totalDuration = System.currentTimeMillis() - startTime;
-            log.error("[Snapshot耗时] Snapshot序列化失败: 总耗时={}ms, symbolId={}", totalDuration, orderBook.getSymbolId(), e);
+            log.info("[Snapshot耗时] Snapshot创建成功: fileName={}, symbolId={}, delta={}, baseWalSeq={}, lastAppliedWalSeq={}, orderCount={}, size={}, 总耗时={}ms, 序列化写入耗时={}ms, fsync耗时={}ms",
+                    fileName, symbolId, image.isDelta(), image.getBaseWalSeq(), lastAppliedWalSeq, orderCount, fileSize,
+                    totalDuration, writeDuration, fsyncDuration);
+
+            // 新的全量检查点之后清理旧的链（保留最近retainedCheckpoints个全量检查点及其增量）
+            if (!image.isDelta()) {
+                stepStartTime = System.currentTimeMillis();
+                cleanupOldSnapshots(symbolId);
+                log.debug("[Snapshot耗时] 清理旧文件耗时: {}ms, symbolId={}",
+                        System.currentTimeMillis() - stepStartTime, symbolId);
+            }
         } catch (Exception e) {
             long totalDuration = System.currentTimeMillis() - startTime;
-            log.error("[Snapshot耗时] 创建Snapshot失败: 总耗时={}ms, symbolId={}", totalDuration, orderBook.getSymbolId(), e);
+            log.error("[Snapshot耗时] 创建Snapshot失败: 总耗时={}ms, symbolId={}, delta={}", totalDuration, symbolId, image.isDelta(), e);
+            deleteQuietly(tempFile);
+            // 链上缺少这一段，后续增量无法应用
+            chains.remove(symbolId);
+        }
+    }
+
+    /**
+     * 交易对Snapshot文件名前缀（以"-"结尾，避免symbolId为1时匹配到symbolId为10的文件）
+     */
+    static String filePrefix(String instanceId, Integer symbolId) {
+        return "snapshot-" + instanceId + "-" + symbolId + "-";
+    }
+
+    /**
+     * 是否为交易对已完成的Snapshot文件（全量、增量或旧JSON格式，不含写入中的临时文件）
+     */
+    static boolean isSnapshotFile(Path path, String instanceId, Integer symbolId) {
+        String name = path.getFileName().toString();
+        return name.startsWith(filePrefix(instanceId, symbolId)) && !name.endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * 是否为全量Snapshot文件（二进制格式或旧JSON格式）
+     */
+    static boolean isFullSnapshotFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(SNAPSHOT_SUFFIX) || name.endsWith(LEGACY_SUFFIX);
+    }
+
+    /**
+     * Snapshot文件名
+     *
+     * @param fileSeq 文件序号
+     * @param delta   是否为增量Snapshot
+     */
+    static String fileName(String instanceId, Integer symbolId, long fileSeq, boolean delta) {
+        return filePrefix(instanceId, symbolId) + FILE_SEQ_MARK + String.format("%020d", fileSeq)
+                + (delta ? DELTA_SUFFIX : SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * 按写入顺序排序（旧到新）：升级前按创建时间命名的文件在前（按时间，同一时间全量在前），之后按文件序号
+     */
+    static List<Path> sortByWriteOrder(List<Path> snapshotFiles, String instanceId, Integer symbolId) {
+        String prefix = filePrefix(instanceId, symbolId);
+        return snapshotFiles.stream()
+                .sorted(Comparator.comparing((Path p) -> fileSeq(p.getFileName().toString()) > 0)
+                        .thenComparingLong(p -> {
+                            long seq = fileSeq(p.getFileName().toString());
+                            return seq > 0 ? seq : createTime(p, prefix);
+                        })
+                        .thenComparing(p -> !isFullSnapshotFile(p)))
+                .toList();
+    }
+
+    /**
+     * 文件名中的文件序号（升级前按创建时间命名的文件返回0）
+     */
+    static long fileSeq(String name) {
+        int start = name.lastIndexOf("-" + FILE_SEQ_MARK);
+        int end = name.indexOf('.', start + 1);
+        if (start < 0 || end < 0) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(name.substring(start + 1 + FILE_SEQ_MARK.length(), end));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 升级前文件名中的创建时间
+     */
+    private static long createTime(Path path, String prefix) {
+        String name = path.getFileName().toString();
+        int end = name.lastIndexOf('.');
+        try {
+            return Long.parseLong(name.substring(prefix.length(), end > prefix.length() ? end : name.length()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.info("删除Snapshot临时文件失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 快照水位：给定交易对最近一次写入成功的Snapshot中lastAppliedWalSeq的最小值
+     * 不大于水位的WAL记录已被所有交易对的Snapshot覆盖，恢复不再需要；
+     * 空闲交易对在采集时把lastAppliedWalSeq推进到分区已处理的walSeq（见OrderBook#advanceLastAppliedWalSeq），
+     * 其Snapshot水位随分区前进，不会把整个分区的水位卡在最后一笔订单上
+     *
+     * @param symbolIds 交易对ID
+     * @return 水位，任一交易对还没有写入成功的Snapshot时返回0
+     */
+    public long getSnapshotWatermark(Collection<Integer> symbolIds) {
+        long watermark = Long.MAX_VALUE;
+        for (Integer symbolId : symbolIds) {
+            Long walSeq = snapshotWalSeqs.get(symbolId);
+            if (walSeq == null) {
+                return 0;
+            }
+            watermark = Math.min(watermark, walSeq);
         }
+        return watermark == Long.MAX_VALUE ? 0 : watermark;
     }
 
     /**
      * 清理旧的Snapshot文件
+     * 保留最近retainedCheckpoints个全量检查点，以及最早保留的检查点之后的所有文件；更早的链不再被读取
      */
     private void cleanupOldSnapshots(Integer symbolId) {
         try {
@@ -125,39 +414,245 @@ public class SnapshotWriter {
                 return;
             }
 
-            Files.list(snapshotPath)
-                    .filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().contains("snapshot-" + instanceId + "-" + symbolId))
-                    .sorted((p1, p2) -> {
-                        try {
-                            return Long.compare(Files.getLastModifiedTime(p2).toMillis(), Files.getLastModifiedTime(p1).toMillis());
-                        } catch (IOException e) {
-                            return 0;
-                        }
-                    })
-                    .skip(12) // 保留最近12个（1小时，每5分钟一个）
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                            log.info("删除旧Snapshot: {}", path.getFileName());
-                        } catch (IOException e) {
-                            log.info("删除旧Snapshot失败: {}", path, e);
-                        }
-                    });
+            List<Path> snapshotFiles;
+            try (Stream<Path> paths = Files.list(snapshotPath)) {
+                snapshotFiles = sortByWriteOrder(paths
+                        .filter(Files::isRegularFile)
+                        .filter(p -> isSnapshotFile(p, instanceId, symbolId))
+                        .toList(), instanceId, symbolId);
+            }
+            int oldestRetained = -1;
+            int checkpoints = 0;
+            for (int i = snapshotFiles.size() - 1; i >= 0 && checkpoints < Math.max(retainedCheckpoints, 1); i--) {
+                if (isFullSnapshotFile(snapshotFiles.get(i))) {
+                    oldestRetained = i;
+                    checkpoints++;
+                }
+            }
+            for (int i = 0; i < oldestRetained; i++) {
+                Path path = snapshotFiles.get(i);
+                try {
+                    Files.delete(path);
+                    log.info("删除旧Snapshot: {}", path.getFileName());
+                } catch (IOException e) {
+                    log.info("删除旧Snapshot失败: {}", path, e);
+                }
+            }
         } catch (IOException e) {
             log.error("清理旧Snapshot失败: symbolId={}", symbolId, e);
         }
     }
 
     /**
-     * 计算校验和
+     * 等待写入的视图数
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * 正在写入的线程数
+     */
+    public int getActiveWriters() {
+        return activeWriters.get();
+    }
+
+    /**
+     * 写入统计（全量或增量）
+     */
+    public WriteStats getWriteStats(boolean delta) {
+        return delta ? deltaStats : fullStats;
+    }
+
+    /**
+     * 撮合线程采集视图的统计（全量或增量）
+     */
+    public CaptureStats getCaptureStats(boolean delta) {
+        return delta ? deltaCaptureStats : fullCaptureStats;
+    }
+
+    public long getQueueWaitCount() {
+        return queueWaitCount.sum();
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getThrottleCount() {
+        return throttle.getThrottleCount();
+    }
+
+    public long getThrottleNanos() {
+        return throttle.getThrottleNanos();
+    }
+
+    /**
+     * 写入分片：一个写入线程，同一交易对的视图按提交顺序排队，只有各交易对最早的待写视图参与优先级排序
+     * 每提交一个视图向线程提交一次{@link #runNext}，执行时取优先级最高的交易对的最早视图写入
      */
-    private long calculateChecksum(byte[] data) {
-        long checksum = 0;
-        for (byte b : data) {
-            checksum = (checksum * 31) + b;
+    private final class WriterShard {
+        private final ExecutorService executor;
+        // 交易对ID → 待写视图（提交顺序）
+        private final Map<Integer, ArrayDeque<WriteTask>> pending = new HashMap<>();
+        // 各交易对最早的待写视图（每个交易对最多一个）
+        private final PriorityQueue<WriteTask> heads = new PriorityQueue<>();
+
+        private WriterShard(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        private void submit(WriteTask task) {
+            synchronized (this) {
+                ArrayDeque<WriteTask> queue = pending.computeIfAbsent(task.image.getSymbolId(), k -> new ArrayDeque<>());
+                if (queue.isEmpty()) {
+                    heads.add(task);
+                }
+                queue.add(task);
+            }
+            executor.execute(this::runNext);
+        }
+
+        private void runNext() {
+            WriteTask task;
+            synchronized (this) {
+                task = heads.poll();
+            }
+            if (task == null) {
+                return;
+            }
+            queueDepth.decrementAndGet();
+            activeWriters.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeWriters.decrementAndGet();
+                synchronized (this) {
+                    Integer symbolId = task.image.getSymbolId();
+                    ArrayDeque<WriteTask> queue = pending.get(symbolId);
+                    queue.poll();
+                    if (queue.isEmpty()) {
+                        pending.remove(symbolId);
+                    } else {
+                        heads.add(queue.peek());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入任务：不同交易对之间按上次Snapshot以来的变更次数排优先级（多的先写），相同时按提交顺序
+     */
+    private final class WriteTask implements Runnable, Comparable<WriteTask> {
+        private final OrderBookImage image;
+        private final long seq;
+        private final long submitNanos = System.nanoTime();
+
+        private WriteTask(OrderBookImage image, long seq) {
+            this.image = image;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            queueWaitCount.increment();
+            queueWaitNanos.add(System.nanoTime() - submitNanos);
+            writeSnapshot(image);
+        }
+
+        @Override
+        public int compareTo(WriteTask other) {
+            int byChanges = Long.compare(other.image.getChangeCount(), image.getChangeCount());
+            return byChanges != 0 ? byChanges : Long.compare(seq, other.seq);
+        }
+    }
+
+    /**
+     * Snapshot写入统计
+     */
+    public static final class WriteStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder millis = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        private void record(long durationMillis, long fileBytes) {
+            count.increment();
+            millis.add(durationMillis);
+            bytes.add(fileBytes);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMillis() {
+            return millis.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+    }
+
+    /**
+     * 撮合线程采集视图的统计（采集耗时和实际复制的订单数，复用的档位副本不计入）
+     */
+    public static final class CaptureStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder copiedOrders = new LongAdder();
+
+        private void record(long captureNanos, long copiedOrderCount) {
+            count.increment();
+            nanos.add(captureNanos);
+            copiedOrders.add(copiedOrderCount);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        public long getCopiedOrders() {
+            return copiedOrders.sum();
+        }
+    }
+
+    /**
+     * 增量链状态（不可变，每次写入成功后整体替换）
+     */
+    private static final class Chain {
+        /**
+         * 链上最后一个文件的lastAppliedWalSeq（下一个增量的基准）
+         */
+        private final long walSeq;
+        /**
+         * 全量检查点之后的增量数
+         */
+        private final int deltaCount;
+        /**
+         * 全量检查点文件大小
+         */
+        private final long fullBytes;
+        /**
+         * 全量检查点之后的增量文件累计大小
+         */
+        private final long deltaBytes;
+
+        private Chain(long walSeq, int deltaCount, long fullBytes, long deltaBytes) {
+            this.walSeq = walSeq;
+            this.deltaCount = deltaCount;
+            this.fullBytes = fullBytes;
+            this.deltaBytes = deltaBytes;
         }
-        return checksum;
     }
 
     /**
@@ -169,7 +664,7 @@ public class SnapshotWriter {
     @lombok.AllArgsConstructor
     public static class SnapshotData {
         /**
-         * 快照版本号
+         * 快照版本号（1：JSON格式，2：二进制格式）
          */
         private Integer snapshotVersion;
         /**
@@ -189,7 +684,7 @@ public class SnapshotWriter {
          */
         private Long timestamp;
         /**
-         * 文件完整性校验和
+         * 文件完整性校验和（JSON格式为旧checksum，二进制格式为CRC32C）
          */
         private Long checksum;
     }
@@ -0,0 +1,218 @@
+package com.spark.match.wal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WAL保留与归档
+ * 按快照水位（所有交易对最新快照lastAppliedWalSeq的最小值）决定哪些段不再被恢复需要：
+ * 段内所有记录都不大于水位时，按LZ4帧格式压缩移入归档目录（见{@link WALFiles}），删除原段和索引；
+ * 归档按总大小和保留天数淘汰最旧的文件
+ * <p>
+ * 归档文件仍可由{@link WALReader}直接读取（审计、快照缺失时的恢复）
+ * 在独立线程上执行，不阻塞快照调度线程
+ * <p>
+ * 分区时（{@link WALPartitioning}）每个分区按其交易对的快照水位独立保留，归档目录和预算也按分区
+ */
+@Slf4j
+@Component
+public class WALArchiver {
+    @Autowired
+    private WALPartitioning partitioning;
+    @Value("${wal.archive.enabled:true}")
+    private boolean archiveEnabled; // 关闭时被快照覆盖的段直接删除
+    @Value("${wal.archive.max-bytes:10737418240}")
+    private long maxArchiveBytes; // 归档总大小上限（0表示不限制）
+    @Value("${wal.archive.max-days:7}")
+    private int maxArchiveDays; // 归档保留天数（按原段最后写入时间，0表示不限制）
+
+    // 归档线程
+    private ExecutorService executor;
+    // 分区 → 已执行保留的最大水位
+    private final Map<Integer, Long> retainedWatermarks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "wal-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交一次保留（异步）
+     *
+     * @param partition 分区
+     * @param watermark 快照水位：不大于该序列号的记录已被该分区所有交易对的快照覆盖
+     */
+    public void requestRetention(int partition, long watermark) {
+        if (watermark <= retainedWatermarks.getOrDefault(partition, 0L)) {
+            return;
+        }
+        executor.execute(() -> retain(partition, watermark));
+    }
+
+    /**
+     * 执行保留：归档水位之前的段，再按预算淘汰归档
+     *
+     * @param partition 分区
+     * @param watermark 快照水位
+     */
+    public synchronized void retain(int partition, long watermark) {
+        long startTime = System.currentTimeMillis();
+        Path walPath = partitioning.partitionPath(partition);
+        Path archivePath = WALFiles.archiveDirectory(walPath);
+        try {
+            if (!Files.exists(walPath)) {
+                return;
+            }
+            Files.createDirectories(archivePath);
+            // 删除上次中断的归档临时文件（原段仍在，本次重新归档）
+            for (Path leftover : WALFiles.listPreallocated(archivePath)) {
+                Files.deleteIfExists(leftover);
+                log.info("删除未完成的WAL归档文件: {}", leftover.getFileName());
+            }
+            List<Path> eligible = eligibleFiles(walPath, watermark);
+            for (Path walFile : eligible) {
+                if (archiveEnabled) {
+                    archive(walFile, archivePath);
+                } else {
+                    delete(walFile);
+                }
+            }
+            if (!eligible.isEmpty()) {
+                WALFiles.syncDirectory(walPath);
+            }
+            int evicted = archiveEnabled ? enforceArchiveBudget(walPath) : 0;
+            retainedWatermarks.merge(partition, watermark, Math::max);
+            if (!eligible.isEmpty() || evicted > 0) {
+                log.info("WAL保留完成: partition={}, watermark={}, retainedFiles={}, archived={}, evictedArchives={}, costMs={}",
+                        partition, watermark, eligible.size(), archiveEnabled, evicted, System.currentTimeMillis() - startTime);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("WAL保留失败: partition={}, watermark={}", partition, watermark, e);
+        }
+    }
+
+    /**
+     * 已被快照覆盖的在线文件（旧到新）
+     * - 段：下一个段的首条walSeq不大于watermark + 1（当前写入的段总是最后一个，不会被选中）
+     * - 旧版本文件：序列号与段不连续，水位进入段的范围后所有快照都晚于旧版本文件
+     */
+    private List<Path> eligibleFiles(Path walPath, long watermark) throws IOException {
+        List<Path> eligible = new ArrayList<>();
+        List<Path> segments = WALFiles.listSegments(walPath);
+        if (segments.isEmpty()) {
+            return eligible;
+        }
+        if (watermark >= WALFiles.firstWalSeq(segments.get(0))) {
+            eligible.addAll(WALFiles.listLegacyFiles(walPath));
+        }
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (WALFiles.firstWalSeq(segments.get(i + 1)) > watermark + 1) {
+                break;
+            }
+            eligible.add(segments.get(i));
+        }
+        return eligible;
+    }
+
+    /**
+     * 压缩写入归档目录（先写临时文件，落盘后重命名），再删除原文件和索引
+     */
+    private void archive(Path walFile, Path archivePath) throws IOException {
+        String archiveName = walFile.getFileName() + WALFiles.ARCHIVE_SUFFIX;
+        Path tempFile = archivePath.resolve(archiveName + WALFiles.PREALLOCATED_SUFFIX);
+        Path archiveFile = archivePath.resolve(archiveName);
+        long startTime = System.currentTimeMillis();
+        try (OutputStream out = new LZ4FrameOutputStream(Files.newOutputStream(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            Files.copy(walFile, out);
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        // 保留原段的最后写入时间，按天淘汰时以此为准
+        FileTime lastModified = Files.getLastModifiedTime(walFile);
+        Files.setLastModifiedTime(tempFile, lastModified);
+        Files.move(tempFile, archiveFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WALFiles.syncDirectory(archivePath);
+        long originalSize = Files.size(walFile);
+        delete(walFile);
+        log.info("WAL文件归档: fileName={}, size={}, archivedSize={}, costMs={}",
+                walFile.getFileName(), originalSize, Files.size(archiveFile), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 删除在线文件及其索引
+     */
+    private void delete(Path walFile) throws IOException {
+        Files.delete(walFile);
+        if (walFile.getFileName().toString().endsWith(WALFiles.SEGMENT_SUFFIX)) {
+            Files.deleteIfExists(WALFiles.indexFile(walFile));
+        }
+        if (!archiveEnabled) {
+            log.info("删除已被快照覆盖的WAL文件: {}", walFile.getFileName());
+        }
+    }
+
+    /**
+     * 按总大小和保留天数淘汰最旧的归档（旧版本文件最旧，其次按段序列号）
+     *
+     * @return 淘汰的文件数
+     */
+    private int enforceArchiveBudget(Path walPath) throws IOException {
+        List<Path> archives = new ArrayList<>(WALFiles.listArchivedLegacyFiles(walPath));
+        archives.addAll(WALFiles.listArchivedSegments(walPath));
+        long totalBytes = 0;
+        for (Path archive : archives) {
+            totalBytes += Files.size(archive);
+        }
+        long expireBefore = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxArchiveDays);
+
+        int evicted = 0;
+        for (Path archive : archives) {
+            boolean overBudget = maxArchiveBytes > 0 && totalBytes > maxArchiveBytes;
+            boolean expired = maxArchiveDays > 0 && Files.getLastModifiedTime(archive).toMillis() < expireBefore;
+            if (!overBudget && !expired) {
+                break;
+            }
+            long size = Files.size(archive);
+            Files.delete(archive);
+            totalBytes -= size;
+            evicted++;
+            log.info("删除过期WAL归档: fileName={}, size={}, overBudget={}, expired={}",
+                    archive.getFileName(), size, overBudget, expired);
+        }
+        return evicted;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
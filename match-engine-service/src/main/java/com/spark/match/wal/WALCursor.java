@@ -0,0 +1,379 @@
+package com.spark.match.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * 单个WAL文件的流式读取游标
+ * 大块顺序读入固定缓冲区，逐条解析并校验（二进制格式校验CRC32C，旧JSON格式校验旧checksum），
+ * 单次扫描完成校验和读取，内存占用与文件大小无关
+ * <p>
+ * 结束条件：文件结束、预分配段的未写入部分（长度为0）或尾部记录不完整（崩溃时未写完）；
+ * 二进制格式记录定长，长度字段损坏时按定长跳过该记录继续读取；隔离占位记录（见{@link WALTailRepair}）静默跳过；
+ * 旧JSON格式记录长度非法时无法继续定位后续记录，标记为损坏并结束
+ * <p>
+ * 归档文件（.lz4）边解压边读取，格式与原文件相同，但不支持索引定位
+ */
+@Slf4j
+public class WALCursor implements AutoCloseable {
+    /**
+     * 默认读缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 旧JSON格式单条记录长度上限
+     */
+    private static final int MAX_JSON_RECORD_SIZE = 10 * 1024 * 1024;
+
+    private final Path walFile;
+    private final ReadableByteChannel channel;
+    private final ObjectMapper objectMapper;
+    private final CRC32C crc32c = new CRC32C();
+    private final boolean binaryFormat;
+    private ByteBuffer buffer;
+    /**
+     * 缓冲区起始位置对应的文件偏移
+     */
+    private long bufferFileOffset;
+    private boolean endOfFile;
+    private boolean corrupted;
+    private int invalidRecordCount;
+    private int tombstoneCount;
+    /**
+     * 定位时已读出、尚未返回给调用方的记录
+     */
+    private WALRecord pending;
+
+    private WALCursor(Path walFile, ReadableByteChannel channel, ObjectMapper objectMapper, int bufferSize) throws IOException {
+        this.walFile = walFile;
+        this.channel = channel;
+        this.objectMapper = objectMapper;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+        this.binaryFormat = detectBinaryFormat();
+    }
+
+    /**
+     * 打开WAL文件（含归档文件）
+     *
+     * @param walFile      WAL文件
+     * @param objectMapper 旧JSON格式解析使用
+     * @param bufferSize   读缓冲区大小
+     */
+    public static WALCursor open(Path walFile, ObjectMapper objectMapper, int bufferSize) throws IOException {
+        ReadableByteChannel channel = WALFiles.isArchived(walFile)
+                ? Channels.newChannel(new LZ4FrameInputStream(Files.newInputStream(walFile)))
+                : FileChannel.open(walFile, StandardOpenOption.READ);
+        try {
+            return new WALCursor(walFile, channel, objectMapper, Math.max(bufferSize, WALRecordCodec.RECORD_SIZE));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开段文件，并借助稀疏索引直接定位到不大于walSeq的最近一条索引记录
+     * 索引缺失或索引项与数据不一致时从段开头读取
+     *
+     * @param segmentFile  段文件
+     * @param walSeq       目标序列号
+     * @param objectMapper 旧JSON格式解析使用
+     * @param bufferSize   读缓冲区大小
+     */
+    public static WALCursor openAt(Path segmentFile, long walSeq, ObjectMapper objectMapper, int bufferSize) throws IOException {
+        WALCursor cursor = open(segmentFile, objectMapper, bufferSize);
+        // 归档段没有索引
+        long[] entry = WALFiles.isArchived(segmentFile) ? null : WALFiles.findIndexEntry(segmentFile, walSeq);
+        if (entry == null || !cursor.binaryFormat) {
+            return cursor;
+        }
+        try {
+            if (cursor.seek(entry[1])) {
+                WALRecord first = cursor.next();
+                if (first != null && first.getWalSeq() == entry[0]) {
+                    cursor.pending = first;
+                    return cursor;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.info("WAL索引定位失败: fileName={}, offset={}", segmentFile.getFileName(), entry[1], e);
+        }
+        log.info("WAL索引项与数据不一致，从段开头读取: fileName={}, walSeq={}, offset={}",
+                segmentFile.getFileName(), entry[0], entry[1]);
+        cursor.close();
+        return open(segmentFile, objectMapper, bufferSize);
+    }
+
+    /**
+     * 定位到文件内的指定偏移（必须是记录起始位置）
+     *
+     * @return false表示偏移超出文件范围
+     */
+    private boolean seek(long offset) throws IOException {
+        if (!(channel instanceof FileChannel fileChannel)
+                || offset < WALRecordCodec.FILE_HEADER_SIZE || offset >= fileChannel.size()) {
+            return false;
+        }
+        fileChannel.position(offset);
+        buffer.clear().flip();
+        bufferFileOffset = offset;
+        endOfFile = false;
+        return true;
+    }
+
+    /**
+     * 识别文件格式：二进制格式跳过文件头，旧JSON格式从文件开头读取
+     */
+    private boolean detectBinaryFormat() throws IOException {
+        if (!ensure(WALRecordCodec.FILE_HEADER_SIZE) || buffer.getInt(buffer.position()) != WALRecordCodec.FILE_MAGIC) {
+            return false;
+        }
+        short version = buffer.getShort(buffer.position() + 4);
+        if (version != WALRecordCodec.FORMAT_VERSION) {
+            throw new IOException("不支持的WAL格式版本: fileName=" + walFile.getFileName() + ", version=" + version);
+        }
+        skip(WALRecordCodec.FILE_HEADER_SIZE);
+        return true;
+    }
+
+    /**
+     * 读取下一条有效记录（跳过校验失败的记录）
+     *
+     * @return WAL记录，没有更多记录时返回null
+     */
+    public WALRecord next() throws IOException {
+        if (pending != null) {
+            WALRecord record = pending;
+            pending = null;
+            return record;
+        }
+        while (!corrupted) {
+            if (binaryFormat) {
+                if (!ensure(WALRecordCodec.RECORD_HEADER_SIZE)) {
+                    return null;
+                }
+                int length = buffer.getInt(buffer.position());
+                if (length == 0) {
+                    // 预分配段中尚未写入的部分
+                    return null;
+                }
+                if (length != WALRecordCodec.BODY_SIZE) {
+                    // 记录定长：长度字段损坏时按定长跳过，后续记录仍可定位
+                    int recordSize = WALRecordCodec.RECORD_SIZE;
+                    if (!ensure(recordSize)) {
+                        skip(buffer.remaining());
+                        return null;
+                    }
+                    invalidRecordCount++;
+                    log.info("WAL记录长度异常，按定长跳过: fileName={}, position={}, recordLength={}",
+                            walFile.getFileName(), position(), length);
+                    skip(recordSize);
+                    continue;
+                }
+                WALRecord record = nextBinary(length);
+                if (record != null) {
+                    return record;
+                }
+            } else {
+                if (!ensure(4)) {
+                    return null;
+                }
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || length > MAX_JSON_RECORD_SIZE) {
+                    markCorrupted(length);
+                    return null;
+                }
+                WALRecord record = nextJson(length);
+                if (record != null) {
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析二进制记录，校验失败返回null（已跳过该记录）
+     */
+    private WALRecord nextBinary(int length) throws IOException {
+        int recordSize = WALRecordCodec.RECORD_HEADER_SIZE + length;
+        if (!ensure(recordSize)) {
+            // 尾部记录不完整
+            skip(buffer.remaining());
+            return null;
+        }
+        long filePosition = position();
+        int start = buffer.position();
+        int checksum = buffer.getInt(start + 4);
+        int bodyStart = start + WALRecordCodec.RECORD_HEADER_SIZE;
+        int limit = buffer.limit();
+        buffer.position(bodyStart).limit(bodyStart + length);
+        try {
+            if (WALRecordCodec.checksum(buffer, crc32c) != checksum) {
+                if (WALRecordCodec.isTombstone(buffer, checksum)) {
+                    tombstoneCount++;
+                    return null;
+                }
+                invalidRecordCount++;
+                log.info("WAL记录校验和失败: fileName={}, position={}", walFile.getFileName(), filePosition);
+                return null;
+            }
+            return WALRecordCodec.decode(buffer, checksum);
+        } catch (RuntimeException e) {
+            invalidRecordCount++;
+            log.info("WAL记录解析失败: fileName={}, position={}", walFile.getFileName(), filePosition, e);
+            return null;
+        } finally {
+            buffer.limit(limit).position(start + recordSize);
+        }
+    }
+
+    /**
+     * 解析旧JSON格式记录，校验失败返回null（已跳过该记录）
+     */
+    private WALRecord nextJson(int length) throws IOException {
+        int recordSize = 4 + length;
+        if (!ensure(recordSize)) {
+            skip(buffer.remaining());
+            return null;
+        }
+        long filePosition = position();
+        int start = buffer.position();
+        try {
+            WALRecord record = objectMapper.readValue(buffer.array(), buffer.arrayOffset() + start + 4, length, WALRecord.class);
+            if (!validateJsonChecksum(record)) {
+                invalidRecordCount++;
+                log.info("WAL记录校验和失败: walSeq={}, fileName={}", record.getWalSeq(), walFile.getFileName());
+                return null;
+            }
+            return record;
+        } catch (IOException e) {
+            invalidRecordCount++;
+            log.info("WAL记录解析失败: fileName={}, position={}", walFile.getFileName(), filePosition, e);
+            return null;
+        } finally {
+            buffer.position(start + recordSize);
+        }
+    }
+
+    /**
+     * 旧JSON格式校验和：基于checksum置0后整个WALRecord序列化的数据计算
+     */
+    private boolean validateJsonChecksum(WALRecord record) throws IOException {
+        if (record.getChecksum() == null || record.getWalSeq() == null || record.getOrderMessage() == null) {
+            return false;
+        }
+        WALRecord tempRecord = WALRecord.builder()
+                .walSeq(record.getWalSeq())
+                .orderMessage(record.getOrderMessage())
+                .timestamp(record.getTimestamp())
+                .checksum(0L)
+                .build();
+        byte[] recordData = objectMapper.writeValueAsString(tempRecord).getBytes(StandardCharsets.UTF_8);
+        long checksum = 0;
+        for (byte b : recordData) {
+            checksum = (checksum * 31) + b;
+        }
+        return checksum == record.getChecksum();
+    }
+
+    private void markCorrupted(int length) {
+        corrupted = true;
+        log.info("WAL文件记录长度异常: fileName={}, position={}, recordLength={}", walFile.getFileName(), position(), length);
+    }
+
+    /**
+     * 保证缓冲区中至少有n个未读字节（不足时压缩缓冲区并继续顺序读取）
+     *
+     * @return false表示文件剩余字节不足n
+     */
+    private boolean ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return true;
+        }
+        if (endOfFile) {
+            return false;
+        }
+        bufferFileOffset += buffer.position();
+        if (n > buffer.capacity()) {
+            // 旧JSON格式的超长记录，临时扩容
+            ByteBuffer larger = ByteBuffer.allocate(n);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        // 尽量读满缓冲区，减少系统调用
+        while (!endOfFile && buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfFile = true;
+            } else if (read == 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= n;
+    }
+
+    private void skip(int n) {
+        buffer.position(buffer.position() + n);
+    }
+
+    /**
+     * 当前读取位置（文件偏移）
+     */
+    public long position() {
+        return bufferFileOffset + buffer.position();
+    }
+
+    /**
+     * 跳过的隔离占位记录数
+     */
+    public int getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    /**
+     * 文件是否损坏（旧JSON格式记录长度非法，后续记录无法定位）
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * 校验失败而跳过的记录数
+     */
+    public int getInvalidRecordCount() {
+        return invalidRecordCount;
+    }
+
+    public boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.spark.match.wal;
+
+/**
+ * 交易对的WAL持久化策略（symbol_config.durability，不配置时使用wal.durability.default-policy）
+ * 按声明顺序由严到宽；一组记录包含多个交易对时按其中最严格的策略提交
+ */
+public enum WALDurability {
+    /**
+     * 每条记录写入后立即提交，同步数据和文件元数据（force(true)）
+     */
+    FSYNC("fsync"),
+
+    /**
+     * 每条记录写入后立即提交，只同步数据（force(false)）
+     */
+    FDATASYNC("fdatasync"),
+
+    /**
+     * 分组提交：Disruptor批次结束、达到max-batch-size或等待超过max-delay-us时提交（默认）
+     */
+    GROUP("group"),
+
+    /**
+     * 写入后即确认（放行撮合、提交Kafka offset），刷盘在后台完成；
+     * 进程崩溃不丢失（MMAP已在页缓存，DIRECT在提交时立即写出），断电可能丢失最近的记录
+     */
+    ASYNC("async");
+
+    private final String name;
+
+    WALDurability(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 两个策略中更严格的一个（null视为没有约束）
+     */
+    public static WALDurability stricter(WALDurability a, WALDurability b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.ordinal() <= b.ordinal() ? a : b;
+    }
+
+    /**
+     * 根据配置名获取持久化策略
+     */
+    public static WALDurability fromName(String name) {
+        if (name != null) {
+            String normalized = name.trim().toLowerCase();
+            for (WALDurability durability : values()) {
+                if (durability.name.equals(normalized)) {
+                    return durability;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid WAL durability: " + name);
+    }
+}
@@ -0,0 +1,75 @@
+package com.spark.match.wal;
+
+import com.spark.common.config.ConfigService;
+import com.spark.common.model.SymbolConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 交易对WAL持久化策略表
+ * 启动和配置刷新时从交易对配置（symbol_config.durability）加载，日志阶段热路径上只读；
+ * 未配置或配置非法的交易对使用默认策略
+ */
+@Slf4j
+@Component
+public class WALDurabilityPolicies {
+    @Autowired
+    private ConfigService configService;
+    @Value("${wal.durability.default-policy:group}")
+    private String defaultPolicyName;
+
+    private WALDurability defaultPolicy;
+    // 交易对ID → 持久化策略（刷新时整体替换）
+    private volatile Map<Integer, WALDurability> policies = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        defaultPolicy = WALDurability.fromName(defaultPolicyName);
+        refresh();
+    }
+
+    /**
+     * 从交易对配置重新加载
+     */
+    public void refresh() {
+        Map<Integer, WALDurability> loaded = new HashMap<>();
+        try {
+            for (String symbol : configService.getEnabledTradingPairs()) {
+                SymbolConfig config = configService.getTradingPairConfig(symbol);
+                if (config == null || config.getSymbolId() == null
+                        || config.getDurability() == null || config.getDurability().trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    loaded.put(config.getSymbolId(), WALDurability.fromName(config.getDurability()));
+                } catch (IllegalArgumentException e) {
+                    log.error("交易对WAL持久化策略配置非法，使用默认策略: symbol={}, durability={}, default={}",
+                            symbol, config.getDurability(), defaultPolicy.getName());
+                }
+            }
+        } catch (Exception e) {
+            log.error("加载WAL持久化策略失败，保留原配置", e);
+            return;
+        }
+        policies = loaded;
+        log.info("WAL持久化策略加载完成: default={}, policies={}", defaultPolicy.getName(), loaded);
+    }
+
+    /**
+     * 交易对的持久化策略
+     */
+    public WALDurability policyOf(int symbolId) {
+        WALDurability policy = policies.get(symbolId);
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    public WALDurability getDefaultPolicy() {
+        return defaultPolicy;
+    }
+}
@@ -0,0 +1,210 @@
+package com.spark.match.wal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * WAL目录布局
+ * - 段文件：wal-{首条记录walSeq，20位补零}.seg，按文件名即按序列号排序
+ * - 稀疏索引：wal-{首条记录walSeq}.idx，每隔N条记录一项 [long walSeq][long offset]，只是定位提示，
+ *   丢失或不完整时退化为从段开头扫描
+ * - 预分配中的段：wal-prealloc-*.tmp，滚动时重命名为段文件
+ * - 旧版本文件：wal-{instanceId}-{创建时间}.log，序列号每次重启从1开始，读取时排在所有段之前
+ * - 归档：archive/{原文件名}.lz4，已被所有交易对的快照覆盖的段按LZ4帧格式压缩后移入（见{@link WALArchiver}），
+ *   不再有索引，读取时整体解压扫描
+ * - 隔离：quarantine/{段文件名}.bad，启动修复时从段中间移出的损坏记录 [long offset][原始记录]（见{@link WALTailRepair}）
+ */
+@Slf4j
+public final class WALFiles {
+    public static final String SEGMENT_SUFFIX = ".seg";
+    public static final String INDEX_SUFFIX = ".idx";
+    public static final String PREALLOCATED_SUFFIX = ".tmp";
+    public static final String LEGACY_SUFFIX = ".log";
+    public static final String ARCHIVE_SUFFIX = ".lz4";
+    public static final String ARCHIVE_DIR = "archive";
+    public static final String QUARANTINE_SUFFIX = ".bad";
+    public static final String QUARANTINE_DIR = "quarantine";
+    private static final String PREFIX = "wal-";
+
+    /**
+     * 索引项长度
+     */
+    public static final int INDEX_ENTRY_SIZE = 16;
+
+    private WALFiles() {
+    }
+
+    /**
+     * 段文件名
+     */
+    public static String segmentFileName(long firstWalSeq) {
+        return String.format("%s%020d%s", PREFIX, firstWalSeq, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * 段对应的索引文件
+     */
+    public static Path indexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * 从段文件名（含归档段）解析首条记录的walSeq
+     */
+    public static long firstWalSeq(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.indexOf(SEGMENT_SUFFIX)));
+    }
+
+    /**
+     * 原文件名（归档文件去掉.lz4后缀）
+     */
+    public static String originalFileName(Path walFile) {
+        String name = walFile.getFileName().toString();
+        return isArchived(walFile) ? name.substring(0, name.length() - ARCHIVE_SUFFIX.length()) : name;
+    }
+
+    /**
+     * 归档目录
+     */
+    public static Path archiveDirectory(Path walPath) {
+        return walPath.resolve(ARCHIVE_DIR);
+    }
+
+    /**
+     * 段的隔离文件
+     */
+    public static Path quarantineFile(Path segmentFile) {
+        return segmentFile.resolveSibling(QUARANTINE_DIR).resolve(segmentFile.getFileName() + QUARANTINE_SUFFIX);
+    }
+
+    /**
+     * 文件是否为归档文件（LZ4压缩）
+     */
+    public static boolean isArchived(Path walFile) {
+        return walFile.getFileName().toString().endsWith(ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * 列出段文件（按首条记录walSeq升序）
+     */
+    public static List<Path> listSegments(Path walPath) throws IOException {
+        return list(walPath, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * 列出旧版本文件（按文件名中的创建时间升序）
+     */
+    public static List<Path> listLegacyFiles(Path walPath) throws IOException {
+        return list(walPath, LEGACY_SUFFIX);
+    }
+
+    /**
+     * 列出预分配中未使用的段
+     */
+    public static List<Path> listPreallocated(Path walPath) throws IOException {
+        return list(walPath, PREALLOCATED_SUFFIX);
+    }
+
+    /**
+     * 列出归档段（按首条记录walSeq升序）
+     */
+    public static List<Path> listArchivedSegments(Path walPath) throws IOException {
+        return list(archiveDirectory(walPath), SEGMENT_SUFFIX + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * 列出归档的旧版本文件（按文件名中的创建时间升序）
+     */
+    public static List<Path> listArchivedLegacyFiles(Path walPath) throws IOException {
+        return list(archiveDirectory(walPath), LEGACY_SUFFIX + ARCHIVE_SUFFIX);
+    }
+
+    private static List<Path> list(Path walPath, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.exists(walPath)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.list(walPath)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .sorted(Comparator.comparing(Path::getFileName))
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    /**
+     * 在稀疏索引中查找不大于walSeq的最后一项
+     *
+     * @param segmentFile 段文件
+     * @param walSeq      目标序列号
+     * @return 该索引项 [walSeq, offset]，索引不存在或没有合适的项时返回null
+     */
+    public static long[] findIndexEntry(Path segmentFile, long walSeq) {
+        Path indexFile = indexFile(segmentFile);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            int entryCount = (int) (channel.size() / INDEX_ENTRY_SIZE);
+            if (entryCount == 0) {
+                return null;
+            }
+            ByteBuffer entries = ByteBuffer.allocate(entryCount * INDEX_ENTRY_SIZE);
+            // 索引很小（默认每1000条记录一项），整体读入
+            while (entries.hasRemaining()) {
+                if (channel.read(entries) < 0) {
+                    break;
+                }
+            }
+            entries.flip();
+            entryCount = entries.remaining() / INDEX_ENTRY_SIZE;
+
+            // 二分查找不大于walSeq的最后一项
+            int low = 0;
+            int high = entryCount - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (entries.getLong(mid * INDEX_ENTRY_SIZE) <= walSeq) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (found < 0) {
+                return null;
+            }
+            return new long[]{entries.getLong(found * INDEX_ENTRY_SIZE), entries.getLong(found * INDEX_ENTRY_SIZE + 8)};
+        } catch (IOException e) {
+            log.info("读取WAL索引失败，从段开头扫描: fileName={}", indexFile.getFileName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 同步目录元数据（保证新建和重命名的文件名落盘）
+     */
+    public static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台不支持对目录fsync
+            log.debug("WAL目录同步失败: directory={}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.spark.match.wal;
+
+/**
+ * WAL段写入方式（wal.io-mode）
+ */
+public enum WALIoMode {
+    /**
+     * 内存映射写入，提交时force已写入区间（默认）
+     */
+    MMAP("mmap"),
+
+    /**
+     * O_DIRECT写入（绕过页缓存），两个对齐的直接缓冲区交替写入和刷盘，文件系统不支持时回退为MMAP
+     */
+    DIRECT("direct");
+
+    private final String name;
+
+    WALIoMode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 根据配置名获取写入方式
+     */
+    public static WALIoMode fromName(String name) {
+        if (name != null) {
+            String normalized = name.trim().toLowerCase();
+            for (WALIoMode mode : values()) {
+                if (mode.name.equals(normalized)) {
+                    return mode;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid WAL io mode: " + name);
+    }
+}
@@ -0,0 +1,186 @@
+package com.spark.match.wal;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * WAL分区布局
+ * - none：所有交易对共用一条WAL（{basePath}/{instanceId}，默认，与升级前一致）
+ * - symbol：每个交易对一条WAL（{basePath}/{instanceId}/partition-{symbolId}）
+ * - shard：按symbolId取模分片（{basePath}/{instanceId}/partition-{symbolId % shards}）
+ * <p>
+ * 每个分区是独立的段链：各自的walSeq、稀疏索引、保留和归档；
+ * 交易对的lastAppliedWalSeq属于其分区的序列号空间，恢复和快照水位都按分区计算
+ * <p>
+ * 布局写入WAL根目录的布局文件，启动时与配置比对：分区方式或分片数变化会改变交易对所属的分区，
+ * 已有的快照序列号将失去意义，因此直接拒绝启动（需先清空WAL和快照再切换）
+ */
+@Slf4j
+@Component
+public class WALPartitioning {
+    /**
+     * 布局文件名
+     */
+    static final String LAYOUT_FILE = "wal-layout";
+
+    private static final String PARTITION_PREFIX = "partition-";
+
+    @Value("${wal.base-path:./data/wal}")
+    private String basePath;
+    @Value("${wal.instance-id:default}")
+    private String instanceId;
+    @Value("${wal.partition.mode:none}")
+    private String modeName;
+    @Value("${wal.partition.shards:8}")
+    private int shardCount;
+
+    private Mode mode;
+    private Path rootPath;
+
+    /**
+     * 分区方式
+     */
+    public enum Mode {
+        NONE("none"),
+        SYMBOL("symbol"),
+        SHARD("shard");
+
+        private final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 根据配置名获取分区方式
+         */
+        public static Mode fromName(String name) {
+            if (name != null) {
+                String normalized = name.trim().toLowerCase();
+                for (Mode mode : values()) {
+                    if (mode.name.equals(normalized)) {
+                        return mode;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Invalid WAL partition mode: " + name);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        mode = Mode.fromName(modeName);
+        if (mode == Mode.SHARD && shardCount <= 0) {
+            throw new IllegalArgumentException("Invalid WAL partition shards: " + shardCount);
+        }
+        rootPath = Paths.get(basePath, instanceId);
+        try {
+            Files.createDirectories(rootPath);
+            checkLayout();
+        } catch (IOException e) {
+            log.error("初始化WAL分区失败", e);
+            throw new RuntimeException("初始化WAL分区失败", e);
+        }
+        log.info("WAL分区布局: layout={}, rootPath={}", layout(), rootPath);
+    }
+
+    /**
+     * 比对布局文件；没有布局文件时根据磁盘上已有的WAL判断（升级前的WAL都是不分区的）
+     */
+    private void checkLayout() throws IOException {
+        Path layoutFile = rootPath.resolve(LAYOUT_FILE);
+        String layout = layout();
+        if (Files.exists(layoutFile)) {
+            String existing = Files.readString(layoutFile, StandardCharsets.UTF_8).trim();
+            if (!existing.equals(layout)) {
+                throw new IllegalStateException("WAL分区配置与已有WAL不一致: configured=" + layout + ", existing=" + existing);
+            }
+            return;
+        }
+        boolean hasUnpartitionedWal = !WALFiles.listSegments(rootPath).isEmpty()
+                || !WALFiles.listLegacyFiles(rootPath).isEmpty();
+        if (mode != Mode.NONE && hasUnpartitionedWal) {
+            throw new IllegalStateException("WAL分区配置与已有WAL不一致: configured=" + layout + ", existing=none");
+        }
+        Files.writeString(layoutFile, layout, StandardCharsets.UTF_8);
+        WALFiles.syncDirectory(rootPath);
+    }
+
+    /**
+     * 布局描述（写入布局文件）
+     */
+    private String layout() {
+        return mode == Mode.SHARD ? mode.getName() + "-" + shardCount : mode.getName();
+    }
+
+    /**
+     * 是否分区
+     */
+    public boolean isPartitioned() {
+        return mode != Mode.NONE;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 交易对所属分区
+     */
+    public int partitionOf(int symbolId) {
+        return switch (mode) {
+            case NONE -> 0;
+            case SYMBOL -> symbolId;
+            case SHARD -> Math.floorMod(symbolId, shardCount);
+        };
+    }
+
+    /**
+     * WAL根目录（布局文件、来源topic表等各分区共用的文件所在目录）
+     */
+    public Path getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * 分区目录
+     */
+    public Path partitionPath(int partition) {
+        return mode == Mode.NONE ? rootPath : rootPath.resolve(PARTITION_PREFIX + partition);
+    }
+
+    /**
+     * 磁盘上已有的分区（不分区时只有分区0）
+     */
+    public List<Integer> listPartitions() throws IOException {
+        List<Integer> partitions = new ArrayList<>();
+        if (mode == Mode.NONE) {
+            partitions.add(0);
+            return partitions;
+        }
+        try (Stream<Path> paths = Files.list(rootPath)) {
+            paths.filter(Files::isDirectory)
+                    .map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(PARTITION_PREFIX))
+                    .map(name -> Integer.parseInt(name.substring(PARTITION_PREFIX.length())))
+                    .sorted()
+                    .forEach(partitions::add);
+        }
+        return partitions;
+    }
+}
@@ -1,25 +1,31 @@
 package com.spark.match.wal;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 /**
  * WAL读取器
+ * 支持二进制格式（{@link WALRecordCodec}，文件头magic识别）和旧JSON格式（长度前缀 + WALRecord JSON），
+ * 升级前写入的旧格式文件仍可正常重放
+ * <p>
+ * 旧版本文件在前、段文件按序列号在后，逐个文件流式扫描（{@link WALCursor}），边读边校验边回调，
+ * 整个WAL只读一遍，内存占用与WAL大小无关；
+ * 段文件按首条walSeq命名，fromWalSeq之前的段直接跳过，起始段借助稀疏索引直接定位（见{@link WALFiles}）
+ * <p>
+ * 归档目录中的文件与在线文件合并为同一个序列（同名时以在线文件为准），
+ * fromWalSeq早于在线段时自动读取归档（快照缺失时的恢复、审计）
  */
 @Slf4j
 @Component
@@ -29,6 +35,7 @@ public class WALReader {
 
     /**
      * 读取WAL文件（从指定序列号开始）
+     * 会把全部记录加载到内存，恢复流程应使用{@link #scan}
      *
      * @param basePath   WAL基础路径
      * @param instanceId 实例ID
@@ -36,249 +43,185 @@ public class WALReader {
      * @return WAL记录列表
      */
     public List<WALRecord> readWAL(String basePath, String instanceId, long fromWalSeq) {
-        return readWALAfter(basePath, instanceId, fromWalSeq);
+        List<WALRecord> records = new ArrayList<>();
+        scan(basePath, instanceId, fromWalSeq, records::add);
+        return records;
     }
 
     /**
-     * 读取WAL文件（从指定序列号开始，包含文件完整性校验）
-     * 注意：会对每个WAL文件进行checksum校验，如果文件损坏则跳过
+     * 流式扫描WAL（单次顺序读取，逐条回调）
+     * 校验失败的记录跳过；文件损坏（记录长度非法）时该文件之后的记录无法定位，继续扫描下一个文件
      *
      * @param basePath   WAL基础路径
      * @param instanceId 实例ID
-     * @param fromWalSeq 起始序列号
-     * @return WAL记录列表
+     * @param fromWalSeq 起始序列号（小于该序列号的记录不回调）
+     * @param consumer   记录回调（按WAL顺序调用）
+     * @return 扫描统计
      */
-    public List<WALRecord> readWALAfter(String basePath, String instanceId, long fromWalSeq) {
-        List<WALRecord> records = new ArrayList<>();
-        Path walPath = Paths.get(basePath, instanceId);
+    public ScanResult scan(String basePath, String instanceId, long fromWalSeq, Consumer<WALRecord> consumer) {
+        return scan(Paths.get(basePath, instanceId), fromWalSeq, consumer);
+    }
+
+    /**
+     * 流式扫描一个WAL目录（不分区时的WAL根目录，或一个分区目录，见{@link WALPartitioning}）
+     *
+     * @param walPath    WAL目录
+     * @param fromWalSeq 起始序列号（小于该序列号的记录不回调）
+     * @param consumer   记录回调（按WAL顺序调用）
+     * @return 扫描统计
+     */
+    public ScanResult scan(Path walPath, long fromWalSeq, Consumer<WALRecord> consumer) {
+        ScanResult result = new ScanResult();
 
         if (!Files.exists(walPath)) {
             log.info("WAL路径不存在: {}", walPath);
-            return records;
+            return result;
         }
 
+        List<Path> legacyFiles;
+        List<Path> segments;
         try {
-            // 获取所有WAL文件，按文件名排序
-            List<Path> walFiles = getWalFiles(walPath);
-            int corruptedFileCount = 0;
-
-            for (Path walFile : walFiles) {
-                // 验证文件完整性
-                if (!validateWalFileIntegrity(walFile)) {
-                    log.error("WAL文件损坏，跳过: fileName={}", walFile.getFileName());
-                    corruptedFileCount++;
-                    // 继续处理下一个文件
-                    continue;
-                }
+            legacyFiles = merge(WALFiles.listArchivedLegacyFiles(walPath), WALFiles.listLegacyFiles(walPath));
+            segments = merge(WALFiles.listArchivedSegments(walPath), WALFiles.listSegments(walPath));
+        } catch (IOException e) {
+            log.error("读取WAL失败: walPath={}", walPath, e);
+            return result;
+        }
 
-                List<WALRecord> fileRecords = readWalFile(walFile, fromWalSeq);
-                records.addAll(fileRecords);
-            }
+        // 旧版本文件从walSeq=1开始写入；没有旧版本文件时最早的记录是第一个段（含归档）的首条
+        if (!legacyFiles.isEmpty()) {
+            result.firstAvailableWalSeq = 1;
+        } else if (!segments.isEmpty()) {
+            result.firstAvailableWalSeq = WALFiles.firstWalSeq(segments.get(0));
+        }
 
-            if (corruptedFileCount > 0) {
-                log.error("检测到{}个损坏的WAL文件，已跳过", corruptedFileCount);
-                // 触发告警（这里仅记录日志，实际生产环境可以集成告警系统）
+        long startTime = System.currentTimeMillis();
+        // 旧版本文件没有索引且序列号不连续，全部扫描（排在所有段之前）；
+        // fromWalSeq已落在段的序列号范围内时旧版本文件的记录都更早，不再扫描
+        if (segments.isEmpty() || fromWalSeq < WALFiles.firstWalSeq(segments.get(0))) {
+            for (Path legacyFile : legacyFiles) {
+                scanFile(legacyFile, fromWalSeq, false, consumer, result);
             }
-
-            if (corruptedFileCount == walFiles.size() && !walFiles.isEmpty()) {
-                log.error("所有WAL文件都损坏，建议仅从Snapshot恢复");
+        } else {
+            result.skippedFileCount += legacyFiles.size();
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            // 下一个段的首条walSeq不大于fromWalSeq时，本段的记录全部在fromWalSeq之前，直接跳过
+            if (i + 1 < segments.size() && WALFiles.firstWalSeq(segments.get(i + 1)) <= fromWalSeq) {
+                result.skippedFileCount++;
+                continue;
             }
-
-        } catch (IOException e) {
-            log.error("读取WAL失败: basePath={}, instanceId={}", basePath, instanceId, e);
+            scanFile(segment, fromWalSeq, WALFiles.firstWalSeq(segment) < fromWalSeq, consumer, result);
         }
 
-        return records;
-    }
-
-    /**
-     * 获取所有WAL文件
-     */
-    private List<Path> getWalFiles(Path walPath) throws IOException {
-        List<Path> files = new ArrayList<>();
-        try (Stream<Path> paths = Files.list(walPath)) {
-            paths.filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().startsWith("wal-"))
-                    .filter(p -> p.getFileName().toString().endsWith(".log"))
-                    .sorted(Comparator.comparing(Path::getFileName))
-                    .forEach(files::add);
+        if (result.corruptedFileCount > 0) {
+            log.error("检测到{}个损坏的WAL文件", result.corruptedFileCount);
+            // 触发告警（这里仅记录日志，实际生产环境可以集成告警系统）
         }
-        return files;
+        log.info("WAL扫描完成: walPath={}, files={}, archivedFiles={}, skippedFiles={}, records={}, dispatched={}, invalid={}, quarantined={}, costMs={}",
+                walPath, result.fileCount, result.archivedFileCount, result.skippedFileCount, result.recordCount,
+                result.dispatchedCount, result.invalidRecordCount, result.quarantinedRecordCount, System.currentTimeMillis() - startTime);
+        return result;
     }
 
     /**
-     * 读取单个WAL文件
+     * 扫描单个文件
+     *
+     * @param seek 是否借助稀疏索引直接定位到fromWalSeq附近
      */
-    private List<WALRecord> readWalFile(Path walFile, long fromWalSeq) {
-        List<WALRecord> records = new ArrayList<>();
-
-        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
-            long fileSize = channel.size();
-            long position = 0;
-
-            while (position < fileSize) {
-                // 读取长度前缀
-                ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-                int bytesRead = channel.read(lengthBuffer);
-                if (bytesRead != 4) {
-                    break;
-                }
-                lengthBuffer.flip();
-                int recordLength = lengthBuffer.getInt();
-
-                // 读取记录数据
-                ByteBuffer recordBuffer = ByteBuffer.allocate(recordLength);
-                bytesRead = channel.read(recordBuffer);
-                if (bytesRead != recordLength) {
-                    log.info("WAL文件损坏: fileName={}, position={}", walFile.getFileName(), position);
-                    break;
-                }
-
-                // 解析记录
-                String recordJson = new String(recordBuffer.array(), "UTF-8");
-                WALRecord record;
-                try {
-                    record = objectMapper.readValue(recordJson, WALRecord.class);
-                } catch (JsonProcessingException e) {
-                    log.info("WAL记录解析失败: fileName={}, position={}", walFile.getFileName(), position, e);
-                    continue;
-                }
-
-                // 校验和验证
-                if (!validateChecksum(record)) {
-                    log.info("WAL记录校验和失败: walSeq={}, fileName={}", record.getWalSeq(), walFile.getFileName());
-                    continue;
-                }
-
-                // 只读取大于等于fromWalSeq的记录
+    private void scanFile(Path walFile, long fromWalSeq, boolean seek, Consumer<WALRecord> consumer, ScanResult result) {
+        result.fileCount++;
+        if (WALFiles.isArchived(walFile)) {
+            result.archivedFileCount++;
+        }
+        try (WALCursor cursor = seek
+                ? WALCursor.openAt(walFile, fromWalSeq, objectMapper, WALCursor.DEFAULT_BUFFER_SIZE)
+                : WALCursor.open(walFile, objectMapper, WALCursor.DEFAULT_BUFFER_SIZE)) {
+            WALRecord record;
+            while ((record = cursor.next()) != null) {
+                result.recordCount++;
+                // 只回调大于等于fromWalSeq的记录
                 if (record.getWalSeq() >= fromWalSeq) {
-                    records.add(record);
+                    consumer.accept(record);
+                    result.dispatchedCount++;
                 }
-
-                position += 4 + recordLength;
             }
-        } catch (Exception e) {
+            result.invalidRecordCount += cursor.getInvalidRecordCount();
+            result.quarantinedRecordCount += cursor.getTombstoneCount();
+            if (cursor.isCorrupted()) {
+                log.error("WAL文件损坏，之后的记录已跳过: fileName={}, position={}", walFile.getFileName(), cursor.position());
+                result.corruptedFileCount++;
+            }
+        } catch (IOException e) {
             log.error("读取WAL文件失败: fileName={}", walFile.getFileName(), e);
+            result.corruptedFileCount++;
         }
-
-        return records;
     }
 
     /**
-     * 验证校验和
-     * 注意：checksum是基于整个WALRecord序列化后的数据计算的，而不是只基于OrderMessage
+     * 合并归档文件和在线文件，按原文件名排序；归档中断时两边可能同时存在，以在线文件为准
      */
-    private boolean validateChecksum(WALRecord record) {
-        try {
-            // 创建临时记录用于计算checksum（checksum字段设为0）
-            WALRecord tempRecord = WALRecord.builder()
-                    .walSeq(record.getWalSeq())
-                    .orderMessage(record.getOrderMessage())
-                    .timestamp(record.getTimestamp())
-                    .checksum(0L) // 临时设为0
-                    .build();
-            
-            // 序列化整个记录
-            String recordJson = objectMapper.writeValueAsString(tempRecord);
-            byte[] recordData = recordJson.getBytes("UTF-8");
-            long calculatedChecksum = calculateChecksum(recordData);
-            return calculatedChecksum == record.getChecksum();
-        } catch (JsonProcessingException e) {
-            log.error("校验和验证失败: 序列化错误", e);
-            return false;
-        } catch (Exception e) {
-            log.error("校验和验证失败", e);
-            return false;
+    private static List<Path> merge(List<Path> archived, List<Path> live) {
+        Map<String, Path> files = new TreeMap<>();
+        for (Path file : archived) {
+            files.put(WALFiles.originalFileName(file), file);
         }
-    }
-
-    /**
-     * 计算校验和
-     */
-    private long calculateChecksum(byte[] data) {
-        long checksum = 0;
-        for (byte b : data) {
-            checksum = (checksum * 31) + b;
+        for (Path file : live) {
+            files.put(WALFiles.originalFileName(file), file);
         }
-        return checksum;
+        return new ArrayList<>(files.values());
     }
 
     /**
-     * 验证WAL文件完整性
-     * 通过尝试读取文件中的所有记录并验证checksum来判断文件是否损坏
-     *
-     * @param walFile WAL文件路径
-     * @return true表示文件完整，false表示文件损坏
+     * 扫描统计
      */
-    private boolean validateWalFileIntegrity(Path walFile) {
-        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.READ)) {
-            long fileSize = channel.size();
-            long position = 0;
-            int validRecordCount = 0;
-            int invalidRecordCount = 0;
-
-            while (position < fileSize) {
-                // 读取长度前缀
-                ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-                int bytesRead = channel.read(lengthBuffer);
-                if (bytesRead != 4) {
-                    // 文件末尾，正常结束
-                    break;
-                }
-                lengthBuffer.flip();
-                int recordLength = lengthBuffer.getInt();
-
-                if (recordLength <= 0 || recordLength > 10 * 1024 * 1024) {
-                    // 记录长度异常，文件可能损坏
-                    log.info("WAL文件记录长度异常: fileName={}, position={}, recordLength={}", 
-                            walFile.getFileName(), position, recordLength);
-                    return false;
-                }
-
-                // 读取记录数据
-                ByteBuffer recordBuffer = ByteBuffer.allocate(recordLength);
-                bytesRead = channel.read(recordBuffer);
-                if (bytesRead != recordLength) {
-                    // 读取不完整，文件可能损坏
-                    log.info("WAL文件读取不完整: fileName={}, position={}, expected={}, actual={}", 
-                            walFile.getFileName(), position, recordLength, bytesRead);
-                    return false;
-                }
-
-                // 尝试解析记录
-                String recordJson = new String(recordBuffer.array(), "UTF-8");
-                try {
-                    WALRecord record = objectMapper.readValue(recordJson, WALRecord.class);
-                    // 验证记录级checksum
-                    if (validateChecksum(record)) {
-                        validRecordCount++;
-                    } else {
-                        invalidRecordCount++;
-                        // 如果无效记录过多，认为文件损坏
-                        if (invalidRecordCount > 10) {
-                            log.info("WAL文件包含过多无效记录: fileName={}, invalidCount={}", 
-                                    walFile.getFileName(), invalidRecordCount);
-                            return false;
-                        }
-                    }
-                } catch (JsonProcessingException e) {
-                    // 解析失败，记录可能损坏
-                    invalidRecordCount++;
-                    if (invalidRecordCount > 10) {
-                        log.info("WAL文件包含过多无法解析的记录: fileName={}, invalidCount={}", 
-                                walFile.getFileName(), invalidRecordCount);
-                        return false;
-                    }
-                }
-
-                position += 4 + recordLength;
-            }
-
-            // 如果文件中有有效记录，认为文件基本完整
-            return validRecordCount > 0 || (position == 0 && fileSize == 0); // 空文件也算有效
-        } catch (Exception e) {
-            log.error("验证WAL文件完整性失败: fileName={}", walFile.getFileName(), e);
-            return false;
-        }
+    @lombok.Data
+    public static class ScanResult {
+        /**
+         * 扫描的文件数
+         */
+        private int fileCount;
+
+        /**
+         * 其中从归档读取的文件数
+         */
+        private int archivedFileCount;
+
+        /**
+         * 按段序列号范围跳过的文件数
+         */
+        private int skippedFileCount;
+
+        /**
+         * 校验通过的记录数
+         */
+        private long recordCount;
+
+        /**
+         * 回调的记录数（walSeq >= fromWalSeq）
+         */
+        private long dispatchedCount;
+
+        /**
+         * 校验失败而跳过的记录数
+         */
+        private long invalidRecordCount;
+
+        /**
+         * 已隔离（启动修复时替换为占位记录）而跳过的记录数
+         */
+        private long quarantinedRecordCount;
+
+        /**
+         * 损坏的文件数
+         */
+        private int corruptedFileCount;
+
+        /**
+         * 目录中（含归档）最早可读的walSeq（没有WAL文件时为0）
+         * 大于恢复所需的起始序列号说明之前的WAL已被淘汰，无法完整重放
+         */
+        private long firstAvailableWalSeq;
     }
 }
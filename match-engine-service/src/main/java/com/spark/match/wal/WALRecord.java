@@ -1,5 +1,6 @@
 package com.spark.match.wal;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.spark.common.model.OrderMessage;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -37,4 +38,24 @@ public class WALRecord implements Serializable {
      * 校验和（用于文件完整性校验）
      */
     private Long checksum;
+
+    /**
+     * 来源Kafka topic编号（见{@link WALSourceTopics}，不是来自Kafka时为null）
+     * 旧JSON格式没有该字段，为null时不参与序列化
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer sourceTopicId;
+
+    /**
+     * 来源Kafka分区（不是来自Kafka时为null）
+     * 旧JSON格式没有该字段，为null时不参与序列化，保持旧checksum的计算结果不变
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer sourcePartition;
+
+    /**
+     * 来源Kafka offset（同上）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long sourceOffset;
 }
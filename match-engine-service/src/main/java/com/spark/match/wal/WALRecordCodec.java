@@ -0,0 +1,270 @@
+package com.spark.match.wal;
+
+import com.spark.common.enums.MessageType;
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+import com.spark.common.model.OrderMessage;
+import com.spark.match.disruptor.OrderEvent;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * WAL二进制记录编解码
+ * 文件头（8字节）：[int magic "SWAL"][short version][short reserved]
+ * 记录：
+ * - [int length] 记录体长度（不含length和crc两个字段）
+ * - [int crc32c] 记录体的CRC32C（java.util.zip.CRC32C，JDK使用CPU的CRC32C指令加速）
+ * - 记录体：[long walSeq][long timestamp][byte messageType]
+ *   [long orderId][long userId][int symbolId][byte orderType][byte orderSide][byte tifType]
+ *   [long price][long quantity][long orderTimestamp]
+ *   [int sourceTopicId][int sourcePartition][long sourceOffset]
+ *   （来源Kafka topic、分区和offset，不是来自Kafka时为-1；topic以WAL根目录的topic表中的编号表示，见{@link WALSourceTopics}）
+ * <p>
+ * 枚举字段写入code，-1表示null；价格、数量、订单时间戳缺失时写入OrderEvent.NULL_LONG。
+ * 单条记录88字节（JSON格式约400字节），写入时直接从已解码的OrderEvent编码，不经过JSON序列化。
+ * messageId不参与重放，不写入WAL
+ * <p>
+ * 记录定长（{@link #RECORD_SIZE}），文件头版本不是{@link #FORMAT_VERSION}的二进制文件拒绝读取
+ * <p>
+ * 旧JSON格式文件首4字节是记录长度（不超过10MB），不会与magic冲突，读取器据此识别文件格式
+ */
+public final class WALRecordCodec {
+    /**
+     * 文件头magic："SWAL"
+     */
+    public static final int FILE_MAGIC = 0x5357414C;
+
+    /**
+     * 格式版本（二进制格式只有这一个版本，其他版本的文件拒绝读取）
+     */
+    public static final short FORMAT_VERSION = 2;
+
+    /**
+     * 文件头长度
+     */
+    public static final int FILE_HEADER_SIZE = 8;
+
+    /**
+     * 记录头长度（length + crc32c）
+     */
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * 记录体长度
+     */
+    public static final int BODY_SIZE = 80;
+
+    /**
+     * 单条记录长度
+     */
+    public static final int RECORD_SIZE = RECORD_HEADER_SIZE + BODY_SIZE;
+
+    /**
+     * 来源topic编号在记录体中的位置
+     */
+    public static final int SOURCE_TOPIC_POSITION = 64;
+
+    /**
+     * 来源Kafka分区在记录体中的位置
+     */
+    public static final int SOURCE_PARTITION_POSITION = SOURCE_TOPIC_POSITION + 4;
+
+    /**
+     * 来源Kafka offset在记录体中的位置
+     */
+    public static final int SOURCE_OFFSET_POSITION = SOURCE_TOPIC_POSITION + 8;
+
+    /**
+     * 没有来源（不是来自Kafka的记录）
+     */
+    public static final int NO_SOURCE = -1;
+
+    /**
+     * 隔离占位记录的校验和：长度为记录体长度、校验和为0、记录体全0（walSeq为0，正常记录不会出现），
+     * 启动修复时替换段中间的损坏记录（见{@link WALTailRepair}），读取时静默跳过
+     */
+    public static final int TOMBSTONE_CHECKSUM = 0;
+
+    /**
+     * 枚举字段缺失的编码
+     */
+    private static final byte NULL_CODE = -1;
+
+    private WALRecordCodec() {
+    }
+
+    /**
+     * 读取记录体中的来源位置（不改变buffer的position）
+     *
+     * @param buffer    缓冲区
+     * @param bodyStart 记录体在缓冲区中的起始位置
+     * @param sink      来源位置回调（topic编号、分区、offset），不是来自Kafka时不回调
+     */
+    public static void readSource(ByteBuffer buffer, int bodyStart, SourceSink sink) {
+        int sourcePartition = buffer.getInt(bodyStart + SOURCE_PARTITION_POSITION);
+        if (sourcePartition != NO_SOURCE) {
+            sink.accept(buffer.getInt(bodyStart + SOURCE_TOPIC_POSITION), sourcePartition,
+                    buffer.getLong(bodyStart + SOURCE_OFFSET_POSITION));
+        }
+    }
+
+    /**
+     * 写入文件头
+     *
+     * @param buffer 目标缓冲区
+     */
+    public static void encodeFileHeader(ByteBuffer buffer) {
+        buffer.putInt(FILE_MAGIC).putShort(FORMAT_VERSION).putShort((short) 0);
+    }
+
+    /**
+     * 从已解码的订单事件编码一条记录（写入到buffer当前位置）
+     *
+     * @param buffer    目标缓冲区
+     * @param walSeq    WAL序列号
+     * @param timestamp 写入时间
+     * @param event     已解码的订单事件
+     * @param topicId   来源topic编号（不是来自Kafka时为{@link #NO_SOURCE}）
+     * @param crc32c    CRC32C计算器（调用方复用，非线程安全）
+     */
+    public static void encode(ByteBuffer buffer, long walSeq, long timestamp, OrderEvent event, int topicId,
+                              CRC32C crc32c) {
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        buffer.putLong(walSeq)
+                .putLong(timestamp)
+                .put(event.getMessageType())
+                .putLong(event.getOrderId())
+                .putLong(event.getUserId())
+                .putInt(event.getSymbolId())
+                .put(event.getOrderType() != null ? (byte) event.getOrderType().getCode() : NULL_CODE)
+                .put(event.getOrderSide() != null ? (byte) event.getOrderSide().getCode() : NULL_CODE)
+                .put(event.getTifType() != null ? (byte) event.getTifType().getCode() : NULL_CODE)
+                .putLong(event.getPrice())
+                .putLong(event.getQuantity())
+                .putLong(event.getTimestamp())
+                .putInt(event.getSourcePartition() >= 0 ? topicId : NO_SOURCE)
+                .putInt(event.getSourcePartition())
+                .putLong(event.getSourceOffset());
+        finishRecord(buffer, start, crc32c);
+    }
+
+    /**
+     * 回填记录头：记录体长度和CRC32C
+     */
+    private static void finishRecord(ByteBuffer buffer, int start, CRC32C crc32c) {
+        int end = buffer.position();
+        int limit = buffer.limit();
+        int bodyStart = start + RECORD_HEADER_SIZE;
+        buffer.position(bodyStart).limit(end);
+        crc32c.reset();
+        crc32c.update(buffer);
+        buffer.limit(limit);
+        buffer.position(end);
+        buffer.putInt(start, end - bodyStart);
+        buffer.putInt(start + 4, (int) crc32c.getValue());
+    }
+
+    /**
+     * 写入隔离占位记录（定长，覆盖一条损坏记录的位置）
+     *
+     * @param buffer 目标缓冲区
+     */
+    public static void encodeTombstone(ByteBuffer buffer) {
+        buffer.putInt(BODY_SIZE).putInt(TOMBSTONE_CHECKSUM);
+        for (int i = 0; i < BODY_SIZE; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * 记录体是否为隔离占位（全0，不改变buffer的position）
+     *
+     * @param body     记录体（position到limit为记录体内容）
+     * @param checksum 记录头中的校验和
+     */
+    public static boolean isTombstone(ByteBuffer body, int checksum) {
+        if (checksum != TOMBSTONE_CHECKSUM || !body.hasRemaining()) {
+            return false;
+        }
+        for (int i = body.position(); i < body.limit(); i++) {
+            if (body.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算记录体的CRC32C（不改变buffer的position）
+     *
+     * @param body   记录体（position到limit为记录体内容）
+     * @param crc32c CRC32C计算器
+     * @return CRC32C（低32位）
+     */
+    public static int checksum(ByteBuffer body, CRC32C crc32c) {
+        int position = body.position();
+        crc32c.reset();
+        crc32c.update(body);
+        body.position(position);
+        return (int) crc32c.getValue();
+    }
+
+    /**
+     * 解码记录体
+     *
+     * @param body     记录体（从position开始读取，limit为记录体结尾）
+     * @param checksum 记录头中的CRC32C
+     * @return WAL记录
+     * @throws IllegalArgumentException 枚举编码非法
+     */
+    public static WALRecord decode(ByteBuffer body, int checksum) {
+        long walSeq = body.getLong();
+        long timestamp = body.getLong();
+        byte messageType = body.get();
+        long orderId = body.getLong();
+        long userId = body.getLong();
+        int symbolId = body.getInt();
+        byte orderType = body.get();
+        byte orderSide = body.get();
+        byte tifType = body.get();
+        long price = body.getLong();
+        long quantity = body.getLong();
+        long orderTimestamp = body.getLong();
+        int sourceTopicId = body.getInt();
+        int sourcePartition = body.getInt();
+        long sourceOffset = body.getLong();
+
+        OrderMessage message = OrderMessage.builder()
+                .messageType(messageType != NULL_CODE ? MessageType.fromCode(messageType) : null)
+                .orderId(orderId)
+                .userId(userId)
+                .symbolId(symbolId)
+                .orderType(orderType != NULL_CODE ? OrderType.fromCode(orderType) : null)
+                .orderSide(orderSide != NULL_CODE ? OrderSide.fromCode(orderSide) : null)
+                .tifType(tifType != NULL_CODE ? TIFType.fromCode(tifType) : null)
+                .price(price != OrderEvent.NULL_LONG ? price : null)
+                .quantity(quantity != OrderEvent.NULL_LONG ? quantity : null)
+                .timestamp(orderTimestamp != OrderEvent.NULL_LONG ? orderTimestamp : null)
+                .build();
+        return WALRecord.builder()
+                .walSeq(walSeq)
+                .orderMessage(message)
+                .timestamp(timestamp)
+                .checksum(Integer.toUnsignedLong(checksum))
+                .sourceTopicId(sourcePartition != NO_SOURCE ? sourceTopicId : null)
+                .sourcePartition(sourcePartition != NO_SOURCE ? sourcePartition : null)
+                .sourceOffset(sourcePartition != NO_SOURCE ? sourceOffset : null)
+                .build();
+    }
+
+    /**
+     * 来源位置回调
+     */
+    @FunctionalInterface
+    public interface SourceSink {
+        void accept(int topicId, int partition, long offset);
+    }
+}
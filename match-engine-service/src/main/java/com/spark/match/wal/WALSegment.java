@@ -0,0 +1,464 @@
+package com.spark.match.wal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 预分配的WAL段文件
+ * 创建时写满0并fsync一次（分配磁盘块、确定文件大小），之后通过MappedByteBuffer写入记录，
+ * 提交时只force已写入但未落盘的区间；文件大小和块分配不再变化，提交不会触发元数据同步
+ * <p>
+ * 未写入的部分全为0，读取器遇到长度为0的记录头即认为到达段末尾
+ * <p>
+ * 预分配时使用临时文件名（首条记录的序列号尚未确定），启用时重命名为按首条walSeq命名的段文件，
+ * 同时创建稀疏索引文件（见{@link WALFiles}）；启动时上次运行最后写入的段经尾部修复后重新打开（{@link #reopen}），
+ * 从最后一条有效记录之后继续写入，写满后再滚动
+ * <p>
+ * 两种写入方式（{@link WALIoMode}）：
+ * - MMAP：记录编码到内存映射区，提交时force对应区间
+ * - DIRECT：以O_DIRECT打开，记录编码到两个按块对齐的直接缓冲区之一，提交时交换缓冲区，
+ *   写满的缓冲区按块对齐写入并fdatasync，期间新记录写入另一个缓冲区；最后一个不完整的块
+ *   复制到新缓冲区开头，下次提交时连同新记录重写；O_DIRECT打开选项（jdk.unsupported模块的
+ *   com.sun.nio.file.ExtendedOpenOption.DIRECT）在运行时反射查找，不编译期依赖JDK内部API，
+ *   当前JDK没有该选项时创建DIRECT段抛出UnsupportedOperationException，由调用方回退为MMAP
+ * <p>
+ * 提交分两步：{@link #prepareFlush()}由写入线程在同步方法中调用（确定区间、交换缓冲区），
+ * {@link #flush(FlushRegion, boolean)}由刷盘线程调用（write + fsync），两次提交之间最多一个区间在刷盘中；
+ * 其余方法非线程安全，由WALWriter在同步方法中使用
+ */
+final class WALSegment {
+    /**
+     * 预分配时每次写入的0块大小
+     */
+    private static final int ZERO_CHUNK_SIZE = 1024 * 1024;
+    /**
+     * O_DIRECT打开选项（当前JDK不支持时为null）
+     */
+    private static final OpenOption DIRECT_OPEN_OPTION = lookupDirectOpenOption();
+
+    private final FileChannel channel;
+    private final int size;
+    private Path path;
+    /**
+     * MMAP：内存映射区（DIRECT时为null）
+     */
+    private final MappedByteBuffer mapped;
+    /**
+     * MMAP：已提交刷盘的位置（之前的数据已交给刷盘线程）
+     */
+    private int flushedPosition;
+    /**
+     * DIRECT：块大小，写入的文件偏移和长度都按块对齐
+     */
+    private final int blockSize;
+    /**
+     * DIRECT：当前写入的缓冲区和空闲缓冲区
+     */
+    private ByteBuffer active;
+    private ByteBuffer standby;
+    /**
+     * DIRECT：当前缓冲区起始位置对应的文件偏移（块对齐）
+     */
+    private long activeFileOffset;
+    /**
+     * DIRECT：当前缓冲区中已提交刷盘的长度（交换时带过来的不完整块）
+     */
+    private int activeFlushedLength;
+    /**
+     * 首条记录的walSeq（启用后有效）
+     */
+    private long firstWalSeq;
+    /**
+     * 稀疏索引文件（启用后打开）
+     */
+    private FileChannel indexChannel;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(WALFiles.INDEX_ENTRY_SIZE);
+    /**
+     * 每隔多少条记录写一项索引
+     */
+    private int indexInterval;
+
+    private WALSegment(Path path, FileChannel channel, int size, MappedByteBuffer mapped) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.mapped = mapped;
+        this.flushedPosition = mapped.position();
+        this.blockSize = 0;
+    }
+
+    private WALSegment(Path path, FileChannel channel, int size, int blockSize, int bufferSize) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.mapped = null;
+        this.blockSize = blockSize;
+        this.active = allocateAligned(bufferSize, blockSize);
+        this.standby = allocateAligned(bufferSize, blockSize);
+    }
+
+    /**
+     * 创建并预分配段文件，写入文件头
+     *
+     * @param path       段文件路径（不能已存在）
+     * @param size       段大小（DIRECT时向上对齐到块大小）
+     * @param ioMode     写入方式
+     * @param bufferSize DIRECT写缓冲区大小（MMAP时忽略）
+     * @return 可写入的段
+     */
+    static WALSegment create(Path path, int size, WALIoMode ioMode, int bufferSize) throws IOException {
+        if (ioMode == WALIoMode.DIRECT) {
+            return createDirect(path, size, bufferSize);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            preallocate(channel, size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            WALRecordCodec.encodeFileHeader(buffer);
+            buffer.force(0, buffer.position());
+            return new WALSegment(path, channel, size, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    private static WALSegment createDirect(Path path, int size, int bufferSize) throws IOException {
+        if (DIRECT_OPEN_OPTION == null) {
+            throw new UnsupportedOperationException("当前JDK不支持O_DIRECT打开选项");
+        }
+        FileChannel channel = null;
+        try {
+            int blockSize = (int) Files.getFileStore(path.getParent()).getBlockSize();
+            int alignedSize = (int) Math.min(alignUp(size, blockSize), Integer.MAX_VALUE / blockSize * blockSize);
+            // 缓冲区至少容纳一个不完整的块加一条记录
+            int alignedBufferSize = (int) alignUp(Math.max(bufferSize, blockSize + WALRecordCodec.RECORD_SIZE), blockSize);
+            try (FileChannel preallocateChannel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                preallocate(preallocateChannel, alignedSize);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, DIRECT_OPEN_OPTION);
+            WALSegment segment = new WALSegment(path, channel, alignedSize, blockSize, alignedBufferSize);
+            WALRecordCodec.encodeFileHeader(segment.active);
+            segment.force();
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * 反射查找com.sun.nio.file.ExtendedOpenOption.DIRECT（OpenJDK的jdk.unsupported模块提供），找不到时返回null
+     */
+    private static OpenOption lookupDirectOpenOption() {
+        try {
+            Object[] options = Class.forName("com.sun.nio.file.ExtendedOpenOption").getEnumConstants();
+            if (options != null) {
+                for (Object option : options) {
+                    if (option instanceof OpenOption openOption && "DIRECT".equals(((Enum<?>) option).name())) {
+                        return openOption;
+                    }
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            // 非OpenJDK系运行时，没有该选项
+        }
+        return null;
+    }
+
+    /**
+     * 重新打开已有的段（上次运行最后写入、已经过尾部修复的段），从validEnd继续写入
+     * 段大小沿用文件的实际大小；稀疏索引保留已有的项，之后的项追加在末尾
+     *
+     * @param segmentFile   段文件（按首条walSeq命名）
+     * @param firstWalSeq   首条记录的walSeq
+     * @param validEnd      最后一条有效记录的结束位置（下一条记录的写入位置）
+     * @param ioMode        写入方式
+     * @param bufferSize    DIRECT写缓冲区大小（MMAP时忽略）
+     * @param indexInterval 索引间隔（记录数）
+     * @throws UnsupportedOperationException DIRECT时当前JDK不支持O_DIRECT，或段大小没有按块对齐（段由MMAP创建）
+     */
+    static WALSegment reopen(Path segmentFile, long firstWalSeq, long validEnd, WALIoMode ioMode, int bufferSize,
+                             int indexInterval) throws IOException {
+        WALSegment segment = ioMode == WALIoMode.DIRECT
+                ? reopenDirect(segmentFile, validEnd, bufferSize)
+                : reopenMapped(segmentFile, validEnd);
+        segment.firstWalSeq = firstWalSeq;
+        segment.indexInterval = Math.max(indexInterval, 1);
+        try {
+            segment.indexChannel = FileChannel.open(WALFiles.indexFile(segmentFile),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            segment.channel.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    private static WALSegment reopenMapped(Path segmentFile, long validEnd) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int size = segmentSize(channel, validEnd);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position((int) validEnd);
+            return new WALSegment(segmentFile, channel, size, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static WALSegment reopenDirect(Path segmentFile, long validEnd, int bufferSize) throws IOException {
+        if (DIRECT_OPEN_OPTION == null) {
+            throw new UnsupportedOperationException("当前JDK不支持O_DIRECT打开选项");
+        }
+        int blockSize = (int) Files.getFileStore(segmentFile.getParent()).getBlockSize();
+        FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE, DIRECT_OPEN_OPTION);
+        try {
+            int size = segmentSize(channel, validEnd);
+            if (size % blockSize != 0) {
+                throw new UnsupportedOperationException("WAL段大小没有按块对齐: size=" + size + ", blockSize=" + blockSize);
+            }
+            int alignedBufferSize = (int) alignUp(Math.max(bufferSize, blockSize + WALRecordCodec.RECORD_SIZE), blockSize);
+            WALSegment segment = new WALSegment(segmentFile, channel, size, blockSize, alignedBufferSize);
+            // validEnd所在的不完整块读入写缓冲区开头（已落盘），下次提交时连同新记录重写
+            segment.activeFileOffset = validEnd / blockSize * blockSize;
+            int tail = (int) (validEnd - segment.activeFileOffset);
+            if (tail > 0) {
+                ByteBuffer block = segment.active.duplicate().clear().limit(blockSize);
+                while (block.hasRemaining() && channel.read(block, segment.activeFileOffset + block.position()) >= 0) {
+                    // 读满一个块
+                }
+            }
+            segment.active.clear().position(tail);
+            segment.activeFlushedLength = tail;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 已有段文件的大小（MappedByteBuffer最大2GB），validEnd必须在文件范围内
+     */
+    private static int segmentSize(FileChannel channel, long validEnd) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE || validEnd < WALRecordCodec.FILE_HEADER_SIZE || validEnd > size) {
+            throw new IOException("WAL段无法继续写入: size=" + size + ", validEnd=" + validEnd);
+        }
+        return (int) size;
+    }
+
+    private static ByteBuffer allocateAligned(int capacity, int alignment) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment).alignedSlice(alignment);
+        buffer.limit(capacity);
+        return buffer.slice();
+    }
+
+    private static long alignUp(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * 写满0并fsync，使文件块真实分配（稀疏文件在首次写入时分配块，仍会产生元数据同步）
+     */
+    private static void preallocate(FileChannel channel, int size) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocateDirect(Math.min(ZERO_CHUNK_SIZE, size));
+        long position = 0;
+        while (position < size) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), size - position));
+            while (zeros.hasRemaining()) {
+                position += channel.write(zeros, position);
+            }
+        }
+        channel.force(true);
+    }
+
+    /**
+     * 启用段：重命名为按首条walSeq命名的段文件，并创建索引文件
+     *
+     * @param segmentFile   段文件路径
+     * @param firstWalSeq   首条记录的walSeq
+     * @param indexInterval 索引间隔（记录数）
+     */
+    void activate(Path segmentFile, long firstWalSeq, int indexInterval) throws IOException {
+        Files.move(path, segmentFile, StandardCopyOption.ATOMIC_MOVE);
+        this.path = segmentFile;
+        this.firstWalSeq = firstWalSeq;
+        this.indexInterval = Math.max(indexInterval, 1);
+        this.indexChannel = FileChannel.open(WALFiles.indexFile(segmentFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * 记录已写入：按间隔追加索引项
+     * 索引不fsync：索引只是定位提示，读取时会校验索引项指向的记录
+     *
+     * @param walSeq 记录的walSeq
+     * @param offset 记录在段内的起始位置
+     */
+    void recordAppended(long walSeq, int offset) throws IOException {
+        if ((walSeq - firstWalSeq) % indexInterval != 0) {
+            return;
+        }
+        indexEntry.clear();
+        indexEntry.putLong(walSeq).putLong(offset).flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+    }
+
+    /**
+     * 记录写入缓冲区（position为下一条记录的写入位置）
+     */
+    ByteBuffer buffer() {
+        return mapped != null ? mapped : active;
+    }
+
+    /**
+     * 段内剩余可写字节数
+     */
+    int remaining() {
+        return size - position();
+    }
+
+    /**
+     * 当前写缓冲区剩余字节数（DIRECT写满时需要先提交交换缓冲区；MMAP等于段内剩余）
+     */
+    int bufferRemaining() {
+        return mapped != null ? mapped.remaining() : Math.min(active.remaining(), remaining());
+    }
+
+    /**
+     * 已写入字节数（含文件头），即下一条记录在段内的偏移
+     */
+    int position() {
+        return mapped != null ? mapped.position() : (int) (activeFileOffset + active.position());
+    }
+
+    /**
+     * 确定待刷盘区间（写入线程调用）
+     * DIRECT时交换缓冲区：调用前上一个区间必须已刷盘完成（空闲缓冲区可复用）
+     *
+     * @return 待刷盘区间，没有新写入时返回null
+     */
+    FlushRegion prepareFlush() {
+        if (mapped != null) {
+            int position = mapped.position();
+            if (position <= flushedPosition) {
+                return null;
+            }
+            FlushRegion region = new FlushRegion(null, flushedPosition, position - flushedPosition);
+            flushedPosition = position;
+            return region;
+        }
+        int length = active.position();
+        if (length <= activeFlushedLength) {
+            return null;
+        }
+        ByteBuffer filled = active;
+        long fileOffset = activeFileOffset;
+        // 不完整的最后一个块带到新缓冲区，下次提交时重写
+        int tail = length % blockSize;
+        int fullBlocks = length - tail;
+        standby.clear();
+        standby.put(0, filled, fullBlocks, tail).position(tail);
+        active = standby;
+        standby = filled;
+        activeFileOffset = fileOffset + fullBlocks;
+        activeFlushedLength = tail;
+        return new FlushRegion(filled, fileOffset, length);
+    }
+
+    /**
+     * 把区间写入磁盘并同步（刷盘线程调用）
+     *
+     * @param syncMetadata 是否同时同步文件元数据（fsync，见{@link WALDurability#FSYNC}），否则只同步数据
+     */
+    void flush(FlushRegion region, boolean syncMetadata) throws IOException {
+        if (region.buffer == null) {
+            mapped.force((int) region.fileOffset, region.length);
+            if (syncMetadata) {
+                channel.force(true);
+            }
+            return;
+        }
+        // 按块对齐写入，不完整块的剩余部分补0（与预分配的0一致，读取时视为段末尾）
+        int alignedLength = (int) alignUp(region.length, blockSize);
+        ByteBuffer source = region.buffer.duplicate().clear();
+        for (int i = region.length; i < alignedLength; i++) {
+            source.put(i, (byte) 0);
+        }
+        source.limit(alignedLength);
+        long position = region.fileOffset;
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+        // O_DIRECT绕过页缓存但不保证设备缓存落盘，仍需fdatasync（文件已预分配，默认不同步元数据）
+        channel.force(syncMetadata);
+    }
+
+    /**
+     * 把已写入但未落盘的数据同步到磁盘（写入线程调用，调用前不能有刷盘中的区间）
+     */
+    void force() throws IOException {
+        FlushRegion region = prepareFlush();
+        if (region != null) {
+            flush(region, false);
+        }
+    }
+
+    /**
+     * 落盘并关闭文件（映射在GC时释放）
+     */
+    void close() throws IOException {
+        force();
+        channel.close();
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstWalSeq() {
+        return firstWalSeq;
+    }
+
+    String getFileName() {
+        return path.getFileName().toString();
+    }
+
+    /**
+     * 待刷盘区间
+     */
+    static final class FlushRegion {
+        /**
+         * DIRECT：已写满的缓冲区（MMAP时为null）
+         */
+        private final ByteBuffer buffer;
+        private final long fileOffset;
+        private final int length;
+
+        private FlushRegion(ByteBuffer buffer, long fileOffset, int length) {
+            this.buffer = buffer;
+            this.fileOffset = fileOffset;
+            this.length = length;
+        }
+    }
+}
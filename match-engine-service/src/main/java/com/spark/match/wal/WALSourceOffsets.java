@@ -0,0 +1,247 @@
+package com.spark.match.wal;
+
+import java.util.Arrays;
+
+/**
+ * 已写入WAL的来源Kafka offset集合，按（来源topic编号, 分区）分组（topic编号见{@link WALSourceTopics}）
+ * 每个分区保存有序、合并后的offset区间（相邻的offset合并为一个区间），只记录实际写入WAL的offset：
+ * - {@link #contains}：某个offset是否已写入WAL（日志阶段据此跳过重复投递）
+ * - {@link #resumeOffset}：从已提交位置起连续写入WAL的offset之后的第一个offset（consumer据此seek）
+ * <p>
+ * 各WAL分区独立刷盘，同一来源分区的消息分散在多个WAL分区中，崩溃时可能只有部分落盘，
+ * 因此不能按最大offset判断：中间未落盘的offset既不能被seek跳过，也不能被当作重复投递
+ * <p>
+ * 非线程安全：启动时构建后只读，或只由日志线程使用
+ */
+public final class WALSourceOffsets {
+    /**
+     * 每个分区保留的区间数不限
+     */
+    public static final int UNLIMITED_RANGES = Integer.MAX_VALUE;
+
+    private final int maxRanges;
+    // topic编号 → 分区 → offset区间（按编号直接索引，热路径不装箱）
+    private OffsetRanges[][] topics = new OffsetRanges[0][];
+
+    public WALSourceOffsets() {
+        this(UNLIMITED_RANGES);
+    }
+
+    /**
+     * @param maxRanges 每个分区最多保留的区间数，超过时丢弃offset最小的区间
+     *                  （已提交位置之前的offset不会再被投递，长期运行时避免无限增长）
+     */
+    public WALSourceOffsets(int maxRanges) {
+        if (maxRanges <= 0) {
+            throw new IllegalArgumentException("Invalid max ranges: " + maxRanges);
+        }
+        this.maxRanges = maxRanges;
+    }
+
+    /**
+     * 记录已写入WAL的offset（topic编号或分区为负数时忽略）
+     */
+    public void add(int topicId, int partition, long offset) {
+        if (topicId < 0 || partition < 0 || offset < 0) {
+            return;
+        }
+        ranges(topicId, partition).add(offset, offset + 1);
+    }
+
+    /**
+     * offset是否已写入WAL
+     */
+    public boolean contains(int topicId, int partition, long offset) {
+        OffsetRanges ranges = find(topicId, partition);
+        return ranges != null && ranges.contains(offset);
+    }
+
+    /**
+     * 从position起连续写入WAL的offset之后的第一个offset（position本身未写入WAL时返回position）
+     */
+    public long resumeOffset(int topicId, int partition, long position) {
+        OffsetRanges ranges = find(topicId, partition);
+        return ranges != null ? ranges.resumeOffset(position) : position;
+    }
+
+    /**
+     * 合并另一个集合（各WAL分区收集的offset合并为整个WAL的集合）
+     */
+    public void addAll(WALSourceOffsets other) {
+        for (int topicId = 0; topicId < other.topics.length; topicId++) {
+            OffsetRanges[] partitions = other.topics[topicId];
+            for (int partition = 0; partitions != null && partition < partitions.length; partition++) {
+                OffsetRanges source = partitions[partition];
+                if (source == null) {
+                    continue;
+                }
+                OffsetRanges target = ranges(topicId, partition);
+                for (int i = 0; i < source.size; i++) {
+                    target.add(source.starts[i], source.ends[i]);
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        for (OffsetRanges[] partitions : topics) {
+            for (int partition = 0; partitions != null && partition < partitions.length; partition++) {
+                if (partitions[partition] != null && partitions[partition].size > 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private OffsetRanges find(int topicId, int partition) {
+        if (topicId < 0 || topicId >= topics.length || topics[topicId] == null
+                || partition < 0 || partition >= topics[topicId].length) {
+            return null;
+        }
+        return topics[topicId][partition];
+    }
+
+    private OffsetRanges ranges(int topicId, int partition) {
+        if (topicId >= topics.length) {
+            topics = Arrays.copyOf(topics, topicId + 1);
+        }
+        OffsetRanges[] partitions = topics[topicId];
+        if (partitions == null || partition >= partitions.length) {
+            partitions = partitions == null
+                    ? new OffsetRanges[partition + 1]
+                    : Arrays.copyOf(partitions, Math.max(partition + 1, partitions.length * 2));
+            topics[topicId] = partitions;
+        }
+        OffsetRanges ranges = partitions[partition];
+        if (ranges == null) {
+            ranges = new OffsetRanges(maxRanges);
+            partitions[partition] = ranges;
+        }
+        return ranges;
+    }
+
+    /**
+     * 格式：topic编号-分区=[起始offset, 结束offset)...
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int topicId = 0; topicId < topics.length; topicId++) {
+            OffsetRanges[] partitions = topics[topicId];
+            for (int partition = 0; partitions != null && partition < partitions.length; partition++) {
+                OffsetRanges ranges = partitions[partition];
+                if (ranges == null || ranges.size == 0) {
+                    continue;
+                }
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(topicId).append('-').append(partition).append('=');
+                for (int i = 0; i < ranges.size; i++) {
+                    builder.append('[').append(ranges.starts[i]).append(", ").append(ranges.ends[i]).append(')');
+                }
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 一个来源分区的offset区间：按起始offset有序、互不相交也不相邻的左闭右开区间
+     * 按顺序写入时只扩展最后一个区间
+     */
+    private static final class OffsetRanges {
+        private final int maxRanges;
+        private long[] starts = new long[4];
+        private long[] ends = new long[4];
+        private int size;
+
+        OffsetRanges(int maxRanges) {
+            this.maxRanges = maxRanges;
+        }
+
+        void add(long start, long end) {
+            if (size > 0 && start >= starts[size - 1] && start <= ends[size - 1]) {
+                // 顺序写入：扩展最后一个区间
+                ends[size - 1] = Math.max(ends[size - 1], end);
+                return;
+            }
+            // 与新区间重叠或相邻的区间为[first, last]
+            int first = lowerBound(ends, size, start);
+            int last = upperBound(starts, size, end) - 1;
+            if (first > last) {
+                insert(first, start, end);
+            } else {
+                starts[first] = Math.min(starts[first], start);
+                ends[first] = Math.max(ends[last], end);
+                int removed = last - first;
+                if (removed > 0) {
+                    System.arraycopy(starts, last + 1, starts, first + 1, size - last - 1);
+                    System.arraycopy(ends, last + 1, ends, first + 1, size - last - 1);
+                    size -= removed;
+                }
+            }
+        }
+
+        private void insert(int index, long start, long end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            System.arraycopy(starts, index, starts, index + 1, size - index);
+            System.arraycopy(ends, index, ends, index + 1, size - index);
+            starts[index] = start;
+            ends[index] = end;
+            size++;
+            if (size > maxRanges) {
+                System.arraycopy(starts, 1, starts, 0, size - 1);
+                System.arraycopy(ends, 1, ends, 0, size - 1);
+                size--;
+            }
+        }
+
+        boolean contains(long offset) {
+            int index = upperBound(starts, size, offset) - 1;
+            return index >= 0 && offset < ends[index];
+        }
+
+        long resumeOffset(long position) {
+            int index = upperBound(starts, size, position) - 1;
+            return index >= 0 && position < ends[index] ? ends[index] : position;
+        }
+
+        /**
+         * 第一个不小于value的下标
+         */
+        private static int lowerBound(long[] values, int size, long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 第一个大于value的下标
+         */
+        private static int upperBound(long[] values, int size, long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.spark.match.wal;
+
+import com.spark.common.constant.KafkaTopic;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WAL来源topic表（WAL根目录下的topic表文件，每行一个topic，行号即编号，所有分区共用）
+ * 定长WAL记录只写topic编号（见{@link WALRecordCodec}）；编号只追加不修改，新topic在首次写入WAL前追加并落盘，
+ * 记录引用的编号总能在表中找到
+ * <p>
+ * 编号0固定为订单输入topic
+ */
+@Slf4j
+final class WALSourceTopics {
+    /**
+     * topic表文件名
+     */
+    static final String TOPICS_FILE = "wal-source-topics";
+
+    /**
+     * 订单输入topic的编号
+     */
+    static final int ORDER_INPUT_TOPIC_ID = 0;
+
+    private final Path topicsFile;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private WALSourceTopics(Path topicsFile) {
+        this.topicsFile = topicsFile;
+    }
+
+    /**
+     * 加载topic表，不存在时创建（编号0为订单输入topic）
+     *
+     * @param rootPath WAL根目录
+     */
+    static WALSourceTopics load(Path rootPath) throws IOException {
+        WALSourceTopics topics = new WALSourceTopics(rootPath.resolve(TOPICS_FILE));
+        if (Files.exists(topics.topicsFile)) {
+            String content = Files.readString(topics.topicsFile, StandardCharsets.UTF_8);
+            int end = content.lastIndexOf('\n') + 1;
+            if (end < content.length()) {
+                // 追加时崩溃留下的不完整行：该编号还没有被任何记录引用，截断
+                try (FileChannel channel = FileChannel.open(topics.topicsFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(content.substring(0, end).getBytes(StandardCharsets.UTF_8).length);
+                    channel.force(true);
+                }
+                log.warn("WAL来源topic表截断不完整的行: {}", content.substring(end));
+            }
+            for (String line : content.substring(0, end).split("\n")) {
+                if (!line.isEmpty()) {
+                    topics.ids.put(line, topics.names.size());
+                    topics.names.add(line);
+                }
+            }
+        }
+        if (topics.names.isEmpty()) {
+            topics.append(KafkaTopic.ORDER_INPUT);
+        } else if (!KafkaTopic.ORDER_INPUT.equals(topics.names.get(ORDER_INPUT_TOPIC_ID))) {
+            throw new IllegalStateException("WAL来源topic表损坏: 编号0不是订单输入topic, topicsFile=" + topics.topicsFile);
+        }
+        log.info("WAL来源topic表: topics={}", topics.names);
+        return topics;
+    }
+
+    /**
+     * topic编号，不在表中时返回{@link WALRecordCodec#NO_SOURCE}
+     */
+    int find(String topic) {
+        if (topic == null) {
+            return WALRecordCodec.NO_SOURCE;
+        }
+        Integer id = ids.get(topic);
+        return id != null ? id : WALRecordCodec.NO_SOURCE;
+    }
+
+    /**
+     * topic编号，不在表中时追加并落盘（写入WAL记录前调用）
+     */
+    int idOf(String topic) throws IOException {
+        if (topic == null) {
+            return WALRecordCodec.NO_SOURCE;
+        }
+        Integer id = ids.get(topic);
+        return id != null ? id : append(topic);
+    }
+
+    private synchronized int append(String topic) throws IOException {
+        Integer existing = ids.get(topic);
+        if (existing != null) {
+            return existing;
+        }
+        if (topic.isEmpty() || topic.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("非法的来源topic: " + topic);
+        }
+        try (FileChannel channel = FileChannel.open(topicsFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer line = ByteBuffer.wrap((topic + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(true);
+        }
+        WALFiles.syncDirectory(topicsFile.getParent());
+        int id = names.size();
+        names.add(topic);
+        ids.put(topic, id);
+        log.info("WAL来源topic表追加: topic={}, id={}", topic, id);
+        return id;
+    }
+}
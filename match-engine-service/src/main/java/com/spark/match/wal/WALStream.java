@@ -0,0 +1,395 @@
+package com.spark.match.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spark.match.disruptor.OrderEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * 单个WAL分区的段链（见{@link WALPartitioning}）
+ * 独立的walSeq、段文件、稀疏索引和刷盘状态；段的预分配和刷盘在WALWriter共享的线程上执行
+ * <p>
+ * 非线程安全，由WALWriter在同步方法中使用（刷盘线程只更新durableWalSeq）
+ */
+@Slf4j
+final class WALStream {
+    private final int partition;
+    private final Path walPath;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final int writeBufferSize;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService preallocator;
+    private final ExecutorService flusher;
+    // 当前WAL序列号
+    private final AtomicLong walSeq = new AtomicLong(0);
+    // CRC32C计算器（硬件加速）
+    private final CRC32C crc32c = new CRC32C();
+    // 预分配临时文件编号
+    private final AtomicLong preallocatedCounter = new AtomicLong();
+    // 写入方式（不支持DIRECT时回退为MMAP）
+    private volatile WALIoMode ioMode;
+    // 刷盘中的一组（完成后为null）
+    private CompletableFuture<Long> inflightFlush;
+    // 当前段
+    private WALSegment currentSegment;
+    // 提前创建的下一个段
+    private CompletableFuture<WALSegment> nextSegment;
+    // 已写入当前段的最后一条记录的WAL序列号
+    private long writtenWalSeq;
+    // 已落盘的最大WAL序列号
+    private volatile long durableWalSeq;
+    // 自上次提交以来是否有写入（由WALWriter维护）
+    private boolean dirty;
+    // 启动时WAL中已写入的来源Kafka offset
+    private final WALSourceOffsets sourceOffsets = new WALSourceOffsets();
+
+    WALStream(int partition, Path walPath, int segmentSize, int indexInterval, WALIoMode ioMode, int writeBufferSize,
+              ObjectMapper objectMapper, ExecutorService preallocator, ExecutorService flusher) {
+        this.partition = partition;
+        this.walPath = walPath;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.ioMode = ioMode;
+        this.writeBufferSize = writeBufferSize;
+        this.objectMapper = objectMapper;
+        this.preallocator = preallocator;
+        this.flusher = flusher;
+    }
+
+    /**
+     * 打开分区：恢复序列号，在上次运行最后写入的段中继续写入（没有段或无法继续写入时创建第一个段）
+     */
+    void open() throws IOException {
+        Files.createDirectories(walPath);
+        deletePreallocatedLeftovers();
+
+        // 上次运行最后写入的段：截断崩溃时写了一半的尾部，隔离中间损坏的记录
+        List<Path> segments = WALFiles.listSegments(walPath);
+        Path lastSegment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        WALTailRepair.Result repaired = lastSegment != null ? WALTailRepair.repair(lastSegment) : null;
+
+        // 序列号从最后一条已落盘记录继续
+        long lastWalSeq = recoverLastWalSeq(segments, repaired);
+        walSeq.set(lastWalSeq);
+        writtenWalSeq = lastWalSeq;
+        durableWalSeq = lastWalSeq;
+        log.info("WAL序列号恢复: partition={}, lastWalSeq={}", partition, lastWalSeq);
+
+        if (repaired != null && repaired.getValidEnd() > 0) {
+            currentSegment = reopenSegment(lastSegment, repaired.getValidEnd());
+            preallocateNextSegment();
+            log.info("WAL继续写入最后一个段: partition={}, fileName={}, position={}, remaining={}",
+                    partition, currentSegment.getFileName(), currentSegment.position(), currentSegment.remaining());
+        } else {
+            nextSegment = CompletableFuture.completedFuture(createSegment());
+            rollWALFile();
+        }
+    }
+
+    /**
+     * 写入WAL记录（不执行fsync），直接从已解码的槽位字段编码二进制记录
+     *
+     * @param sourceTopicId 来源Kafka topic编号（见{@link WALSourceTopics}）
+     * @return WAL序列号（提交落盘后才保证持久）
+     */
+    long write(OrderEvent event, int sourceTopicId) throws IOException {
+        ensureCapacity();
+        long seq = walSeq.incrementAndGet();
+        int offset = currentSegment.position();
+        WALRecordCodec.encode(currentSegment.buffer(), seq, System.currentTimeMillis(), event, sourceTopicId, crc32c);
+        currentSegment.recordAppended(seq, offset);
+        writtenWalSeq = seq;
+        log.debug("WAL记录写入: partition={}, walSeq={}, fileName={}, orderId={}",
+                partition, seq, currentSegment.getFileName(), event.getOrderId());
+        return seq;
+    }
+
+    /**
+     * 当前段放不下一条记录时滚动到下一个段；DIRECT写缓冲区写满时提交刷盘并切换到另一个缓冲区
+     */
+    private void ensureCapacity() {
+        if (currentSegment.remaining() < WALRecordCodec.RECORD_SIZE) {
+            rollWALFile();
+        } else if (currentSegment.bufferRemaining() < WALRecordCodec.RECORD_SIZE) {
+            submitFlush(false);
+        }
+    }
+
+    /**
+     * 分组提交：把自上次提交以来写入的记录交给刷盘线程，立即返回
+     * 上一组尚未刷盘完成时先等待（同一时间最多一组在刷盘中）
+     *
+     * @param syncMetadata 是否同时同步文件元数据
+     * @return 本组落盘后完成，结果为已落盘的最大walSeq
+     */
+    CompletableFuture<Long> flushAsync(boolean syncMetadata) {
+        submitFlush(syncMetadata);
+        return inflightFlush != null ? inflightFlush : CompletableFuture.completedFuture(durableWalSeq);
+    }
+
+    /**
+     * 提交待刷盘区间到刷盘线程
+     */
+    private void submitFlush(boolean syncMetadata) {
+        awaitFlush();
+        WALSegment segment = currentSegment;
+        WALSegment.FlushRegion region = segment.prepareFlush();
+        if (region == null) {
+            return;
+        }
+        long seq = writtenWalSeq;
+        inflightFlush = CompletableFuture.supplyAsync(() -> {
+            try {
+                segment.flush(region, syncMetadata);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            durableWalSeq = seq;
+            return seq;
+        }, flusher);
+    }
+
+    /**
+     * 等待刷盘中的一组完成；失败后保持失败状态，后续提交都会抛出异常
+     */
+    void awaitFlush() {
+        if (inflightFlush == null) {
+            return;
+        }
+        try {
+            inflightFlush.join();
+            inflightFlush = null;
+        } catch (CompletionException e) {
+            log.error("WAL fsync失败: partition={}, fileName={}", partition, currentSegment.getFileName(), e.getCause());
+            throw new RuntimeException("WAL fsync失败", e.getCause());
+        }
+    }
+
+    /**
+     * 滚动WAL文件：启用提前创建的段（按下一条记录的walSeq命名），旧段落盘并关闭，再在后台创建下一个段
+     */
+    private void rollWALFile() {
+        WALSegment oldSegment = currentSegment;
+        try {
+            // 旧段刷盘中的一组先完成，再同步落盘剩余部分
+            awaitFlush();
+            WALSegment newSegment = takeNextSegment();
+            long firstWalSeq = walSeq.get() + 1;
+            newSegment.activate(walPath.resolve(WALFiles.segmentFileName(firstWalSeq)), firstWalSeq, indexInterval);
+            WALFiles.syncDirectory(walPath);
+            if (oldSegment != null) {
+                // 旧段中尚未提交的记录在切换前落盘
+                oldSegment.close();
+                durableWalSeq = writtenWalSeq;
+            }
+            currentSegment = newSegment;
+            preallocateNextSegment();
+
+            // 旧段的保留和归档由WALArchiver按快照水位执行
+            log.info("WAL文件滚动: partition={}, fileName={}, size={}", partition, newSegment.getFileName(), segmentSize);
+        } catch (IOException | RuntimeException e) {
+            log.error("WAL文件滚动失败: partition={}", partition, e);
+            throw new RuntimeException("WAL文件滚动失败", e);
+        }
+    }
+
+    /**
+     * 在后台提前创建下一个段
+     */
+    private void preallocateNextSegment() {
+        nextSegment = CompletableFuture.supplyAsync(() -> {
+            try {
+                return createSegment();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, preallocator);
+    }
+
+    /**
+     * 取出提前创建的段；后台创建失败时同步重试一次
+     */
+    private WALSegment takeNextSegment() throws IOException {
+        try {
+            return nextSegment.join();
+        } catch (CompletionException e) {
+            log.warn("WAL段预分配失败，同步重新创建: partition={}", partition, e.getCause());
+            return createSegment();
+        }
+    }
+
+    /**
+     * 重新打开上次运行最后写入的段，从最后一条有效记录之后继续写入
+     * DIRECT不可用（JDK不支持、段由MMAP创建而没有按块对齐）时该段以MMAP写入，之后的段仍按配置创建
+     */
+    private WALSegment reopenSegment(Path segmentFile, long validEnd) throws IOException {
+        long firstWalSeq = WALFiles.firstWalSeq(segmentFile);
+        if (ioMode == WALIoMode.DIRECT) {
+            try {
+                return WALSegment.reopen(segmentFile, firstWalSeq, validEnd, WALIoMode.DIRECT, writeBufferSize, indexInterval);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("WAL段无法以DIRECT继续写入，该段改用MMAP: partition={}, fileName={}",
+                        partition, segmentFile.getFileName(), e);
+            }
+        }
+        return WALSegment.reopen(segmentFile, firstWalSeq, validEnd, WALIoMode.MMAP, writeBufferSize, indexInterval);
+    }
+
+    /**
+     * 创建并预分配新段（临时文件名，启用时重命名）
+     * 每次创建（包括滚动时的预分配）都可能遇到不支持O_DIRECT（JDK没有该选项、文件系统拒绝），
+     * 此时本分区回退为MMAP，之后的段都以MMAP创建；已启用的DIRECT段不受影响，每个段独立刷盘
+     */
+    private WALSegment createSegment() throws IOException {
+        if (ioMode == WALIoMode.DIRECT) {
+            try {
+                return createSegment(WALIoMode.DIRECT);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("WAL目录不支持DIRECT写入，回退为MMAP: partition={}, walPath={}", partition, walPath, e);
+                ioMode = WALIoMode.MMAP;
+            }
+        }
+        return createSegment(WALIoMode.MMAP);
+    }
+
+    private WALSegment createSegment(WALIoMode mode) throws IOException {
+        String fileName = "wal-prealloc-" + preallocatedCounter.incrementAndGet() + WALFiles.PREALLOCATED_SUFFIX;
+        long start = System.nanoTime();
+        WALSegment segment = WALSegment.create(walPath.resolve(fileName), segmentSize, mode, writeBufferSize);
+        log.info("WAL段预分配完成: partition={}, fileName={}, size={}, ioMode={}, costMs={}",
+                partition, fileName, segmentSize, mode.getName(), (System.nanoTime() - start) / 1_000_000);
+        return segment;
+    }
+
+    /**
+     * 启动时恢复最后一条已落盘记录的walSeq
+     * - 最后一个段有有效记录：取最后一条（尾部修复时顺序校验得到）
+     * - 最后一个段为空：首条walSeq - 1（前一个段滚动时已落盘）
+     * - 只有旧版本文件：取最后一个旧文件的最后一条记录
+     *
+     * @param segments 分区的段文件（旧到新）
+     * @param repaired 最后一个段的修复结果（没有段时为null）
+     */
+    private long recoverLastWalSeq(List<Path> segments, WALTailRepair.Result repaired) throws IOException {
+        if (repaired != null) {
+            if (segments.size() > 1) {
+                // 跨段滚动的最后一组可能有记录在前一个段，尚未提交offset
+                collectSourceOffsets(segments.get(segments.size() - 2));
+            }
+            sourceOffsets.addAll(repaired.getSourceOffsets());
+            long lastWalSeq = repaired.getLastWalSeq();
+            return lastWalSeq > 0 ? lastWalSeq : WALFiles.firstWalSeq(segments.get(segments.size() - 1)) - 1;
+        }
+        List<Path> legacyFiles = WALFiles.listLegacyFiles(walPath);
+        if (!legacyFiles.isEmpty()) {
+            return Math.max(lastWalSeqIn(legacyFiles.get(legacyFiles.size() - 1)), 0);
+        }
+        return 0;
+    }
+
+    /**
+     * 收集段内记录的来源Kafka offset
+     */
+    private void collectSourceOffsets(Path segmentFile) throws IOException {
+        try (WALCursor cursor = WALCursor.open(segmentFile, objectMapper, WALCursor.DEFAULT_BUFFER_SIZE)) {
+            WALRecord record;
+            while ((record = cursor.next()) != null) {
+                if (record.getSourcePartition() != null) {
+                    sourceOffsets.add(record.getSourceTopicId(), record.getSourcePartition(), record.getSourceOffset());
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取文件中最后一条有效记录的walSeq，没有有效记录时返回0
+     */
+    private long lastWalSeqIn(Path walFile) throws IOException {
+        long lastWalSeq = 0;
+        try (WALCursor cursor = WALCursor.open(walFile, objectMapper, WALCursor.DEFAULT_BUFFER_SIZE)) {
+            WALRecord record;
+            while ((record = cursor.next()) != null) {
+                lastWalSeq = record.getWalSeq();
+            }
+        }
+        return lastWalSeq;
+    }
+
+    /**
+     * 删除上次运行遗留的预分配临时文件
+     */
+    private void deletePreallocatedLeftovers() throws IOException {
+        for (Path leftover : WALFiles.listPreallocated(walPath)) {
+            Files.deleteIfExists(leftover);
+            log.info("删除未使用的WAL预分配文件: {}", leftover.getFileName());
+        }
+    }
+
+    /**
+     * 标记有未提交的写入
+     *
+     * @return 之前没有未提交的写入时返回true
+     */
+    boolean markDirty() {
+        if (dirty) {
+            return false;
+        }
+        dirty = true;
+        return true;
+    }
+
+    void clearDirty() {
+        dirty = false;
+    }
+
+    int getPartition() {
+        return partition;
+    }
+
+    long getDurableWalSeq() {
+        return durableWalSeq;
+    }
+
+    /**
+     * 启动时本分区WAL中已写入的来源Kafka offset（最后两个段）
+     */
+    WALSourceOffsets getSourceOffsets() {
+        return sourceOffsets;
+    }
+
+    /**
+     * 关闭分区
+     * 当前段落盘后关闭；提前创建但未使用的段删除
+     */
+    void close() {
+        try {
+            awaitFlush();
+            if (currentSegment != null) {
+                currentSegment.close();
+                currentSegment = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("关闭WAL分区失败: partition={}", partition, e);
+        }
+        if (nextSegment != null) {
+            try {
+                WALSegment unused = nextSegment.join();
+                unused.close();
+                Files.deleteIfExists(unused.getPath());
+            } catch (IOException | RuntimeException e) {
+                log.info("删除未使用的WAL段失败: partition={}", partition, e);
+            }
+            nextSegment = null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.spark.match.wal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 启动时修复上次运行最后写入的段（崩溃时尾部可能有写了一半的记录）
+ * 记录定长，第k条记录的walSeq必然是段首条walSeq + k（段按首条walSeq命名），
+ * 顺序扫描整个段一次，逐条校验CRC32C和walSeq连续性：
+ * - 第一个空洞（全0的记录）或walSeq不连续的记录处截断：之后的内容清零（预分配段以0表示结尾）。
+ *   MMAP写入时最后一次force之后的脏页可能乱序落盘，崩溃时未确认的一组可能留下"空洞 + 之后的有效记录"，
+ *   这些记录从未被确认落盘（offset未提交），截断后由Kafka重新投递，walSeq保持连续
+ * - 非0且校验失败的记录，之后紧跟walSeq连续的有效记录时才是中间损坏（介质错误）：原始字节追加到隔离文件
+ *   （见{@link WALFiles#quarantineFile}），原位置写入隔离占位记录（{@link WALRecordCodec#encodeTombstone}），
+ *   读取时跳过，其后的有效记录仍可读取；之后没有有效记录的属于未完成的尾部，一并截断
+ * - 稀疏索引截断到最后一条有效记录之前的项
+ * - 同时收集保留下来的记录的来源Kafka offset（截断和隔离的记录不计入），
+ *   启动时consumer据此seek、日志阶段据此跳过重复投递（见{@link WALWriter#getSourceOffsets}）
+ * <p>
+ * 只修复最后一个段，之前的段在滚动时已完整落盘
+ */
+@Slf4j
+final class WALTailRepair {
+    /**
+     * 扫描缓冲区可容纳的记录数
+     */
+    private static final int SCAN_BUFFER_RECORDS = 16384;
+
+    private WALTailRepair() {
+    }
+
+    /**
+     * 修复段文件
+     *
+     * @param segmentFile 段文件
+     * @return 修复结果（文件头无法识别时不修改文件，lastWalSeq为0）
+     */
+    static Result repair(Path segmentFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Result result = new Result();
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (!isCurrentFormat(channel)) {
+                log.error("WAL段文件头无法识别，跳过修复: fileName={}", segmentFile.getFileName());
+                return result;
+            }
+            int recordSize = WALRecordCodec.RECORD_SIZE;
+            long firstWalSeq = WALFiles.firstWalSeq(segmentFile);
+            // 最后一条有效记录之后、校验失败的非0记录（之后出现连续的有效记录时隔离，否则随尾部截断）
+            List<Long> badOffsets = new ArrayList<>();
+            List<Long> middleOffsets = new ArrayList<>();
+            boolean truncated = false;
+            long lastValidEnd = WALRecordCodec.FILE_HEADER_SIZE;
+            long lastNonZeroEnd = WALRecordCodec.FILE_HEADER_SIZE;
+            CRC32C crc32c = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate(recordSize * SCAN_BUFFER_RECORDS);
+            long offset = WALRecordCodec.FILE_HEADER_SIZE;
+            long size = channel.size();
+            while (offset < size) {
+                buffer.clear();
+                readFully(channel, buffer, offset);
+                buffer.flip();
+                while (buffer.remaining() > 0) {
+                    int start = buffer.position();
+                    long recordOffset = offset + start;
+                    int recordLength = Math.min(buffer.remaining(), recordSize);
+                    buffer.position(start + recordLength);
+                    if (isZero(buffer, start, recordLength)) {
+                        // 第一个空洞处截断，之后只需找到非0内容的结尾
+                        truncated = true;
+                        continue;
+                    }
+                    lastNonZeroEnd = recordOffset + recordLength;
+                    if (truncated) {
+                        continue;
+                    }
+                    long expectedWalSeq = firstWalSeq + (recordOffset - WALRecordCodec.FILE_HEADER_SIZE) / recordSize;
+                    long walSeq = recordLength == recordSize ? validWalSeq(buffer, start, crc32c) : 0;
+                    if (walSeq > 0) {
+                        if (walSeq != expectedWalSeq) {
+                            log.error("WAL段记录walSeq不连续，从此处截断: fileName={}, position={}, walSeq={}, expectedWalSeq={}",
+                                    segmentFile.getFileName(), recordOffset, walSeq, expectedWalSeq);
+                            truncated = true;
+                            continue;
+                        }
+                        // 之前校验失败的记录之后出现了连续的有效记录：中间损坏
+                        middleOffsets.addAll(badOffsets);
+                        badOffsets.clear();
+                        lastValidEnd = recordOffset + recordSize;
+                        result.lastWalSeq = walSeq;
+                        result.validRecordCount++;
+                        WALRecordCodec.readSource(buffer, start + WALRecordCodec.RECORD_HEADER_SIZE, result.sourceOffsets::add);
+                    } else if (!isTombstone(buffer, start, recordLength)) {
+                        badOffsets.add(recordOffset);
+                    }
+                }
+                offset += buffer.limit();
+            }
+
+            if (!middleOffsets.isEmpty()) {
+                quarantine(channel, segmentFile, middleOffsets);
+                result.quarantinedCount = middleOffsets.size();
+            }
+            if (lastNonZeroEnd > lastValidEnd) {
+                zeroFill(channel, lastValidEnd, lastNonZeroEnd, buffer.capacity());
+                result.truncatedBytes = lastNonZeroEnd - lastValidEnd;
+            }
+            if (result.quarantinedCount > 0 || result.truncatedBytes > 0) {
+                channel.force(false);
+            }
+            result.validEnd = lastValidEnd;
+        }
+        if (result.validEnd > 0) {
+            truncateIndex(segmentFile, result.validEnd);
+        }
+        if (result.quarantinedCount > 0 || result.truncatedBytes > 0) {
+            log.warn("WAL段修复完成: fileName={}, lastWalSeq={}, validRecords={}, truncatedBytes={}, quarantined={}, costMs={}",
+                    segmentFile.getFileName(), result.lastWalSeq, result.validRecordCount, result.truncatedBytes,
+                    result.quarantinedCount, System.currentTimeMillis() - startTime);
+        } else {
+            log.info("WAL段检查完成: fileName={}, lastWalSeq={}, validRecords={}, costMs={}",
+                    segmentFile.getFileName(), result.lastWalSeq, result.validRecordCount, System.currentTimeMillis() - startTime);
+        }
+        return result;
+    }
+
+    /**
+     * 文件头是否为当前二进制格式
+     */
+    private static boolean isCurrentFormat(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(WALRecordCodec.FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+        return header.position() == WALRecordCodec.FILE_HEADER_SIZE && header.getInt(0) == WALRecordCodec.FILE_MAGIC
+                && header.getShort(4) == WALRecordCodec.FORMAT_VERSION;
+    }
+
+    /**
+     * 是否为上次修复写入的隔离占位记录
+     */
+    private static boolean isTombstone(ByteBuffer buffer, int start, int length) {
+        if (length != WALRecordCodec.RECORD_SIZE || buffer.getInt(start) != WALRecordCodec.BODY_SIZE) {
+            return false;
+        }
+        int bodyStart = start + WALRecordCodec.RECORD_HEADER_SIZE;
+        ByteBuffer body = buffer.duplicate().limit(bodyStart + WALRecordCodec.BODY_SIZE).position(bodyStart);
+        return WALRecordCodec.isTombstone(body, buffer.getInt(start + 4));
+    }
+
+    /**
+     * 校验一条定长记录，有效时返回walSeq，否则返回0（隔离占位记录也视为无效）
+     */
+    private static long validWalSeq(ByteBuffer buffer, int start, CRC32C crc32c) {
+        if (buffer.getInt(start) != WALRecordCodec.BODY_SIZE) {
+            return 0;
+        }
+        int checksum = buffer.getInt(start + 4);
+        int bodyStart = start + WALRecordCodec.RECORD_HEADER_SIZE;
+        ByteBuffer body = buffer.duplicate().limit(bodyStart + WALRecordCodec.BODY_SIZE).position(bodyStart);
+        if (WALRecordCodec.checksum(body, crc32c) != checksum) {
+            return 0;
+        }
+        // 记录体以walSeq开头
+        return body.getLong(bodyStart);
+    }
+
+    /**
+     * 损坏记录的原始字节写入隔离文件并落盘，再在原位置写入占位记录
+     */
+    private static void quarantine(FileChannel channel, Path segmentFile, List<Long> offsets) throws IOException {
+        Path quarantineFile = WALFiles.quarantineFile(segmentFile);
+        Files.createDirectories(quarantineFile.getParent());
+        int recordSize = WALRecordCodec.RECORD_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        ByteBuffer entry = ByteBuffer.allocate(8 + recordSize);
+        try (FileChannel quarantine = FileChannel.open(quarantineFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (long offset : offsets) {
+                record.clear();
+                readFully(channel, record, offset);
+                record.flip();
+                entry.clear();
+                entry.putLong(offset).put(record).flip();
+                while (entry.hasRemaining()) {
+                    quarantine.write(entry);
+                }
+                log.error("WAL段中间记录损坏，已隔离: fileName={}, position={}", segmentFile.getFileName(), offset);
+            }
+            quarantine.force(true);
+        }
+        WALFiles.syncDirectory(quarantineFile.getParent());
+        ByteBuffer tombstone = ByteBuffer.allocate(recordSize);
+        WALRecordCodec.encodeTombstone(tombstone);
+        for (long offset : offsets) {
+            tombstone.flip();
+            writeFully(channel, tombstone, offset);
+            tombstone.limit(recordSize);
+        }
+    }
+
+    /**
+     * 区间清零（截断不完整的尾部；段文件大小保持预分配大小）
+     */
+    private static void zeroFill(FileChannel channel, long from, long to, int maxBufferSize) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(to - from, maxBufferSize));
+        long position = from;
+        while (position < to) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), to - position));
+            position += writeFully(channel, zeros, position);
+        }
+    }
+
+    /**
+     * 截断稀疏索引：去掉指向截断区域的项和不完整的最后一项
+     */
+    private static void truncateIndex(Path segmentFile, long validEnd) throws IOException {
+        Path indexFile = WALFiles.indexFile(segmentFile);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer entry = ByteBuffer.allocate(WALFiles.INDEX_ENTRY_SIZE);
+            long keep = 0;
+            while (keep + WALFiles.INDEX_ENTRY_SIZE <= size) {
+                entry.clear();
+                readFully(channel, entry, keep);
+                if (entry.getLong(8) + WALRecordCodec.RECORD_SIZE > validEnd) {
+                    break;
+                }
+                keep += WALFiles.INDEX_ENTRY_SIZE;
+            }
+            if (keep < size) {
+                channel.truncate(keep);
+                channel.force(true);
+                log.info("WAL索引截断: fileName={}, size={}, truncatedSize={}", indexFile.getFileName(), size, keep);
+            }
+        }
+    }
+
+    private static boolean isZero(ByteBuffer buffer, int start, int length) {
+        int i = start;
+        for (; i + 8 <= start + length; i += 8) {
+            if (buffer.getLong(i) != 0) {
+                return false;
+            }
+        }
+        for (; i < start + length; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * 修复结果
+     */
+    static final class Result {
+        /**
+         * 最后一条有效记录的walSeq（没有有效记录时为0）
+         */
+        private long lastWalSeq;
+        /**
+         * 最后一条有效记录的结束位置（文件头无法识别时为0）
+         */
+        private long validEnd;
+        private long validRecordCount;
+        /**
+         * 清零的尾部字节数
+         */
+        private long truncatedBytes;
+        /**
+         * 隔离的中间记录数
+         */
+        private int quarantinedCount;
+        /**
+         * 段内保留下来的记录的来源Kafka offset
+         */
+        private final WALSourceOffsets sourceOffsets = new WALSourceOffsets();
+
+        long getLastWalSeq() {
+            return lastWalSeq;
+        }
+
+        long getValidEnd() {
+            return validEnd;
+        }
+
+        long getTruncatedBytes() {
+            return truncatedBytes;
+        }
+
+        int getQuarantinedCount() {
+            return quarantinedCount;
+        }
+
+        WALSourceOffsets getSourceOffsets() {
+            return sourceOffsets;
+        }
+    }
+}
@@ -1,239 +1,237 @@
 package com.spark.match.wal;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.spark.common.model.OrderMessage;
+import com.spark.match.disruptor.OrderEvent;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WAL写入器
- * 关键：必须在Consumer线程中同步写入，同步fsync
+ * 关键：由Disruptor日志阶段单线程写入，每个批次fsync一次后才允许撮合和提交Kafka offset
+ * 记录格式见{@link WALRecordCodec}（定长二进制记录 + CRC32C）
+ * <p>
+ * 段文件：固定大小、预分配（{@link WALSegment}），记录直接编码到内存映射区，
+ * 分组提交时只force本组写入的区间（不产生write系统调用，也不同步文件大小等元数据）；
+ * 当前段写满时滚动，下一个段由后台线程提前创建并预分配
+ * <p>
+ * 段文件按首条记录的walSeq命名并带稀疏索引（见{@link WALFiles}）；
+ * 启动时从最后一个段中最后一条有效记录继续分配序列号，walSeq跨重启单调递增；
+ * 同时收集记录中的来源Kafka offset（{@link #getSourceOffsets()}，按来源topic和分区），
+ * consumer据此跳过已写入WAL的消息，日志阶段据此跳过重复投递
+ * <p>
+ * 刷盘由独立的刷盘线程执行：{@link #flushAsync()}确定待刷盘区间后立即返回，
+ * 写入线程继续编码下一组记录，与上一组的write/fsync重叠；同一时间最多一组在刷盘中，
+ * 下一次提交前等待上一组完成（MMAP为区间，DIRECT为双缓冲中的另一个缓冲区，见{@link WALSegment}）
+ * <p>
+ * 分区（{@link WALPartitioning}）：记录按交易对写入所属分区的段链（{@link WALStream}），
+ * 每个分区独立分配walSeq；一次提交并行刷盘本组写入过的所有分区
  */
 @Slf4j
 @Component
 public class WALWriter {
-    // 当前WAL序列号
-    private final AtomicLong walSeq = new AtomicLong(0);
-    @Value("${wal.base-path:./data/wal}")
-    private String basePath;
-    @Value("${wal.instance-id:default}")
-    private String instanceId;
     @Value("${wal.max-file-size:104857600}")
-    private long maxFileSize;
-    @Value("${wal.max-file-age:3600000}")
-    private long maxFileAge; // 1小时 = 3600000毫秒
+    private long maxFileSize; // 段文件大小（预分配，每个分区），默认100MB
+    @Value("${wal.index-interval:1000}")
+    private int indexInterval; // 稀疏索引间隔（记录数）
+    @Value("${wal.io-mode:mmap}")
+    private String ioModeName; // 写入方式：mmap / direct
+    @Value("${wal.write-buffer-size:1048576}")
+    private int writeBufferSize; // DIRECT写缓冲区大小（两个）
+    @Value("${wal.partition.flush-threads:4}")
+    private int partitionFlushThreads; // 分区时的刷盘线程数（不分区时为1）
     @Autowired
-    private ObjectMapper objectMapper;
-    // 当前WAL文件
-    private volatile FileChannel currentChannel;
-    // 当前WAL文件名和大小
-    private volatile String currentFileName;
-    private volatile long currentFileSize;
-    // 当前WAL文件创建时间
-    private volatile long currentFileCreateTime;
+    private ObjectMapper objectMapper; // 启动时读取旧JSON格式文件的最后序列号
+    @Autowired
+    private WALPartitioning partitioning;
+    // 分区 → 段链（在同步方法中修改，撮合线程无锁读取已落盘序列号）
+    private final Map<Integer, WALStream> streams = new ConcurrentHashMap<>();
+    // 自上次提交以来有写入的分区
+    private final List<WALStream> dirtyStreams = new ArrayList<>();
+    // 写入方式
+    private WALIoMode ioMode;
+    // 段预分配线程
+    private ExecutorService preallocator;
+    // 刷盘线程
+    private ExecutorService flusher;
+    // 实际段大小
+    private int segmentSize;
+    // 来源topic表（记录中只写topic编号）
+    private WALSourceTopics sourceTopics;
+    // 启动时所有分区WAL中已写入的来源Kafka offset
+    private final WALSourceOffsets sourceOffsets = new WALSourceOffsets();
 
     @PostConstruct
     public void init() {
         initialize();
     }
 
-    private void initialize() {
+    private synchronized void initialize() {
+        // MappedByteBuffer最大2GB，且至少能放下文件头和一条记录
+        segmentSize = (int) Math.max(Math.min(maxFileSize, Integer.MAX_VALUE),
+                WALRecordCodec.FILE_HEADER_SIZE + WALRecordCodec.RECORD_SIZE);
+        ioMode = WALIoMode.fromName(ioModeName);
+        preallocator = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "wal-preallocator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger flusherIndex = new AtomicInteger();
+        int flushThreads = partitioning.isPartitioned() ? Math.max(partitionFlushThreads, 1) : 1;
+        flusher = Executors.newFixedThreadPool(flushThreads, r -> {
+            Thread thread = new Thread(r, "wal-flusher-" + flusherIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            Path walPath = Paths.get(basePath, instanceId);
-            Files.createDirectories(walPath);
-            rollWALFile();
-            currentFileCreateTime = System.currentTimeMillis();
-        } catch (IOException e) {
+            sourceTopics = WALSourceTopics.load(partitioning.getRootPath());
+            // 已有的分区启动时打开（恢复序列号、预分配第一个段），新分区在首次写入时打开
+            for (int partition : partitioning.listPartitions()) {
+                sourceOffsets.addAll(openStream(partition).getSourceOffsets());
+            }
+        } catch (IOException | RuntimeException e) {
             log.error("初始化WAL失败", e);
             throw new RuntimeException("初始化WAL失败", e);
         }
     }
 
+    private WALStream openStream(int partition) throws IOException {
+        WALStream stream = new WALStream(partition, partitioning.partitionPath(partition), segmentSize, indexInterval,
+                ioMode, writeBufferSize, objectMapper, preallocator, flusher);
+        stream.open();
+        streams.put(partition, stream);
+        return stream;
+    }
+
     /**
-     * 追加写WAL（同步fsync）
+     * 交易对所属分区的段链（不存在时打开）
+     */
+    private WALStream stream(Integer symbolId) throws IOException {
+        int partition = partitioning.partitionOf(symbolId == null ? 0 : symbolId);
+        WALStream stream = streams.get(partition);
+        if (stream == null) {
+            log.info("打开新的WAL分区: partition={}, symbolId={}", partition, symbolId);
+            stream = openStream(partition);
+        }
+        if (stream.markDirty()) {
+            dirtyStreams.add(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * 写入WAL记录（不执行fsync），直接从已解码的槽位字段编码二进制记录
+     * 由日志阶段批量调用，配合{@link #flushAsync()}分组提交
      *
-     * @param message 订单消息
-     * @return WAL序列号
+     * @param event 已解码的订单事件
+     * @return 所属分区的WAL序列号（flushAsync()完成后才保证落盘）
      */
-    public synchronized long append(OrderMessage message) {
-        long startTime = System.currentTimeMillis();
-        long stepStartTime;
+    public synchronized long write(OrderEvent event) {
         try {
-            // 检查文件大小或时间，决定是否滚动
-            long currentTime = System.currentTimeMillis();
-            boolean shouldRotate = currentFileSize >= maxFileSize || (currentFileCreateTime > 0 && (currentTime - currentFileCreateTime) >= maxFileAge);
-
-            if (shouldRotate) {
-                stepStartTime = System.currentTimeMillis();
-                rollWALFile();
-                log.debug("[WAL耗时] 文件滚动耗时: {}ms", System.currentTimeMillis() - stepStartTime);
-            }
-
-            // 创建WAL记录
-            long seq = walSeq.incrementAndGet();
-            // 临时值，将在序列化后计算
-            WALRecord record = WALRecord.builder()
-                    .walSeq(seq)
-                    .orderMessage(message)
-                    .timestamp(System.currentTimeMillis())
-                    .checksum(0L)
-                    .build();
-
-            // 序列化记录
-            stepStartTime = System.currentTimeMillis();
-            String recordJson = objectMapper.writeValueAsString(record);
-            byte[] recordData = recordJson.getBytes("UTF-8");
-            long serializeDuration = System.currentTimeMillis() - stepStartTime;
-
-            // 基于recordData计算checksum
-            long checksum = calculateChecksum(recordData);
-            // 重新设置checksum（需要重新序列化）
-            record.setChecksum(checksum);
-            recordJson = objectMapper.writeValueAsString(record);
-            recordData = recordJson.getBytes("UTF-8");
-
-            // 写入长度前缀（4字节）
-            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
-            lengthBuffer.putInt(recordData.length);
-            lengthBuffer.flip();
-
-            // 追加写文件（同步）
-            stepStartTime = System.currentTimeMillis();
-            currentChannel.write(lengthBuffer);
-            currentChannel.write(ByteBuffer.wrap(recordData));
-            currentChannel.force(true); // 同步数据和元数据，保证数据落盘
-            long fsyncDuration = System.currentTimeMillis() - stepStartTime;
-
-            currentFileSize += 4 + recordData.length;
-
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("[WAL耗时] WAL写入完成: walSeq={}, fileName={}, 总耗时={}ms, 序列化耗时={}ms, fsync耗时={}ms, orderId={}", 
-                    seq, currentFileName, totalDuration, serializeDuration, fsyncDuration, message.getOrderId());
-            return seq;
-        } catch (JsonProcessingException e) {
-            log.error("WAL消息序列化失败: message={}", message, e);
-            throw new RuntimeException("WAL消息序列化失败", e);
+            int sourceTopicId = sourceTopics.idOf(event.getSourceTopic());
+            return stream(event.getSymbolId()).write(event, sourceTopicId);
         } catch (Exception e) {
-            log.error("WAL写入失败: message={}", message, e);
+            log.error("WAL写入失败: orderId={}", event.getOrderId(), e);
             throw new RuntimeException("WAL写入失败", e);
         }
     }
 
     /**
-     * 滚动WAL文件
+     * 分组提交（只同步数据，fdatasync语义）
+     *
+     * @return 本组写入过的所有分区落盘后完成
      */
-    private void rollWALFile() {
-        FileChannel oldChannel = currentChannel;
-        String oldFileName = currentFileName;
-        try {
-            // 创建新文件
-            String fileName = String.format("wal-%s-%d.log", instanceId, System.currentTimeMillis());
-            Path filePath = Paths.get(basePath, instanceId, fileName);
-            FileChannel newChannel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-
-            // 原子性更新
-            currentChannel = newChannel;
-            currentFileName = fileName;
-            currentFileSize = Files.size(filePath);
-            currentFileCreateTime = System.currentTimeMillis();
+    public CompletableFuture<Void> flushAsync() {
+        return flushAsync(false);
+    }
 
-            // 关闭旧文件
-            if (oldChannel != null && oldChannel.isOpen()) {
-                oldChannel.force(true); // 同步数据和元数据
-                oldChannel.close();
+    /**
+     * 分组提交：把自上次提交以来写入的记录交给刷盘线程，立即返回
+     * 每个分区同一时间最多一组在刷盘中，上一组尚未完成时先等待
+     *
+     * @param syncMetadata 是否同时同步文件元数据（本组含{@link WALDurability#FSYNC}交易对的记录时）
+     * @return 本组写入过的所有分区落盘后完成
+     */
+    public synchronized CompletableFuture<Void> flushAsync(boolean syncMetadata) {
+        if (dirtyStreams.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[dirtyStreams.size()];
+        try {
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = dirtyStreams.get(i).flushAsync(syncMetadata);
             }
-
-            log.info("WAL文件滚动: fileName={}, size={}", fileName, currentFileSize);
-
-            // 清理旧WAL文件
-            cleanupOldWALFiles();
-        } catch (IOException e) {
-            // 恢复状态
-            currentChannel = oldChannel;
-            currentFileName = oldFileName;
-            log.error("WAL文件滚动失败", e);
-            throw new RuntimeException("WAL文件滚动失败", e);
+        } finally {
+            for (WALStream stream : dirtyStreams) {
+                stream.clearDirty();
+            }
+            dirtyStreams.clear();
         }
+        return CompletableFuture.allOf(futures);
     }
 
     /**
-     * 计算校验和
+     * 获取交易对所属分区已落盘的最大WAL序列号（撮合线程在采集Snapshot时调用，不加锁）
      */
-    private long calculateChecksum(byte[] data) {
-        long checksum = 0;
-        for (byte b : data) {
-            checksum = (checksum * 31 + b) & 0xFFFFFFFFFFFFFFFFL;
-        }
-        return checksum;
+    public long getDurableWalSeq(int symbolId) {
+        WALStream stream = streams.get(partitioning.partitionOf(symbolId));
+        return stream != null ? stream.getDurableWalSeq() : 0;
     }
 
     /**
-     * 获取当前WAL序列号
+     * 启动时WAL中已写入的来源Kafka offset（所有分区合并）
+     * 这些记录已写入WAL，但offset可能尚未提交（崩溃在落盘和确认之间）；
+     * 各分区独立刷盘，同一来源分区的offset在WAL中可能不连续（部分分区的最后一组未落盘），
+     * consumer只能跳过从已提交位置起连续写入的部分（{@link WALSourceOffsets#resumeOffset}），
+     * 之后的消息重新投递，其中已写入的由日志阶段跳过（{@link WALSourceOffsets#contains}）；
+     * <p>
+     * 只收集每个分区最后两个段（启动时不扫描整个WAL），前提是：一条记录落盘后，它的offset在该分区
+     * 再写满一个段之前已提交到Kafka（每组落盘后确认，由listener容器在下一次poll前提交；一个段可容纳
+     * wal.max-file-size / {@link WALRecordCodec#RECORD_SIZE}条记录，默认约119万条）。
+     * 不满足时（例如offset提交长时间失败），更早的段中已写入、offset未提交的消息不在这里，
+     * 重新投递后会被再次写入WAL
+     * <p>
+     * 启动后只读
      */
-    public long getCurrentWalSeq() {
-        return walSeq.get();
+    public synchronized WALSourceOffsets getSourceOffsets() {
+        return sourceOffsets;
     }
 
     /**
-     * 清理旧WAL文件
-     * 保留最近10个WAL文件，删除更旧的文件
+     * 来源Kafka topic的编号（从未写入WAL的topic返回{@link WALRecordCodec#NO_SOURCE}）
      */
-    private void cleanupOldWALFiles() {
-        try {
-            Path walPath = Paths.get(basePath, instanceId);
-            if (!Files.exists(walPath)) {
-                return;
-            }
-
-            List<Path> walFiles = Files.list(walPath).filter(Files::isRegularFile).filter(p -> p.getFileName().toString().startsWith("wal-")).filter(p -> p.getFileName().toString().endsWith(".log")).sorted((p1, p2) -> {
-                try {
-                    return Long.compare(Files.getLastModifiedTime(p2).toMillis(), Files.getLastModifiedTime(p1).toMillis());
-                } catch (IOException e) {
-                    return 0;
-                }
-            }).toList();
-
-            // 保留最近10个文件，删除更旧的文件
-            if (walFiles.size() > 10) {
-                for (int i = 10; i < walFiles.size(); i++) {
-                    try {
-                        Files.delete(walFiles.get(i));
-                        log.info("删除旧WAL文件: {}", walFiles.get(i).getFileName());
-                    } catch (IOException e) {
-                        log.info("删除旧WAL文件失败: {}", walFiles.get(i).getFileName(), e);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            log.error("清理旧WAL文件失败", e);
-        }
+    public int sourceTopicId(String topic) {
+        return sourceTopics.find(topic);
     }
 
     /**
      * 关闭WAL写入器
+     * 各分区当前段落盘后关闭；提前创建但未使用的段删除
      */
-    public void close() {
-        try {
-            if (currentChannel != null && currentChannel.isOpen()) {
-                currentChannel.force(true); // 同步数据和元数据
-                currentChannel.close();
-            }
-        } catch (IOException e) {
-            log.error("关闭WAL写入器失败", e);
+    @PreDestroy
+    public synchronized void close() {
+        for (WALStream stream : streams.values()) {
+            stream.close();
+        }
+        streams.clear();
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        if (preallocator != null) {
+            preallocator.shutdown();
         }
     }
 }
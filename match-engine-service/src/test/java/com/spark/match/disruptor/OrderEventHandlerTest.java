@@ -0,0 +1,45 @@
+package com.spark.match.disruptor;
+
+import com.spark.match.orderbook.OrderBook;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Snapshot水位：不超过所属WAL分区已落盘的walSeq
+ */
+class OrderEventHandlerTest {
+
+    @Test
+    void idleSymbolWatermarkFollowsDurablePartitionRecords() {
+        OrderBook book = new OrderBook(1);
+        book.setLastAppliedWalSeq(10);
+
+        assertTrue(OrderEventHandler.advanceToDurableWatermark(book, 50, 60));
+
+        assertEquals(50L, book.getLastAppliedWalSeq());
+    }
+
+    @Test
+    void watermarkIsCappedAtDurableWalSeq() {
+        // 分区中其他交易对的async记录已撮合但尚未落盘：断电后WAL从30继续分配walSeq，水位不能超过30
+        OrderBook book = new OrderBook(1);
+        book.setLastAppliedWalSeq(10);
+
+        assertTrue(OrderEventHandler.advanceToDurableWatermark(book, 50, 30));
+
+        assertEquals(30L, book.getLastAppliedWalSeq());
+    }
+
+    @Test
+    void bookWithRecordsNotYetDurableIsNotCaptured() {
+        OrderBook book = new OrderBook(1);
+        book.setLastAppliedWalSeq(40);
+
+        assertFalse(OrderEventHandler.advanceToDurableWatermark(book, 50, 30));
+
+        assertEquals(40L, book.getLastAppliedWalSeq());
+    }
+}
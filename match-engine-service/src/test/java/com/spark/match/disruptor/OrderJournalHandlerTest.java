@@ -0,0 +1,82 @@
+package com.spark.match.disruptor;
+
+import com.lmax.disruptor.Sequence;
+import com.spark.common.enums.MessageType;
+import com.spark.match.latency.LatencyRecorder;
+import com.spark.match.wal.WALDurability;
+import com.spark.match.wal.WALDurabilityPolicies;
+import com.spark.match.wal.WALWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 日志阶段：async组提交时立即放行，Snapshot屏障等待之前的记录全部落盘
+ */
+class OrderJournalHandlerTest {
+    private static final int SYMBOL_ID = 1;
+
+    private final WALWriter walWriter = mock(WALWriter.class);
+    private final Sequence sequence = new Sequence(-1);
+    private OrderJournalHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        OrderDecodeStage decodeStage = mock(OrderDecodeStage.class);
+        WALDurabilityPolicies policies = mock(WALDurabilityPolicies.class);
+        when(policies.policyOf(anyInt())).thenReturn(WALDurability.ASYNC);
+        when(walWriter.sourceTopicId(any())).thenReturn(0);
+
+        handler = new OrderJournalHandler();
+        ReflectionTestUtils.setField(handler, "walWriter", walWriter);
+        ReflectionTestUtils.setField(handler, "latencyRecorder", mock(LatencyRecorder.class));
+        ReflectionTestUtils.setField(handler, "decodeStage", decodeStage);
+        ReflectionTestUtils.setField(handler, "durabilityPolicies", policies);
+        ReflectionTestUtils.setField(handler, "maxBatchSize", 1000);
+        handler.setSequenceCallback(sequence);
+    }
+
+    @Test
+    void snapshotBarrierWaitsUntilReleasedAsyncGroupIsDurable() {
+        CompletableFuture<Void> asyncFlush = new CompletableFuture<>();
+        when(walWriter.write(any(OrderEvent.class))).thenReturn(7L);
+        when(walWriter.flushAsync(anyBoolean())).thenReturn(asyncFlush);
+
+        handler.onEvent(orderEvent(), 0, true);
+
+        // async组提交时立即放行，不等待落盘
+        assertEquals(0L, sequence.get());
+        assertFalse(asyncFlush.isDone());
+
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> asyncFlush.complete(null));
+        OrderEvent barrier = new OrderEvent();
+        barrier.setMessageType(OrderEvent.MESSAGE_TYPE_SNAPSHOT);
+        barrier.setSymbolId(SYMBOL_ID);
+        handler.onEvent(barrier, 1, true);
+
+        // 屏障返回（撮合线程可以处理屏障）时，之前的async组已落盘
+        assertTrue(asyncFlush.isDone());
+        assertEquals(0L, barrier.getWalSeq());
+        assertFalse(handler.isJournalFailed());
+    }
+
+    private static OrderEvent orderEvent() {
+        OrderEvent event = new OrderEvent();
+        event.setMessageType(MessageType.ORDER_CREATE.getCode());
+        event.setSymbolId(SYMBOL_ID);
+        event.setOrderId(1);
+        return event;
+    }
+}
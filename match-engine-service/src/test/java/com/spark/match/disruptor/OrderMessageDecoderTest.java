@@ -0,0 +1,140 @@
+package com.spark.match.disruptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spark.common.enums.MessageType;
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+import com.spark.common.model.OrderMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单消息流式解码：与订单服务Jackson输出的兼容性、宽松输入和非法输入
+ */
+class OrderMessageDecoderTest {
+    private final OrderMessageDecoder decoder = new OrderMessageDecoder();
+
+    @Test
+    void decodesJacksonOutput() throws Exception {
+        OrderMessage message = OrderMessage.builder()
+                .messageId("m-1")
+                .messageType(MessageType.ORDER_CREATE)
+                .orderId(123456789012L)
+                .userId(42L)
+                .symbolId(7)
+                .orderType(OrderType.LIMIT)
+                .orderSide(OrderSide.SELL)
+                .price(100_500L)
+                .quantity(3L)
+                .tifType(TIFType.IOC)
+                .timestamp(1_700_000_000_000L)
+                .build();
+        OrderEvent event = new OrderEvent();
+        event.copyPayload(new ObjectMapper().writeValueAsBytes(message));
+
+        assertTrue(decoder.decode(event));
+
+        assertEquals(MessageType.ORDER_CREATE.getCode(), event.getMessageType());
+        assertEquals(123456789012L, event.getOrderId());
+        assertEquals(42L, event.getUserId());
+        assertEquals(7, event.getSymbolId());
+        assertEquals(OrderType.LIMIT, event.getOrderType());
+        assertEquals(OrderSide.SELL, event.getOrderSide());
+        assertEquals(100_500L, event.getPrice());
+        assertEquals(3L, event.getQuantity());
+        assertEquals(TIFType.IOC, event.getTifType());
+        assertEquals(1_700_000_000_000L, event.getTimestamp());
+    }
+
+    @Test
+    void ignoresUnknownFieldsAndAcceptsAnyFieldOrder() {
+        OrderEvent event = decode("""
+                { "extra" : {"nested": [1, {"a": "}"}], "s": "x\\"y"},
+                  "quantity": 5, "flag": true, "orderSide": "BUY",
+                  "messageType": "ORDER_CANCEL", "list": [], "orderId": -1, "other": false }
+                """);
+
+        assertEquals(MessageType.ORDER_CANCEL.getCode(), event.getMessageType());
+        assertEquals(5L, event.getQuantity());
+        assertEquals(OrderSide.BUY, event.getOrderSide());
+        assertEquals(-1L, event.getOrderId());
+    }
+
+    @Test
+    void nullsAndOrdinalsMapToEventDefaults() {
+        OrderEvent event = decode("{\"messageType\":1,\"orderType\":null,\"orderSide\":0,\"price\":null,"
+                + "\"quantity\":null,\"tifType\":null,\"userId\":null}");
+
+        assertEquals(MessageType.ORDER_CANCEL.getCode(), event.getMessageType());
+        assertNull(event.getOrderType());
+        assertEquals(OrderSide.values()[0], event.getOrderSide());
+        assertEquals(OrderEvent.NULL_LONG, event.getPrice());
+        assertEquals(OrderEvent.NULL_LONG, event.getQuantity());
+        assertNull(event.getTifType());
+        assertEquals(0L, event.getUserId());
+    }
+
+    @Test
+    void rejectsMalformedMessages() {
+        String[] malformed = {
+                "",
+                "[]",
+                "{\"orderId\":1",
+                "{\"orderId\":1.5}",
+                "{\"orderId\":1e3}",
+                "{\"orderId\":\"1\"}",
+                "{\"orderId\":9223372036854775808}",
+                "{\"symbolId\":2147483648}",
+                "{\"orderSide\":\"buy\"}",
+                "{\"orderSide\":99}",
+                "{\"messageType\":\"ORDER_CREATE\" \"orderId\":1}",
+                "{\"extra\":[1,2}",
+                "{\"extra\":nul}",
+        };
+        for (String json : malformed) {
+            OrderEvent event = new OrderEvent();
+            event.copyPayload(json.getBytes(StandardCharsets.UTF_8));
+
+            assertFalse(decoder.decode(event), json);
+            assertEquals(OrderEvent.MESSAGE_TYPE_INVALID, event.getMessageType(), json);
+        }
+    }
+
+    @Test
+    void acceptsLongBoundaries() {
+        OrderEvent event = decode("{\"orderId\":9223372036854775807,\"userId\":-9223372036854775808}");
+
+        assertEquals(Long.MAX_VALUE, event.getOrderId());
+        assertEquals(Long.MIN_VALUE, event.getUserId());
+    }
+
+    @Test
+    void reusedSlotDoesNotKeepPreviousFields() {
+        OrderEvent event = decode("{\"messageType\":\"ORDER_CREATE\",\"orderId\":1,\"price\":100,"
+                + "\"orderSide\":\"BUY\",\"tifType\":\"GTC\",\"padding\":\"" + "x".repeat(600) + "\"}");
+
+        // 槽位复用：payload缓冲区比新消息长，只解码payloadLength范围内的字节
+        event.copyPayload("{\"orderId\":2}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(decoder.decode(event));
+
+        assertEquals(OrderEvent.MESSAGE_TYPE_INVALID, event.getMessageType());
+        assertEquals(2L, event.getOrderId());
+        assertEquals(OrderEvent.NULL_LONG, event.getPrice());
+        assertNull(event.getOrderSide());
+        assertNull(event.getTifType());
+    }
+
+    private OrderEvent decode(String json) {
+        OrderEvent event = new OrderEvent();
+        event.copyPayload(json.getBytes(StandardCharsets.UTF_8));
+        assertTrue(decoder.decode(event), json);
+        return event;
+    }
+}
@@ -0,0 +1,193 @@
+package com.spark.match.snapshot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+import com.spark.match.orderbook.Order;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+/**
+ * Snapshot写入/读取基准：二进制流式格式（{@link SnapshotCodec}）对比旧JSON格式
+ * JSON路径与升级前的实现一致：写入时整体序列化两次（计算checksum前后），读取时整体读入再序列化一次校验checksum
+ * <p>
+ * 不是单元测试，不随mvn test运行；运行（先mvn test-compile，依赖classpath可用mvn dependency:build-classpath生成）：
+ * java -cp match-engine-service/target/test-classes:match-engine-service/target/classes:{依赖classpath}
+ * com.spark.match.snapshot.SnapshotBenchmark [订单数] [每侧档位数] [轮数]
+ * <p>
+ * 日志输出每种格式的耗时、文件大小和当前线程分配的堆内存（瞬时内存压力）；
+ * capture为撮合线程在Snapshot屏障处采集订单簿视图（{@link OrderBookImage}）的耗时：
+ * cold capture复制所有档位（本次启动后的第一次全量采集），cached capture复用档位副本、只复制变更的一个档位
+ */
+@Slf4j
+public final class SnapshotBenchmark {
+    private SnapshotBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int levelsPerSide = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        OrderBook orderBook = buildOrderBook(orderCount, levelsPerSide);
+        // 与Spring Boot默认配置一致：忽略未知属性（如Order.remainingQuantity）
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        Path dir = Files.createTempDirectory("snapshot-benchmark");
+        Path binaryFile = dir.resolve("snapshot.snap");
+        Path jsonFile = dir.resolve("snapshot.dat");
+        log.info("orders={}, levelsPerSide={}, rounds={}, dir={}", orderCount, levelsPerSide, rounds, dir);
+        LevelImageCache cache = new LevelImageCache();
+        OrderBookImage.capture(orderBook, cache);
+        long dirtyPrice = orderBook.getBuyBook().firstKey();
+
+        for (int round = 1; round <= rounds; round++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            OrderBookImage image = OrderBookImage.capture(orderBook);
+            report(round, "cold capture", start, allocated, 0);
+
+            orderBook.markLevelDirty(OrderSide.BUY, dirtyPrice);
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            OrderBookImage cached = OrderBookImage.capture(orderBook, cache);
+            report(round, "cached capture", start, allocated, 0);
+            log.info("round={} cached capture copiedOrders={}, orders={}", round, cached.getCopiedOrderCount(), cached.getOrderCount());
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(binaryFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotCodec.write(channel, image, System.currentTimeMillis(), SnapshotCodec.DEFAULT_BUFFER_SIZE);
+            }
+            report(round, "binary write", start, allocated, Files.size(binaryFile));
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            SnapshotWriter.SnapshotData binary;
+            try (FileChannel channel = FileChannel.open(binaryFile, StandardOpenOption.READ)) {
+                binary = SnapshotCodec.read(channel, SnapshotCodec.DEFAULT_BUFFER_SIZE);
+            }
+            report(round, "binary read", start, allocated, Files.size(binaryFile));
+            check(binary, orderCount);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            writeJson(objectMapper, orderBook, jsonFile);
+            report(round, "json write", start, allocated, Files.size(jsonFile));
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            orderBook.deepCopy();
+            report(round, "deep copy", start, allocated, 0);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            SnapshotWriter.SnapshotData json = readJson(objectMapper, jsonFile);
+            report(round, "json read", start, allocated, Files.size(jsonFile));
+            check(json, orderCount);
+        }
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(jsonFile);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * 构造订单簿：订单平均分布在买卖两侧的档位上（直接填充，不经过addOrder的逐单日志）
+     */
+    private static OrderBook buildOrderBook(int orderCount, int levelsPerSide) {
+        OrderBook orderBook = new OrderBook(1);
+        for (int i = 0; i < orderCount; i++) {
+            boolean buy = (i & 1) == 0;
+            long price = buy ? 100_000L - (i / 2) % levelsPerSide : 100_001L + (i / 2) % levelsPerSide;
+            Order order = Order.builder()
+                    .orderId((long) i + 1)
+                    .userId(1_000_000L + i % 10_000)
+                    .symbolId(1)
+                    .orderType(OrderType.LIMIT)
+                    .orderSide(buy ? OrderSide.BUY : OrderSide.SELL)
+                    .price(price)
+                    .quantity(1_000L + i % 100)
+                    .filledQuantity((long) (i % 10))
+                    .tifType(TIFType.GTC)
+                    .createTime(1_700_000_000_000L + i)
+                    .build();
+            TreeMap<Long, PriceLevel> side = buy ? orderBook.getBuyBook() : orderBook.getSellBook();
+            PriceLevel level = side.computeIfAbsent(price, PriceLevel::new);
+            level.getOrders().offer(order);
+            level.setTotalQuantity(level.getTotalQuantity() + order.getRemainingQuantity());
+            orderBook.getOrderIndex().put(order.getOrderId(), order);
+        }
+        return orderBook;
+    }
+
+    /**
+     * 升级前的JSON写入路径
+     */
+    private static void writeJson(ObjectMapper objectMapper, OrderBook orderBook, Path file) throws Exception {
+        SnapshotWriter.SnapshotData snapshotData = SnapshotWriter.SnapshotData.builder()
+                .snapshotVersion(1)
+                .symbolId(orderBook.getSymbolId())
+                .lastAppliedWalSeq(1L)
+                .orderBook(orderBook)
+                .timestamp(System.currentTimeMillis())
+                .checksum(0L)
+                .build();
+        snapshotData.setChecksum(checksum(objectMapper.writeValueAsString(snapshotData).getBytes(StandardCharsets.UTF_8)));
+        Files.write(file, objectMapper.writeValueAsString(snapshotData).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * 升级前的JSON读取路径
+     */
+    private static SnapshotWriter.SnapshotData readJson(ObjectMapper objectMapper, Path file) throws Exception {
+        String snapshotJson = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        SnapshotWriter.SnapshotData snapshotData = objectMapper.readValue(snapshotJson, SnapshotWriter.SnapshotData.class);
+        long expected = snapshotData.getChecksum();
+        snapshotData.setChecksum(0L);
+        if (checksum(objectMapper.writeValueAsString(snapshotData).getBytes(StandardCharsets.UTF_8)) != expected) {
+            throw new IllegalStateException("JSON Snapshot校验和验证失败");
+        }
+        snapshotData.setChecksum(expected);
+        return snapshotData;
+    }
+
+    private static long checksum(byte[] data) {
+        long checksum = 0;
+        for (byte b : data) {
+            checksum = (checksum * 31) + b;
+        }
+        return checksum;
+    }
+
+    private static void check(SnapshotWriter.SnapshotData snapshotData, int orderCount) {
+        if (snapshotData.getOrderBook().getOrderIndex().size() != orderCount) {
+            throw new IllegalStateException("订单数不一致: expected=" + orderCount
+                    + ", actual=" + snapshotData.getOrderBook().getOrderIndex().size());
+        }
+    }
+
+    private static void report(int round, String name, long startNanos, long allocatedBefore, long fileSize) {
+        long costMs = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("round={} {} costMs={}, fileMB={}, allocatedMB={}", round, name, costMs,
+                String.format("%.1f", fileSize / 1048576.0), String.format("%.1f", (allocatedBytes() - allocatedBefore) / 1048576.0));
+    }
+
+    /**
+     * 当前线程累计分配的堆内存
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
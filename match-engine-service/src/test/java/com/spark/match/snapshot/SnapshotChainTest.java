@@ -0,0 +1,295 @@
+package com.spark.match.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spark.common.enums.OrderSide;
+import com.spark.common.enums.OrderType;
+import com.spark.common.enums.TIFType;
+import com.spark.match.orderbook.Order;
+import com.spark.match.orderbook.OrderBook;
+import com.spark.match.orderbook.PriceLevel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Snapshot链：全量检查点 + 增量的写入、排序和重建
+ */
+class SnapshotChainTest {
+    private static final String INSTANCE_ID = "test";
+    private static final int SYMBOL_ID = 1;
+
+    @TempDir
+    Path snapshotRoot;
+
+    private SnapshotWriter writer;
+    private SnapshotReader reader;
+    private LevelImageCache cache = new LevelImageCache();
+    private long nextOrderId = 1;
+
+    @BeforeEach
+    void setUp() {
+        writer = newWriter();
+        reader = new SnapshotReader();
+        ReflectionTestUtils.setField(reader, "basePath", snapshotRoot.toString());
+        ReflectionTestUtils.setField(reader, "instanceId", INSTANCE_ID);
+        ReflectionTestUtils.setField(reader, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(reader, "bufferSize", 4096);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    void fullCheckpointAndDeltasRebuildTheBook() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        Order firstBuy = addOrder(book, OrderSide.BUY, 100, 5);
+        Order secondBuy = addOrder(book, OrderSide.BUY, 100, 7);
+        addOrder(book, OrderSide.SELL, 105, 3);
+        snapshot(book, 10, false);
+
+        book.removeOrder(firstBuy.getOrderId());
+        addOrder(book, OrderSide.SELL, 106, 4);
+        snapshot(book, 20, true);
+
+        // 档位被移除：增量以0个订单的档位表示
+        book.removeOrder(secondBuy.getOrderId());
+        addOrder(book, OrderSide.BUY, 99, 2);
+        snapshot(book, 30, true);
+
+        SnapshotWriter.SnapshotData restored = reader.readLatestSnapshot(SYMBOL_ID);
+
+        assertNotNull(restored);
+        assertEquals(30L, restored.getLastAppliedWalSeq());
+        assertBookEquals(book, restored.getOrderBook());
+    }
+
+    @Test
+    void readerStartsFromLatestCheckpoint() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        addOrder(book, OrderSide.BUY, 100, 5);
+        snapshot(book, 10, false);
+        addOrder(book, OrderSide.SELL, 101, 1);
+        snapshot(book, 20, true);
+        // 链中断后写全量检查点（lastAppliedWalSeq与前一个增量相同），之后的增量接在新检查点上
+        snapshot(book, 20, false);
+        addOrder(book, OrderSide.SELL, 102, 1);
+        snapshot(book, 25, true);
+
+        SnapshotWriter.SnapshotData restored = reader.readLatestSnapshot(SYMBOL_ID);
+
+        assertNotNull(restored);
+        assertEquals(25L, restored.getLastAppliedWalSeq());
+        assertBookEquals(book, restored.getOrderBook());
+    }
+
+    @Test
+    void corruptedCheckpointFallsBackToPreviousChain() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        addOrder(book, OrderSide.BUY, 100, 5);
+        addOrder(book, OrderSide.SELL, 105, 3);
+        snapshot(book, 10, false);
+        addOrder(book, OrderSide.SELL, 101, 1);
+        snapshot(book, 20, true);
+        snapshot(book, 20, false);
+        addOrder(book, OrderSide.BUY, 99, 2);
+        snapshot(book, 25, true);
+
+        // 最新的全量检查点校验失败：回退到前一个检查点，跳过损坏的检查点后继续应用增量
+        List<Path> files = listSnapshotFiles();
+        Path latestCheckpoint = files.get(2);
+        assertTrue(SnapshotWriter.isFullSnapshotFile(latestCheckpoint));
+        byte[] bytes = Files.readAllBytes(latestCheckpoint);
+        for (int i = bytes.length / 2; i < bytes.length; i++) {
+            bytes[i] ^= 0x5A;
+        }
+        Files.write(latestCheckpoint, bytes);
+
+        SnapshotWriter.SnapshotData restored = reader.readLatestSnapshot(SYMBOL_ID);
+
+        assertNotNull(restored);
+        assertEquals(25L, restored.getLastAppliedWalSeq());
+        assertBookEquals(book, restored.getOrderBook());
+    }
+
+    @Test
+    void fullCheckpointCopiesOnlyChangedLevels() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        addOrder(book, OrderSide.BUY, 100, 5);
+        addOrder(book, OrderSide.BUY, 100, 6);
+        addOrder(book, OrderSide.BUY, 99, 7);
+        Order sell = addOrder(book, OrderSide.SELL, 105, 3);
+        assertEquals(4, snapshot(book, 10, false).getCopiedOrderCount());
+
+        book.removeOrder(sell.getOrderId());
+        addOrder(book, OrderSide.SELL, 106, 4);
+        addOrder(book, OrderSide.BUY, 99, 1);
+        OrderBookImage delta = snapshot(book, 20, true);
+        assertEquals(3, delta.getCopiedOrderCount());
+
+        // 全量检查点：上次采集后只有买99档位变更，其余档位复用副本
+        addOrder(book, OrderSide.BUY, 99, 2);
+        OrderBookImage full = snapshot(book, 30, false);
+
+        assertEquals(6, full.getOrderCount());
+        assertEquals(3, full.getCopiedOrderCount());
+        SnapshotWriter.SnapshotData restored = reader.readLatestSnapshot(SYMBOL_ID);
+        assertNotNull(restored);
+        assertEquals(30L, restored.getLastAppliedWalSeq());
+        assertBookEquals(book, restored.getOrderBook());
+    }
+
+    @Test
+    void checkpointsWrittenBackToBackDoNotOverwriteEachOther() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        addOrder(book, OrderSide.BUY, 100, 5);
+        ReflectionTestUtils.setField(writer, "retainedCheckpoints", 10);
+        for (int i = 0; i < 4; i++) {
+            snapshot(book, 10, false);
+        }
+
+        assertEquals(4, listSnapshotFiles().size());
+    }
+
+    @Test
+    void fileSequenceContinuesAfterRestart() throws Exception {
+        OrderBook book = new OrderBook(SYMBOL_ID);
+        addOrder(book, OrderSide.BUY, 100, 5);
+        snapshot(book, 10, false);
+        addOrder(book, OrderSide.BUY, 101, 5);
+        snapshot(book, 20, true);
+
+        writer.close();
+        writer = newWriter();
+        cache = new LevelImageCache();
+        // 重启后本次运行还没有链，必须先写全量检查点
+        addOrder(book, OrderSide.SELL, 102, 5);
+        snapshot(book, 30, false);
+
+        List<Path> files = listSnapshotFiles();
+        Path last = files.get(files.size() - 1);
+        assertTrue(SnapshotWriter.isFullSnapshotFile(last));
+        assertEquals(3L, SnapshotWriter.fileSeq(last.getFileName().toString()));
+        SnapshotWriter.SnapshotData restored = reader.readLatestSnapshot(SYMBOL_ID);
+        assertNotNull(restored);
+        assertEquals(30L, restored.getLastAppliedWalSeq());
+        assertBookEquals(book, restored.getOrderBook());
+    }
+
+    @Test
+    void legacyTimestampNamedFilesSortBeforeSequencedFiles() {
+        String prefix = SnapshotWriter.filePrefix(INSTANCE_ID, SYMBOL_ID);
+        Path legacyFull = Path.of(prefix + "1700000000000.snap");
+        Path legacyDelta = Path.of(prefix + "1700000000000.delta");
+        Path legacyJson = Path.of(prefix + "1600000000000.dat");
+        Path full = Path.of(SnapshotWriter.fileName(INSTANCE_ID, SYMBOL_ID, 2, false));
+        Path delta = Path.of(SnapshotWriter.fileName(INSTANCE_ID, SYMBOL_ID, 3, true));
+
+        List<Path> sorted = SnapshotWriter.sortByWriteOrder(
+                List.of(delta, legacyDelta, full, legacyFull, legacyJson), INSTANCE_ID, SYMBOL_ID);
+
+        assertEquals(List.of(legacyJson, legacyFull, legacyDelta, full, delta), sorted);
+    }
+
+    private SnapshotWriter newWriter() {
+        SnapshotWriter snapshotWriter = new SnapshotWriter();
+        ReflectionTestUtils.setField(snapshotWriter, "basePath", snapshotRoot.toString());
+        ReflectionTestUtils.setField(snapshotWriter, "instanceId", INSTANCE_ID);
+        ReflectionTestUtils.setField(snapshotWriter, "bufferSize", 4096);
+        ReflectionTestUtils.setField(snapshotWriter, "fullCheckpointInterval", 12);
+        ReflectionTestUtils.setField(snapshotWriter, "retainedCheckpoints", 2);
+        ReflectionTestUtils.setField(snapshotWriter, "writerThreads", 2);
+        ReflectionTestUtils.setField(snapshotWriter, "queueCapacity", 64);
+        ReflectionTestUtils.setField(snapshotWriter, "maxWriteBytesPerSecond", 0L);
+        ReflectionTestUtils.setField(snapshotWriter, "syncIntervalBytes", 0L);
+        snapshotWriter.init();
+        return snapshotWriter;
+    }
+
+    private Order addOrder(OrderBook book, OrderSide side, long price, long quantity) {
+        Order order = Order.builder()
+                .orderId(nextOrderId++)
+                .userId(7L)
+                .symbolId(SYMBOL_ID)
+                .orderType(OrderType.LIMIT)
+                .orderSide(side)
+                .price(price)
+                .quantity(quantity)
+                .filledQuantity(0L)
+                .tifType(TIFType.GTC)
+                .createTime(1_700_000_000_000L + nextOrderId)
+                .build();
+        book.addOrder(order);
+        return order;
+    }
+
+    /**
+     * 采集并提交Snapshot，等待写入完成
+     */
+    private OrderBookImage snapshot(OrderBook book, long walSeq, boolean delta) throws InterruptedException {
+        book.setLastAppliedWalSeq(walSeq);
+        long written = writtenCount();
+        OrderBookImage image = delta ? OrderBookImage.captureDelta(book, cache) : OrderBookImage.capture(book, cache);
+        assertTrue(writer.submitSnapshot(image));
+        // 写入统计在写入任务内更新，任务结束（含链状态更新和清理）后activeWriters才归零
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writtenCount() == written || writer.getQueueDepth() > 0 || writer.getActiveWriters() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Snapshot写入超时");
+            Thread.sleep(5);
+        }
+        assertTrue(writer.hasChain(SYMBOL_ID));
+        return image;
+    }
+
+    private long writtenCount() {
+        return writer.getWriteStats(false).getCount() + writer.getWriteStats(true).getCount();
+    }
+
+    private List<Path> listSnapshotFiles() {
+        try (Stream<Path> paths = Files.list(snapshotRoot.resolve(INSTANCE_ID))) {
+            return SnapshotWriter.sortByWriteOrder(paths
+                    .filter(p -> SnapshotWriter.isSnapshotFile(p, INSTANCE_ID, SYMBOL_ID))
+                    .toList(), INSTANCE_ID, SYMBOL_ID);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void assertBookEquals(OrderBook expected, OrderBook actual) {
+        assertEquals(describe(expected.getBuyBook()), describe(actual.getBuyBook()));
+        assertEquals(describe(expected.getSellBook()), describe(actual.getSellBook()));
+        assertEquals(expected.getOrderIndex().keySet(), actual.getOrderIndex().keySet());
+    }
+
+    /**
+     * 档位顺序、各档位的总数量和订单队列（订单ID和剩余数量）
+     */
+    private static List<String> describe(TreeMap<Long, PriceLevel> book) {
+        List<String> levels = new ArrayList<>();
+        for (Map.Entry<Long, PriceLevel> entry : book.entrySet()) {
+            StringBuilder level = new StringBuilder()
+                    .append(entry.getKey()).append(':').append(entry.getValue().getTotalQuantity());
+            for (Order order : entry.getValue().getOrders()) {
+                level.append(' ').append(order.getOrderId()).append('x').append(order.getRemainingQuantity());
+            }
+            levels.add(level.toString());
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,81 @@
+package com.spark.match.wal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 来源offset集合：按topic和分区区分、只包含实际写入的offset、从已提交位置起的连续前缀
+ */
+class WALSourceOffsetsTest {
+
+    @Test
+    void topicsAndPartitionsAreIndependent() {
+        WALSourceOffsets offsets = new WALSourceOffsets();
+        offsets.add(0, 1, 10);
+
+        assertTrue(offsets.contains(0, 1, 10));
+        assertFalse(offsets.contains(1, 1, 10));
+        assertFalse(offsets.contains(0, 0, 10));
+        assertEquals(10, offsets.resumeOffset(1, 1, 10));
+    }
+
+    @Test
+    void resumeStopsAtFirstMissingOffset() {
+        // 两个WAL分区各自落盘了一部分：分区A写入10、11、13，分区B的12未落盘
+        WALSourceOffsets partitionA = new WALSourceOffsets();
+        partitionA.add(0, 0, 10);
+        partitionA.add(0, 0, 11);
+        partitionA.add(0, 0, 13);
+        WALSourceOffsets partitionB = new WALSourceOffsets();
+        partitionB.add(0, 0, 14);
+
+        WALSourceOffsets merged = new WALSourceOffsets();
+        merged.addAll(partitionA);
+        merged.addAll(partitionB);
+
+        assertEquals(12, merged.resumeOffset(0, 0, 10));
+        assertEquals(12, merged.resumeOffset(0, 0, 12));
+        assertEquals(15, merged.resumeOffset(0, 0, 13));
+        assertFalse(merged.contains(0, 0, 12));
+        assertTrue(merged.contains(0, 0, 13));
+        assertTrue(merged.contains(0, 0, 14));
+    }
+
+    @Test
+    void outOfOrderOffsetsMergeIntoRanges() {
+        WALSourceOffsets offsets = new WALSourceOffsets();
+        offsets.add(0, 0, 5);
+        offsets.add(0, 0, 1);
+        offsets.add(0, 0, 3);
+        offsets.add(0, 0, 2);
+        offsets.add(0, 0, 4);
+
+        assertEquals(6, offsets.resumeOffset(0, 0, 1));
+        assertEquals("{0-0=[1, 6)}", offsets.toString());
+    }
+
+    @Test
+    void oldestRangesAreDroppedBeyondLimit() {
+        WALSourceOffsets offsets = new WALSourceOffsets(2);
+        offsets.add(0, 0, 1);
+        offsets.add(0, 0, 3);
+        offsets.add(0, 0, 5);
+
+        assertFalse(offsets.contains(0, 0, 1));
+        assertTrue(offsets.contains(0, 0, 3));
+        assertTrue(offsets.contains(0, 0, 5));
+    }
+
+    @Test
+    void negativeSourceIsIgnored() {
+        WALSourceOffsets offsets = new WALSourceOffsets();
+        offsets.add(WALRecordCodec.NO_SOURCE, 0, 1);
+        offsets.add(0, WALRecordCodec.NO_SOURCE, 1);
+
+        assertTrue(offsets.isEmpty());
+        assertFalse(offsets.contains(WALRecordCodec.NO_SOURCE, 0, 1));
+    }
+}
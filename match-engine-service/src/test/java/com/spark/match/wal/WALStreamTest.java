@@ -0,0 +1,114 @@
+package com.spark.match.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spark.common.enums.MessageType;
+import com.spark.match.disruptor.OrderEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * WAL分区段链：重启后在最后一个段中继续写入，写满后才滚动
+ */
+class WALStreamTest {
+    private static final int TOPIC_ID = 0;
+
+    @TempDir
+    Path walPath;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService preallocator = Executors.newSingleThreadExecutor();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        preallocator.shutdownNow();
+        flusher.shutdownNow();
+    }
+
+    @Test
+    void restartContinuesInLastSegment() throws IOException {
+        restartContinuesInLastSegment(WALIoMode.MMAP);
+    }
+
+    @Test
+    void restartContinuesInLastDirectSegment() throws IOException {
+        // 文件系统不支持O_DIRECT时回退为MMAP，结果相同
+        restartContinuesInLastSegment(WALIoMode.DIRECT);
+    }
+
+    @Test
+    void resumedSegmentRollsWhenFull() throws IOException {
+        int segmentSize = WALRecordCodec.FILE_HEADER_SIZE + WALRecordCodec.RECORD_SIZE * 4;
+        WALStream stream = open(segmentSize, WALIoMode.MMAP);
+        write(stream, 3);
+        stream.close();
+
+        stream = open(segmentSize, WALIoMode.MMAP);
+        write(stream, 3);
+        stream.close();
+
+        List<Path> segments = WALFiles.listSegments(walPath);
+        assertEquals(2, segments.size());
+        assertEquals(1L, WALFiles.firstWalSeq(segments.get(0)));
+        assertEquals(5L, WALFiles.firstWalSeq(segments.get(1)));
+        assertEquals(List.of(1L, 2L, 3L, 4L), walSeqs(segments.get(0)));
+        assertEquals(List.of(5L, 6L), walSeqs(segments.get(1)));
+    }
+
+    private void restartContinuesInLastSegment(WALIoMode ioMode) throws IOException {
+        int segmentSize = 1024 * 1024;
+        WALStream stream = open(segmentSize, ioMode);
+        write(stream, 3);
+        stream.close();
+
+        stream = open(segmentSize, ioMode);
+        write(stream, 2);
+        stream.close();
+
+        List<Path> segments = WALFiles.listSegments(walPath);
+        assertEquals(1, segments.size());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), walSeqs(segments.get(0)));
+        assertEquals(0, WALFiles.listPreallocated(walPath).size());
+    }
+
+    private WALStream open(int segmentSize, WALIoMode ioMode) throws IOException {
+        WALStream stream = new WALStream(0, walPath, segmentSize, 2, ioMode, 64 * 1024,
+                objectMapper, preallocator, flusher);
+        stream.open();
+        return stream;
+    }
+
+    private static void write(WALStream stream, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            OrderEvent event = new OrderEvent();
+            event.setMessageType(MessageType.ORDER_CREATE.getCode());
+            event.setOrderId(i + 1);
+            event.setUserId(1L);
+            event.setSymbolId(1);
+            event.setQuantity(10L);
+            stream.write(event, TOPIC_ID);
+        }
+        stream.flushAsync(false).join();
+    }
+
+    private List<Long> walSeqs(Path segmentFile) throws IOException {
+        List<Long> walSeqs = new ArrayList<>();
+        try (WALCursor cursor = WALCursor.open(segmentFile, objectMapper, WALCursor.DEFAULT_BUFFER_SIZE)) {
+            WALRecord record;
+            while ((record = cursor.next()) != null) {
+                walSeqs.add(record.getWalSeq());
+            }
+        }
+        return walSeqs;
+    }
+}
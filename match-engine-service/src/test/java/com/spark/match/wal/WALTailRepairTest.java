@@ -0,0 +1,189 @@
+package com.spark.match.wal;
+
+import com.spark.common.enums.MessageType;
+import com.spark.match.disruptor.OrderEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WAL段尾部修复：截断位置、中间损坏的隔离和来源offset的收集
+ */
+class WALTailRepairTest {
+    private static final int SLOTS = 32;
+    private static final long FIRST_WAL_SEQ = 101;
+    private static final int TOPIC_ID = 1;
+
+    @TempDir
+    Path walPath;
+
+    private Path segmentFile;
+    private ByteBuffer segment;
+
+    @BeforeEach
+    void setUp() {
+        segmentFile = walPath.resolve(WALFiles.segmentFileName(FIRST_WAL_SEQ));
+        segment = ByteBuffer.allocate(WALRecordCodec.FILE_HEADER_SIZE + WALRecordCodec.RECORD_SIZE * SLOTS);
+        WALRecordCodec.encodeFileHeader(segment);
+    }
+
+    @Test
+    void intactSegmentIsUnchanged() throws IOException {
+        writeRecords(0, 5);
+        byte[] before = save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 4, result.getLastWalSeq());
+        assertEquals(0, result.getTruncatedBytes());
+        assertEquals(0, result.getQuarantinedCount());
+        assertTrue(result.getSourceOffsets().contains(TOPIC_ID, 0, FIRST_WAL_SEQ + 4));
+        assertEquals(FIRST_WAL_SEQ + 5, result.getSourceOffsets().resumeOffset(TOPIC_ID, 0, FIRST_WAL_SEQ));
+        assertArrayEquals(before, Files.readAllBytes(segmentFile));
+    }
+
+    @Test
+    void tornTailIsZeroFilled() throws IOException {
+        writeRecords(0, 5);
+        writeRecords(5, 1);
+        // 最后一条只写了一半（walSeq之后的部分未落盘）
+        for (int i = slotOffset(5) + WALRecordCodec.RECORD_HEADER_SIZE + 8; i < slotOffset(6); i++) {
+            segment.put(i, (byte) 0);
+        }
+        save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 4, result.getLastWalSeq());
+        assertEquals(WALRecordCodec.RECORD_SIZE, result.getTruncatedBytes());
+        assertEquals(0, result.getQuarantinedCount());
+        assertTrue(isZeroFrom(slotOffset(5)));
+    }
+
+    @Test
+    void holeBeforeLaterRecordsIsTruncatedNotQuarantined() throws IOException {
+        writeRecords(0, 3);
+        // 第4条未落盘（脏页乱序），之后的第5、6条已落盘
+        writeRecords(4, 2);
+        save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 2, result.getLastWalSeq());
+        assertEquals(0, result.getQuarantinedCount());
+        assertEquals(3L * WALRecordCodec.RECORD_SIZE, result.getTruncatedBytes());
+        assertTrue(isZeroFrom(slotOffset(3)));
+        assertFalse(Files.exists(WALFiles.quarantineFile(segmentFile)));
+        // 截断的记录不计入已写入的来源offset，重启后重新投递并写入
+        assertEquals(FIRST_WAL_SEQ + 3, result.getSourceOffsets().resumeOffset(TOPIC_ID, 0, FIRST_WAL_SEQ));
+        assertFalse(result.getSourceOffsets().contains(TOPIC_ID, 0, FIRST_WAL_SEQ + 4));
+    }
+
+    @Test
+    void discontinuousWalSeqIsTruncated() throws IOException {
+        writeRecords(0, 3);
+        writeRecord(3, FIRST_WAL_SEQ + 10);
+        save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 2, result.getLastWalSeq());
+        assertEquals(0, result.getQuarantinedCount());
+        assertTrue(isZeroFrom(slotOffset(3)));
+    }
+
+    @Test
+    void corruptRecordFollowedByContiguousRecordsIsQuarantined() throws IOException {
+        writeRecords(0, 6);
+        // 第3条记录体中间一个字节损坏（介质错误）
+        int corrupt = slotOffset(2) + WALRecordCodec.RECORD_HEADER_SIZE + 20;
+        segment.put(corrupt, (byte) (segment.get(corrupt) ^ 0x01));
+        save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 5, result.getLastWalSeq());
+        assertEquals(1, result.getQuarantinedCount());
+        // 隔离的记录不计入已写入的来源offset
+        assertFalse(result.getSourceOffsets().contains(TOPIC_ID, 0, FIRST_WAL_SEQ + 2));
+        assertTrue(result.getSourceOffsets().contains(TOPIC_ID, 0, FIRST_WAL_SEQ + 3));
+        assertEquals(0, result.getTruncatedBytes());
+        assertEquals(8L + WALRecordCodec.RECORD_SIZE, Files.size(WALFiles.quarantineFile(segmentFile)));
+
+        // 再次修复：占位记录被识别，不重复隔离
+        WALTailRepair.Result again = WALTailRepair.repair(segmentFile);
+        assertEquals(FIRST_WAL_SEQ + 5, again.getLastWalSeq());
+        assertEquals(0, again.getQuarantinedCount());
+        assertEquals(0, again.getTruncatedBytes());
+    }
+
+    @Test
+    void corruptRecordAtTailIsTruncated() throws IOException {
+        writeRecords(0, 4);
+        int corrupt = slotOffset(3) + WALRecordCodec.RECORD_HEADER_SIZE + 20;
+        segment.put(corrupt, (byte) (segment.get(corrupt) ^ 0x01));
+        save();
+
+        WALTailRepair.Result result = WALTailRepair.repair(segmentFile);
+
+        assertEquals(FIRST_WAL_SEQ + 2, result.getLastWalSeq());
+        assertEquals(0, result.getQuarantinedCount());
+        assertEquals(WALRecordCodec.RECORD_SIZE, result.getTruncatedBytes());
+        assertTrue(isZeroFrom(slotOffset(3)));
+    }
+
+    private void writeRecords(int fromSlot, int count) {
+        for (int slot = fromSlot; slot < fromSlot + count; slot++) {
+            writeRecord(slot, FIRST_WAL_SEQ + slot);
+        }
+    }
+
+    private void writeRecord(int slot, long walSeq) {
+        OrderEvent event = new OrderEvent();
+        event.setMessageType(MessageType.ORDER_CREATE.getCode());
+        event.setOrderId(walSeq);
+        event.setUserId(1L);
+        event.setSymbolId(1);
+        event.setQuantity(10L);
+        event.setSourcePartition(0);
+        event.setSourceOffset(walSeq);
+        segment.position(slotOffset(slot));
+        WALRecordCodec.encode(segment, walSeq, System.currentTimeMillis(), event, TOPIC_ID, new CRC32C());
+    }
+
+    private static int slotOffset(int slot) {
+        return WALRecordCodec.FILE_HEADER_SIZE + slot * WALRecordCodec.RECORD_SIZE;
+    }
+
+    private byte[] save() throws IOException {
+        byte[] bytes = segment.array().clone();
+        try (FileChannel channel = FileChannel.open(segmentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(bytes));
+        }
+        return bytes;
+    }
+
+    private boolean isZeroFrom(int offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(segmentFile);
+        for (int i = offset; i < bytes.length; i++) {
+            if (bytes[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -29,6 +29,7 @@ CREATE TABLE IF NOT EXISTS `symbol_config` (
     `enabled` TINYINT NOT NULL DEFAULT 1 COMMENT '是否启用：0=禁用，1=启用',
     `priority` TINYINT NOT NULL DEFAULT 0 COMMENT '优先级：0=低，1=中，2=高',
     `match_mode` TINYINT NOT NULL DEFAULT 1 COMMENT '撮合模式：0=专用实例，1=共享实例',
+    `durability` VARCHAR(16) DEFAULT NULL COMMENT 'WAL持久化策略：fsync / fdatasync / group / async，不配置时使用撮合引擎的默认策略',
     `create_time` BIGINT NOT NULL COMMENT '创建时间（毫秒时间戳）',
     `update_time` BIGINT NOT NULL COMMENT '更新时间（毫秒时间戳）',
     PRIMARY KEY (`id`),
@@ -36,6 +37,7 @@ CREATE TABLE IF NOT EXISTS `symbol_config` (
     UNIQUE KEY `uk_symbol_id` (`symbol_id`),
     KEY `idx_enabled` (`enabled`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='交易对配置表';
+-- 已有库升级：ALTER TABLE `symbol_config` ADD COLUMN `durability` VARCHAR(16) DEFAULT NULL COMMENT 'WAL持久化策略' AFTER `match_mode`;
 
 -- 订单表
 CREATE TABLE IF NOT EXISTS `order` (